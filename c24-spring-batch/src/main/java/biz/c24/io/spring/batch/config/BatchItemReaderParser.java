@@ -67,5 +67,36 @@ public class BatchItemReaderParser extends AbstractSingleBeanDefinitionParser {
     	if(StringUtils.hasText(validate)) {
     		bean.addPropertyValue("validate", validate);
     	}
+    	
+    	// Optional
+    	String saveState = element.getAttribute("save-state");
+    	if(StringUtils.hasText(saveState)) {
+    		boolean val = Boolean.parseBoolean(saveState);
+    		bean.addPropertyValue("saveState", val);
+    	}
+    	
+    	// Optional
+    	String parserThreads = element.getAttribute("parser-threads");
+    	if(StringUtils.hasText(parserThreads)) {
+    		bean.addPropertyValue("parserThreads", parserThreads);
+    	}
+    	
+    	// Optional
+    	String maxQueuedBytes = element.getAttribute("max-queued-bytes");
+    	if(StringUtils.hasText(maxQueuedBytes)) {
+    		bean.addPropertyValue("maxQueuedBytes", maxQueuedBytes);
+    	}
+    	
+    	// Optional
+    	String bytesPerChar = element.getAttribute("bytes-per-char");
+    	if(StringUtils.hasText(bytesPerChar)) {
+    		bean.addPropertyValue("bytesPerChar", bytesPerChar);
+    	}
+    	
+    	// Optional
+    	String metricsRef = element.getAttribute("metrics-ref");
+    	if(StringUtils.hasText(metricsRef)) {
+    		bean.addPropertyReference("metrics", metricsRef);
+    	}
     }    
 }
@@ -35,12 +35,21 @@ class C24NamespaceHandler extends NamespaceHandlerSupport {
 	public void init() {
         registerBeanDefinitionParser("file-source", new FileSourceParser());
         registerBeanDefinitionParser("zip-file-source", new ZipFileSourceParser());
+        registerBeanDefinitionParser("mapped-file-source", new MappedFileSourceParser());
+        registerBeanDefinitionParser("gzip-file-source", new GzipFileSourceParser());
+        registerBeanDefinitionParser("multi-file-source", new MultiFileSourceParser());
         registerBeanDefinitionParser("file-writer", new FileWriterSourceParser());
         registerBeanDefinitionParser("zip-file-writer", new ZipFileWriterSourceParser());
+        registerBeanDefinitionParser("sharded-file-writer", new ShardedFileWriterSourceParser());
+        registerBeanDefinitionParser("gzip-file-writer", new GzipFileWriterSourceParser());
+        registerBeanDefinitionParser("parallel-zip-file-writer", new ParallelZipFileWriterSourceParser());
         registerBeanDefinitionParser("item-reader", new ItemReaderParser());
         registerBeanDefinitionParser("xml-item-reader", new XmlItemReaderParser());
 		registerBeanDefinitionParser("batch-item-reader", new BatchItemReaderParser());
 		registerBeanDefinitionParser("transform-item-processor", new TransformItemProcessorParser());
+		registerBeanDefinitionParser("transform-item-writer", new TransformItemWriterParser());
+		registerBeanDefinitionParser("async-transform-item-processor", new AsyncTransformItemProcessorParser());
+		registerBeanDefinitionParser("async-item-writer", new AsyncItemWriterParser());
 		registerBeanDefinitionParser("item-writer", new ItemWriterParser());		
 	}
 }
@@ -69,5 +69,11 @@ public class FileSourceParser extends AbstractSingleBeanDefinitionParser {
         if(StringUtils.hasText(consistentLineTerminators)) {
             bean.addPropertyValue("consistentLineTerminators", consistentLineTerminators);
         }
+        
+        // Optional
+        String byteSplitting = element.getAttribute("byte-splitting");
+        if(StringUtils.hasText(byteSplitting)) {
+            bean.addPropertyValue("byteSplitting", byteSplitting);
+        }
     }
 }
@@ -27,6 +27,9 @@ import org.w3c.dom.Element;
 
 import biz.c24.io.spring.batch.reader.C24ItemReader;
 import biz.c24.io.spring.batch.reader.source.FileSource;
+import biz.c24.io.spring.batch.reader.source.GzipFileSource;
+import biz.c24.io.spring.batch.reader.source.MappedFileSource;
+import biz.c24.io.spring.batch.reader.source.MultiResourceSplittingReaderSource;
 import biz.c24.io.spring.batch.reader.source.ZipFileSource;
 
 /**
@@ -111,6 +114,39 @@ public class ItemReaderParser extends AbstractSingleBeanDefinitionParser {
     		bean.addPropertyReference("parseListener", parseListenerRef);
     	}
     	
+    	// Optional
+    	String pipelined = element.getAttribute("pipelined");
+    	if(StringUtils.hasText(pipelined)) {
+    		boolean val = Boolean.parseBoolean(pipelined);
+    		bean.addPropertyValue("pipelined", val);
+    	}
+    	
+    	// Optional
+    	String pipelineCapacity = element.getAttribute("pipeline-capacity");
+    	if(StringUtils.hasText(pipelineCapacity)) {
+    		bean.addPropertyValue("pipelineCapacity", pipelineCapacity);
+    	}
+    	
+    	// Optional
+    	String saveState = element.getAttribute("save-state");
+    	if(StringUtils.hasText(saveState)) {
+    		boolean val = Boolean.parseBoolean(saveState);
+    		bean.addPropertyValue("saveState", val);
+    	}
+    	
+    	// Optional
+    	String indexed = element.getAttribute("indexed");
+    	if(StringUtils.hasText(indexed)) {
+    		boolean val = Boolean.parseBoolean(indexed);
+    		bean.addPropertyValue("indexed", val);
+    	}
+    	
+    	// Optional
+    	String metricsRef = element.getAttribute("metrics-ref");
+    	if(StringUtils.hasText(metricsRef)) {
+    		bean.addPropertyReference("metrics", metricsRef);
+    	}
+    	
     	   	
     	Element fileSourceElement = DomUtils.getChildElementByTagName(element, "file-source");
     	if(fileSourceElement != null) {
@@ -129,11 +165,38 @@ public class ItemReaderParser extends AbstractSingleBeanDefinitionParser {
             bean.addPropertyValue("source", beanDefinition);
             numSourceDefns++;
         }
+        
+        Element mappedFileSourceElement = DomUtils.getChildElementByTagName(element, "mapped-file-source");
+        if(mappedFileSourceElement != null) {
+            BeanDefinition beanDefinition = parserContext.getDelegate().parseCustomElement(mappedFileSourceElement,
+                    bean.getBeanDefinition());
+            beanDefinition.setBeanClassName(MappedFileSource.class.getName());
+            bean.addPropertyValue("source", beanDefinition);
+            numSourceDefns++;
+        }
+        
+        Element gzipFileSourceElement = DomUtils.getChildElementByTagName(element, "gzip-file-source");
+        if(gzipFileSourceElement != null) {
+            BeanDefinition beanDefinition = parserContext.getDelegate().parseCustomElement(gzipFileSourceElement,
+                    bean.getBeanDefinition());
+            beanDefinition.setBeanClassName(GzipFileSource.class.getName());
+            bean.addPropertyValue("source", beanDefinition);
+            numSourceDefns++;
+        }
+        
+        Element multiFileSourceElement = DomUtils.getChildElementByTagName(element, "multi-file-source");
+        if(multiFileSourceElement != null) {
+            BeanDefinition beanDefinition = parserContext.getDelegate().parseCustomElement(multiFileSourceElement,
+                    bean.getBeanDefinition());
+            beanDefinition.setBeanClassName(MultiResourceSplittingReaderSource.class.getName());
+            bean.addPropertyValue("source", beanDefinition);
+            numSourceDefns++;
+        }
        
         if(numSourceDefns > 1) {
-            parserContext.getReaderContext().error("Only one of source-ref, file-source and zip-file-source can be used", element);
+            parserContext.getReaderContext().error("Only one of source-ref, file-source, zip-file-source, mapped-file-source, gzip-file-source and multi-file-source can be used", element);
         } else if(numSourceDefns == 0) {
-            parserContext.getReaderContext().error("One of source-ref, file-source and zip-file-source must be specified", element);            
+            parserContext.getReaderContext().error("One of source-ref, file-source, zip-file-source, mapped-file-source, gzip-file-source and multi-file-source must be specified", element);            
         }
         
     }    
@@ -25,6 +25,9 @@ import org.w3c.dom.Element;
 
 import biz.c24.io.spring.batch.writer.C24ItemWriter;
 import biz.c24.io.spring.batch.writer.source.FileWriterSource;
+import biz.c24.io.spring.batch.writer.source.GzipFileWriterSource;
+import biz.c24.io.spring.batch.writer.source.ParallelZipFileWriterSource;
+import biz.c24.io.spring.batch.writer.source.ShardedFileWriterSource;
 import biz.c24.io.spring.batch.writer.source.ZipFileWriterSource;
 
 /**
@@ -63,6 +66,25 @@ public class ItemWriterParser extends AbstractSingleBeanDefinitionParser {
     	String sinkRef = element.getAttribute("sink-ref");
     	bean.addPropertyReference("sink", sinkRef);
     	
+    	// Optional
+    	String metricsRef = element.getAttribute("metrics-ref");
+    	if(StringUtils.hasText(metricsRef)) {
+    		bean.addPropertyReference("metrics", metricsRef);
+    	}
+    	
+    	// Optional
+    	String asyncWrite = element.getAttribute("async-write");
+    	if(StringUtils.hasText(asyncWrite)) {
+    		boolean val = Boolean.parseBoolean(asyncWrite);
+    		bean.addPropertyValue("asyncWrite", val);
+    	}
+    	
+    	// Optional
+    	String maxQueuedBytes = element.getAttribute("max-queued-bytes");
+    	if(StringUtils.hasText(maxQueuedBytes)) {
+    		bean.addPropertyValue("maxQueuedBytes", maxQueuedBytes);
+    	}
+    	
     	int numSourceDefns = 0;
     	
     	// Optional
@@ -90,10 +112,37 @@ public class ItemWriterParser extends AbstractSingleBeanDefinitionParser {
             numSourceDefns++;
         }
        
+        Element shardedFileSourceElement = DomUtils.getChildElementByTagName(element, "sharded-file-writer");
+        if(shardedFileSourceElement != null) {
+            BeanDefinition beanDefinition = parserContext.getDelegate().parseCustomElement(shardedFileSourceElement,
+                    bean.getBeanDefinition());
+            beanDefinition.setBeanClassName(ShardedFileWriterSource.class.getName());
+            bean.addPropertyValue("writerSource", beanDefinition);
+            numSourceDefns++;
+        }
+       
+        Element gzipFileSourceElement = DomUtils.getChildElementByTagName(element, "gzip-file-writer");
+        if(gzipFileSourceElement != null) {
+            BeanDefinition beanDefinition = parserContext.getDelegate().parseCustomElement(gzipFileSourceElement,
+                    bean.getBeanDefinition());
+            beanDefinition.setBeanClassName(GzipFileWriterSource.class.getName());
+            bean.addPropertyValue("writerSource", beanDefinition);
+            numSourceDefns++;
+        }
+       
+        Element parallelZipFileSourceElement = DomUtils.getChildElementByTagName(element, "parallel-zip-file-writer");
+        if(parallelZipFileSourceElement != null) {
+            BeanDefinition beanDefinition = parserContext.getDelegate().parseCustomElement(parallelZipFileSourceElement,
+                    bean.getBeanDefinition());
+            beanDefinition.setBeanClassName(ParallelZipFileWriterSource.class.getName());
+            bean.addPropertyValue("writerSource", beanDefinition);
+            numSourceDefns++;
+        }
+       
         if(numSourceDefns > 1) {
-            parserContext.getReaderContext().error("Only one of writer-source-ref, file-writer and zip-file-writer can be used", element);
+            parserContext.getReaderContext().error("Only one of writer-source-ref, file-writer, zip-file-writer, sharded-file-writer, gzip-file-writer and parallel-zip-file-writer can be used", element);
         } else if(numSourceDefns == 0) {
-            parserContext.getReaderContext().error("One of writer-source-ref, file-writer and zip-file-writer must be specified", element);            
+            parserContext.getReaderContext().error("One of writer-source-ref, file-writer, zip-file-writer, sharded-file-writer, gzip-file-writer and parallel-zip-file-writer must be specified", element);            
         }
     }    
 }
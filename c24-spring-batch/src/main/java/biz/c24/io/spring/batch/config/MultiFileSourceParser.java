@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.config;
+
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser;
+import org.springframework.util.StringUtils;
+import org.w3c.dom.Element;
+
+import biz.c24.io.spring.batch.reader.source.MultiResourceSplittingReaderSource;
+
+/**
+ * Parser for C24ItemReader's multi-file-source child element, which creates a MultiResourceSplittingReaderSource
+ * 
+ * @author Andrew Elmore
+ *
+ */
+public class MultiFileSourceParser extends AbstractSingleBeanDefinitionParser {
+
+    /*
+     * (non-Javadoc)
+     * @see org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser#getBeanClass(org.w3c.dom.Element)
+     */
+    @Override
+    protected Class<?> getBeanClass(Element element) {
+        return MultiResourceSplittingReaderSource.class;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser#doParse(org.w3c.dom.Element, org.springframework.beans.factory.support.BeanDefinitionBuilder)
+     */
+    @Override
+    protected void doParse(Element element, BeanDefinitionBuilder bean) {
+    
+        // Optional
+        String resources = element.getAttribute("resources");
+        if(StringUtils.hasText(resources)) {
+            bean.addPropertyValue("resources", resources);            
+        }
+        
+        // Optional
+        String skipLines = element.getAttribute("skip-lines");
+        if(StringUtils.hasText(skipLines)) {
+            bean.addPropertyValue("skipLines", skipLines);
+        }
+        
+        // Optional
+        String encoding = element.getAttribute("encoding");
+        if(StringUtils.hasText(encoding)) {
+            bean.addPropertyValue("encoding", encoding);            
+        }
+        
+        // Optional
+        String consistentLineTerminators = element.getAttribute("consistent-line-terminators");
+        if(StringUtils.hasText(consistentLineTerminators)) {
+            bean.addPropertyValue("consistentLineTerminators", consistentLineTerminators);
+        }
+        
+        // Optional
+        String openAhead = element.getAttribute("open-ahead");
+        if(StringUtils.hasText(openAhead)) {
+            bean.addPropertyValue("openAhead", openAhead);
+        }
+        
+        // Optional
+        String openExecutorRef = element.getAttribute("open-executor-ref");
+        if(StringUtils.hasText(openExecutorRef)) {
+            bean.addPropertyReference("openExecutor", openExecutorRef);
+        }
+    }
+}
@@ -44,9 +44,16 @@ public class TransformItemProcessorParser extends AbstractSingleBeanDefinitionPa
 	 */
 	@Override
 	protected void doParse(Element element, BeanDefinitionBuilder builder) {
-		// Mandatory
+		// One of transform-ref and transform-pool-ref
 		String transformId = element.getAttribute("transform-ref");
-		builder.addPropertyReference("transformer", transformId);
+		if(StringUtils.hasText(transformId)) {
+			builder.addPropertyReference("transformer", transformId);
+		}
+		
+		String transformPoolId = element.getAttribute("transform-pool-ref");
+		if(StringUtils.hasText(transformPoolId)) {
+			builder.addPropertyReference("transformPool", transformPoolId);
+		}
 		
 		// Optional
 		String validate = element.getAttribute("validate");
@@ -66,6 +73,12 @@ public class TransformItemProcessorParser extends AbstractSingleBeanDefinitionPa
 		if(StringUtils.hasText(targetClass)) {
 			builder.addPropertyValue("targetClass", targetClass);
 		}
+		
+		// Optional
+		String metricsRef = element.getAttribute("metrics-ref");
+		if(StringUtils.hasText(metricsRef)) {
+			builder.addPropertyReference("metrics", metricsRef);
+		}
 	}
 
 }
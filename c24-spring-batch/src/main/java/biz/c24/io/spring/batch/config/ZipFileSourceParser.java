@@ -69,5 +69,23 @@ public class ZipFileSourceParser extends AbstractSingleBeanDefinitionParser {
         if(StringUtils.hasText(consistentLineTerminators)) {
             bean.addPropertyValue("consistentLineTerminators", consistentLineTerminators);
         }
+        
+        // Optional
+        String prefetchDepth = element.getAttribute("prefetch-depth");
+        if(StringUtils.hasText(prefetchDepth)) {
+            bean.addPropertyValue("prefetchDepth", prefetchDepth);
+        }
+        
+        // Optional
+        String maxPrefetchSize = element.getAttribute("max-prefetch-size");
+        if(StringUtils.hasText(maxPrefetchSize)) {
+            bean.addPropertyValue("maxPrefetchSize", maxPrefetchSize);
+        }
+        
+        // Optional
+        String prefetchExecutorRef = element.getAttribute("prefetch-executor-ref");
+        if(StringUtils.hasText(prefetchExecutorRef)) {
+            bean.addPropertyReference("prefetchExecutor", prefetchExecutorRef);
+        }
     }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.metrics;
+
+/**
+ * Receives measurements from the C24 readers, processors and writers so that a slow step can be attributed to I/O,
+ * splitting, parsing, validation, transformation or writing.
+ *
+ * Components obtain their meters once, when the BatchMetrics is set on them, and do not take any measurements at
+ * all if it isn't. Every meter is tagged with the simple class name of the component that records it under the
+ * COMPONENT_TAG key. MicrometerBatchMetrics publishes the meters to a Micrometer MeterRegistry.
+ *
+ * @author Andrew Elmore
+ */
+public interface BatchMetrics {
+
+	/**
+	 * The tag identifying the component recording a meter
+	 */
+	public static final String COMPONENT_TAG = "component";
+
+	/**
+	 * Counter of the data consumed from the source. Bytes for sources which split undecoded data, such as the
+	 * MappedFileSource or a FileSource with byteSplitting set; characters otherwise.
+	 */
+	public static final String READER_BYTES = "c24.reader.bytes";
+
+	/**
+	 * Counter of the elements split out of the source (C24ItemReader) or parsed from it (C24BatchItemReader)
+	 */
+	public static final String READER_ELEMENTS = "c24.reader.elements";
+
+	/**
+	 * Timer of the time spent waiting to acquire a SplittingReader shared with other threads
+	 */
+	public static final String READER_LOCK_WAIT = "c24.reader.lock.wait";
+
+	/**
+	 * Timer of the time spent splitting an element out of the source once its SplittingReader has been acquired
+	 */
+	public static final String READER_SPLIT = "c24.reader.split";
+
+	/**
+	 * Timer of the time spent parsing an element
+	 */
+	public static final String READER_PARSE = "c24.reader.parse";
+
+	/**
+	 * Timer of the time spent validating a parsed element
+	 */
+	public static final String READER_VALIDATE = "c24.reader.validate";
+
+	/**
+	 * Gauge of the elements (C24ItemReader) or estimated bytes (C24BatchItemReader) queued awaiting the reading threads
+	 */
+	public static final String READER_QUEUE_DEPTH = "c24.reader.queue.depth";
+
+	/**
+	 * Gauge of the estimated percentage of the source that has been read, NaN if it cannot be estimated
+	 */
+	public static final String READER_PROGRESS = "c24.reader.progress";
+
+	/**
+	 * Timer of the time spent transforming an item
+	 */
+	public static final String PROCESSOR_TRANSFORM = "c24.processor.transform";
+
+	/**
+	 * Timer of the time spent waiting to borrow a Transform from a TransformPool
+	 */
+	public static final String PROCESSOR_TRANSFORM_POOL_WAIT = "c24.processor.transform.pool.wait";
+
+	/**
+	 * Timer of the time spent validating an item
+	 */
+	public static final String PROCESSOR_VALIDATE = "c24.processor.validate";
+
+	/**
+	 * Counter of the validations answered from a ValidationResultCache
+	 */
+	public static final String PROCESSOR_VALIDATION_CACHE_HITS = "c24.processor.validation.cache.hits";
+
+	/**
+	 * Counter of the validations which missed a ValidationResultCache and were performed in full
+	 */
+	public static final String PROCESSOR_VALIDATION_CACHE_MISSES = "c24.processor.validation.cache.misses";
+
+	/**
+	 * Timer of the time spent formatting a chunk of items with the Sink
+	 */
+	public static final String WRITER_FORMAT = "c24.writer.format";
+
+	/**
+	 * Timer of the time spent waiting to acquire the output Writer shared with other threads. Not recorded where the
+	 * WriterSource is a ByteWriterSource.
+	 */
+	public static final String WRITER_LOCK_WAIT = "c24.writer.lock.wait";
+
+	/**
+	 * Timer of the time spent writing a formatted chunk to the output Writer once it has been acquired. Where the
+	 * WriterSource is a ByteWriterSource, which may combine concurrent writes, this includes any time spent waiting.
+	 */
+	public static final String WRITER_WRITE = "c24.writer.write";
+
+	/**
+	 * Timer of the time a chunk thread spent waiting for the output thread to write its chunk, when writing
+	 * asynchronously
+	 */
+	public static final String WRITER_FLUSH_WAIT = "c24.writer.flush.wait";
+
+	/**
+	 * Gauge of the estimated bytes of formatted chunks queued for the output thread, when writing asynchronously
+	 */
+	public static final String WRITER_QUEUE_DEPTH = "c24.writer.queue.depth";
+
+	/**
+	 * Counter of the characters written to the output Writer
+	 */
+	public static final String WRITER_CHARS = "c24.writer.chars";
+
+	/**
+	 * Records durations
+	 */
+	public interface Timer {
+
+		/**
+		 * @param nanos The duration to record, in nanoseconds
+		 */
+		void record(long nanos);
+	}
+
+	/**
+	 * Records a monotonically increasing count
+	 */
+	public interface Counter {
+
+		/**
+		 * @param amount The amount to add to the count
+		 */
+		void increment(long amount);
+	}
+
+	/**
+	 * Supplies the current value of a gauge whenever it is sampled. May be called from any thread.
+	 */
+	public interface Gauge {
+
+		double value();
+	}
+
+	/**
+	 * Gets the timer with the supplied name for a component
+	 *
+	 * @param name The name of the timer
+	 * @param component The simple class name of the component recording it
+	 */
+	Timer timer(String name, String component);
+
+	/**
+	 * Gets the counter with the supplied name for a component
+	 *
+	 * @param name The name of the counter
+	 * @param component The simple class name of the component recording it
+	 */
+	Counter counter(String name, String component);
+
+	/**
+	 * Registers a gauge for a component. If a gauge with the same name has already been registered for the component,
+	 * the supplied gauge replaces it; this allows step-scoped components to be recreated for each step execution.
+	 *
+	 * @param name The name of the gauge
+	 * @param component The simple class name of the component registering it
+	 * @param gauge Supplies the gauge's value
+	 */
+	void gauge(String name, String component, Gauge gauge);
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import org.springframework.util.Assert;
+
+/**
+ * BatchMetrics which publishes to a Micrometer MeterRegistry.
+ *
+ * Additional tags, for example identifying the step, can be added to every meter by setting tags. Where several
+ * steps use the same type of component, each should be given a MicrometerBatchMetrics with different tags so that
+ * their meters can be told apart.
+ *
+ * Micrometer is an optional dependency and requires Java 8; the rest of this library does not.
+ *
+ * @author Andrew Elmore
+ */
+public class MicrometerBatchMetrics implements BatchMetrics {
+
+	private final MeterRegistry registry;
+
+	/**
+	 * Key/value pairs added to the tags of every meter
+	 */
+	private String[] tags = new String[0];
+
+	/**
+	 * The values our gauges report, keyed on the gauge's name and tags. The registry only holds weak references to
+	 * them, so we hold them here too; this also allows the Gauge behind one to be replaced.
+	 */
+	private final ConcurrentMap<String, GaugeValue> gauges = new ConcurrentHashMap<String, GaugeValue>();
+
+	/**
+	 * @param registry The registry to publish our meters to
+	 */
+	public MicrometerBatchMetrics(MeterRegistry registry) {
+		Assert.notNull(registry, "MeterRegistry must be set");
+		this.registry = registry;
+	}
+
+	/**
+	 * Sets tags to add to every meter
+	 *
+	 * @param tags Alternating tag keys and values
+	 */
+	public void setTags(String... tags) {
+		Assert.isTrue(tags.length % 2 == 0, "Tags must be supplied as key/value pairs");
+		this.tags = tags.clone();
+	}
+
+	/**
+	 * Builds the tags for a meter recorded by component
+	 */
+	private Tags getTags(String component) {
+		return Tags.of(tags).and(COMPONENT_TAG, component);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.metrics.BatchMetrics#timer(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public Timer timer(String name, String component) {
+		final io.micrometer.core.instrument.Timer timer = registry.timer(name, getTags(component));
+		return new Timer() {
+			@Override
+			public void record(long nanos) {
+				timer.record(nanos, TimeUnit.NANOSECONDS);
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.metrics.BatchMetrics#counter(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public Counter counter(String name, String component) {
+		final io.micrometer.core.instrument.Counter counter = registry.counter(name, getTags(component));
+		return new Counter() {
+			@Override
+			public void increment(long amount) {
+				counter.increment(amount);
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.metrics.BatchMetrics#gauge(java.lang.String, java.lang.String, biz.c24.io.spring.batch.metrics.BatchMetrics.Gauge)
+	 */
+	@Override
+	public void gauge(String name, String component, Gauge gauge) {
+		String key = name + Arrays.toString(tags) + component;
+		GaugeValue value = gauges.get(key);
+		if(value == null) {
+			GaugeValue created = new GaugeValue();
+			value = gauges.putIfAbsent(key, created);
+			if(value == null) {
+				value = created;
+				registry.gauge(name, getTags(component), value);
+			}
+		}
+		value.gauge = gauge;
+	}
+
+	/**
+	 * A Number whose value is sampled from a Gauge each time it is read
+	 */
+	@SuppressWarnings("serial")
+	private static class GaugeValue extends Number {
+
+		private volatile Gauge gauge = null;
+
+		@Override
+		public double doubleValue() {
+			Gauge current = gauge;
+			return current != null? current.value() : Double.NaN;
+		}
+
+		@Override
+		public float floatValue() {
+			return (float)doubleValue();
+		}
+
+		@Override
+		public long longValue() {
+			return (long)doubleValue();
+		}
+
+		@Override
+		public int intValue() {
+			return (int)doubleValue();
+		}
+	}
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.partition;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+import biz.c24.io.spring.batch.reader.source.LineMatcher;
+import biz.c24.io.spring.batch.reader.source.MappedSplittingReader;
+import biz.c24.io.spring.util.C24Utils;
+
+/**
+ * Partitioner which splits a single uncompressed file into byte ranges so that it can be processed by 
+ * multiple partitioned steps (and hence multiple threads or JVMs) without them having to share a reader.
+ * 
+ * The file is initially cut into gridSize equally sized ranges. Each cut is then moved forward to the start
+ * of the next line which matches the elementStartPattern, so that no element straddles two partitions.
+ * The file name and the start and end offsets of each range are stored in the partition's ExecutionContext
+ * under the FILE_KEY, START_OFFSET_KEY and END_OFFSET_KEY keys, where they are picked up by the FileSource and
+ * MappedFileSource.
+ * 
+ * As the file is split on raw bytes, its encoding must be ASCII-compatible (e.g. UTF-8, US-ASCII or ISO-8859-1).
+ * The elementStartPattern should be the same as that used by the C24ItemReader which will read each partition.
+ * 
+ * @author Andrew Elmore
+ */
+public class ByteRangePartitioner implements Partitioner {
+	
+	private static final Logger LOG = LoggerFactory.getLogger(ByteRangePartitioner.class);
+	
+	/**
+	 * ExecutionContext key for the path of the file to read
+	 */
+	public static final String FILE_KEY = "input.file";
+	
+	/**
+	 * ExecutionContext key for the offset of the first byte of the partition
+	 */
+	public static final String START_OFFSET_KEY = "input.file.startOffset";
+	
+	/**
+	 * ExecutionContext key for the offset at which the partition ends (exclusive)
+	 */
+	public static final String END_OFFSET_KEY = "input.file.endOffset";
+	
+	/**
+	 * How much of the file we map at any one time while looking for element boundaries
+	 */
+	private static final int SCAN_MAPPING_SIZE = 1024 * 1024;
+	
+	private Resource resource;
+	
+	private Pattern elementStartPattern;
+	
+	private LineMatcher elementStartMatcher;
+	
+	private String encoding = C24Utils.DEFAULT_FILE_ENCODING;
+	
+	/**
+	 * Asserts that we have been properly configured
+	 */
+	@PostConstruct
+	public void validateConfiguration() {
+		Assert.notNull(resource, "Resource must be set");
+		Assert.notNull(elementStartPattern, "elementStartPattern must be set");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.core.partition.support.Partitioner#partition(int)
+	 */
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		
+		Map<String, ExecutionContext> partitions = new LinkedHashMap<String, ExecutionContext>();
+		
+		try {
+			File file = resource.getFile();
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				long length = channel.size();
+				int numRanges = Math.max(gridSize, 1);
+				
+				long start = 0;
+				for(int i = 1; i <= numRanges; i++) {
+					long end = i == numRanges? length : findElementStart(channel, Math.max(length * i / numRanges, start), length);
+					// Large elements can swallow subsequent cuts; don't generate empty partitions for them
+					if(end > start || partitions.isEmpty() && i == numRanges) {
+						addPartition(partitions, file, start, end);
+						start = end;
+					}
+				}
+			} finally {
+				raf.close();
+			}
+			
+			LOG.debug("Split {} into {} partitions", file, partitions.size());
+			
+		} catch(IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		
+		return partitions;
+	}
+	
+	private void addPartition(Map<String, ExecutionContext> partitions, File file, long start, long end) {
+		ExecutionContext context = new ExecutionContext();
+		context.putString(FILE_KEY, file.getAbsolutePath());
+		context.putLong(START_OFFSET_KEY, start);
+		context.putLong(END_OFFSET_KEY, end);
+		partitions.put("partition" + partitions.size(), context);
+	}
+	
+	/**
+	 * Finds the offset of the first line starting at or after cut which matches the elementStartPattern
+	 * 
+	 * @param channel The file to search
+	 * @param cut The offset to start searching from
+	 * @param length The length of the file
+	 * @return The offset of the start of the element, length if there isn't one
+	 */
+	private long findElementStart(FileChannel channel, long cut, long length) throws IOException {
+		if(cut <= 0) {
+			return 0;
+		} else if(cut >= length) {
+			return length;
+		}
+		
+		// Start from the byte before the cut so that, if the cut is already at the start of a line, all we discard
+		// is the previous line's terminator.
+		// We deliberately don't close the reader as that would close the channel.
+		MappedSplittingReader reader = new MappedSplittingReader(channel, cut - 1, length, encoding, SCAN_MAPPING_SIZE);
+		reader.readLineSequence();
+		
+		LineMatcher matcher = elementStartMatcher.newMatcher();
+		while(true) {
+			long lineStart = reader.getPosition();
+			CharSequence line = reader.readLineSequence();
+			if(line == null) {
+				return length;
+			} else if(matcher.matches(line)) {
+				return lineStart;
+			}
+		}
+	}
+
+	/**
+	 * The file we partition
+	 * @return the resource that we'll partition
+	 */
+	public Resource getResource() {
+		return resource;
+	}
+
+	/**
+	 * Set the file to partition. The resource must be resolvable to a File.
+	 */
+	public void setResource(Resource resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * The regular expression identifying the first line of an element
+	 */
+	public String getElementStartPattern() {
+		return elementStartPattern != null? elementStartPattern.pattern() : null;
+	}
+
+	/**
+	 * Set the regular expression used to identify the first line of an element. 
+	 * Should match the elementStartPattern of the C24ItemReader reading the partitions.
+	 * 
+	 * @param elementStartRegEx The regular expression identifying the start of an element
+	 */
+	public void setElementStartPattern(String elementStartRegEx) {
+		this.elementStartPattern = Pattern.compile(elementStartRegEx, Pattern.DOTALL);
+		this.elementStartMatcher = LineMatcher.compile(elementStartPattern);
+	}
+
+	/**
+	 * Returns the encoding of the file
+	 */
+	public String getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Sets the encoding of the file. Must be ASCII-compatible.
+	 * @param encoding the encoding of the file
+	 */
+	public void setEncoding(String encoding) {
+		this.encoding = encoding;
+	}
+
+}
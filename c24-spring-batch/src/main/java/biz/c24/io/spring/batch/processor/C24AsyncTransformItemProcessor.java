@@ -0,0 +1,331 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.processor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.batch.core.annotation.AfterStep;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.util.ClassUtils;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.api.transform.Transform;
+import biz.c24.io.spring.batch.metrics.BatchMetrics;
+import biz.c24.io.spring.batch.reader.source.DaemonThreadFactory;
+import biz.c24.io.spring.transform.TransformPool;
+
+/**
+ * A Spring Batch ItemProcessor which transforms, validates and optionally converts each item as the 
+ * C24TransformItemProcessor does, but on an Executor rather than on the thread reading the items. It returns a Future
+ * for each item, so it must be paired with an ItemWriter, such as the C24AsyncItemWriter, which waits for the results.
+ * 
+ * This lets CPU-intensive transforms use every core while the items are still read by a single thread and written
+ * in the order they were read. The work is done on the supplied taskExecutor (for example a Spring TaskExecutor or, 
+ * on recent JVMs, one which starts a virtual thread per task) or, if none is supplied, on a pool of parallelism 
+ * daemon threads which we create when first needed and shut down at the end of the step. As the whole chunk is
+ * submitted before it is written, at most a chunk's worth of items is in flight per reading thread.
+ * 
+ * As items are transformed concurrently and iO-generated transforms aren't guaranteed to be thread safe, each item is
+ * transformed by an instance borrowed from a TransformPool. If a transformer rather than a transformPool is supplied,
+ * we pool it ourselves, creating up to parallelism further instances of its class as they are needed; the class must
+ * therefore have a public default constructor.
+ * 
+ * @author Andrew Elmore
+ */
+public class C24AsyncTransformItemProcessor implements ItemProcessor<ComplexDataObject, Future<Object>> {
+
+	/**
+	 * Does the transformation, validation and conversion of each item
+	 */
+	private final C24TransformItemProcessor processor = new C24TransformItemProcessor();
+	
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * The Executor to process items on. If not supplied, we create (and own) our own.
+	 */
+	private Executor taskExecutor = null;
+	private volatile ExecutorService ownedExecutor = null;
+	
+	/**
+	 * The pool supplied to us, if any
+	 */
+	private volatile TransformPool transformPool = null;
+	
+	/**
+	 * The pool we create around the supplied transformer if we weren't given a transformPool
+	 */
+	private volatile TransformPool transformerPool = null;
+	
+	/**
+	 * Default constructor. Requires that the transformer is initialised separately.
+	 */
+	public C24AsyncTransformItemProcessor() {
+	}
+	
+	/**
+	 * Construct a C24AsyncTransformItemProcessor
+	 * 
+	 * @param transform The iO-generated transform to use
+	 * @param taskExecutor The Executor to transform items on, null to use our own threads
+	 */
+	public C24AsyncTransformItemProcessor(Transform transform, Executor taskExecutor) {
+		setTransformer(transform);
+		setTaskExecutor(taskExecutor);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemProcessor#process(java.lang.Object)
+	 */
+	@Override
+	public Future<Object> process(final ComplexDataObject item) throws Exception {
+		ensureTransformPool();
+		FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return processor.process(item);
+			}
+		});
+		getExecutor().execute(task);
+		return task;
+	}
+	
+	/**
+	 * Makes sure our processor borrows transforms from a pool, creating one around our transformer if we haven't been
+	 * given one
+	 */
+	private void ensureTransformPool() {
+		if(transformPool != null || transformerPool != null) {
+			return;
+		}
+		synchronized(this) {
+			if(transformPool == null && transformerPool == null) {
+				final Transform transformer = processor.getTransformer();
+				if(transformer == null) {
+					throw new IllegalStateException("C24AsyncTransformItemProcessor requires either a transformer or a transformPool");
+				}
+				TransformPool pool = new TransformPool(transformer.getClass(), Math.max(1, parallelism)) {
+					private final AtomicBoolean supplied = new AtomicBoolean();
+					
+					@Override
+					protected Transform createTransform() {
+						// Use the instance we were given before creating any more
+						return supplied.compareAndSet(false, true)? transformer : super.createTransform();
+					}
+				};
+				processor.setTransformPool(pool);
+				transformerPool = pool;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the Executor to process items on, creating our own if necessary
+	 */
+	private Executor getExecutor() {
+		if(taskExecutor != null) {
+			return taskExecutor;
+		}
+		ExecutorService executor = ownedExecutor;
+		if(executor == null) {
+			synchronized(this) {
+				executor = ownedExecutor;
+				if(executor == null) {
+					executor = Executors.newFixedThreadPool(Math.max(1, parallelism), 
+							new DaemonThreadFactory(ClassUtils.getShortName(C24AsyncTransformItemProcessor.class), "transform"));
+					ownedExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+	
+	/**
+	 * Releases any transient state left over from this transformation step, including any threads we created
+	 */
+	@AfterStep
+	public void cleanup() {
+		synchronized(this) {
+			if(ownedExecutor != null) {
+				// Our writer has waited for everything we submitted
+				ownedExecutor.shutdown();
+				ownedExecutor = null;
+			}
+			if(transformerPool != null) {
+				// Let the instances we created go
+				processor.setTransformPool(null);
+				transformerPool = null;
+			}
+		}
+		processor.cleanup();
+	}
+
+	/**
+	 * Get the C24 IO transformer used by this ItemProcessor
+	 * 
+	 * @return The C24 IO transformer
+	 */
+	public Transform getTransformer() {
+		return processor.getTransformer();
+	}
+
+	/**
+	 * Set the C24 IO transformer that this ItemProcessor will use. Unless a transformPool is set, the transformer 
+	 * is pooled with further instances of its class so that no two threads use the same instance.
+	 * 
+	 * @param transformer The C24 IO transformer to use
+	 */
+	public synchronized void setTransformer(Transform transformer) {
+		processor.setTransformer(transformer);
+		if(transformerPool != null) {
+			processor.setTransformPool(null);
+			transformerPool = null;
+		}
+	}
+	
+	/**
+	 * Get the pool this ItemProcessor borrows transforms from
+	 * 
+	 * @return The TransformPool, null if we use a single transformer
+	 */
+	public TransformPool getTransformPool() {
+		return transformPool;
+	}
+	
+	/**
+	 * Set a pool to borrow transforms from, so that concurrent threads never share a Transform. 
+	 * If set, any transformer is ignored.
+	 * 
+	 * @param transformPool The TransformPool to use
+	 */
+	public synchronized void setTransformPool(TransformPool transformPool) {
+		this.transformPool = transformPool;
+		transformerPool = null;
+		processor.setTransformPool(transformPool);
+	}
+	
+	/**
+	 * Whether or not this transformer validates the CDOs resulting from the transformation
+	 * 
+	 * @return True if if validates generated objects
+	 */
+	public boolean isValidating() {
+		return processor.isValidating();
+	}
+
+	/**
+	 * Turn validation on or off
+	 * 
+	 * @param validate 
+	 */
+	public void setValidation(boolean validate) {
+		processor.setValidation(validate);
+	}
+	
+	/**
+	 * Do we abort on first failure or fully validate the object
+	 * @return True iff this processor will abort on first failure
+	 */
+	public boolean isFailfast() {
+		return processor.isFailfast();
+	}
+
+	/**
+	 * Controls whether this processor aborts on first failure or fully validates the object
+	 * @param failfast
+	 */
+	public void setFailfast(boolean failfast) {
+		processor.setFailfast(failfast);
+	}
+	
+	/**
+	 * Returns the Java Bean class the transformed CDOs are converted to, if any
+	 * 
+	 * @return The target class, null if ComplexDataObjects are returned
+	 */
+	public Class<?> getTargetClass() {
+		return processor.getTargetClass();
+	}
+
+	/**
+	 * Turns on/off returning POJOs or ComplexDataObjects
+	 * 
+	 * @param targetClass The Java Bean class to sink to, or CDO if null
+	 */
+	public void setTargetClass(Class<?> targetClass) {
+		processor.setTargetClass(targetClass);
+	}
+	
+	/**
+	 * Gets the BatchMetrics this processor records its performance to
+	 * 
+	 * @return The BatchMetrics, null if none has been set
+	 */
+	public BatchMetrics getMetrics() {
+		return processor.getMetrics();
+	}
+	
+	/**
+	 * Sets the BatchMetrics to record the time spent transforming and validating to
+	 * 
+	 * @param metrics The BatchMetrics to use, null to stop recording
+	 */
+	public void setMetrics(BatchMetrics metrics) {
+		processor.setMetrics(metrics);
+	}
+	
+	/**
+	 * The number of items transformed in parallel if we are using our own threads
+	 * @return The parallelism
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads we create to transform items, if no taskExecutor is supplied, and the most instances 
+	 * of a supplied transformer that are used at once. Defaults to the number of available processors.
+	 * @param parallelism The number of items to transform in parallel
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * The Executor on which items are transformed
+	 * @return The supplied Executor, null if we are using our own
+	 */
+	public Executor getTaskExecutor() {
+		return taskExecutor;
+	}
+
+	/**
+	 * Sets the Executor (for example a Spring TaskExecutor) on which items are transformed. If not set, we create
+	 * a pool of parallelism daemon threads which is shut down at the end of the step.
+	 * @param taskExecutor The Executor to transform items on
+	 */
+	public void setTaskExecutor(Executor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+}
@@ -15,27 +15,40 @@
  */
 package biz.c24.io.spring.batch.processor;
 
-import java.util.Collection;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.springframework.batch.core.annotation.AfterStep;
 import org.springframework.batch.item.ItemProcessor;
-import org.springframework.beans.factory.annotation.Required;
+import org.springframework.util.ClassUtils;
 
 import biz.c24.io.api.data.ComplexDataObject;
 import biz.c24.io.api.data.ValidationEvent;
 import biz.c24.io.api.data.ValidationException;
-import biz.c24.io.api.data.ValidationListener;
-import biz.c24.io.api.data.ValidationManager;
 import biz.c24.io.api.presentation.JavaClassSink;
 import biz.c24.io.api.transform.Transform;
 import biz.c24.io.spring.batch.C24CompoundValidationException;
+import biz.c24.io.spring.batch.metrics.BatchMetrics;
 import biz.c24.io.spring.batch.reader.C24ValidationException;
+import biz.c24.io.spring.transform.TransformPool;
+import biz.c24.io.spring.validation.ValidationEngine;
 
 /**
  * A Spring Batch ItemProcesor which invokes a C24 IO Transform to convert a CDO from one model to another.
  * Optionally transforms to a target-model compliant Java Bean
  * 
+ * Either a single Transform, shared by every thread calling the processor, or a TransformPool must be supplied. As
+ * iO-generated transforms aren't guaranteed to be thread safe, a pool should be used where chunks are processed
+ * concurrently; each item (or, for processAll, each chunk) is then transformed by an instance borrowed from the pool.
+ * 
+ * As a JavaClassSink isn't thread safe, each conversion to the targetClass borrows one from a pool, so there are never 
+ * more of them than there have been concurrent callers.
+ * 
+ * If a BatchMetrics is set, the time spent transforming and validating each item is recorded, as is any time spent
+ * waiting to borrow a Transform from the pool.
+ * 
  * @author Andrew Elmore
  */
 public class C24TransformItemProcessor implements ItemProcessor<ComplexDataObject, Object> {
@@ -45,17 +58,44 @@ public class C24TransformItemProcessor implements ItemProcessor<ComplexDataObjec
 	 */
 	private Transform transformer;
 	
+	/**
+	 * The pool to borrow transforms from, used in preference to transformer
+	 */
+	private TransformPool transformPool = null;
+	
 	/**
 	 * Whether or not to abort on the first failure
 	 */
 	private boolean failfast = true;
 	
-	private ThreadLocal<ValidationManager> validator = null;
+	/**
+	 * Whether or not to validate the transformed objects
+	 */
+	private boolean validate = false;
+	
+	private ValidationEngine validationEngine = new ValidationEngine();
+	
+	/**
+	 * Optional Java Bean class to convert CDOs to
+	 */
+	private volatile Class<?> targetClass = null;
+	
+	/**
+	 * JavaClassSinks for our targetClass not currently in use, as a JavaClassSink isn't thread safe
+	 */
+	private final ConcurrentLinkedQueue<JavaClassSink> javaSinks = new ConcurrentLinkedQueue<JavaClassSink>();
 	
 	/**
-	 * Optional JavaClassSink to use to convert CDOs to POJOs
+	 * The BatchMetrics we record our performance to, if any
 	 */
-	private JavaClassSink javaSink = null;
+	private BatchMetrics metrics = null;
+	
+	/**
+	 * Meters we record to, null unless a BatchMetrics has been set
+	 */
+	private BatchMetrics.Timer transformTimer = null;
+	private BatchMetrics.Timer validateTimer = null;
+	private BatchMetrics.Timer poolWaitTimer = null;
 
 	/**
 	 * Default constructor. Requires that the transformer is initialised separately.
@@ -102,58 +142,151 @@ public class C24TransformItemProcessor implements ItemProcessor<ComplexDataObjec
 	 */
 	@Override
 	public Object process(ComplexDataObject item) throws Exception {
-		Object[][] transformedObj = transformer.transform(new Object[][]{{item}});
+		Transform transform = acquireTransform();
+		ComplexDataObject result;
+		try {
+			BatchMetrics.Timer transformTimer = this.transformTimer;
+			long start = transformTimer != null? System.nanoTime() : 0;
+			
+			Object[][] transformedObj = transform.transform(new Object[][]{{item}});
+			
+			result = (ComplexDataObject)transformedObj[0][0];
+			
+			if(transformTimer != null) {
+				transformTimer.record(System.nanoTime() - start);
+			}
+		} finally {
+			releaseTransform(transform);
+		}
 		
-		ComplexDataObject result = (ComplexDataObject)transformedObj[0][0];
+		if(validate) {
+			validate(result);
+		}
 		
-		if(validator != null) {
-	        try {	
-				ValidationManager mgr = validator.get();
-				if(mgr == null) {
-					mgr = new ValidationManager();
-					validator.set(mgr);
-				}
-				if(failfast) {
-					mgr.validateByException(result);
-				} else {
-					// Capture all failures
-					final Collection<ValidationEvent> events = new LinkedList<ValidationEvent>();
-					
-					ValidationListener listener = new ValidationListener() {
-			            public void validationPassed(ValidationEvent ve) {
-			            }
-	
-			            public void validationFailed(ValidationEvent ve) {
-			                events.add(ve);
-			            }
-			        };
-			        
-			        mgr.addValidationListener(listener);
-			        
-			        try {
-				        if(!mgr.validateByEvents(result)) {
-				        	if(events.size() == 1) {
-				        		// Treat it as though we were validating by exception
-				        		mgr.setEventBased(false);
-				        		mgr.fireValidationEvent(events.iterator().next());
-				        	} else {
-				        		throw new C24CompoundValidationException(result, events);
-				        	}
-				        } 
-			        } finally {
-			        	mgr.removeValidationListener(listener);
-			        }
-				}
-			} catch(ValidationException vEx) {
-				throw new C24ValidationException("Failed to validate message: " + vEx.getLocalizedMessage(), result, vEx);
+		return sink(result);
+	}
+	
+	/**
+	 * Transforms a whole chunk of items in a single invocation of the transform, passing the items as the occurrences
+	 * of its first input, then validates and converts the results in a single pass.
+	 * 
+	 * This saves the per-invocation setup of the transform but requires that the transform maps each occurrence of 
+	 * its first input to one occurrence of its first output, in order; an IllegalStateException is thrown if the 
+	 * number of results doesn't match the number of items.
+	 * 
+	 * @param items The items to transform
+	 * @return The transformed items, in the same order
+	 * @throws C24ValidationException If validation is on and a result fails it
+	 */
+	public List<Object> processAll(List<? extends ComplexDataObject> items) throws Exception {
+		List<Object> results = new ArrayList<Object>(items.size());
+		if(items.isEmpty()) {
+			return results;
+		}
+		
+		Transform transform = acquireTransform();
+		Object[][] transformedObjs;
+		try {
+			BatchMetrics.Timer transformTimer = this.transformTimer;
+			long start = transformTimer != null? System.nanoTime() : 0;
+			
+			transformedObjs = transform.transform(new Object[][]{items.toArray()});
+			
+			if(transformTimer != null) {
+				transformTimer.record(System.nanoTime() - start);
 			}
+		} finally {
+			releaseTransform(transform);
 		}
 		
-		if(javaSink != null) {
-			return javaSink.convertObject(result);
-		} else {		
+		int numResults = transformedObjs.length > 0 && transformedObjs[0] != null? transformedObjs[0].length : 0;
+		if(numResults != items.size()) {
+			throw new IllegalStateException("Transform " + transform.getClass().getName() + " produced " + numResults 
+					+ " results from " + items.size() + " items; transforming a whole chunk requires a transform which "
+					+ "produces one output per input");
+		}
+		
+		for(Object transformedObj : transformedObjs[0]) {
+			ComplexDataObject result = (ComplexDataObject)transformedObj;
+			if(validate) {
+				validate(result);
+			}
+			results.add(sink(result));
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Gets the Transform to use, borrowing it from our pool if we have one and recording any time spent waiting
+	 */
+	private Transform acquireTransform() throws InterruptedException {
+		TransformPool transformPool = this.transformPool;
+		if(transformPool == null) {
+			if(transformer == null) {
+				throw new IllegalStateException("C24TransformItemProcessor requires either a transformer or a transformPool");
+			}
+			return transformer;
+		}
+		
+		BatchMetrics.Timer poolWaitTimer = this.poolWaitTimer;
+		long start = poolWaitTimer != null? System.nanoTime() : 0;
+		Transform transform = transformPool.borrow();
+		if(poolWaitTimer != null) {
+			poolWaitTimer.record(System.nanoTime() - start);
+		}
+		return transform;
+	}
+	
+	/**
+	 * Returns a Transform obtained from acquireTransform to our pool, if it came from it
+	 */
+	private void releaseTransform(Transform transform) {
+		TransformPool transformPool = this.transformPool;
+		if(transformPool != null) {
+			transformPool.release(transform);
+		}
+	}
+	
+	/**
+	 * Validates a transformed object, recording the time taken if we have metrics
+	 */
+	private void validate(ComplexDataObject result) throws C24ValidationException {
+		BatchMetrics.Timer validateTimer = this.validateTimer;
+		long start = validateTimer != null? System.nanoTime() : 0;
+        try {	
+			// A single failure is thrown as though we were validating by exception
+			List<ValidationEvent> failures = validationEngine.validate(result, failfast);
+			if(!failures.isEmpty()) {
+				throw new C24CompoundValidationException(result, failures);
+			}
+		} catch(ValidationException vEx) {
+			throw new C24ValidationException("Failed to validate message: " + vEx.getLocalizedMessage(), result, vEx);
+		} finally {
+			if(validateTimer != null) {
+				validateTimer.record(System.nanoTime() - start);
+			}
+		}
+	}
+	
+	/**
+	 * Converts a transformed object to our target class, if we have one
+	 */
+	private Object sink(ComplexDataObject result) throws IOException {
+		Class<?> targetClass = this.targetClass;
+		if(targetClass == null) {
 			return result;
 		}
+		JavaClassSink javaSink = javaSinks.poll();
+		if(javaSink == null) {
+			javaSink = new JavaClassSink();
+			javaSink.setRootClass(targetClass);
+		}
+		try {
+			return javaSink.convertObject(result);
+		} finally {
+			javaSinks.add(javaSink);
+		}
 	}
 
 	/**
@@ -166,14 +299,33 @@ public class C24TransformItemProcessor implements ItemProcessor<ComplexDataObjec
 	}
 
 	/**
-	 * Set the C24 IO transformer that this ItemProcessor will use
+	 * Set the C24 IO transformer that this ItemProcessor will use. The transformer is shared by every thread calling
+	 * this processor; set a transformPool instead if chunks are processed concurrently.
 	 * 
 	 * @param transformer The C24 IO transformer to use
 	 */
-	@Required
 	public void setTransformer(Transform transformer) {
 		this.transformer = transformer;
 	}
+	
+	/**
+	 * Get the pool this ItemProcessor borrows transforms from
+	 * 
+	 * @return The TransformPool, null if we use a single transformer
+	 */
+	public TransformPool getTransformPool() {
+		return transformPool;
+	}
+	
+	/**
+	 * Set a pool to borrow transforms from, so that concurrent threads never share a Transform. 
+	 * If set, any transformer is ignored.
+	 * 
+	 * @param transformPool The TransformPool to use
+	 */
+	public void setTransformPool(TransformPool transformPool) {
+		this.transformPool = transformPool;
+	}
 
 	/**
 	 * Whether or not this transformer validates the CDOs resulting from the transformation
@@ -181,7 +333,7 @@ public class C24TransformItemProcessor implements ItemProcessor<ComplexDataObjec
 	 * @return True if if validates generated objects
 	 */
 	public boolean isValidating() {
-		return validator != null;
+		return validate;
 	}
 
 	/**
@@ -190,7 +342,52 @@ public class C24TransformItemProcessor implements ItemProcessor<ComplexDataObjec
 	 * @param validate 
 	 */
 	public void setValidation(boolean validate) {
-		validator = validate? new ThreadLocal<ValidationManager>() : null;
+		this.validate = validate;
+	}
+	
+	/**
+	 * Gets the ValidationEngine this processor validates with
+	 * 
+	 * @return The ValidationEngine
+	 */
+	public ValidationEngine getValidationEngine() {
+		return validationEngine;
+	}
+	
+	/**
+	 * Sets the ValidationEngine to validate with, for example one shared with other components.
+	 * By default each processor has its own.
+	 * 
+	 * @param validationEngine The ValidationEngine to use
+	 */
+	public void setValidationEngine(ValidationEngine validationEngine) {
+		this.validationEngine = validationEngine;
+	}
+	
+	/**
+	 * Gets the BatchMetrics this processor records its performance to
+	 * 
+	 * @return The BatchMetrics, null if none has been set
+	 */
+	public BatchMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sets the BatchMetrics to record the time spent transforming, validating and waiting for a pooled Transform to
+	 * 
+	 * @param metrics The BatchMetrics to use, null to stop recording
+	 */
+	public void setMetrics(BatchMetrics metrics) {
+		this.metrics = metrics;
+		if(metrics == null) {
+			transformTimer = validateTimer = poolWaitTimer = null;
+		} else {
+			String component = ClassUtils.getShortName(C24TransformItemProcessor.class);
+			transformTimer = metrics.timer(BatchMetrics.PROCESSOR_TRANSFORM, component);
+			validateTimer = metrics.timer(BatchMetrics.PROCESSOR_VALIDATE, component);
+			poolWaitTimer = metrics.timer(BatchMetrics.PROCESSOR_TRANSFORM_POOL_WAIT, component);
+		}
 	}
 	
 	/**
@@ -198,20 +395,20 @@ public class C24TransformItemProcessor implements ItemProcessor<ComplexDataObjec
 	 */
 	@AfterStep
 	public void cleanup() {
-		// Release any validation managers we're holding; no guarantee the same thread pool will be used next time
-		if(validator != null) {
-			validator = new ThreadLocal<ValidationManager>();
-		}
+		// Release any validation managers we're holding
+		validationEngine.clear();
+		// And any idle sinks
+		javaSinks.clear();
 	}
 	
 	
 	/**
-	 * Returns the sink being used if any
+	 * Returns the Java Bean class transformed CDOs are converted to, if any
 	 * 
-	 * @return The current JavaClassSink
+	 * @return The target class, null if ComplexDataObjects are returned
 	 */
 	public Class<?> getTargetClass() {
-		return javaSink != null? javaSink.getRootClass() : null;
+		return targetClass;
 	}
 
 	/**
@@ -220,12 +417,9 @@ public class C24TransformItemProcessor implements ItemProcessor<ComplexDataObjec
 	 * @param targetClass The Java Bean class to sink to, or CDO if null
 	 */
 	public void setTargetClass(Class<?> targetClass) {
-		if(targetClass != null) {
-			javaSink = new JavaClassSink();
-			javaSink.setRootClass(targetClass);
-		} else {
-			javaSink = null;
-		}
+		this.targetClass = targetClass;
+		// Any sinks we have are for the previous class
+		javaSinks.clear();
 	}
 
 	/**
@@ -15,92 +15,225 @@
  */
 package biz.c24.io.spring.batch.processor;
 
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemStream;
 import org.springframework.batch.item.ItemStreamException;
+import org.springframework.util.ClassUtils;
 
 import biz.c24.io.api.data.ComplexDataObject;
 import biz.c24.io.api.data.ValidationEvent;
 import biz.c24.io.api.data.ValidationException;
-import biz.c24.io.api.data.ValidationListener;
-import biz.c24.io.api.data.ValidationManager;
 import biz.c24.io.spring.batch.C24CompoundValidationException;
+import biz.c24.io.spring.batch.metrics.BatchMetrics;
 import biz.c24.io.spring.batch.reader.C24ValidationException;
+import biz.c24.io.spring.validation.ValidationEngine;
+import biz.c24.io.spring.validation.ValidationResultCache;
 
 /**
  * An ItemProcessor that validates a ComplexDataObject.
  * While no changes are made to the ComplexDataObject, it does allow an ItemProcessorListener to be 
  * wired in to catch any ComplexDataObjects which fail validation.
  * 
+ * If a ValidationResultCache is set, items identical to one which recently passed validation aren't validated again.
+ * Items which fail are always validated, so that the failures reported describe them.
+ * 
+ * If a BatchMetrics is set, the time spent validating each item is recorded, together with the cache's hits and
+ * misses if there is one.
+ * 
  * @author AndrewElmore
  *
  */
 public class C24ValidatingItemProcessor implements ItemProcessor<ComplexDataObject, ComplexDataObject>, ItemStream {
 	
-	private ThreadLocal<ValidationManager> validators = null;
+	private ValidationEngine validationEngine = new ValidationEngine();
+	
+	/**
+	 * Optional cache of items which have passed validation
+	 */
+	private ValidationResultCache validationCache = null;
 	
 	/**
 	 * Whether or not to abort on the first failure
 	 */
 	private boolean failfast = true;
 	
+	/**
+	 * The BatchMetrics we record our performance to, if any
+	 */
+	private BatchMetrics metrics = null;
+	
+	/**
+	 * Records the time spent validating, null unless a BatchMetrics has been set
+	 */
+	private BatchMetrics.Timer validateTimer = null;
+	
+	/**
+	 * Count our cache's hits and misses, null unless both a cache and a BatchMetrics have been set
+	 */
+	private BatchMetrics.Counter cacheHitCounter = null;
+	private BatchMetrics.Counter cacheMissCounter = null;
+	
+	/**
+	 * The cache's hit and miss counts already added to our counters
+	 */
+	private final AtomicLong countedHits = new AtomicLong();
+	private final AtomicLong countedMisses = new AtomicLong();
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.springframework.batch.item.ItemProcessor#process(java.lang.Object)
 	 */
 	@Override
 	public ComplexDataObject process(ComplexDataObject item) throws Exception {
-		ValidationManager mgr = validators.get();
-		if(mgr == null) {
-			mgr = new ValidationManager();
-			validators.set(mgr);
-		}
+		BatchMetrics.Timer validateTimer = this.validateTimer;
+		long start = validateTimer != null? System.nanoTime() : 0;
 		try {
-			if(failfast) {
-				mgr.validateByException(item);
-			} else {
-				// Capture all failures
-				final Collection<ValidationEvent> events = new LinkedList<ValidationEvent>();
-				
-				ValidationListener listener = new ValidationListener() {
-		            public void validationPassed(ValidationEvent ve) {
-		            }
-	
-		            public void validationFailed(ValidationEvent ve) {
-		                events.add(ve);
-		            }
-		        };
-		        
-		        mgr.addValidationListener(listener);
-		        
-		        try {
-			        if(!mgr.validateByEvents(item)) {
-			        	if(events.size() == 1) {
-			        		// Treat it as though we were validating by exception
-			        		mgr.setEventBased(false);
-			        		mgr.fireValidationEvent(events.iterator().next());
-			        	} else {
-			        		throw new C24CompoundValidationException(item, events);
-			        	}
-			        } 
-		        } finally {
-		        	mgr.removeValidationListener(listener);
-		        }
+			// A single failure is thrown as though we were validating by exception
+			List<ValidationEvent> failures = validationEngine.validate(item, failfast, validationCache);
+			if(!failures.isEmpty()) {
+				throw new C24CompoundValidationException(item, failures);
 			}
 		} catch(ValidationException vEx) {
 			throw new C24ValidationException("Failed to validate message: " + vEx.getLocalizedMessage(), item, vEx);
+		} finally {
+			if(validateTimer != null) {
+				validateTimer.record(System.nanoTime() - start);
+			}
+			countCacheLookups();
 		}
 		return item;
 	}
+	
+	/**
+	 * Do we abort on first failure or fully validate the object
+	 * @return True iff this processor will abort on first failure
+	 */
+	public boolean isFailfast() {
+		return failfast;
+	}
+
+	/**
+	 * Controls whether this processor aborts on first failure or fully validates the object
+	 * @param failfast
+	 */
+	public void setFailfast(boolean failfast) {
+		this.failfast = failfast;
+	}
+	
+	/**
+	 * Gets the ValidationEngine this processor validates with
+	 * 
+	 * @return The ValidationEngine
+	 */
+	public ValidationEngine getValidationEngine() {
+		return validationEngine;
+	}
+	
+	/**
+	 * Sets the ValidationEngine to validate with, for example one shared with other components.
+	 * By default each processor has its own.
+	 * 
+	 * @param validationEngine The ValidationEngine to use
+	 */
+	public void setValidationEngine(ValidationEngine validationEngine) {
+		this.validationEngine = validationEngine;
+	}
+	
+	/**
+	 * Gets the cache of passed validations this processor consults
+	 * 
+	 * @return The ValidationResultCache, null if every item is validated
+	 */
+	public ValidationResultCache getValidationCache() {
+		return validationCache;
+	}
+	
+	/**
+	 * Sets a cache of passed validations so that items identical to one recently found valid aren't validated again.
+	 * 
+	 * @param validationCache The ValidationResultCache to use, null to validate every item
+	 */
+	public void setValidationCache(ValidationResultCache validationCache) {
+		this.validationCache = validationCache;
+		createCacheCounters();
+	}
+	
+	/**
+	 * Gets the BatchMetrics this processor records its performance to
+	 * 
+	 * @return The BatchMetrics, null if none has been set
+	 */
+	public BatchMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sets the BatchMetrics to record the time spent validating to
+	 * 
+	 * @param metrics The BatchMetrics to use, null to stop recording
+	 */
+	public void setMetrics(BatchMetrics metrics) {
+		this.metrics = metrics;
+		validateTimer = metrics != null? metrics.timer(BatchMetrics.PROCESSOR_VALIDATE, ClassUtils.getShortName(C24ValidatingItemProcessor.class)) : null;
+		createCacheCounters();
+	}
+	
+	/**
+	 * Creates the counters of our cache's hits and misses, if we have both a cache and a BatchMetrics
+	 */
+	private void createCacheCounters() {
+		BatchMetrics metrics = this.metrics;
+		ValidationResultCache cache = validationCache;
+		if(metrics == null || cache == null) {
+			cacheHitCounter = null;
+			cacheMissCounter = null;
+			return;
+		}
+		String component = ClassUtils.getShortName(C24ValidatingItemProcessor.class);
+		// Only count lookups made from now on
+		countedHits.set(cache.getHitCount());
+		countedMisses.set(cache.getMissCount());
+		cacheHitCounter = metrics.counter(BatchMetrics.PROCESSOR_VALIDATION_CACHE_HITS, component);
+		cacheMissCounter = metrics.counter(BatchMetrics.PROCESSOR_VALIDATION_CACHE_MISSES, component);
+	}
+	
+	/**
+	 * Adds the lookups our cache has answered since we last counted them to our counters
+	 */
+	private void countCacheLookups() {
+		BatchMetrics.Counter cacheHitCounter = this.cacheHitCounter;
+		BatchMetrics.Counter cacheMissCounter = this.cacheMissCounter;
+		ValidationResultCache cache = validationCache;
+		if(cacheHitCounter != null && cacheMissCounter != null && cache != null) {
+			count(cacheHitCounter, countedHits, cache.getHitCount());
+			count(cacheMissCounter, countedMisses, cache.getMissCount());
+		}
+	}
+	
+	/**
+	 * Increments counter by the amount total has grown since it was last counted. Concurrent callers each count a
+	 * distinct part of the growth, so none is counted twice.
+	 */
+	private static void count(BatchMetrics.Counter counter, AtomicLong counted, long total) {
+		while(true) {
+			long last = counted.get();
+			if(total <= last) {
+				return;
+			}
+			if(counted.compareAndSet(last, total)) {
+				counter.increment(total - last);
+				return;
+			}
+		}
+	}
 
 	@Override
 	public void open(ExecutionContext executionContext)
 			throws ItemStreamException {
-		validators = new ThreadLocal<ValidationManager>();
 		
 	}
 
@@ -113,7 +246,8 @@ public class C24ValidatingItemProcessor implements ItemProcessor<ComplexDataObje
 
 	@Override
 	public void close() throws ItemStreamException {
-		validators = null;
+		// Release the validation managers we're holding
+		validationEngine.clear();
 		
 	}
 	
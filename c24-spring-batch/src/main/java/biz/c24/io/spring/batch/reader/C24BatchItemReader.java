@@ -1,18 +1,28 @@
 package biz.c24.io.spring.batch.reader;
 
+import java.io.FilterReader;
 import java.io.IOException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.io.Reader;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.annotation.AfterStep;
 import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.NonTransientResourceException;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.UnexpectedInputException;
+import org.springframework.batch.item.util.ExecutionContextUserSupport;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
 import biz.c24.io.api.ParserException;
 import biz.c24.io.api.data.ComplexDataObject;
@@ -20,14 +30,59 @@ import biz.c24.io.api.data.ComplexDataType;
 import biz.c24.io.api.data.DataType;
 import biz.c24.io.api.data.Element;
 import biz.c24.io.api.data.ValidationException;
-import biz.c24.io.api.data.ValidationManager;
 import biz.c24.io.api.presentation.ParseListener;
 import biz.c24.io.api.presentation.Source;
+import biz.c24.io.spring.batch.metrics.BatchMetrics;
 import biz.c24.io.spring.batch.reader.source.SplittingReaderSource;
 import biz.c24.io.spring.batch.reader.source.SplittingReader;
+import biz.c24.io.spring.batch.util.WeightBoundedQueue;
 import biz.c24.io.spring.core.C24Model;
+import biz.c24.io.spring.validation.ValidationEngine;
 
-public class C24BatchItemReader implements ItemReader<ComplexDataObject> {
+/**
+ * ItemReader which uses iO's batch parsing to stream ComplexDataObjects out of a single document.
+ * 
+ * Parsing takes place on parserThreads background threads. A single document can only be parsed by one thread, so 
+ * additional threads only help where the source has several readers (for example a zip file with several entries);
+ * in that case each thread parses its own reader and objects from different readers are interleaved. Parsed objects
+ * are handed to the reading threads through a queue bounded by the estimated size of the objects in it 
+ * (maxQueuedBytes) rather than their number, so that memory use remains predictable however large the objects are.
+ * An object's size is estimated as bytesPerChar times the number of characters parsed to create it.
+ * 
+ * As an ItemStream, the reader records how many objects it has read in the step's ExecutionContext. As the document
+ * has to be parsed from its start, on restart the objects already processed are parsed again but discarded rather 
+ * than being returned. As the order of objects is not repeatable when more than one parser thread is used, state is
+ * not saved in that case.
+ * 
+ * If a BatchMetrics is set, the reader records the characters consumed, the objects parsed, the time spent parsing 
+ * and validating each of them and the estimated size of the objects queued.
+ */
+public class C24BatchItemReader implements ItemReader<ComplexDataObject>, ItemStream {
+	
+	private static Logger LOG = LoggerFactory.getLogger(C24BatchItemReader.class);
+	
+	/**
+	 * ExecutionContext key used to record our progress
+	 */
+	private static final String READ_COUNT_KEY = "read.count";
+	
+	/**
+	 * The default limit on the estimated size of the objects waiting to be read
+	 */
+	public static final long DEFAULT_MAX_QUEUED_BYTES = 64L * 1024 * 1024;
+	
+	/**
+	 * The default estimate of the memory a parsed object uses per character parsed. Each field's text is held as a
+	 * String at 2 bytes a character, plus around 40 bytes for the String itself and the object and collection
+	 * overhead of the ComplexDataObject holding it; for typical models this comes to several times the text's size.
+	 */
+	public static final double DEFAULT_BYTES_PER_CHAR = 8;
+	
+	/**
+	 * The smallest size we'll estimate for a parsed object. As the parser reads ahead, several small objects can appear
+	 * to have been parsed from no data at all.
+	 */
+	private static final long MIN_OBJECT_BYTES = 1024;
 	
 	private Element element;
 	/**
@@ -37,14 +92,71 @@ public class C24BatchItemReader implements ItemReader<ComplexDataObject> {
 
 	private boolean validate = false;
 	
-	private volatile Thread parsingThread = null;
+	/**
+	 * How many threads should parse the source?
+	 */
+	private int parserThreads = 1;
+	
+	/**
+	 * The limit on the estimated size, in bytes, of the parsed objects waiting to be read
+	 */
+	private long maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+	
+	/**
+	 * The estimated memory used by a parsed object per character parsed to create it
+	 */
+	private double bytesPerChar = DEFAULT_BYTES_PER_CHAR;
+	
+	/**
+	 * The number of parsing threads still running
+	 */
+	private final AtomicInteger activeParsers = new AtomicInteger(0);
+	
 	/**
 	 * Store this separately to make sure we report a job abort once only
 	 */
 	private volatile Throwable abortJobException = null;
-	private BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(128);
 	
-	private ThreadLocal<ValidationManager> validator = new ThreadLocal<ValidationManager>();
+	/**
+	 * Parsed objects (and parse failures) waiting to be read. Closed once all parsing threads have finished.
+	 */
+	private volatile WeightBoundedQueue<Object> queue = null;
+	
+	private ValidationEngine validationEngine = new ValidationEngine();
+	
+	/**
+	 * Qualifies our ExecutionContext keys with our name
+	 */
+	private final ExecutionContextUserSupport executionContextUserSupport = new ExecutionContextUserSupport(ClassUtils.getShortName(C24BatchItemReader.class));
+	
+	/**
+	 * Should we record our progress in the ExecutionContext so that we can be restarted?
+	 */
+	private boolean saveState = true;
+	
+	/**
+	 * The number of objects we have returned
+	 */
+	private final AtomicLong readCount = new AtomicLong(0);
+	
+	/**
+	 * The first thread to call read. If another thread calls read, our read count is no longer a reliable restart point.
+	 */
+	private final AtomicReference<Thread> readingThread = new AtomicReference<Thread>();
+	private volatile boolean concurrentReads = false;
+	
+	/**
+	 * The BatchMetrics we record our performance to, if any
+	 */
+	private BatchMetrics metrics = null;
+	
+	/**
+	 * Meters we record to, all null unless a BatchMetrics has been set
+	 */
+	private BatchMetrics.Counter bytesCounter = null;
+	private BatchMetrics.Counter elementsCounter = null;
+	private BatchMetrics.Timer parseTimer = null;
+	private BatchMetrics.Timer validateTimer = null;
 	
 	
 	public void setModel(C24Model model) {
@@ -62,30 +174,148 @@ public class C24BatchItemReader implements ItemReader<ComplexDataObject> {
 	 */
 	@BeforeStep
 	public void setup(StepExecution stepExecution) {		
+		readCount.set(0);
+		readingThread.set(null);
+		concurrentReads = false;
 		source.initialise(stepExecution);
+		if(saveState && parserThreads > 1) {
+			LOG.warn("{} parser threads are in use; the position in {} will not be saved for restart", parserThreads, source.getName());
+		}
 		startParsing();
 	}
 	
-	private void queueObject(ComplexDataObject obj) throws TimeoutException, InterruptedException {
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemStream#open(org.springframework.batch.item.ExecutionContext)
+	 */
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		String readCountKey = executionContextUserSupport.getKey(READ_COUNT_KEY);
+		if(!saveState || !executionContext.containsKey(readCountKey)) {
+			return;
+		}
+		
+		long count = executionContext.getLong(readCountKey);
+		LOG.info("Restarting {} by skipping {} objects", source.getName(), count);
+		try {
+			for(long i = 0; i < count; i++) {
+				if(nextObject() == null) {
+					throw new ItemStreamException("Failed to restart " + source.getName() + "; only " + i + " of " + count + " objects remain");
+				}
+			}
+		} catch(ParseException ex) {
+			throw new ItemStreamException("Failed to restart " + source.getName(), ex);
+		}
+		readCount.set(count);
+	}
 
-		if(!queue.offer(obj, 10, TimeUnit.SECONDS)) {
-			// TODO: Come up with a better way to propagating this up. The problem is we can't throw a checked type from the ParseListener callback
-			TimeoutException ex = new TimeoutException("Timed out waiting for parsed elements to be processed. Aborting.");
-			throw ex;
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemStream#update(org.springframework.batch.item.ExecutionContext)
+	 */
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		if(!saveState) {
+			return;
+		} else if(concurrentReads || parserThreads > 1) {
+			// Objects may have been read that have not yet been processed, so we can't record a safe restart point
+			executionContext.remove(executionContextUserSupport.getKey(READ_COUNT_KEY));
+		} else {
+			executionContext.putLong(executionContextUserSupport.getKey(READ_COUNT_KEY), readCount.get());
 		}
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemStream#close()
+	 */
+	@Override
+	public void close() throws ItemStreamException {
+		// Our resources are released by cleanup
+	}
 	
-	private void queueObject(ParserException obj) throws TimeoutException, InterruptedException {
+	/**
+	 * Query whether this reader records its progress in the ExecutionContext
+	 * 
+	 * @return True iff progress will be saved so that a restarted step can resume from it
+	 */
+	public boolean isSaveState() {
+		return saveState;
+	}
 
-		if(!queue.offer(obj, 10, TimeUnit.SECONDS)) {
-			// TODO: Come up with a better way to propagating this up. The problem is we can't throw a checked type from the ParseListener callback
-			TimeoutException ex = new TimeoutException("Timed out waiting for parsed elements to be processed. Aborting.");
-			throw ex;
+	/**
+	 * Set whether this reader records its progress in the ExecutionContext so that a restarted step can skip the
+	 * objects already processed. Should be set to false where the step is multi-threaded.
+	 * 
+	 * @param saveState Whether or not to record our progress
+	 */
+	public void setSaveState(boolean saveState) {
+		this.saveState = saveState;
+	}
+	
+	/**
+	 * Sets the name used to qualify the keys under which we record our progress in the ExecutionContext.
+	 * Only needs to be set if more than one C24BatchItemReader is used in the same step.
+	 * 
+	 * @param name The name to qualify our keys with
+	 */
+	public void setName(String name) {
+		executionContextUserSupport.setName(name);
+	}
+	
+	/**
+	 * Gets the BatchMetrics this reader records its performance to
+	 * 
+	 * @return The BatchMetrics, null if none has been set
+	 */
+	public BatchMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sets the BatchMetrics to record the performance of this reader to. As iO parses directly from the source, the
+	 * parse time of each object includes the time spent reading the data it was parsed from.
+	 * 
+	 * @param metrics The BatchMetrics to use, null to stop recording
+	 */
+	public void setMetrics(BatchMetrics metrics) {
+		this.metrics = metrics;
+		if(metrics == null) {
+			bytesCounter = elementsCounter = null;
+			parseTimer = validateTimer = null;
+			return;
+		}
+		String component = ClassUtils.getShortName(C24BatchItemReader.class);
+		bytesCounter = metrics.counter(BatchMetrics.READER_BYTES, component);
+		elementsCounter = metrics.counter(BatchMetrics.READER_ELEMENTS, component);
+		parseTimer = metrics.timer(BatchMetrics.READER_PARSE, component);
+		validateTimer = metrics.timer(BatchMetrics.READER_VALIDATE, component);
+		metrics.gauge(BatchMetrics.READER_QUEUE_DEPTH, component, new BatchMetrics.Gauge() {
+			@Override
+			public double value() {
+				return getQueuedBytes();
+			}
+		});
+	}
+	
+	/**
+	 * Hands obj to the reading threads, waiting until there is room for it in the queue
+	 * 
+	 * @param obj The parsed object or parse failure
+	 * @param estimatedBytes An estimate of the memory used by obj
+	 * @throws InterruptedException If the queue has been closed (because we're being cleaned up) or we're interrupted
+	 */
+	private void queueObject(Object obj, long estimatedBytes) throws InterruptedException {
+		if(!queue.put(obj, estimatedBytes)) {
+			throw new InterruptedException("Reader closed while parsing " + source.getName());
 		}
 	}
 	
 	private void setParsingComplete() {
-		parsingThread = null;
+		if(activeParsers.decrementAndGet() == 0) {
+			// Let the reading threads know that no more objects are coming
+			queue.close();
+		}
 	}
 	
 	/**
@@ -93,12 +323,31 @@ public class C24BatchItemReader implements ItemReader<ComplexDataObject> {
 	 */
 	@AfterStep
 	public void cleanup() {
+		stopParsing();
 		source.close();
+		validationEngine.clear();
 	}
 	
 	private void startParsing() {
-		parsingThread = new Thread(new IoParser());
-		parsingThread.start();
+		stopParsing();
+		abortJobException = null;
+		queue = new WeightBoundedQueue<Object>(maxQueuedBytes);
+		activeParsers.set(parserThreads);
+		for(int i = 0; i < parserThreads; i++) {
+			Thread thread = new Thread(new IoParser(), "C24BatchItemReader-parser-" + (i + 1));
+			thread.start();
+		}
+	}
+	
+	/**
+	 * Releases any parsed objects not yet read and causes any parsing threads to stop
+	 */
+	private void stopParsing() {
+		WeightBoundedQueue<Object> current = queue;
+		if(current != null) {
+			current.close();
+			current.clear();
+		}
 	}
 	
 	private Element getElement() {
@@ -113,33 +362,137 @@ public class C24BatchItemReader implements ItemReader<ComplexDataObject> {
 		this.source = source;
 	}
 	
-	private boolean stillParsing() {
-		return parsingThread != null;
+	/**
+	 * How many threads parse the source?
+	 * 
+	 * @return The number of parsing threads
+	 */
+	public int getParserThreads() {
+		return parserThreads;
+	}
+
+	/**
+	 * Sets the number of threads used to parse the source. As a single reader can only be parsed by one thread, 
+	 * values greater than 1 only help where the source has several readers. Defaults to 1.
+	 * 
+	 * @param parserThreads The number of parsing threads
+	 */
+	public void setParserThreads(int parserThreads) {
+		this.parserThreads = parserThreads;
+	}
+
+	/**
+	 * The limit on the estimated size of the parsed objects waiting to be read
+	 * 
+	 * @return The limit in bytes
+	 */
+	public long getMaxQueuedBytes() {
+		return maxQueuedBytes;
+	}
+
+	/**
+	 * Sets the limit on the estimated size of the parsed objects waiting to be read. The parsing threads wait once it
+	 * is reached, although a single object larger than the limit will still be passed on. An object's size is 
+	 * estimated from the amount of data the parser read to create it (see setBytesPerChar). Defaults to 
+	 * DEFAULT_MAX_QUEUED_BYTES.
+	 * 
+	 * @param maxQueuedBytes The limit in bytes
+	 */
+	public void setMaxQueuedBytes(long maxQueuedBytes) {
+		this.maxQueuedBytes = maxQueuedBytes;
+	}
+	
+	/**
+	 * The estimated memory used by a parsed object per character parsed to create it
+	 * 
+	 * @return The estimate in bytes
+	 */
+	public double getBytesPerChar() {
+		return bytesPerChar;
+	}
+
+	/**
+	 * Sets the estimated memory used by a parsed object per character parsed to create it, from which the size of 
+	 * the queued objects is estimated. The best value depends on the model; it can be measured by comparing the heap 
+	 * retained by a list of parsed objects with the size of the data they were parsed from. Defaults to 
+	 * DEFAULT_BYTES_PER_CHAR.
+	 * 
+	 * @param bytesPerChar The estimate in bytes, which must be positive
+	 */
+	public void setBytesPerChar(double bytesPerChar) {
+		Assert.isTrue(bytesPerChar > 0, "bytesPerChar must be positive");
+		this.bytesPerChar = bytesPerChar;
+	}
+	
+	/**
+	 * The estimated size of the parsed objects currently waiting to be read
+	 * 
+	 * @return The estimated size in bytes
+	 */
+	public long getQueuedBytes() {
+		WeightBoundedQueue<Object> current = queue;
+		return current != null? current.getWeight() : 0;
 	}
 	
 	@Override
 	public ComplexDataObject read() throws Exception, UnexpectedInputException,
 			ParseException, NonTransientResourceException {
 		
-		ComplexDataObject cdo = null;
+		Thread current = Thread.currentThread();
+		if(!concurrentReads && !readingThread.compareAndSet(null, current) && readingThread.get() != current) {
+			if(saveState) {
+				LOG.warn("Multiple threads are reading from {}; its position will not be saved for restart", source.getName());
+			}
+			concurrentReads = true;
+		}
+		
+		ComplexDataObject cdo = nextObject();
 		
-		while(cdo == null && (!queue.isEmpty() || stillParsing())) {
+		if(cdo != null) {
+			readCount.incrementAndGet();
+		}
+		
+		if(cdo != null && validate) {
+			BatchMetrics.Timer validateTimer = this.validateTimer;
+			long start = validateTimer != null? System.nanoTime() : 0;
 			try {
-				Object obj = queue.poll(1, TimeUnit.SECONDS);
-				if(obj != null) {
-					if(obj instanceof ParserException) {
-						throw new ParseException("Failed to parse file", (Throwable)obj);
-					} else if(obj instanceof ComplexDataObject) {
-						cdo = (ComplexDataObject)obj;
-					} else {
-						throw new ParseException("Unexpected type of object parsed: " + obj.getClass().getName());
-					}
+				validationEngine.validateByException(cdo);
+			} catch(ValidationException vEx) {
+				throw new C24ValidationException("Failed to validate message: " + vEx.getLocalizedMessage() + " [" + source.getName() + "]", cdo, vEx);
+			} finally {
+				if(validateTimer != null) {
+					validateTimer.record(System.nanoTime() - start);
 				}
-			} catch(InterruptedException ioEx) {
-				throw new ParseException("Interrupted while parsing", ioEx);
 			}
 		}
 		
+		return cdo;
+	}
+	
+	/**
+	 * Takes the next object from the parsing thread, waiting for it if necessary
+	 * 
+	 * @return The next object, null if there are no more
+	 * @throws ParseException If the object could not be parsed
+	 */
+	private ComplexDataObject nextObject() throws ParseException {
+		
+		ComplexDataObject cdo = null;
+		
+		try {
+			// Blocks until an object is available or all the parsing threads have finished
+			Object obj = queue.take();
+			if(obj instanceof ParserException) {
+				throw new ParseException("Failed to parse file", (Throwable)obj);
+			} else if(obj instanceof ComplexDataObject) {
+				cdo = (ComplexDataObject)obj;
+			} else if(obj != null) {
+				throw new ParseException("Unexpected type of object parsed: " + obj.getClass().getName());
+			}
+		} catch(InterruptedException ioEx) {
+			throw new ParseException("Interrupted while parsing", ioEx);
+		}
+		
 		if(cdo == null && abortJobException != null) {
 			synchronized(this) {
 				if(abortJobException != null) {
@@ -149,17 +502,6 @@ public class C24BatchItemReader implements ItemReader<ComplexDataObject> {
 					throw rethrow;
 				}
 			}
-		} else if(cdo != null && validate) {
-			try {
-				ValidationManager mgr = validator.get();
-				if(mgr == null) {
-					mgr = new ValidationManager();
-					validator.set(mgr);
-				}
-				mgr.validateByException(cdo);
-			} catch(ValidationException vEx) {
-				throw new C24ValidationException("Failed to validate message: " + vEx.getLocalizedMessage() + " [" + source.getName() + "]", cdo, vEx);
-			}
 		}
 		
 		return cdo;
@@ -172,22 +514,102 @@ public class C24BatchItemReader implements ItemReader<ComplexDataObject> {
 	public void setValidate(boolean validate) {
 		this.validate = validate;
 	}
+	
+	/**
+	 * Gets the ValidationEngine this ItemReader validates with
+	 * 
+	 * @return The ValidationEngine
+	 */
+	public ValidationEngine getValidationEngine() {
+		return validationEngine;
+	}
+	
+	/**
+	 * Sets the ValidationEngine to validate with, for example one shared with other components.
+	 * By default each ItemReader has its own.
+	 * 
+	 * @param validationEngine The ValidationEngine to use
+	 */
+	public void setValidationEngine(ValidationEngine validationEngine) {
+		this.validationEngine = validationEngine;
+	}
 
+	/**
+	 * Counts the characters the parser reads so that we can estimate the size of the objects it creates
+	 */
+	private static class CountingReader extends FilterReader {
+		
+		private long count = 0;
+		
+		public CountingReader(Reader in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int c = super.read();
+			if(c >= 0) {
+				count++;
+			}
+			return c;
+		}
+		
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			int read = super.read(cbuf, off, len);
+			if(read > 0) {
+				count += read;
+			}
+			return read;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+		
+		public long getCount() {
+			return count;
+		}
+	}
+	
 	private class IoParser implements ParseListener, Runnable {
 		
+		/**
+		 * The reader we're currently parsing
+		 */
+		private SplittingReader splitter = null;
+		
+		private CountingReader counter = null;
+		
+		/**
+		 * How many characters had been read when the last object was parsed
+		 */
+		private long lastCount = 0;
+		
+		/**
+		 * When we finished handling the last object; the time since is the time taken to parse the next one
+		 */
+		private long lastParsed = 0;
+		
 		public void run() {
 			try {
 				Source iOSource = getElement().getModel().source();
 				iOSource.setParseListener(this);
 				
-				SplittingReader splitter = null;
-				
 				while(abortJobException == null) {
 					
 					try {
-						splitter = source.getReader();
-						if(splitter != null && !splitter.ready()) {
-							continue;
+						if(parserThreads > 1) {
+							// Each thread needs a reader of its own
+							splitter = source.getNextReader();
+						} else {
+							splitter = source.getReader();
+							if(splitter != null && !splitter.ready()) {
+								continue;
+							}
 						}
 					} catch (IOException ex) {
 						// Unhelpfully if the stream has been closed beneath our feet this is how we find out about it
@@ -198,16 +620,34 @@ public class C24BatchItemReader implements ItemReader<ComplexDataObject> {
 						break;
 					}
 					
-					iOSource.setReader(splitter.getReader());
+					counter = new CountingReader(splitter.getReader());
+					lastCount = 0;
+					lastParsed = System.nanoTime();
+					iOSource.setReader(counter);
 					iOSource.readObject(getElement());
 				}
 				
 			} catch(Throwable ex) {
-				abortJobException = ex;
+				if(!queue.isClosed()) {
+					abortJobException = ex;
+				}
 			} finally {
 				setParsingComplete();
 			}
 		}
+		
+		/**
+		 * Estimates the memory used by the object just parsed from the characters read since the previous one
+		 */
+		private long estimateBytes() {
+			long count = counter != null? counter.getCount() : 0;
+			long chars = count - lastCount;
+			lastCount = count;
+			if(bytesCounter != null) {
+				bytesCounter.increment(chars);
+			}
+			return Math.max(MIN_OBJECT_BYTES, (long)(chars * bytesPerChar));
+		}
 
 		@Override
 		public void onStartBatch(Element element) throws ParserException {
@@ -225,7 +665,13 @@ public class C24BatchItemReader implements ItemReader<ComplexDataObject> {
 		public Object onBatchEntryParsed(Object object) throws ParserException {
 			try {
 				if(object instanceof ComplexDataObject) {
-					queueObject((ComplexDataObject)object);
+					if(parseTimer != null) {
+						parseTimer.record(System.nanoTime() - lastParsed);
+						elementsCounter.increment(1);
+					}
+					queueObject(object, estimateBytes());
+					// Don't count the time spent waiting for room in the queue as parsing
+					lastParsed = System.nanoTime();
 					return null;
 				} else {
 					return object;
@@ -239,14 +685,12 @@ public class C24BatchItemReader implements ItemReader<ComplexDataObject> {
 		public void onBatchEntryFailed(Object object, ParserException failure)
 				throws ParserException {
 			try {
-				queueObject(failure);
+				queueObject(failure, estimateBytes());
 				// We can't read anything further from this reader
-				source.discard(source.getReader());
+				source.discard(splitter);
 			} catch(RuntimeException ex) {
 			    // Rewrap any thrown exceptions so our caller can behave appropriately
 				throw new ParserException(ex, ((ComplexDataObject)object).getName());
-			} catch (TimeoutException ex) {
-                throw new ParserException(ex, ((ComplexDataObject)object).getName());
             } catch (InterruptedException ex) {
                 throw new ParserException(ex, ((ComplexDataObject)object).getName());
             } catch (IOException ex) {
@@ -19,32 +19,45 @@ import biz.c24.io.api.data.ComplexDataObject;
 import biz.c24.io.api.data.Element;
 import biz.c24.io.api.data.ValidationEvent;
 import biz.c24.io.api.data.ValidationException;
-import biz.c24.io.api.data.ValidationListener;
-import biz.c24.io.api.data.ValidationManager;
 import biz.c24.io.api.presentation.Source;
 import biz.c24.io.api.presentation.TextualSource;
 import biz.c24.io.spring.batch.C24CompoundValidationException;
+import biz.c24.io.spring.batch.metrics.BatchMetrics;
+import biz.c24.io.spring.batch.reader.source.CharArraySequence;
+import biz.c24.io.spring.batch.reader.source.ElementIndex;
+import biz.c24.io.spring.batch.reader.source.IndexableSplittingReaderSource;
+import biz.c24.io.spring.batch.reader.source.LineMatcher;
+import biz.c24.io.spring.batch.reader.source.RestartableSplittingReaderSource;
 import biz.c24.io.spring.batch.reader.source.SplittingReaderSource;
 import biz.c24.io.spring.batch.reader.source.SplittingReader;
+import biz.c24.io.spring.batch.util.BoundedRingBuffer;
 import biz.c24.io.spring.core.C24Model;
 import biz.c24.io.spring.source.SourceFactory;
+import biz.c24.io.spring.validation.ValidationEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.annotation.AfterStep;
 import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.NonTransientResourceException;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.UnexpectedInputException;
+import org.springframework.batch.item.util.ExecutionContextUserSupport;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
 import javax.annotation.PostConstruct;
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 /**
@@ -59,9 +72,25 @@ import java.util.regex.Pattern;
  * 
  * In all cases the optional validation takes place in parallel if multiple threads are used.
  * 
+ * As an ItemStream, the reader records how far it has got in the step's ExecutionContext so that a restarted step
+ * can resume where the failed execution left off. Where an elementStartPattern is used and the source is a
+ * RestartableSplittingReaderSource, the source is repositioned directly; otherwise the elements already processed 
+ * are read and discarded. As the position is only meaningful when a single thread is reading, state is not 
+ * recorded once multiple threads have been seen calling read.
+ * 
+ * If indexed is set, the byte offset and length of each element split out of an IndexableSplittingReaderSource are 
+ * recorded and, once the source has been read to the end, saved in an ElementIndex alongside the file. Subsequent 
+ * executions against the unchanged file read each element directly via the index, so there is no splitting to 
+ * serialise the reading threads, a restart moves straight to the next unprocessed element and the number of elements 
+ * to be read is known up front.
+ * 
+ * If a BatchMetrics is set, the reader records the data consumed, the elements split, the time spent waiting for and 
+ * splitting the shared SplittingReader, parsing and validating, the depth of the pipeline's queue and an estimate of 
+ * how much of the source has been read.
+ * 
  * @author Andrew Elmore
  */
-public class C24ItemReader<Result> implements ItemReader<Result> {
+public class C24ItemReader<Result> implements ItemReader<Result>, ItemStream {
 	
 	private static Logger LOG = LoggerFactory.getLogger(C24ItemReader.class);
 	
@@ -90,6 +119,11 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	 */
 	private Pattern elementStartPattern = null;
 	
+	/**
+	 * Matcher compiled from elementStartPattern, specialised where the pattern is a simple literal
+	 */
+	private LineMatcher elementStartMatcher = null;
+	
 	/**
 	 * An optional pattern to use to identify the end of a message. If specified, the message must end with an
 	 * EOF or this pattern. Additional matches of the startPattern before presence of the stop pattern will
@@ -97,6 +131,11 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	 */
 	private Pattern elementStopPattern = null;
 	
+	/**
+	 * Matcher compiled from elementStopPattern, specialised where the pattern is a simple literal
+	 */
+	private LineMatcher elementStopMatcher = null;
+	
 	/**
 	 * The source from which we'll read the data
 	 */
@@ -106,7 +145,9 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	/**
 	 * Control whether or not we validate the parsed CDOs
 	 */
-	private ThreadLocal<ValidationManager> validator = null;
+	private boolean validate = false;
+	
+	private ValidationEngine validationEngine = new ValidationEngine();
 	
 	
 	/**
@@ -120,6 +161,149 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	 */
 	private ParseListener<Object, Result> parseListener = null;
 	
+	/**
+	 * Per-thread buffers used to accumulate elements as we split them out of the source
+	 */
+	private ThreadLocal<ElementBuffer> elementBuffer = new ThreadLocal<ElementBuffer>();
+	
+	/**
+	 * If an ElementBuffer grows beyond this many chars, we'll discard it rather than reusing it
+	 */
+	private static final int MAX_RETAINED_ELEMENT_BUFFER_SIZE = 1024 * 1024;
+	
+	/**
+	 * Default number of split elements that can be queued awaiting parsing in pipelined mode
+	 */
+	public static final int DEFAULT_PIPELINE_CAPACITY = 1024;
+	
+	/**
+	 * How long we'll wait for the splitter thread to finish when cleaning up
+	 */
+	private static final long SPLITTER_JOIN_TIMEOUT_MS = 10000;
+	
+	/**
+	 * If set, a single dedicated thread splits elements out of the source and queues them; callers of read only
+	 * have to dequeue and parse them rather than taking turns to split the shared reader
+	 */
+	private boolean pipelined = false;
+	
+	/**
+	 * The maximum number of split elements queued awaiting parsing in pipelined mode
+	 */
+	private int pipelineCapacity = DEFAULT_PIPELINE_CAPACITY;
+	
+	/**
+	 * Elements split out of the source by the splitter thread, awaiting parsing
+	 */
+	private volatile BoundedRingBuffer<ElementContext> elementQueue = null;
+	
+	/**
+	 * The thread splitting elements out of the source in pipelined mode
+	 */
+	private volatile Thread splitterThread = null;
+	
+	/**
+	 * Set if the splitter thread fails; rethrown to read callers once the queue has been drained
+	 */
+	private volatile RuntimeException splitterException = null;
+	
+	/**
+	 * Should we record, and subsequently read via, an index of the elements in the source?
+	 */
+	private boolean indexed = false;
+	
+	/**
+	 * The index of the source's file, if a current one existed when we were set up
+	 */
+	private volatile ElementIndex elementIndex = null;
+	
+	/**
+	 * Set if we're reading elements via elementIndex rather than splitting them out of the source
+	 */
+	private volatile boolean indexedReads = false;
+	
+	/**
+	 * When reading via the index, the next element to read and the element (exclusive) at which to stop
+	 */
+	private final AtomicLong nextIndexedElement = new AtomicLong(0);
+	private volatile long firstIndexedElement = 0;
+	private volatile long endIndexedElement = 0;
+	
+	/**
+	 * Per-thread cursors over elementIndex
+	 */
+	private ThreadLocal<ElementIndex.Cursor> indexCursor = new ThreadLocal<ElementIndex.Cursor>();
+	
+	/**
+	 * Records the elements we split out of the source if it has no index yet
+	 */
+	private volatile IndexRecorder indexRecorder = null;
+	
+	/**
+	 * ExecutionContext keys used to record our progress
+	 */
+	private static final String READ_COUNT_KEY = "read.count";
+	private static final String POSITION_KEY = "position";
+	private static final String READER_ID_KEY = "reader.id";
+	private static final String ELEMENT_COUNT_KEY = "element.count";
+	
+	/**
+	 * Qualifies our ExecutionContext keys with our name
+	 */
+	private final ExecutionContextUserSupport executionContextUserSupport = new ExecutionContextUserSupport(ClassUtils.getShortName(C24ItemReader.class));
+	
+	/**
+	 * Should we record our progress in the ExecutionContext so that we can be restarted?
+	 */
+	private boolean saveState = true;
+	
+	/**
+	 * The number of elements we have parsed
+	 */
+	private final AtomicLong readCount = new AtomicLong(0);
+	
+	/**
+	 * Where the last element we read ended, if known
+	 */
+	private volatile Checkpoint checkpoint = null;
+	
+	/**
+	 * The first thread to call read. If another thread calls read, our recorded position is no longer reliable.
+	 */
+	private final AtomicReference<Thread> readingThread = new AtomicReference<Thread>();
+	private volatile boolean concurrentReads = false;
+	
+	/**
+	 * Set while we discard previously processed elements on restart
+	 */
+	private volatile boolean restoring = false;
+	
+	/**
+	 * The most derived class declaring readLine(SplittingReader), so that readLineSequence can defer to a subclass 
+	 * which still overrides readLine rather than readLineSequence
+	 */
+	private final Class<?> readLineDeclarer = findReadLineDeclarer(getClass());
+	
+	/**
+	 * The BatchMetrics we record our performance to, if any
+	 */
+	private BatchMetrics metrics = null;
+	
+	/**
+	 * Meters we record to, all null unless a BatchMetrics has been set
+	 */
+	private BatchMetrics.Counter bytesCounter = null;
+	private BatchMetrics.Counter elementsCounter = null;
+	private BatchMetrics.Timer lockWaitTimer = null;
+	private BatchMetrics.Timer splitTimer = null;
+	private BatchMetrics.Timer parseTimer = null;
+	private BatchMetrics.Timer validateTimer = null;
+	
+	/**
+	 * The furthest position in the source that we know we have read to, used to estimate our progress
+	 */
+	private volatile long furthestPosition = -1;
+	
 	
 	public C24ItemReader() {
 
@@ -135,6 +319,14 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 		if(elementStopPattern != null) {
 			Assert.notNull(elementStartPattern, "elementStopPattern can only be used if an elementStartPattern is also set");
 		}
+		if(pipelined) {
+			Assert.notNull(elementStartPattern, "pipelined can only be used if an elementStartPattern is also set");
+			Assert.isTrue(pipelineCapacity > 0, "pipelineCapacity must be positive");
+		}
+		if(indexed) {
+			Assert.notNull(elementStartPattern, "indexed can only be used if an elementStartPattern is also set");
+			Assert.isTrue(source instanceof IndexableSplittingReaderSource, "indexed can only be used with an IndexableSplittingReaderSource such as the MappedFileSource");
+		}
 	}
 	
 	/**
@@ -193,6 +385,7 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	 */
 	public void setElementStartPattern(String elementStartRegEx) {
 		this.elementStartPattern = Pattern.compile(elementStartRegEx, Pattern.DOTALL);
+		this.elementStartMatcher = LineMatcher.compile(elementStartPattern);
 	}
 	
 	/**
@@ -212,6 +405,7 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	 */
 	public void setElementStopPattern(String elementStopRegEx) {
 		this.elementStopPattern = Pattern.compile(elementStopRegEx, Pattern.DOTALL);
+		this.elementStopMatcher = LineMatcher.compile(elementStopPattern);
 	}
 
 	/**
@@ -221,7 +415,7 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	 * @param validate Whether or not to validate parsed CDOs
 	 */
 	public void setValidate(boolean validate) {
-		validator = validate? new ThreadLocal<ValidationManager>() : null;
+		this.validate = validate;
 	}
 	
 	/**
@@ -230,7 +424,7 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	 * @return True iff this ItemReader will automatically validate read CDOs
 	 */
 	public boolean isValidating() {
-		return validator != null;
+		return validate;
 	}
 	
 	/**
@@ -252,6 +446,25 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 		this.failfast = failfast;
 	}
 	
+	/**
+	 * Gets the ValidationEngine this ItemReader validates with
+	 * 
+	 * @return The ValidationEngine
+	 */
+	public ValidationEngine getValidationEngine() {
+		return validationEngine;
+	}
+	
+	/**
+	 * Sets the ValidationEngine to validate with, for example one shared with other components.
+	 * By default each ItemReader has its own.
+	 * 
+	 * @param validationEngine The ValidationEngine to use
+	 */
+	public void setValidationEngine(ValidationEngine validationEngine) {
+		this.validationEngine = validationEngine;
+	}
+	
 	/**
 	 * Gets the SplittingReaderSource from which CDOs are being parsed
 	 * 
@@ -283,6 +496,204 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 		return this.ioSourceFactory;
 	}
 	
+	/**
+	 * Query whether this reader splits elements out of the source on a dedicated thread
+	 * 
+	 * @return True iff a dedicated splitter thread feeds the threads calling read
+	 */
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+	/**
+	 * Set whether a single dedicated thread should split elements out of the source into a bounded queue, leaving 
+	 * the threads calling read to only dequeue and parse them. This allows parsing to scale with the number of threads
+	 * rather than each thread taking turns to split the shared reader.
+	 * Requires an elementStartPattern to be set. Any ParseListener's processLine and getContext callbacks will be invoked
+	 * on the splitter thread.
+	 * 
+	 * @param pipelined Whether or not to use a dedicated splitter thread
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
+	/**
+	 * Get the maximum number of split elements that can be queued awaiting parsing in pipelined mode
+	 */
+	public int getPipelineCapacity() {
+		return pipelineCapacity;
+	}
+
+	/**
+	 * Set the maximum number of split elements that can be queued awaiting parsing in pipelined mode.
+	 * Will be rounded up to a power of 2.
+	 * 
+	 * @param pipelineCapacity The capacity of the queue between the splitter thread and the parsing threads
+	 */
+	public void setPipelineCapacity(int pipelineCapacity) {
+		this.pipelineCapacity = pipelineCapacity;
+	}
+	
+	/**
+	 * The number of split elements currently queued awaiting parsing. Always 0 if not pipelined.
+	 */
+	public int getPipelineQueueDepth() {
+		BoundedRingBuffer<ElementContext> queue = elementQueue;
+		return queue != null? queue.size() : 0;
+	}
+	
+	/**
+	 * The number of times the splitter thread has had to wait for the parsing threads to free space in the queue.
+	 * A high value indicates that parsing is the bottleneck.
+	 */
+	public long getPipelineSplitterStalls() {
+		BoundedRingBuffer<ElementContext> queue = elementQueue;
+		return queue != null? queue.getProducerStalls() : 0;
+	}
+	
+	/**
+	 * The number of times that a parsing thread has had to wait for the splitter thread to queue an element.
+	 * A high value indicates that splitting is the bottleneck.
+	 */
+	public long getPipelineParserStalls() {
+		BoundedRingBuffer<ElementContext> queue = elementQueue;
+		return queue != null? queue.getConsumerStalls() : 0;
+	}
+	
+	/**
+	 * Query whether this reader records its progress in the ExecutionContext
+	 * 
+	 * @return True iff progress will be saved so that a restarted step can resume from it
+	 */
+	public boolean isSaveState() {
+		return saveState;
+	}
+
+	/**
+	 * Set whether this reader records its progress in the ExecutionContext so that a restarted step can resume where
+	 * the previous execution left off. Should be set to false where the step is multi-threaded, as the order in which
+	 * elements are processed is then not the order in which they were read.
+	 * 
+	 * @param saveState Whether or not to record our progress
+	 */
+	public void setSaveState(boolean saveState) {
+		this.saveState = saveState;
+	}
+	
+	/**
+	 * Query whether this reader records and uses an index of the elements in its source
+	 * 
+	 * @return True iff an ElementIndex will be recorded and subsequently used
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/**
+	 * Set whether this reader should record the offset and length of each element it splits out of its source in an
+	 * ElementIndex saved alongside the file, and read elements via that index in subsequent executions while the file
+	 * is unchanged. Requires an elementStartPattern and an IndexableSplittingReaderSource.
+	 * 
+	 * The index is only recorded when the whole file is read to the end in a single execution. It is not used to read
+	 * elements if a ParseListener is registered, as the ParseListener's processLine callback would not be invoked.
+	 * 
+	 * @param indexed Whether or not to record and use an index
+	 */
+	public void setIndexed(boolean indexed) {
+		this.indexed = indexed;
+	}
+	
+	/**
+	 * The number of elements this reader will read in total, where known from an index
+	 * 
+	 * @return The number of elements in the source, -1 if not known
+	 */
+	public long getElementCount() {
+		return elementIndex != null? endIndexedElement - firstIndexedElement : -1;
+	}
+	
+	/**
+	 * The number of elements read so far, including any read by a previous execution that this one has restarted
+	 */
+	public long getReadCount() {
+		return readCount.get();
+	}
+	
+	/**
+	 * Sets the name used to qualify the keys under which we record our progress in the ExecutionContext.
+	 * Only needs to be set if more than one C24ItemReader is used in the same step.
+	 * 
+	 * @param name The name to qualify our keys with
+	 */
+	public void setName(String name) {
+		executionContextUserSupport.setName(name);
+	}
+	
+	/**
+	 * Gets the BatchMetrics this reader records its performance to
+	 * 
+	 * @return The BatchMetrics, null if none has been set
+	 */
+	public BatchMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sets the BatchMetrics to record the performance of this reader to. The data consumed, elements split and time
+	 * spent waiting for and splitting the shared SplittingReader are only recorded where an elementStartPattern is set;
+	 * without one, iO parses directly from the source so the parse time includes the time spent reading it.
+	 * 
+	 * @param metrics The BatchMetrics to use, null to stop recording
+	 */
+	public void setMetrics(BatchMetrics metrics) {
+		this.metrics = metrics;
+		if(metrics == null) {
+			bytesCounter = elementsCounter = null;
+			lockWaitTimer = splitTimer = parseTimer = validateTimer = null;
+			return;
+		}
+		String component = ClassUtils.getShortName(C24ItemReader.class);
+		bytesCounter = metrics.counter(BatchMetrics.READER_BYTES, component);
+		elementsCounter = metrics.counter(BatchMetrics.READER_ELEMENTS, component);
+		lockWaitTimer = metrics.timer(BatchMetrics.READER_LOCK_WAIT, component);
+		splitTimer = metrics.timer(BatchMetrics.READER_SPLIT, component);
+		parseTimer = metrics.timer(BatchMetrics.READER_PARSE, component);
+		validateTimer = metrics.timer(BatchMetrics.READER_VALIDATE, component);
+		metrics.gauge(BatchMetrics.READER_QUEUE_DEPTH, component, new BatchMetrics.Gauge() {
+			@Override
+			public double value() {
+				return getPipelineQueueDepth();
+			}
+		});
+		metrics.gauge(BatchMetrics.READER_PROGRESS, component, new BatchMetrics.Gauge() {
+			@Override
+			public double value() {
+				return getPercentComplete();
+			}
+		});
+	}
+	
+	/**
+	 * Estimates how much of the source has been read. This is only possible where the size of the source is known
+	 * in advance; that is where elements are being read via an index or split out of an IndexableSplittingReaderSource.
+	 * 
+	 * @return The percentage of the source read, NaN if it cannot be estimated
+	 */
+	public double getPercentComplete() {
+		if(indexedReads) {
+			long total = endIndexedElement - firstIndexedElement;
+			long read = Math.min(nextIndexedElement.get(), endIndexedElement) - firstIndexedElement;
+			return total > 0? 100.0 * read / total : 100.0;
+		} else if(source instanceof IndexableSplittingReaderSource && furthestPosition >= 0) {
+			IndexableSplittingReaderSource indexable = (IndexableSplittingReaderSource)source;
+			long total = indexable.getEndOffset() - indexable.getStartOffset();
+			long read = furthestPosition - indexable.getStartOffset();
+			return total > 0? Math.min(100.0, 100.0 * read / total) : 100.0;
+		}
+		return Double.NaN;
+	}
+	
 	/**
 	 * Initialise our context
 	 * 
@@ -290,7 +701,222 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	 */
 	@BeforeStep
 	public void setup(StepExecution stepExecution) {		
+		// In case we're being reused
+		stopSplitter();
+		elementQueue = null;
+		readCount.set(0);
+		checkpoint = null;
+		readingThread.set(null);
+		concurrentReads = false;
+		elementIndex = null;
+		indexedReads = false;
+		indexRecorder = null;
+		indexCursor = new ThreadLocal<ElementIndex.Cursor>();
+		furthestPosition = -1;
+		
 		source.initialise(stepExecution);
+		if(indexed) {
+			setupIndex();
+		}
+		// If pipelined, the splitter thread is started on the first call to read so that open has the opportunity to
+		// reposition the source first
+	}
+	
+	/**
+	 * Loads the index of our source's file if there is a current one, otherwise prepares to record one
+	 */
+	private void setupIndex() {
+		IndexableSplittingReaderSource indexable = (IndexableSplittingReaderSource)source;
+		File file = indexable.getFile();
+		File indexFile = ElementIndex.indexFileFor(file);
+		try {
+			elementIndex = ElementIndex.load(indexFile, file);
+		} catch(IOException ioEx) {
+			LOG.warn("Ignoring invalid element index " + indexFile, ioEx);
+		}
+		
+		if(elementIndex != null) {
+			firstIndexedElement = elementIndex.indexOf(indexable.getStartOffset());
+			endIndexedElement = elementIndex.indexOf(indexable.getEndOffset());
+			nextIndexedElement.set(firstIndexedElement);
+			indexedReads = parseListener == null;
+			LOG.info("Found index of {} elements in {}{}", new Object[] {getElementCount(), source.getName(), indexedReads? "" : "; not reading via it as a ParseListener is registered"});
+		} else if(indexable.getStartOffset() == 0 && indexable.getEndOffset() == file.length()) {
+			LOG.info("Recording element index for {} in {}", source.getName(), indexFile);
+			indexRecorder = new IndexRecorder(file, indexFile);
+		} else {
+			LOG.info("Not recording element index for {} as only part of it is being read", source.getName());
+		}
+	}
+	
+	/**
+	 * Accumulates the elements we split out of the source so that they can be saved as an ElementIndex once the
+	 * source has been read to the end. The file's size and modification time are captured before we start reading
+	 * so that if the file changes while we're reading it, the index will not be used.
+	 */
+	private static class IndexRecorder {
+		private final File file;
+		private final File indexFile;
+		private final long fileSize;
+		private final long lastModified;
+		private final ElementIndex.Builder builder = new ElementIndex.Builder();
+		private volatile boolean complete = false;
+		
+		public IndexRecorder(File file, File indexFile) {
+			this.file = file;
+			this.indexFile = indexFile;
+			this.fileSize = file.length();
+			this.lastModified = file.lastModified();
+		}
+		
+		public void save() {
+			if(file.length() != fileSize || file.lastModified() != lastModified) {
+				LOG.warn("Not saving element index for {} as it changed while being read", file);
+				return;
+			}
+			try {
+				builder.build(fileSize, lastModified).save(indexFile);
+				LOG.info("Saved index of {} elements in {} to {}", new Object[] {builder.size(), file, indexFile});
+			} catch(IOException ioEx) {
+				LOG.warn("Failed to save element index " + indexFile, ioEx);
+			}
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemStream#open(org.springframework.batch.item.ExecutionContext)
+	 */
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		if(!saveState) {
+			return;
+		}
+		
+		String readCountKey = executionContextUserSupport.getKey(READ_COUNT_KEY);
+		String positionKey = executionContextUserSupport.getKey(POSITION_KEY);
+		if(!executionContext.containsKey(readCountKey)) {
+			// Not a restart
+			return;
+		}
+		long count = executionContext.getLong(readCountKey);
+		
+		if(executionContext.containsKey(positionKey) && source instanceof RestartableSplittingReaderSource) {
+			// We can move straight to where we left off
+			String readerId = executionContext.getString(executionContextUserSupport.getKey(READER_ID_KEY), null);
+			long position = executionContext.getLong(positionKey);
+			if(indexedReads) {
+				// Move to the first element we haven't read
+				long element = elementIndex.indexOf(position);
+				LOG.info("Restarting {} at element {} after {} elements", new Object[] {source.getName(), element, count});
+				nextIndexedElement.set(element);
+			} else {
+				LOG.info("Restarting {} at position {} of reader {} after {} elements", new Object[] {source.getName(), position, readerId, count});
+				try {
+					((RestartableSplittingReaderSource)source).seek(readerId, position);
+				} catch(IOException ioEx) {
+					throw new ItemStreamException("Failed to restart " + source.getName() + " at position " + position, ioEx);
+				}
+				// We won't see the elements before position so can't record a complete index
+				indexRecorder = null;
+			}
+			readCount.set(count);
+			checkpoint = new Checkpoint(readerId, position);
+		} else if(count > 0) {
+			// We have to read through the elements we've already processed
+			LOG.info("Restarting {} by skipping {} elements", source.getName(), count);
+			restoring = true;
+			try {
+				for(long i = 0; i < count; i++) {
+					if(read() == null) {
+						throw new ItemStreamException("Failed to restart " + source.getName() + "; only " + i + " of " + count + " elements remain");
+					}
+				}
+			} catch(ParseException ex) {
+				throw new ItemStreamException("Failed to restart " + source.getName(), ex);
+			} finally {
+				restoring = false;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemStream#update(org.springframework.batch.item.ExecutionContext)
+	 */
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		if(!saveState) {
+			return;
+		}
+		
+		if(elementIndex != null) {
+			executionContext.putLong(executionContextUserSupport.getKey(ELEMENT_COUNT_KEY), getElementCount());
+		}
+		
+		if(concurrentReads) {
+			// Elements may have been read that have not yet been processed, so we can't record a safe restart point
+			executionContext.remove(executionContextUserSupport.getKey(READ_COUNT_KEY));
+			executionContext.remove(executionContextUserSupport.getKey(POSITION_KEY));
+			executionContext.remove(executionContextUserSupport.getKey(READER_ID_KEY));
+			return;
+		}
+		
+		executionContext.putLong(executionContextUserSupport.getKey(READ_COUNT_KEY), readCount.get());
+		
+		Checkpoint current = checkpoint;
+		if(current != null) {
+			executionContext.putLong(executionContextUserSupport.getKey(POSITION_KEY), current.position);
+			if(current.readerId != null) {
+				executionContext.putString(executionContextUserSupport.getKey(READER_ID_KEY), current.readerId);
+			} else {
+				executionContext.remove(executionContextUserSupport.getKey(READER_ID_KEY));
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemStream#close()
+	 */
+	@Override
+	public void close() throws ItemStreamException {
+		// Our resources are released by cleanup
+	}
+	
+	/**
+	 * Where an element ended, as recorded in the ExecutionContext
+	 */
+	private static class Checkpoint {
+		private final String readerId;
+		private final long position;
+		
+		public Checkpoint(String readerId, long position) {
+			this.readerId = readerId;
+			this.position = position;
+		}
+	}
+	
+	/**
+	 * Notes the end of the element we're about to parse as the point we would restart from
+	 */
+	private void recordCheckpoint(ElementContext elementContext) {
+		if(elementContext.position >= 0) {
+			checkpoint = new Checkpoint(elementContext.readerId, elementContext.position);
+		}
+	}
+	
+	/**
+	 * Records that the calling thread is reading from us, noting if it isn't the first thread to do so
+	 */
+	private void recordReadingThread() {
+		Thread current = Thread.currentThread();
+		if(!concurrentReads && !readingThread.compareAndSet(null, current) && readingThread.get() != current) {
+			if(saveState) {
+				LOG.warn("Multiple threads are reading from {}; its position will not be saved for restart", source.getName());
+			}
+			concurrentReads = true;
+		}
 	}
 	
 	/**
@@ -298,42 +924,328 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	 */
 	@AfterStep
 	public void cleanup() {
-		if(validator != null) {
-			validator = new ThreadLocal<ValidationManager>();
+		validationEngine.clear();
+		stopSplitter();
+		IndexRecorder recorder = indexRecorder;
+		indexRecorder = null;
+		if(recorder != null && recorder.complete) {
+			recorder.save();
 		}
 		source.close();
 	}
 	
+	/**
+	 * Starts the thread which splits elements out of the source and queues them for parsing
+	 */
+	private synchronized void startSplitter() {
+		stopSplitter();
+		splitterException = null;
+		elementQueue = new BoundedRingBuffer<ElementContext>(pipelineCapacity);
+		splitterThread = new Thread(new Splitter(elementQueue), "C24ItemReader splitter [" + source.getName() + "]");
+		splitterThread.setDaemon(true);
+		splitterThread.start();
+	}
+	
+	/**
+	 * Stops the splitter thread (if running), discarding any elements it has queued
+	 */
+	private synchronized void stopSplitter() {
+		Thread thread = splitterThread;
+		BoundedRingBuffer<ElementContext> queue = elementQueue;
+		if(thread != null) {
+			queue.close();
+			try {
+				thread.join(SPLITTER_JOIN_TIMEOUT_MS);
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			if(thread.isAlive()) {
+				LOG.warn("Splitter thread for source {} failed to stop", source.getName());
+			}
+			LOG.debug("Pipeline for source {}: {} splitter stalls, {} parser stalls, {} elements unconsumed", 
+					new Object[] {source.getName(), queue.getProducerStalls(), queue.getConsumerStalls(), queue.size()});
+			splitterThread = null;
+		}
+	}
+	
+	/**
+	 * Splits elements out of each of the source's readers in turn and queues them for parsing. 
+	 * As the element buffer is reused, each element is copied before it is queued.
+	 * 
+	 * Any failure is recorded so that it can be rethrown to the parsing threads once they have consumed the elements 
+	 * queued before it occurred.
+	 */
+	private class Splitter implements Runnable {
+		
+		private final BoundedRingBuffer<ElementContext> queue;
+		
+		public Splitter(BoundedRingBuffer<ElementContext> queue) {
+			this.queue = queue;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			try {
+				SplittingReader reader;
+				while(!queue.isClosed() && (reader = source.getNextReader()) != null) {
+					while(true) {
+						ElementContext elementContext = readElement(reader);
+						if(elementContext.element == null || isBlank(elementContext.element)) {
+							// This reader has been exhausted
+							discardReader(reader);
+							break;
+						}
+						ElementContext copy = new ElementContext(elementContext.element.toString(), elementContext.context);
+						copy.readerId = elementContext.readerId;
+						copy.position = elementContext.position;
+						if(!queue.put(copy)) {
+							// We've been stopped
+							return;
+						}
+					}
+				}
+			} catch(RuntimeException ex) {
+				splitterException = ex;
+			} catch(InterruptedException ex) {
+				splitterException = new NonTransientResourceException("Interrupted while splitting " + source.getName(), ex);
+			} catch(Throwable ex) {
+				splitterException = new NonTransientResourceException("Failed to split " + source.getName(), ex);
+			} finally {
+				queue.close();
+			}
+		}
+	}
+	
+	/**
+	 * Gets the next element queued by the splitter thread, waiting for one if necessary
+	 * 
+	 * @return The next element, null if there are no more
+	 */
+	private ElementContext takeElement() {
+		BoundedRingBuffer<ElementContext> queue = elementQueue;
+		if(queue == null) {
+			synchronized(this) {
+				if(elementQueue == null) {
+					startSplitter();
+				}
+				queue = elementQueue;
+			}
+		}
+		
+		ElementContext elementContext;
+		try {
+			elementContext = queue.take();
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new NonTransientResourceException("Interrupted while waiting for an element from " + source.getName(), ex);
+		}
+		
+		if(elementContext == null && splitterException != null) {
+			throw splitterException;
+		}
+		
+		return elementContext;
+	}
+	
+	/**
+	 * Reads the next unread element via the index
+	 * 
+	 * @return The element, null if there are no more
+	 */
+	private ElementContext readIndexedElement() {
+		long element = nextIndexedElement.getAndIncrement();
+		if(element >= endIndexedElement) {
+			return null;
+		}
+		
+		ElementIndex.Cursor cursor = indexCursor.get();
+		if(cursor == null) {
+			cursor = elementIndex.cursor();
+			indexCursor.set(cursor);
+		}
+		cursor.moveTo(element);
+		
+		CharSequence data;
+		try {
+			data = ((IndexableSplittingReaderSource)source).read(cursor.getStart(), (int)cursor.getLength());
+		} catch(IOException ioEx) {
+			throw new NonTransientResourceException("Failed to read element " + element + " of " + source.getName(), ioEx);
+		}
+		ElementContext elementContext = new ElementContext(data, getContext(data));
+		elementContext.position = cursor.getEnd();
+		if(bytesCounter != null) {
+			bytesCounter.increment(cursor.getLength());
+		}
+		return elementContext;
+	}
+	
+	/**
+	 * Gets this thread's parser for elements taken from the splitter thread's queue or read via the index
+	 */
+	Parser getPipelinedParser() {
+		Parser returnParser = threadedParser.get();
+		if(returnParser == null) {
+			returnParser = new Parser(null, getIoSource(null), elementType);
+			threadedParser.set(returnParser);
+		}
+		return returnParser;
+	}
+	
 
 	/**
 	 * Structure to associate a to-be-parsed element with externally supplied context.
 	 * The ParseListener callback enables an external object to associate context with an element. This structure 
 	 * allows them to be held together during processing; this is necessary to avoid race conditions.
 	 * 
+	 * The element is held in a buffer which is reused by the thread that read it; it is only valid until that thread
+	 * next calls readElement. Note that element is a CharSequence rather than the String it was in earlier releases, 
+	 * so that the element needn't be copied; subclasses which need a String must call toString on it, and must do so
+	 * before the element is handed to another thread.
+	 * 
+	 * Where the source is restartable, the position of the end of the element is also recorded.
+	 * 
 	 * @author Andrew Elmore
 	 */
 	protected static class ElementContext {
-		public ElementContext(String element, Object context) {
+		public ElementContext(CharSequence element, Object context) {
 			this.element = element;
 			this.context = context;
 		}
 		public Object context;
-		public String element;
+		public CharSequence element;
+		public String readerId = null;
+		public long position = -1;
+	}
+	
+	/**
+	 * Per-thread state used when splitting elements out of a SplittingReader, reused between elements
+	 * to avoid allocating new buffers and matchers for every element and line.
+	 */
+	private static class ElementBuffer {
+		private final StringBuilder cache = new StringBuilder();
+		private final LineMatcher startMatcher;
+		private final LineMatcher stopMatcher;
+		
+		public ElementBuffer(LineMatcher startMatcher, LineMatcher stopMatcher) {
+			this.startMatcher = startMatcher.newMatcher();
+			this.stopMatcher = stopMatcher != null? stopMatcher.newMatcher() : null;
+		}
+		
+		public boolean isFor(LineMatcher startMatcher, LineMatcher stopMatcher) {
+			return this.startMatcher.getPattern() == startMatcher.getPattern() && 
+					(this.stopMatcher == null? stopMatcher == null : stopMatcher != null && this.stopMatcher.getPattern() == stopMatcher.getPattern());
+		}
+	}
+	
+	/**
+	 * Gets this thread's ElementBuffer, ready to accumulate a new element
+	 */
+	private ElementBuffer getElementBuffer() {
+		ElementBuffer buffer = elementBuffer.get();
+		if(buffer == null || buffer.cache.capacity() > MAX_RETAINED_ELEMENT_BUFFER_SIZE || !buffer.isFor(elementStartMatcher, elementStopMatcher)) {
+			buffer = new ElementBuffer(elementStartMatcher, elementStopMatcher);
+			elementBuffer.set(buffer);
+		} else {
+			buffer.cache.setLength(0);
+		}
+		return buffer;
 	}
 	
+	/**
+	 * Returns true if seq is empty or contains only whitespace, as per String.trim().length() == 0
+	 * but without copying the data
+	 */
+	protected static boolean isBlank(CharSequence seq) {
+		for(int i = 0; i < seq.length(); i++) {
+			if(seq.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
 	
 	/**
 	 * Reads a line of text from the SplittingReader. The definition of line is implementation dependent.
 	 * This implementation breaks lines around carriage returns and line feeds.
 	 * 
+	 * Subclasses which override this rather than readLineSequence continue to work, as readLineSequence then
+	 * defers to it, but each line is then copied into a String.
+	 * 
 	 * @param reader The SplittingReader to consume characters from
 	 * @return A line of text
 	 * @throws IOException
+	 * @deprecated Override readLineSequence instead.
 	 */
+	@Deprecated
 	protected String readLine(SplittingReader reader) throws IOException {	    
 	    return reader.readLine();
 	}
 	
+	/**
+	 * Reads a line of text from the SplittingReader. The definition of line is implementation dependent.
+	 * This implementation breaks lines around carriage returns and line feeds.
+	 * 
+	 * The returned CharSequence need only be valid until the next read from or pushback to the reader.
+	 * If a subclass overrides readLine, this calls it instead.
+	 * 
+	 * @param reader The SplittingReader to consume characters from
+	 * @return A line of text
+	 * @throws IOException
+	 */
+	protected CharSequence readLineSequence(SplittingReader reader) throws IOException {
+		if(isReadLineOverriddenBelow(C24ItemReader.class)) {
+			return readLine(reader);
+		}
+	    return reader.readLineSequence();
+	}
+	
+	/**
+	 * Whether readLine has been overridden by a subclass of type, in which case type's readLineSequence must defer to it
+	 */
+	boolean isReadLineOverriddenBelow(Class<?> type) {
+		return readLineDeclarer != type;
+	}
+	
+	private static Class<?> findReadLineDeclarer(Class<?> type) {
+		for(Class<?> declarer = type; declarer != C24ItemReader.class; declarer = declarer.getSuperclass()) {
+			try {
+				declarer.getDeclaredMethod("readLine", SplittingReader.class);
+				return declarer;
+			} catch(NoSuchMethodException ex) {
+				// Not overridden here
+			}
+		}
+		return C24ItemReader.class;
+	}
+	
+	/**
+	 * Invokes the ParseListener's processLine callback, using the CharSequence variant if it supports it
+	 */
+	private CharSequence processLine(CharSequence line) {
+		if(parseListener instanceof CharSequenceParseListener) {
+			return ((CharSequenceParseListener<Object, Result>)parseListener).processLine(line);
+		} else {
+			return parseListener.processLine(line.toString());
+		}
+	}
+	
+	/**
+	 * Gets the context (if any) that the ParseListener wishes to associate with element
+	 */
+	private Object getContext(CharSequence element) {
+		if(parseListener == null) {
+			return null;
+		} else if(parseListener instanceof CharSequenceParseListener) {
+			return ((CharSequenceParseListener<Object, Result>)parseListener).getContext(element);
+		} else {
+			return parseListener.getContext(element.toString());
+		}
+	}
+	
 	/**
 	 * Extracts the textual data for an element from the SplittingReader using the elementStartPattern to split
 	 * up the data. 
@@ -345,59 +1257,141 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	 */
 	protected ElementContext readElement(SplittingReader reader) {
 
-		StringBuffer elementCache = new StringBuffer();
+		ElementBuffer buffer = getElementBuffer();
+		StringBuilder elementCache = buffer.cache;
 		boolean inElement = false;	
+		long position = -1;
+		IndexRecorder recorder = indexRecorder;
+		long lineStart = -1;
+		long elementStart = -1;
+		BatchMetrics.Timer lockWaitTimer = this.lockWaitTimer;
+		long waitStart = lockWaitTimer != null? System.nanoTime() : 0;
 		
 		synchronized(reader) {
+			long splitStart = 0;
+			long startPosition = 0;
+			if(lockWaitTimer != null) {
+				splitStart = System.nanoTime();
+				lockWaitTimer.record(splitStart - waitStart);
+				startPosition = reader.getPosition();
+			}
     		try {
     			while(reader.ready()) {
-    			    String line = readLine(reader);
+    				if(recorder != null && !inElement) {
+    					lineStart = reader.getPosition();
+    				}
+    			    CharSequence line = readLineSequence(reader);
     
     				if(line != null) {
     					if(parseListener != null) {
     						// Invoke callback
-    						line = parseListener.processLine(line);
+    						line = processLine(line);
     					}
     					// We look for the start of a new element if either:
     					// a) We're not in an element or
     					// b) We don't have an elementStopPattern set (if we do and we're in a element, the presence of a line
     					// that matches the element start pattern is deemed to still be part of the same element)
-    					if((!inElement || elementStopPattern == null) && elementStartPattern.matcher(line).matches()) {
+    					if((!inElement || elementStopPattern == null) && buffer.startMatcher.matches(line)) {
     						// We've encountered the start of a new element
-    						String message = elementCache.toString();
-    						if(message.trim().length() > 0) {
+    						if(!isBlank(elementCache)) {
     							// We were already parsing an element; thus we've finished extracting our element
     							// Cache the line
     						    reader.pushback(line);
     							// ...and return what we have already extracted
-    							ElementContext context = new ElementContext(message, parseListener == null? null : parseListener.getContext(message));
-    							return context;
+    						    break;
     						} else {
     							// This is the start of our element. Add it to our elementCache.
     							inElement = true;
+    							elementStart = lineStart;
     						}
     					} 
     					
     					if(inElement) {
     						// More data for our current element
-    						elementCache.append(line);
+    						if(line instanceof CharArraySequence) {
+    							((CharArraySequence)line).appendTo(elementCache);
+    						} else {
+    							elementCache.append(line);
+    						}
     						
     						// If we have an elementStopPattern, see if the line matched
-    						if(elementStopPattern != null && elementStopPattern.matcher(line).matches()) {
+    						if(elementStopPattern != null && buffer.stopMatcher.matches(line)) {
     							// We've encountered the end of the element
     							break;
     						}
     					}
     				}
     			}
+    			
+    			if(saveState && source instanceof RestartableSplittingReaderSource) {
+    				// Capture where this element ended while we still hold the reader
+    				position = reader.getPosition();
+    			}
+    			
+    			if(lockWaitTimer != null) {
+    				recordSplit(reader, startPosition, splitStart, inElement && !isBlank(elementCache));
+    			}
+    			
+    			if(recorder != null) {
+    				// Record the element while we still hold the reader so that elements are recorded in order
+    				if(inElement && !isBlank(elementCache)) {
+    					recorder.builder.add(elementStart, reader.getPosition() - elementStart);
+    				}
+    				if(!reader.ready()) {
+    					recorder.complete = true;
+    				}
+    			}
     		} catch(IOException ioEx) {
     			throw new NonTransientResourceException("Failed to extract entity", ioEx);
+    		} finally {
+    			// Don't hold on to the line
+    			buffer.startMatcher.reset();
+    			if(buffer.stopMatcher != null) {
+    				buffer.stopMatcher.reset();
+    			}
     		}
 		}
 
-		String message = elementCache.toString();
-		ElementContext context = new ElementContext(message, parseListener == null? null : parseListener.getContext(message));
-		return context;
+		ElementContext elementContext = new ElementContext(elementCache, getContext(elementCache));
+		if(position >= 0) {
+			elementContext.readerId = ((RestartableSplittingReaderSource)source).getReaderId(reader);
+			elementContext.position = position;
+		}
+		return elementContext;
+	}
+	
+	/**
+	 * Records the metrics for an element just split out of reader, while we still hold it
+	 * 
+	 * @param reader The reader the element was split out of
+	 * @param startPosition The reader's position before the element was split out
+	 * @param splitStart When we started splitting the element out
+	 * @param split Whether an element was found
+	 */
+	private void recordSplit(SplittingReader reader, long startPosition, long splitStart, boolean split) {
+		long position = reader.getPosition();
+		bytesCounter.increment(position - startPosition);
+		if(split) {
+			elementsCounter.increment(1);
+		}
+		if(source instanceof IndexableSplittingReaderSource && position > furthestPosition) {
+			furthestPosition = position;
+		}
+		splitTimer.record(System.nanoTime() - splitStart);
+	}
+	
+	/**
+	 * Hands an exhausted reader back to the source so that it can release the underlying file.
+	 * 
+	 * @param reader The reader that has been exhausted
+	 */
+	void discardReader(SplittingReader reader) {
+		try {
+			source.discard(reader);
+		} catch(IOException ioEx) {
+			// We'll carry on; worst case scenario a failure will be logged multiple times
+			LOG.warn("Failed to close reader on source {}", source.getName());
+		}
 	}
 	
 	/**
@@ -410,12 +1404,7 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 	private void discardParser(Parser parser) {
 		// If there's no splitting pattern, we have to ensure that we discard the underlying reader too
 		if(elementStartPattern == null) {
-			try {
-				source.discard(parser.getSplitter());
-			} catch(IOException ioEx) {
-				// We'll carry on; worst case scenario a failure will be logged multiple times
-				LOG.warn("Failed to close reader on source {}", source.getName());
-			}
+			discardReader(parser.getSplitter());
 		}
 		if(this.elementStartPattern == null && source.useMultipleThreadsPerReader()) {
 			synchronized(this) {
@@ -529,6 +1518,74 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 		return returnParser;
 	}
 	
+	/**
+	 * Parses an element which has already been split out of the source, using this thread's parser
+	 * 
+	 * @param elementContext The element to parse
+	 * @return The parsed CDO, null if nothing could be parsed from the element
+	 */
+	ComplexDataObject parse(ElementContext elementContext) {
+		CharSequence element = elementContext.element;
+		Parser parser = getPipelinedParser();
+		parser.setReader(new CharSequenceReader(element));
+		
+		ComplexDataObject result = null;
+		long start = parseTimer != null? System.nanoTime() : 0;
+		try {
+			result = parser.read();
+		} catch(IOException ioEx) {
+			throw new ParseException("Failed to parse CDO from " + source.getName() + ". Message: " + element, ioEx);
+		} finally {
+			if(result == null) {
+				// Parsers can't be reused once they fail to read an element
+				threadedParser.set(null);
+			}
+			recordTime(parseTimer, start);
+		}
+		return result;
+	}
+	
+	/**
+	 * Validates result using our ValidationEngine, if we're validating
+	 * 
+	 * @param result The CDO to validate
+	 * @throws C24ValidationException If result is invalid
+	 */
+	void validate(ComplexDataObject result) {
+		if(!validate) {
+			return;
+		}
+		long start = validateTimer != null? System.nanoTime() : 0;
+		try {
+			// A single failure is thrown as though we were validating by exception
+			List<ValidationEvent> failures = validationEngine.validate(result, failfast);
+			if(!failures.isEmpty()) {
+				throw new C24CompoundValidationException(result, failures);
+			}
+		} catch(ValidationException vEx) {
+			throw new C24ValidationException("Failed to validate message: " + vEx.getLocalizedMessage() + " [" + source.getName() + "]", result, vEx);
+		} finally {
+			recordTime(validateTimer, start);
+		}
+	}
+	
+	/**
+	 * Records the time since start with timer, if we have one
+	 */
+	private static void recordTime(BatchMetrics.Timer timer, long start) {
+		if(timer != null) {
+			timer.record(System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Allows our ParseListener, if any, to intercept result before it is returned
+	 */
+	@SuppressWarnings("unchecked")
+	Result applyParseListener(ComplexDataObject result, Object context) {
+		return parseListener == null? (Result)result : parseListener.process(result, context);
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see org.springframework.batch.item.ItemReader#read()
@@ -541,11 +1598,24 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 		ComplexDataObject result = null;
 		Object context = null;
 		Parser parser = null;
+		ElementContext elementContext = null;
+		
+		recordReadingThread();
+		
+		if(pipelined || indexedReads) {
+			// The splitter thread has already extracted the elements, or we know where they are from the index; we just 
+			// have to parse them
+			while(result == null && (elementContext = indexedReads? readIndexedElement() : takeElement()) != null) {
+				context = elementContext.context;
+				recordCheckpoint(elementContext);
+				result = parse(elementContext);
+			}
+		}
 		
 		// Keep trying to parse an entity until either we get one (result != null) or we run out of data to read (parser == null)
 		// BufferedReaderSources such as the ZipFileSource can return multiple BufferedReaders; when our current one is exhausted it
 		// will return another one
-		while(result == null && (parser = getParser()) != null) {
+		while(!pipelined && !indexedReads && result == null && (parser = getParser()) != null) {
 			
 			if(elementStartPattern != null) {
 				
@@ -558,21 +1628,23 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
                 }
 				
 				// Get the textual source for an element from the reader
-				ElementContext elementContext = readElement(reader);
-				String element = elementContext.element;
+				elementContext = readElement(reader);
+				CharSequence element = elementContext.element;
 				context = elementContext.context;
 				
 				// If we got something then parse it
-				if(element != null && element.trim().length() > 0) {
+				if(element != null && !isBlank(element)) {
 					
-					StringReader stringReader = new StringReader(element);
-
-					parser.setReader(stringReader);
+					recordCheckpoint(elementContext);
+					parser.setReader(new CharSequenceReader(element));
 				
+					long start = parseTimer != null? System.nanoTime() : 0;
 					try {
 						result = parser.read();
 					} catch(IOException ioEx) {
 						throw new ParseException("Failed to parse CDO from " + source.getName() + ". Message: " + element, ioEx);
+					} finally {
+						recordTime(parseTimer, start);
 					}
 				} else {
 					// This parser has been exhausted
@@ -580,12 +1652,15 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 				}
 				
 			} else {
-				// We'll parse CDOs from the parser in serial
+				// We'll parse CDOs from the parser in serial. As iO reads directly from the source, the parse time includes
+				// the time spent reading it.
+				long start = parseTimer != null? System.nanoTime() : 0;
 				try {
 					result = parser.read();
 				} catch(IOException ioEx) {
 					throw new ParseException("Failed to parse CDO from " + source.getName(), ioEx);
 				} finally {
+					recordTime(parseTimer, start);
 					if(result != null && result.getTotalAttrCount() == 0 && result.getTotalElementCount() == 0) {
 						// We didn't manage to read anything
 						result = null;
@@ -600,51 +1675,16 @@ public class C24ItemReader<Result> implements ItemReader<Result> {
 			}
 		}
 		
-		if(validator != null && result != null) {
-			try {
-				ValidationManager mgr = validator.get();
-				if(mgr == null) {
-					mgr = new ValidationManager();
-					validator.set(mgr);
-				}
-				if(failfast) {
-					mgr.validateByException(result);
-				} else {
-					// Capture all failures
-					final Collection<ValidationEvent> events = new LinkedList<ValidationEvent>();
-					
-					ValidationListener listener = new ValidationListener() {
-			            public void validationPassed(ValidationEvent ve) {
-			            }
-
-			            public void validationFailed(ValidationEvent ve) {
-			                events.add(ve);
-			            }
-			        };
-			        
-			        mgr.addValidationListener(listener);
-			        
-			        try {			        
-				        if(!mgr.validateByEvents(result)) {
-				        	if(events.size() == 1) {
-				        		// Treat it as though we were validating by exception
-				        		mgr.setEventBased(false);
-				        		mgr.fireValidationEvent(events.iterator().next());
-				        	} else {
-				        		throw new C24CompoundValidationException(result, events);
-				        	}
-				        } 
-			        } finally {
-			        	mgr.removeValidationListener(listener);
-			        }
-				}
-			} catch(ValidationException vEx) {
-				throw new C24ValidationException("Failed to validate message: " + vEx.getLocalizedMessage() + " [" + source.getName() + "]", result, vEx);
-			}
+		if(result != null) {
+			readCount.incrementAndGet();
+		}
+		
+		if(validate && result != null && !restoring) {
+			validate(result);
 		}
 		
 		// If we have a ParseListener registered, allow it to intercept the return value
-		return parseListener == null || result == null? (Result)result : parseListener.process(result, context);
+		return result == null || restoring? (Result)result : applyParseListener(result, context);
 		
 	}
 	
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.util.Assert;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.spring.batch.reader.C24ItemReader.ElementContext;
+import biz.c24.io.spring.batch.reader.source.FileSource;
+import biz.c24.io.spring.batch.reader.source.GzipFileSource;
+import biz.c24.io.spring.batch.reader.source.MappedFileSource;
+import biz.c24.io.spring.batch.reader.source.MultiResourceSplittingReaderSource;
+import biz.c24.io.spring.batch.reader.source.SplittingReader;
+import biz.c24.io.spring.batch.reader.source.SplittingReaderSource;
+import biz.c24.io.spring.batch.reader.source.ZipFileSource;
+import biz.c24.io.spring.batch.util.ParallelPublisher;
+import biz.c24.io.spring.core.C24Model;
+import biz.c24.io.spring.source.SourceFactory;
+
+/**
+ * Publishes the ComplexDataObjects read by a C24ItemReader as a reactive-streams Publisher, allowing them to be
+ * consumed by reactive libraries (for example with Reactor's Flux.from) rather than by a Spring Batch step.
+ *
+ * Elements are split out of the reader's source using its elementStartPattern and then parsed, validated and passed
+ * to its ParseListener on up to parallelism threads. Elements are only split in response to the Subscriber's
+ * demand, so a slow Subscriber holds back the reading of the source rather than causing elements to be buffered.
+ *
+ * The reader's source is initialised when a Subscriber subscribes and closed once the stream completes, fails or is
+ * cancelled. While the stream is open the reader doesn't save its state, as positions are meaningless once elements
+ * are processed out of order; its saveState setting is restored when the stream closes. The reader must not be used
+ * as an ItemReader at the same time.
+ *
+ * As there is no step, sources that would fall back to the input.file job parameter must either have their resource
+ * set or be given a StepExecution to read it from via setStepExecution.
+ *
+ * @author Andrew Elmore
+ *
+ * @param <Result> The type of item published; ComplexDataObject unless the reader has a ParseListener
+ */
+public class C24Publisher<Result> extends ParallelPublisher<ElementContext, Result> {
+
+	private final C24ItemReader<Result> reader;
+
+	/**
+	 * The reader currently being split, null if we need to get the next one from the source
+	 */
+	private SplittingReader splitter = null;
+
+	/**
+	 * The reader's saveState setting before we opened it, restored when we close; null if we haven't changed it
+	 */
+	private Boolean savedSaveState = null;
+
+	/**
+	 * The StepExecution to initialise the reader's source with, null if its resource has been set
+	 */
+	private StepExecution stepExecution = null;
+
+	/**
+	 * @param reader A configured reader with an elementStartPattern
+	 */
+	public C24Publisher(C24ItemReader<Result> reader) {
+		Assert.notNull(reader, "reader must not be null");
+		Assert.notNull(reader.getElementStartPattern(), "C24Publisher requires a reader with an elementStartPattern");
+		this.reader = reader;
+	}
+
+	/**
+	 * Convenience method to create a publisher of the elementType of model read from source
+	 *
+	 * @param source The source to read from; its resource must have been set
+	 * @param model The model to parse elements with
+	 * @param ioSourceFactory The SourceFactory to use, null for the model's default
+	 * @param elementStartPattern A regular expression matching the first line of each element
+	 */
+	public static C24Publisher<ComplexDataObject> create(SplittingReaderSource source, C24Model model, SourceFactory ioSourceFactory, String elementStartPattern) {
+		C24ItemReader<ComplexDataObject> reader = new C24ItemReader<ComplexDataObject>();
+		reader.setSource(source);
+		reader.setModel(model);
+		if(ioSourceFactory != null) {
+			reader.setSourceFactory(ioSourceFactory);
+		}
+		reader.setElementStartPattern(elementStartPattern);
+		return new C24Publisher<ComplexDataObject>(reader);
+	}
+
+	/**
+	 * The reader whose source we're publishing
+	 */
+	public C24ItemReader<Result> getReader() {
+		return reader;
+	}
+
+	/**
+	 * The StepExecution the reader's source is initialised with
+	 */
+	public StepExecution getStepExecution() {
+		return stepExecution;
+	}
+
+	/**
+	 * Sets the StepExecution to initialise the reader's source with, allowing it to take its input.file from the
+	 * job parameters. Not required if the source's resource has been set.
+	 *
+	 * @param stepExecution The StepExecution to pass to the source
+	 */
+	public void setStepExecution(StepExecution stepExecution) {
+		this.stepExecution = stepExecution;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.util.ParallelPublisher#open()
+	 */
+	@Override
+	protected void open() {
+		reader.validateConfiguration();
+		Assert.isTrue(!reader.isPipelined(), "C24Publisher splits elements itself; the reader must not also be pipelined");
+		Assert.state(stepExecution != null || hasResource(reader.getSource()),
+				"C24Publisher has no StepExecution to take input.file from; set the source's resource or call setStepExecution");
+		// Positions are meaningless once elements are processed out of order
+		savedSaveState = reader.isSaveState();
+		reader.setSaveState(false);
+		try {
+			reader.setup(stepExecution);
+		} catch(RuntimeException ex) {
+			// We won't be closed
+			restoreSaveState();
+			throw ex;
+		}
+		splitter = null;
+	}
+
+	/**
+	 * Whether source has been given the resource(s) to read rather than needing to find them from a StepExecution.
+	 * Sources we don't know about are assumed to be self-sufficient.
+	 */
+	private static boolean hasResource(SplittingReaderSource source) {
+		if(source instanceof FileSource) {
+			return ((FileSource)source).getResource() != null;
+		} else if(source instanceof GzipFileSource) {
+			return ((GzipFileSource)source).getResource() != null;
+		} else if(source instanceof MappedFileSource) {
+			return ((MappedFileSource)source).getResource() != null;
+		} else if(source instanceof ZipFileSource) {
+			return ((ZipFileSource)source).getResource() != null;
+		} else if(source instanceof MultiResourceSplittingReaderSource) {
+			return ((MultiResourceSplittingReaderSource)source).getResources() != null;
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.util.ParallelPublisher#split()
+	 */
+	@Override
+	protected ElementContext split() {
+		while(true) {
+			if(splitter == null) {
+				splitter = reader.getSource().getNextReader();
+				if(splitter == null) {
+					return null;
+				}
+			}
+			ElementContext elementContext = reader.readElement(splitter);
+			if(elementContext.element == null || C24ItemReader.isBlank(elementContext.element)) {
+				// This reader has been exhausted
+				reader.discardReader(splitter);
+				splitter = null;
+				continue;
+			}
+			// The element is in a buffer that the next call to readElement will reuse
+			ElementContext copy = new ElementContext(elementContext.element.toString(), elementContext.context);
+			copy.readerId = elementContext.readerId;
+			copy.position = elementContext.position;
+			return copy;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.util.ParallelPublisher#process(java.lang.Object)
+	 */
+	@Override
+	protected Result process(ElementContext elementContext) {
+		ComplexDataObject result = reader.parse(elementContext);
+		if(result == null) {
+			// As with read, elements which don't parse to anything are skipped
+			return null;
+		}
+		reader.validate(result);
+		return reader.applyParseListener(result, elementContext.context);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.util.ParallelPublisher#close()
+	 */
+	@Override
+	protected void close() {
+		splitter = null;
+		try {
+			reader.cleanup();
+		} finally {
+			restoreSaveState();
+		}
+	}
+
+	/**
+	 * Gives the reader back the saveState setting it had before we opened it
+	 */
+	private void restoreSaveState() {
+		if(savedSaveState != null) {
+			reader.setSaveState(savedSaveState);
+			savedSaveState = null;
+		}
+	}
+
+}
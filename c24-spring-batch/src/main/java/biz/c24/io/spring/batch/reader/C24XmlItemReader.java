@@ -50,5 +50,20 @@ public class C24XmlItemReader<Result> extends C24ItemReader<Result> {
 
     }	
 
+	/**
+	 * Reads 'lines' of text from an XML file.
+	 * Lines are broken around the start of each new element
+	 * NB does not yet support '<' being used outside of an element declaration (e.g. within a CDATA section)
+	 */
+	@Override
+    protected CharSequence readLineSequence(SplittingReader reader) throws IOException {
+
+		if(isReadLineOverriddenBelow(C24XmlItemReader.class)) {
+			return readLine(reader);
+		}
+	    return reader.readUntilSequence('<');
+
+    }	
+
 }
 
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader;
+
+/**
+ * A ParseListener which receives lines and elements as CharSequences rather than Strings.
+ * 
+ * Where the C24ItemReader is given a CharSequenceParseListener, it will only ever invoke the CharSequence variants of
+ * processLine and getContext, avoiding the need to create a String for every line and element it reads. 
+ * Implementations will typically implement the String variants by delegating to the CharSequence ones.
+ * 
+ * The CharSequences passed in are views onto buffers which the C24ItemReader reuses; they are only valid for the duration
+ * of the callback. Implementations which need to retain their contents must call toString on them.
+ * 
+ * @author Andrew Elmore
+ */
+public interface CharSequenceParseListener<Context, Result> extends ParseListener<Context, Result> {
+	
+	/**
+	 * Callback invoked where the ItemReader is spltting the file (ie where an elementStartPattern is specified).
+	 * Allows the line to be read (e.g. to cache context information) and modified if desired.
+	 * If no modifications are required, the line should be returned as passed in
+	 * @param line The line of text the parser is about to process. Only valid for the duration of the call.
+	 * @return The line of text that the parser will receive
+	 */
+	public CharSequence processLine(CharSequence line);
+	
+	/**
+	 * Allows the callback to associate some context with the element that the parser is about to parse.
+	 * Only applicable where the ItemReader is spltting the file (ie where an elementStartPattern is specified).
+	 * The parser makes no use of the context, however will supply it back when it calls process
+	 * @param element The textual element that the parser is about to parse. Only valid for the duration of the call.
+	 * @return Context that the callback would like to receive when the parsed object is passed in the process method
+	 */
+	public Context getContext(CharSequence element); 
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import biz.c24.io.spring.batch.reader.source.CharArraySequence;
+
+/**
+ * Reader which consumes a CharSequence in place; the equivalent of a StringReader without first having to copy the 
+ * data into a String.
+ * Behaves as per StringReader, including reporting that it is always ready until closed.
+ * 
+ * @author Andrew Elmore
+ */
+class CharSequenceReader extends Reader {
+	
+	private CharSequence seq;
+	private int length;
+	private int index = 0;
+	private int mark = 0;
+	
+	public CharSequenceReader(CharSequence seq) {
+		this.seq = seq;
+		this.length = seq.length();
+	}
+	
+	private void ensureOpen() throws IOException {
+		if(seq == null) {
+			// The message is significant - see Parser.read
+			throw new IOException("Stream closed");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Reader#read()
+	 */
+	@Override
+	public int read() throws IOException {
+		ensureOpen();
+		return index < length? seq.charAt(index++) : -1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Reader#read(char[], int, int)
+	 */
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		ensureOpen();
+		if(off < 0 || len < 0 || off + len > cbuf.length) {
+			throw new IndexOutOfBoundsException();
+		} else if(len == 0) {
+			return 0;
+		} else if(index >= length) {
+			return -1;
+		}
+		
+		int end = Math.min(length, index + len);
+		int count = end - index;
+		if(seq instanceof StringBuilder) {
+			((StringBuilder)seq).getChars(index, end, cbuf, off);
+		} else if(seq instanceof String) {
+			((String)seq).getChars(index, end, cbuf, off);
+		} else if(seq instanceof CharArraySequence) {
+			((CharArraySequence)seq).getChars(index, end, cbuf, off);
+		} else {
+			for(int i = index; i < end; i++) {
+				cbuf[off++] = seq.charAt(i);
+			}
+		}
+		index = end;
+		return count;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Reader#skip(long)
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		ensureOpen();
+		long skipped = Math.max(-index, Math.min(length - index, n));
+		index += skipped;
+		return skipped;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Reader#ready()
+	 */
+	@Override
+	public boolean ready() throws IOException {
+		ensureOpen();
+		return true;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public void mark(int readAheadLimit) throws IOException {
+		ensureOpen();
+		mark = index;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		ensureOpen();
+		index = mark;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Reader#close()
+	 */
+	@Override
+	public void close() {
+		seq = null;
+	}
+
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses a gzip stream made up of BGZF blocks, inflating up to window blocks ahead of the caller in parallel.
+ *
+ * BGZF files (as produced by bgzip amongst others) are a series of independent gzip members, each of which records
+ * its own compressed size in a BC extra field. This allows us to find the start of the next member without inflating
+ * the current one and hence to hand each one to the Executor as soon as it has been read. The decompressed blocks are
+ * returned to the caller in their original order.
+ *
+ * Members without a BC field can't be located without inflating their predecessors, so on encountering one we
+ * drain the blocks already queued and then decompress the remainder of the stream sequentially.
+ *
+ * Not thread safe; intended to be wrapped in a single Reader.
+ *
+ * @author Andrew Elmore
+ */
+class BgzfInputStream extends InputStream {
+
+	/**
+	 * The fixed part of a gzip member header, up to and including XLEN
+	 */
+	private static final int HEADER_LENGTH = 12;
+
+	/**
+	 * FLG bit indicating the presence of an extra field
+	 */
+	private static final int FEXTRA = 0x04;
+
+	/**
+	 * Length of the gzip member trailer (CRC32 and ISIZE)
+	 */
+	private static final int TRAILER_LENGTH = 8;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final InputStream in;
+
+	private final Executor executor;
+
+	/**
+	 * The maximum number of blocks to inflate ahead of the caller
+	 */
+	private final int window;
+
+	/**
+	 * Blocks being inflated, in stream order
+	 */
+	private final LinkedList<FutureTask<byte[]>> pending = new LinkedList<FutureTask<byte[]>>();
+
+	/**
+	 * Set once we've read the last block from in
+	 */
+	private boolean endOfBlocks = false;
+
+	/**
+	 * Sequentially decompresses whatever follows the last BGZF block, if anything
+	 */
+	private InputStream tail = null;
+
+	/**
+	 * The block being returned to the caller
+	 */
+	private byte[] current = EMPTY;
+	private int index = 0;
+
+	/**
+	 * The number of blocks we've inflated in parallel
+	 */
+	private long blocks = 0;
+
+	/**
+	 * @param in The compressed data
+	 * @param executor Where to inflate blocks
+	 * @param window The maximum number of blocks to inflate ahead of the caller
+	 */
+	public BgzfInputStream(InputStream in, Executor executor, int window) {
+		this.in = in;
+		this.executor = executor;
+		this.window = Math.max(1, window);
+	}
+
+	/**
+	 * How many BGZF blocks have been read so far?
+	 *
+	 * @return The number of blocks read and inflated in parallel
+	 */
+	public long getBlockCount() {
+		return blocks;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#read()
+	 */
+	@Override
+	public int read() throws IOException {
+		if(index < current.length) {
+			return current[index++] & 0xFF;
+		}
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0? -1 : b[0] & 0xFF;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) {
+			return 0;
+		}
+		while(index >= current.length) {
+			if(!nextBlock()) {
+				return tail != null? tail.read(b, off, len) : -1;
+			}
+		}
+		int read = Math.min(len, current.length - index);
+		System.arraycopy(current, index, b, off, read);
+		index += read;
+		return read;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#available()
+	 */
+	@Override
+	public int available() throws IOException {
+		if(index < current.length) {
+			return current.length - index;
+		} else if(!endOfBlocks || !pending.isEmpty()) {
+			// As per InflaterInputStream, return 1 until we know we've reached the end of the data
+			return 1;
+		}
+		return tail != null? tail.available() : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.InputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		for(FutureTask<byte[]> task : pending) {
+			task.cancel(true);
+		}
+		pending.clear();
+		current = EMPTY;
+		index = 0;
+		endOfBlocks = true;
+		if(tail != null) {
+			tail.close();
+		} else {
+			in.close();
+		}
+	}
+
+	/**
+	 * Moves on to the next inflated block, waiting for it if necessary
+	 *
+	 * @return False if there are no more blocks
+	 */
+	private boolean nextBlock() throws IOException {
+		fillWindow();
+		if(pending.isEmpty()) {
+			return false;
+		}
+		FutureTask<byte[]> next = pending.removeFirst();
+		// Keep the Executor busy while we wait
+		fillWindow();
+
+		try {
+			current = next.get();
+			index = 0;
+			return true;
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a block to be inflated");
+		} catch(ExecutionException ex) {
+			if(ex.getCause() instanceof IOException) {
+				throw (IOException)ex.getCause();
+			}
+			throw new IOException("Failed to inflate block", ex.getCause());
+		}
+	}
+
+	/**
+	 * Reads blocks and starts inflating them until window are pending or we run out
+	 */
+	private void fillWindow() throws IOException {
+		while(!endOfBlocks && pending.size() < window) {
+			byte[] block = readBlock();
+			if(block == null) {
+				endOfBlocks = true;
+			} else {
+				FutureTask<byte[]> task = new FutureTask<byte[]>(new BlockInflater(block));
+				executor.execute(task);
+				pending.add(task);
+				blocks++;
+			}
+		}
+	}
+
+	/**
+	 * Reads the next complete BGZF block from in
+	 *
+	 * @return The compressed block including its header and trailer; null if there are no more BGZF blocks
+	 */
+	private byte[] readBlock() throws IOException {
+		byte[] header = new byte[HEADER_LENGTH];
+		int read = readFully(header, 0, HEADER_LENGTH);
+		if(read == 0) {
+			return null;
+		} else if(read < HEADER_LENGTH || (header[0] & 0xFF) != 0x1F || (header[1] & 0xFF) != 0x8B ||
+				(header[3] & FEXTRA) == 0) {
+			// Not a BGZF block; let GZIPInputStream make sense of it
+			startTail(header, read);
+			return null;
+		}
+
+		int xlen = readUnsignedShort(header, 10);
+		byte[] extra = new byte[xlen];
+		read = readFully(extra, 0, xlen);
+		int blockSize = read == xlen? getBlockSize(extra) : -1;
+		if(blockSize < 0) {
+			byte[] consumed = new byte[HEADER_LENGTH + read];
+			System.arraycopy(header, 0, consumed, 0, HEADER_LENGTH);
+			System.arraycopy(extra, 0, consumed, HEADER_LENGTH, read);
+			startTail(consumed, consumed.length);
+			return null;
+		}
+		if(blockSize < HEADER_LENGTH + xlen + TRAILER_LENGTH) {
+			throw new IOException("Invalid BGZF block size " + blockSize);
+		}
+
+		byte[] block = new byte[blockSize];
+		System.arraycopy(header, 0, block, 0, HEADER_LENGTH);
+		System.arraycopy(extra, 0, block, HEADER_LENGTH, xlen);
+		int remaining = blockSize - HEADER_LENGTH - xlen;
+		if(readFully(block, HEADER_LENGTH + xlen, remaining) < remaining) {
+			throw new EOFException("Truncated BGZF block");
+		}
+		return block;
+	}
+
+	/**
+	 * Finds the BC subfield in a gzip extra field
+	 *
+	 * @return The total size of the block, -1 if there is no BC subfield
+	 */
+	private static int getBlockSize(byte[] extra) {
+		int i = 0;
+		while(i + 4 <= extra.length) {
+			int length = readUnsignedShort(extra, i + 2);
+			if(extra[i] == 'B' && extra[i + 1] == 'C' && length == 2 && i + 6 <= extra.length) {
+				return readUnsignedShort(extra, i + 4) + 1;
+			}
+			i += 4 + length;
+		}
+		return -1;
+	}
+
+	/**
+	 * Sets up sequential decompression of the rest of the stream, starting with the bytes we've already consumed
+	 */
+	private void startTail(byte[] consumed, int length) throws IOException {
+		InputStream remainder = new SequenceInputStream(new ByteArrayInputStream(consumed, 0, length), in);
+		tail = new GZIPInputStream(remainder, 65536);
+	}
+
+	private static int readUnsignedShort(byte[] b, int offset) {
+		return (b[offset] & 0xFF) | ((b[offset + 1] & 0xFF) << 8);
+	}
+
+	/**
+	 * Reads until len bytes have been read or the stream ends
+	 *
+	 * @return The number of bytes read
+	 */
+	private int readFully(byte[] b, int off, int len) throws IOException {
+		int total = 0;
+		while(total < len) {
+			int read = in.read(b, off + total, len - total);
+			if(read < 0) {
+				break;
+			}
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * Inflates a single block, verifying its CRC and length
+	 */
+	private static class BlockInflater implements Callable<byte[]> {
+
+		private final byte[] block;
+
+		public BlockInflater(byte[] block) {
+			this.block = block;
+		}
+
+		@Override
+		public byte[] call() throws IOException {
+			// ISIZE is the last 4 bytes of the block
+			int size = readUnsignedShort(block, block.length - 4) | (readUnsignedShort(block, block.length - 2) << 16);
+			if(size == 0) {
+				// Typically the empty BGZF end of file marker
+				return EMPTY;
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+			GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(block), Math.max(512, Math.min(size, 65536)));
+			try {
+				byte[] buffer = new byte[8192];
+				int read;
+				while((read = gzip.read(buffer)) >= 0) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				gzip.close();
+			}
+			return out.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Searches a ByteBuffer for one or two byte values 8 bytes at a time.
+ *
+ * Each step reads a long and uses SWAR (SIMD within a register) arithmetic to determine whether any of its bytes
+ * match, only examining individual bytes once a match has been found. The longs are read from from onwards 
+ * without regard to alignment; the last few bytes, which don't fill a long, are checked one at a time.
+ *
+ * The match test used is exact (rather than the cheaper but approximate haszero trick, whose borrows can flag bytes
+ * next to a genuine match) so that the first match can be located directly from the result.
+ *
+ * @author Andrew Elmore
+ */
+final class ByteScanner {
+
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+	private static final long ONES = 0x0101010101010101L;
+
+	private ByteScanner() {
+	}
+
+	/**
+	 * Finds the first occurrence of b in buffer between from (inclusive) and limit (exclusive)
+	 *
+	 * @return The absolute index of b, limit if it isn't found
+	 */
+	static int indexOf(ByteBuffer buffer, int from, int limit, byte b) {
+		int i = from;
+		long pattern = (b & 0xFFL) * ONES;
+		boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+		for(; i + 8 <= limit; i += 8) {
+			long matches = zeroBytes(buffer.getLong(i) ^ pattern);
+			if(matches != 0) {
+				return i + firstByte(matches, bigEndian);
+			}
+		}
+		for(; i < limit; i++) {
+			if(buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * Finds the first occurrence of either a or b in buffer between from (inclusive) and limit (exclusive)
+	 *
+	 * @return The absolute index of the first match, limit if neither is found
+	 */
+	static int indexOfEither(ByteBuffer buffer, int from, int limit, byte a, byte b) {
+		int i = from;
+		long patternA = (a & 0xFFL) * ONES;
+		long patternB = (b & 0xFFL) * ONES;
+		boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+		for(; i + 8 <= limit; i += 8) {
+			long word = buffer.getLong(i);
+			long matches = zeroBytes(word ^ patternA) | zeroBytes(word ^ patternB);
+			if(matches != 0) {
+				return i + firstByte(matches, bigEndian);
+			}
+		}
+		for(; i < limit; i++) {
+			byte c = buffer.get(i);
+			if(c == a || c == b) {
+				return i;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * @return A word with the top bit of each byte set iff that byte of word is zero
+	 */
+	static long zeroBytes(long word) {
+		long t = (word & LOW_BITS) + LOW_BITS;
+		return ~(t | word | LOW_BITS);
+	}
+
+	/**
+	 * @return The offset, in memory order, of the first byte flagged in matches
+	 */
+	static int firstByte(long matches, boolean bigEndian) {
+		return (bigEndian? Long.numberOfLeadingZeros(matches) : Long.numberOfTrailingZeros(matches)) >>> 3;
+	}
+
+}
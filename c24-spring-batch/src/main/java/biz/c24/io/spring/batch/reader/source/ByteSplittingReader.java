@@ -0,0 +1,591 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * SplittingReader which reads bytes from an InputStream, locating line and delimiter boundaries on the raw bytes and
+ * decoding only the bytes which make up each returned line.
+ *
+ * This is the streaming counterpart of MappedSplittingReader, for data which can't be memory-mapped (compressed
+ * or partitioned files, non-file Resources). Compared to wrapping the InputStream in an InputStreamReader, each byte
+ * is decoded once, directly into the line it belongs to, rather than decoded into an intermediate char buffer which
+ * is then scanned and copied again. Lines which are entirely ASCII, and all ISO-8859-1 data, are widened byte by byte
+ * without going through a CharsetDecoder at all.
+ *
+ * As terminators and delimiters are matched as single bytes, the encoding must be ASCII-compatible
+ * (e.g. UTF-8, US-ASCII or ISO-8859-x) and delimiters passed to readUntil/readUntilInclusive must be ASCII characters.
+ * Positions returned by getPosition are byte offsets in the stream.
+ *
+ * @author Andrew Elmore
+ *
+ */
+public class ByteSplittingReader extends SplittingReader {
+
+    /**
+     * Default initial size of our buffer. It grows as necessary to hold the longest line.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Where we get our data from
+     */
+    private final InputStream in;
+
+    /**
+     * Cache for data read from the InputStream, and a ByteBuffer over it for the ByteScanner
+     */
+    private byte[] buffer;
+    private ByteBuffer wrapped;
+
+    /**
+     * Index in the buffer of the next byte to be consumed
+     */
+    private int index = 0;
+
+    /**
+     * Index in the buffer up to which data is populated
+     */
+    private int endIndex = 0;
+
+    /**
+     * Number of bytes read from the stream prior to those currently in the buffer
+     */
+    private long bufferOffset = 0;
+
+    private boolean endOfStream = false;
+
+    private final Charset charset;
+
+    /**
+     * Every byte of an ISO-8859-1 stream maps directly to the char with the same value
+     */
+    private final boolean latin1;
+
+    /**
+     * Used when callers consume us as a plain Reader
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * Used to decode lines which aren't pure ASCII
+     */
+    private final CharsetDecoder lineDecoder;
+
+    /**
+     * Reusable buffer we decode lines into for the readXXXSequence methods, and the view we hand out over it
+     */
+    private char[] decoded = new char[1024];
+    private final CharArraySequence view = new CharArraySequence(decoded);
+
+    /**
+     * Allow up to one 'line' of data to be pushed back, as per SplittingReader
+     */
+    private String cached = null;
+
+    /**
+     * The offset in the stream at which the cached line started
+     */
+    private long cachedStart = 0;
+
+    /**
+     * The last line we returned and where it started; lets us track our position accurately across a pushback
+     */
+    private CharSequence lastLine = null;
+    private long lastLineStart = 0;
+
+    private boolean isOpen = true;
+
+    /**
+     * @param in The stream to read from. Will be closed when this reader is closed.
+     * @param encoding The (ASCII-compatible) encoding of the stream
+     */
+    public ByteSplittingReader(InputStream in, String encoding) {
+        this(in, encoding, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param in The stream to read from. Will be closed when this reader is closed.
+     * @param encoding The (ASCII-compatible) encoding of the stream
+     * @param bufferSize The initial size of our buffer
+     */
+    public ByteSplittingReader(InputStream in, String encoding, int bufferSize) {
+        if(bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+        this.wrapped = ByteBuffer.wrap(buffer);
+        this.charset = Charset.forName(encoding);
+        if(!Arrays.equals("\r\n".getBytes(charset), new byte[] {'\r', '\n'})) {
+            throw new IllegalArgumentException("Encoding " + encoding + " is not ASCII-compatible so cannot be split on raw bytes");
+        }
+        this.latin1 = charset.name().equals("ISO-8859-1");
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.lineDecoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Returns this reader; there is no intermediate Reader between us and the stream
+     */
+    @Override
+    public Reader getReader() {
+        return this;
+    }
+
+    /**
+     * The offset in the stream of the next byte that will be consumed, taking into account any line that has been
+     * pushed back.
+     *
+     * @return The offset in the stream of the next byte to be read
+     */
+    @Override
+    public long getPosition() {
+        return cached != null? cachedStart : bufferOffset + index;
+    }
+
+    /**
+     * Moves to a position previously returned by getPosition, discarding any pushed back line.
+     * As per SplittingReader, we can only move forwards and do so by discarding bytes without decoding them.
+     *
+     * @param position The offset in the stream of the next byte to read; should be the start of a line
+     * @throws IOException If position is before our current position or beyond the end of the data
+     */
+    @Override
+    public void seek(long position) throws IOException {
+        long current = getPosition();
+        if(position < current) {
+            throw new IOException("Cannot seek backwards from position " + current + " to " + position);
+        }
+        cached = null;
+        lastLine = null;
+        long toSkip = position - (bufferOffset + index);
+        while(toSkip > 0) {
+            int available = endIndex - index;
+            if(available > 0) {
+                int skipped = (int)Math.min(available, toSkip);
+                index += skipped;
+                toSkip -= skipped;
+            } else if(!fill()) {
+                throw new IOException("Cannot seek to position " + position + "; data ends at " + getPosition());
+            }
+        }
+    }
+
+    /**
+     * Reads more data into the buffer, discarding the bytes before index. If the buffer is full of data we still
+     * need, it is grown.
+     *
+     * @return False if there is no more data
+     */
+    private boolean fill() throws IOException {
+        if(endOfStream) {
+            return false;
+        }
+        if(index > 0) {
+            System.arraycopy(buffer, index, buffer, 0, endIndex - index);
+            bufferOffset += index;
+            endIndex -= index;
+            index = 0;
+        }
+        if(endIndex == buffer.length) {
+            // The current line is longer than our buffer
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            wrapped = ByteBuffer.wrap(buffer);
+        }
+        int read = in.read(buffer, endIndex, buffer.length - endIndex);
+        if(read < 0) {
+            endOfStream = true;
+            return false;
+        }
+        endIndex += read;
+        return true;
+    }
+
+    /**
+     * Validates that c can be matched as a single byte
+     */
+    private byte toByte(char c) {
+        if(c > 0x7F) {
+            throw new IllegalArgumentException("ByteSplittingReader can only split on ASCII characters");
+        }
+        return (byte)c;
+    }
+
+    /**
+     * Finds the first occurrence of b at or after index + skip, reading more data as necessary
+     *
+     * @return The index in the buffer of b, endIndex if the data ends first, -1 if there is no more data
+     */
+    private int indexOf(byte b, int skip) throws IOException {
+        if(index >= endIndex && !fill()) {
+            return -1;
+        }
+        // Track how far we've searched relative to index, as filling the buffer moves the data
+        int scanned = skip;
+        while(true) {
+            int from = index + scanned;
+            int found = from < endIndex? ByteScanner.indexOf(wrapped, from, endIndex, b) : endIndex;
+            if(found < endIndex) {
+                return found;
+            }
+            scanned = endIndex - index;
+            if(!fill()) {
+                return endIndex;
+            }
+        }
+    }
+
+    /**
+     * @return The index in the buffer at which the data returned by readUntil(c) would end, -1 if there is no more data
+     */
+    private int findUntil(char c) throws IOException {
+        // Skip the first character - if it matches c, we want the next one anyway
+        return indexOf(toByte(c), 1);
+    }
+
+    /**
+     * @return The index in the buffer at which the data returned by readUntilInclusive(c) would end, -1 if there is no more data
+     */
+    private int findUntilInclusive(char c) throws IOException {
+        int found = indexOf(toByte(c), 0);
+        return found < 0 || found == endIndex? found : found + 1;
+    }
+
+    /**
+     * @return The index in the buffer at which the data returned by readLine would end, -1 if there is no more data
+     */
+    private int findLineEnd() throws IOException {
+        if(index >= endIndex && !fill()) {
+            return -1;
+        }
+        int scanned = 0;
+        while(true) {
+            int found = ByteScanner.indexOfEither(wrapped, index + scanned, endIndex, (byte)'\n', (byte)'\r');
+            if(found < endIndex) {
+                if(buffer[found] == '\r') {
+                    if(found + 1 == endIndex) {
+                        // Need to see the next byte to know whether it's a \r\n
+                        int relative = found - index;
+                        fill();
+                        found = index + relative;
+                    }
+                    if(found + 1 < endIndex && buffer[found + 1] == '\n') {
+                        return found + 2;
+                    }
+                }
+                return found + 1;
+            }
+            scanned = endIndex - index;
+            if(!fill()) {
+                return endIndex;
+            }
+        }
+    }
+
+    /**
+     * Decodes the bytes in [index, to) into decoded and moves index to the end of them
+     *
+     * @return The number of chars decoded
+     */
+    private int decode(int to) {
+        int len = to - index;
+        // Each byte in an ASCII-compatible encoding decodes to at most one char
+        if(decoded.length < len) {
+            decoded = new char[Math.max(len, decoded.length * 2)];
+        }
+        lastLineStart = bufferOffset + index;
+        byte[] bytes = buffer;
+        int from = index;
+        index = to;
+
+        int i = 0;
+        if(latin1) {
+            for(; i < len; i++) {
+                decoded[i] = (char)(bytes[from + i] & 0xFF);
+            }
+            return len;
+        }
+
+        // Most data is ASCII; only involve the decoder from the first byte that isn't
+        for(; i < len; i++) {
+            byte b = bytes[from + i];
+            if(b < 0) {
+                break;
+            }
+            decoded[i] = (char)b;
+        }
+        if(i == len) {
+            return len;
+        }
+        CharBuffer out = CharBuffer.wrap(decoded, i, decoded.length - i);
+        lineDecoder.reset();
+        lineDecoder.decode(ByteBuffer.wrap(bytes, from + i, len - i), out, true);
+        lineDecoder.flush(out);
+        return out.position();
+    }
+
+    /**
+     * Decodes the bytes in [index, to) into a String
+     */
+    private String extract(int to) {
+        int len = decode(to);
+        String line = new String(decoded, 0, len);
+        lastLine = line;
+        return line;
+    }
+
+    /**
+     * Decodes the bytes in [index, to) into our reusable view
+     */
+    private CharSequence extractSequence(int to) {
+        int len = decode(to);
+        view.set(decoded, 0, len);
+        lastLine = view;
+        return view;
+    }
+
+    private String takeCached() {
+        String result = cached;
+        cached = null;
+        lastLine = result;
+        lastLineStart = cachedStart;
+        return result;
+    }
+
+    /**
+     * As per SplittingReader.readUntil
+     *
+     * @param c The ASCII character to stop extracting on.
+     */
+    @Override
+    public String readUntil(char c) throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        int to = findUntil(c);
+        return to < 0? null : extract(to);
+    }
+
+    /**
+     * As per SplittingReader.readUntilSequence
+     *
+     * @param c The ASCII character to stop extracting on.
+     */
+    @Override
+    public CharSequence readUntilSequence(char c) throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        int to = findUntil(c);
+        return to < 0? null : extractSequence(to);
+    }
+
+    /**
+     * As per SplittingReader.readUntilInclusive
+     *
+     * @param c The ASCII character to stop extracting on.
+     */
+    @Override
+    public String readUntilInclusive(char c) throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        int to = findUntilInclusive(c);
+        return to < 0? null : extract(to);
+    }
+
+    /**
+     * As per SplittingReader.readUntilInclusiveSequence
+     *
+     * @param c The ASCII character to stop extracting on.
+     */
+    @Override
+    public CharSequence readUntilInclusiveSequence(char c) throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        int to = findUntilInclusive(c);
+        return to < 0? null : extractSequence(to);
+    }
+
+    /**
+     * Reads a line from the stream. A line is terminated with one of:
+     * \n
+     * \r
+     * \r\n
+     *
+     * @return The extracted String, including its terminator
+     */
+    @Override
+    public String readLine() throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        int to = findLineEnd();
+        return to < 0? null : extract(to);
+    }
+
+    /**
+     * As per readLine but decodes the line into a reusable buffer rather than creating a String.
+     * The returned CharSequence is only valid until the next call to a read or pushback method on this reader.
+     *
+     * @return The extracted line, including its terminator
+     */
+    @Override
+    public CharSequence readLineSequence() throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        int to = findLineEnd();
+        return to < 0? null : extractSequence(to);
+    }
+
+    /**
+     * Allow a caller to hand back a line of input to us. Subsequent attempts to read data will consume
+     * from this data first.
+     */
+    @Override
+    public void pushback(String line) {
+        cached = line;
+        // If it's what we just handed out, we know where it came from
+        cachedStart = line == lastLine? lastLineStart : bufferOffset + index;
+        lastLine = null;
+    }
+
+    /**
+     * Allow a caller to hand back a line of input to us. Subsequent attempts to read data will consume
+     * from this data first.
+     *
+     * If line is what we just handed out from one of the readXXXSequence methods and its bytes are still in our
+     * buffer, we simply rewind to where it started.
+     */
+    @Override
+    public void pushback(CharSequence line) {
+        if(line == view && line == lastLine && lastLineStart >= bufferOffset) {
+            index = (int)(lastLineStart - bufferOffset);
+            lastLine = null;
+        } else {
+            pushback(line == null? null : line.toString());
+        }
+    }
+
+    /**
+     * Whether or not this Reader has more data available
+     */
+    @Override
+    public boolean ready() throws IOException {
+        if(!isOpen) {
+            throw new IOException("Stream closed");
+        }
+        return cached != null || index < endIndex || (!endOfStream && in.available() > 0);
+    }
+
+    /**
+     * Closes this reader and the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        isOpen = false;
+        cached = null;
+        lastLine = null;
+        in.close();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.Reader#read(char[], int, int)
+     */
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+
+        if(!isOpen) {
+            throw new IOException("Stream closed");
+        }
+
+        int startOffset = off;
+
+        if(cached != null && len > 0) {
+            // Use this up first
+            int charsToCopy = Math.min(len, cached.length());
+            cached.getChars(0, charsToCopy, cbuf, off);
+            off += charsToCopy;
+            len -= charsToCopy;
+            cached = charsToCopy < cached.length()? cached.substring(charsToCopy) : null;
+            // We no longer know precisely where the remainder of the cached data started
+            cachedStart = bufferOffset + index;
+        }
+        lastLine = null;
+
+        if(len > 0) {
+            CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+
+            while(out.hasRemaining()) {
+                if(index >= endIndex && !fill()) {
+                    break;
+                }
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, index, endIndex - index);
+                CoderResult result = decoder.decode(bytes, out, false);
+                index = bytes.position();
+
+                if(result.isError()) {
+                    // Shouldn't happen as we replace malformed input
+                    throw new CharacterCodingException();
+                } else if(result.isOverflow()) {
+                    break;
+                } else if(index < endIndex && !fill()) {
+                    // The stream ends part way through a character
+                    bytes = ByteBuffer.wrap(buffer, index, endIndex - index);
+                    decoder.decode(bytes, out, true);
+                    index = bytes.position();
+                    decoder.flush(out);
+                    decoder.reset();
+                    break;
+                }
+            }
+
+            off = out.position();
+
+            if(off == startOffset && len == 1 && (index < endIndex || fill())) {
+                // The next character needs a surrogate pair but the caller only has room for one char
+                char[] pair = new char[2];
+                int charsRead = read(pair, 0, 2);
+                cbuf[off++] = pair[0];
+                if(charsRead > 1) {
+                    cached = String.valueOf(pair[1]);
+                    cachedStart = bufferOffset + index;
+                }
+            }
+        }
+
+        return startOffset == off? -1 : off - startOffset;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+/**
+ * A CharSequence view over a region of a char array.
+ * 
+ * SplittingReaders hand these out from their readXXXSequence methods to avoid creating a String for every line.
+ * As the underlying array is reused, the contents of the view are only valid until the next read from the
+ * SplittingReader that returned it; callers which need to retain the data must call toString.
+ * 
+ * @author Andrew Elmore
+ *
+ */
+public final class CharArraySequence implements CharSequence {
+    
+    private char[] array;
+    private int start;
+    private int length;
+    
+    CharArraySequence(char[] array) {
+        this.array = array;
+    }
+    
+    /**
+     * Repoint this view at the region [start, end) of array
+     */
+    void set(char[] array, int start, int end) {
+        this.array = array;
+        this.start = start;
+        this.length = end - start;
+    }
+    
+    /**
+     * The array this view is currently over
+     */
+    char[] getArray() {
+        return array;
+    }
+    
+    /**
+     * The offset in the underlying array at which this view starts
+     */
+    int getStart() {
+        return start;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.CharSequence#length()
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.CharSequence#charAt(int)
+     */
+    @Override
+    public char charAt(int index) {
+        if(index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of sequence of length " + length);
+        }
+        return array[start + index];
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.CharSequence#subSequence(int, int)
+     */
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if(from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range [" + from + ", " + to + ") for sequence of length " + length);
+        }
+        return new String(array, start + from, to - from);
+    }
+    
+    /**
+     * Copies the characters in the range [srcBegin, srcEnd) to dst, as per String.getChars
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        if(srcBegin < 0 || srcEnd > length || srcBegin > srcEnd) {
+            throw new IndexOutOfBoundsException("Invalid range [" + srcBegin + ", " + srcEnd + ") for sequence of length " + length);
+        }
+        System.arraycopy(array, start + srcBegin, dst, dstBegin, srcEnd - srcBegin);
+    }
+    
+    /**
+     * Appends the contents of this view to builder without creating an intermediate String
+     * 
+     * @param builder The StringBuilder to append to
+     * @return builder
+     */
+    public StringBuilder appendTo(StringBuilder builder) {
+        return builder.append(array, start, length);
+    }
+    
+    /**
+     * Returns a copy of the characters in this view
+     */
+    @Override
+    public String toString() {
+        return new String(array, start, length);
+    }
+
+}
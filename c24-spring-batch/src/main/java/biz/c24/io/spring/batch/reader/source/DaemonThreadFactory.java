@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads for the pools that sources (and publishers) create for themselves when they aren't
+ * given an Executor, so that one which isn't closed can't prevent the JVM from exiting.
+ * 
+ * @author Andrew Elmore
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+	
+	private static final AtomicInteger POOL_ID = new AtomicInteger(0);
+	
+	private final String prefix;
+	private final AtomicInteger threadId = new AtomicInteger(0);
+	
+	/**
+	 * @param owner The simple name of the class creating the pool, for example "ZipFileSource"
+	 * @param purpose What the threads are for, for example "prefetch"
+	 */
+	public DaemonThreadFactory(String owner, String purpose) {
+		prefix = owner + "-" + POOL_ID.incrementAndGet() + "-" + purpose + "-";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, prefix + threadId.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
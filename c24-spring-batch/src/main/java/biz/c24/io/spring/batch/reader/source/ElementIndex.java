@@ -0,0 +1,418 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The byte offset and length of every element in a file, as recorded by the C24ItemReader while it splits the file.
+ *
+ * The index is keyed to the size and modification time of the file it describes; load will not return an index
+ * for a file which has since changed.
+ *
+ * Entries are stored as variable-length encoded pairs of (gap since the end of the previous element, length), which
+ * for typical records takes 2-4 bytes per element. The absolute position of every SAMPLE_INTERVAL'th entry is kept
+ * so that any element can be located by decoding at most SAMPLE_INTERVAL entries. Once built the index is
+ * immutable and can be shared between threads; each thread should use its own Cursor.
+ *
+ * @author Andrew Elmore
+ */
+public final class ElementIndex {
+
+	/**
+	 * Appended to the path of a file to give the path of its index
+	 */
+	public static final String FILE_SUFFIX = ".c24idx";
+
+	private static final int MAGIC = 0x43323449;
+	private static final int VERSION = 1;
+
+	static final int SAMPLE_INTERVAL = 128;
+
+	private final long fileSize;
+	private final long lastModified;
+	private final long size;
+	private final byte[] data;
+	private final int dataLength;
+
+	/**
+	 * For every SAMPLE_INTERVAL'th entry, the offset in data at which it's encoded and the end of the preceding element
+	 */
+	private final int[] sampleOffsets;
+	private final long[] sampleEnds;
+
+	private ElementIndex(long fileSize, long lastModified, long size, byte[] data, int dataLength) throws IOException {
+		this.fileSize = fileSize;
+		this.lastModified = lastModified;
+		this.size = size;
+		this.data = data;
+		this.dataLength = dataLength;
+
+		long numSamples = (size + SAMPLE_INTERVAL - 1) / SAMPLE_INTERVAL;
+		if(size < 0 || numSamples > Integer.MAX_VALUE) {
+			throw new IOException("Invalid index size " + size);
+		}
+		sampleOffsets = new int[(int)numSamples];
+		sampleEnds = new long[(int)numSamples];
+
+		// Walk the entries once to find the sample points, checking that they're consistent as we go
+		int offset = 0;
+		long end = 0;
+		long[] decoded = new long[1];
+		for(long i = 0; i < size; i++) {
+			if(i % SAMPLE_INTERVAL == 0) {
+				sampleOffsets[(int)(i / SAMPLE_INTERVAL)] = offset;
+				sampleEnds[(int)(i / SAMPLE_INTERVAL)] = end;
+			}
+			offset = readVarLong(data, offset, dataLength, decoded);
+			end += decoded[0];
+			offset = readVarLong(data, offset, dataLength, decoded);
+			end += decoded[0];
+		}
+		if(offset != dataLength || end > fileSize) {
+			throw new IOException("Index entries do not match its header");
+		}
+	}
+
+	/**
+	 * The number of elements in the index
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * The size of the file the index was recorded from
+	 */
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	/**
+	 * The modification time of the file the index was recorded from
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Is this an index of file in its current state?
+	 *
+	 * @param file The file to check against
+	 * @return true iff file has the same size and modification time as the file the index was recorded from
+	 */
+	public boolean isValidFor(File file) {
+		return file.isFile() && file.length() == fileSize && file.lastModified() == lastModified;
+	}
+
+	/**
+	 * Creates a Cursor positioned before the first element
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Finds the first element which starts at or after offset
+	 *
+	 * @param offset A byte offset in the file
+	 * @return The number of the element, size() if there isn't one
+	 */
+	public long indexOf(long offset) {
+		Cursor cursor = new Cursor();
+		// Find the last sample starting before offset, then step forward from it
+		int low = 0;
+		int high = sampleOffsets.length - 1;
+		int from = 0;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			cursor.moveTo((long)mid * SAMPLE_INTERVAL);
+			if(cursor.getStart() < offset) {
+				from = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		for(long i = (long)from * SAMPLE_INTERVAL; cursor.moveTo(i); i++) {
+			if(cursor.getStart() >= offset) {
+				return i;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * The path of the index for file
+	 */
+	public static File indexFileFor(File file) {
+		return new File(file.getPath() + FILE_SUFFIX);
+	}
+
+	/**
+	 * Writes the index to indexFile. The index is written to a temporary file first so that a partially written index
+	 * is never seen.
+	 *
+	 * @param indexFile The file to write to; any existing file is replaced
+	 * @throws IOException If the index can't be written
+	 */
+	public void save(File indexFile) throws IOException {
+		File tmpFile = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fileSize);
+			out.writeLong(lastModified);
+			out.writeLong(size);
+			out.writeInt(dataLength);
+			out.write(data, 0, dataLength);
+		} finally {
+			out.close();
+		}
+		// Windows won't rename over an existing file
+		indexFile.delete();
+		if(!tmpFile.renameTo(indexFile)) {
+			tmpFile.delete();
+			throw new IOException("Failed to rename " + tmpFile + " to " + indexFile);
+		}
+	}
+
+	/**
+	 * Loads the index of file, if one exists and is up to date
+	 *
+	 * @param indexFile The file the index was saved to
+	 * @param file The file the index describes
+	 * @return The index, null if indexFile doesn't exist or file has changed since the index was recorded
+	 * @throws IOException If indexFile exists but isn't a valid index
+	 */
+	public static ElementIndex load(File indexFile, File file) throws IOException {
+		if(!indexFile.isFile()) {
+			return null;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+		try {
+			if(in.readInt() != MAGIC) {
+				throw new IOException(indexFile + " is not an element index");
+			}
+			int version = in.readInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported version " + version + " of element index " + indexFile);
+			}
+			long fileSize = in.readLong();
+			long lastModified = in.readLong();
+			if(!file.isFile() || file.length() != fileSize || file.lastModified() != lastModified) {
+				// Stale
+				return null;
+			}
+			long size = in.readLong();
+			int dataLength = in.readInt();
+			if(dataLength < 0 || dataLength > indexFile.length()) {
+				throw new IOException("Invalid data length " + dataLength + " in element index " + indexFile);
+			}
+			byte[] data = new byte[dataLength];
+			in.readFully(data);
+			return new ElementIndex(fileSize, lastModified, size, data, dataLength);
+		} catch(EOFException ex) {
+			throw new IOException("Element index " + indexFile + " is truncated", ex);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Decodes the unsigned variable-length long at data[offset] into result[0]
+	 *
+	 * @return The offset of the byte following it
+	 */
+	private static int readVarLong(byte[] data, int offset, int limit, long[] result) throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			if(offset >= limit) {
+				throw new IOException("Index entries do not match its header");
+			}
+			byte b = data[offset++];
+			value |= (long)(b & 0x7F) << shift;
+			if(b >= 0) {
+				result[0] = value;
+				return offset;
+			}
+		}
+		throw new IOException("Malformed index entry");
+	}
+
+	/**
+	 * Steps through the elements of the index. Moving forward by less than SAMPLE_INTERVAL elements only decodes the
+	 * intervening entries.
+	 */
+	public final class Cursor {
+
+		private long current = -1;
+		private int offset = 0;
+		private long end = 0;
+		private long start;
+		private long length;
+		private final long[] decoded = new long[1];
+
+		private Cursor() {
+		}
+
+		/**
+		 * Positions the cursor on element
+		 *
+		 * @param element The number of the element, from 0
+		 * @return false if there is no such element
+		 */
+		public boolean moveTo(long element) {
+			if(element < 0 || element >= size) {
+				return false;
+			} else if(element == current) {
+				return true;
+			}
+			if(element < current || element - current > SAMPLE_INTERVAL) {
+				int sample = (int)(element / SAMPLE_INTERVAL);
+				current = (long)sample * SAMPLE_INTERVAL - 1;
+				offset = sampleOffsets[sample];
+				end = sampleEnds[sample];
+			}
+			try {
+				while(current < element) {
+					offset = readVarLong(data, offset, dataLength, decoded);
+					start = end + decoded[0];
+					offset = readVarLong(data, offset, dataLength, decoded);
+					length = decoded[0];
+					end = start + length;
+					current++;
+				}
+			} catch(IOException ex) {
+				// Can't happen; the entries were checked when the index was created
+				throw new IllegalStateException(ex);
+			}
+			return true;
+		}
+
+		/**
+		 * Moves to the element following the current one
+		 *
+		 * @return false if there are no more elements
+		 */
+		public boolean next() {
+			return moveTo(current + 1);
+		}
+
+		/**
+		 * The number of the element the cursor is on, -1 if it hasn't been positioned
+		 */
+		public long getElement() {
+			return current;
+		}
+
+		/**
+		 * The byte offset in the file of the start of the current element
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * The length in bytes of the current element
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * The byte offset in the file of the end (exclusive) of the current element
+		 */
+		public long getEnd() {
+			return end;
+		}
+	}
+
+	/**
+	 * Accumulates the entries for an index as a file is split. Elements must be added in the order they occur in the
+	 * file. Not thread-safe.
+	 */
+	public static class Builder {
+
+		private byte[] data = new byte[4096];
+		private int dataLength = 0;
+		private long size = 0;
+		private long end = 0;
+
+		/**
+		 * Records the next element in the file
+		 *
+		 * @param start The byte offset of the start of the element; must not be before the end of the previous one
+		 * @param length The length of the element in bytes
+		 */
+		public void add(long start, long length) {
+			if(start < end || length < 0) {
+				throw new IllegalArgumentException("Element [" + start + ", " + (start + length) + ") overlaps the previous element, which ends at " + end);
+			}
+			writeVarLong(start - end);
+			writeVarLong(length);
+			end = start + length;
+			size++;
+		}
+
+		/**
+		 * The number of elements added so far
+		 */
+		public long size() {
+			return size;
+		}
+
+		/**
+		 * Creates the index
+		 *
+		 * @param fileSize The size of the file the elements were read from, before it was read
+		 * @param lastModified The modification time of the file the elements were read from, before it was read
+		 */
+		public ElementIndex build(long fileSize, long lastModified) {
+			try {
+				return new ElementIndex(fileSize, lastModified, size, data, dataLength);
+			} catch(IOException ex) {
+				throw new IllegalStateException("Elements extend beyond the end of the file", ex);
+			}
+		}
+
+		private void writeVarLong(long value) {
+			if(dataLength + 10 > data.length) {
+				if(data.length >= Integer.MAX_VALUE / 2) {
+					throw new IllegalStateException("Too many elements to index");
+				}
+				byte[] newData = new byte[data.length * 2];
+				System.arraycopy(data, 0, newData, 0, dataLength);
+				data = newData;
+			}
+			while((value & ~0x7FL) != 0) {
+				data[dataLength++] = (byte)((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			data[dataLength++] = (byte)value;
+		}
+	}
+
+}
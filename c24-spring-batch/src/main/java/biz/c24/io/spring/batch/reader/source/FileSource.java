@@ -16,14 +16,17 @@
 package biz.c24.io.spring.batch.reader.source;
 
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.core.io.Resource;
 
+import biz.c24.io.spring.batch.partition.ByteRangePartitioner;
 import biz.c24.io.spring.util.C24Utils;
 
 /**
@@ -32,14 +35,25 @@ import biz.c24.io.spring.util.C24Utils;
  * if not specified, a property called input.file in the job parameters
  * (as populated by Spring Batch's org.springframework.batch.admin.integration.FileToJobLaunchRequestAdapter)
  * 
+ * If the step's ExecutionContext contains a byte range (as populated by the ByteRangePartitioner), only that range of
+ * the file is read. In that case the file path in the ExecutionContext takes precedence over the job parameter.
+ * 
+ * When a step is restarted, the characters consumed by the previous execution are skipped over without being 
+ * split or parsed. MappedFileSource can instead move directly to the previous byte offset.
+ * 
  * @author Andrew Elmore
  */
-public class FileSource implements SplittingReaderSource {
+public class FileSource implements RestartableSplittingReaderSource {
     
     private static final Logger LOG = LoggerFactory.getLogger(FileSource.class);
 	
 	private SplittingReader reader = null;
 	
+	/**
+	 * The reader handed out by getNextReader. We still own it so close it when it's discarded or we're closed.
+	 */
+	private SplittingReader issuedReader = null;
+	
 	private String name;
 	
 	private Resource resource = null;
@@ -48,6 +62,8 @@ public class FileSource implements SplittingReaderSource {
 	
 	private boolean consistentLineTerminators = true;
 	
+	private boolean byteSplitting = false;
+	
 	/**
 	 * How many lines at the start of the file should we skip?
 	 */
@@ -70,14 +86,28 @@ public class FileSource implements SplittingReaderSource {
     	    // Get an InputStream and a name for where we're reading from
     	    // Use the Resource if supplied
     	    
+    	    // If we've been partitioned, find out which part of the file we're responsible for
+    	    ExecutionContext context = stepExecution != null? stepExecution.getExecutionContext() : null;
+    	    long startOffset = 0;
+    	    long endOffset = -1;
+    	    if(context != null && context.containsKey(ByteRangePartitioner.START_OFFSET_KEY)) {
+    	        startOffset = context.getLong(ByteRangePartitioner.START_OFFSET_KEY);
+    	        endOffset = context.getLong(ByteRangePartitioner.END_OFFSET_KEY, -1);
+    	    }
+    	    
     	    InputStream source = null;
     	    if(resource != null) {
     	        name = resource.getFilename();
     	        source = resource.getInputStream();
     	    } else {
     	        
-    	        // If no resource supplied, fallback to a Job parameter called input.file
-    	        name = stepExecution.getJobParameters().getString("input.file");
+    	        // If no resource supplied, fallback to a property called input.file in the partition's ExecutionContext
+    	        // or failing that the Job parameters
+    	        if(context != null && context.containsKey(ByteRangePartitioner.FILE_KEY)) {
+    	            name = context.getString(ByteRangePartitioner.FILE_KEY);
+    	        } else {
+    	            name = stepExecution.getJobParameters().getString("input.file");
+    	        }
     	        
     	        // Remove any leading file:// if it exists
     	        if(name.startsWith("file://")) {
@@ -87,10 +117,20 @@ public class FileSource implements SplittingReaderSource {
     	        source = new FileInputStream(name);   
     	    }
     
+    	    if(startOffset > 0 || endOffset >= 0) {
+    	        LOG.debug("Restricting {} to byte range [{}, {})", new Object[] {name, startOffset, endOffset});
+    	        source = new RangeInputStream(source, startOffset, endOffset);
+    	    }
+    
 			// Prime the reader
     	    LOG.debug("Opening {} with encoding {}", name, getEncoding());
-			reader = new SplittingReader(new InputStreamReader(source, getEncoding()), consistentLineTerminators);
-			if(skipLines > 0) {
+			if(byteSplitting) {
+			    reader = new ByteSplittingReader(source, getEncoding());
+			} else {
+			    reader = new SplittingReader(new InputStreamReader(source, getEncoding()), consistentLineTerminators);
+			}
+			// Header lines only exist at the start of the file
+			if(skipLines > 0 && startOffset == 0) {
 				for(int i = 0; i < skipLines && reader.ready(); i++) {
 					// Skip the line
 					reader.readLine();
@@ -105,15 +145,19 @@ public class FileSource implements SplittingReaderSource {
 	 * @see biz.c24.spring.batch.BufferedReaderSource#close()
 	 */
 	public void close() {
-		if(reader != null) {
-			try {
+		try {
+			if(reader != null) {
 				reader.close();
 				// Spring Batch lifecycle will ensure that this doesn't happen while 
 				// someone is still trying to read (ie calling getReader and risking an NPE)
 				reader = null;
-			} catch (IOException e) {
-				throw new RuntimeException(e);
 			}
+			if(issuedReader != null) {
+				issuedReader.close();
+				issuedReader = null;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
 	}
 	
@@ -137,6 +181,9 @@ public class FileSource implements SplittingReaderSource {
 	public SplittingReader getNextReader() {
 	    SplittingReader retVal = reader;
 		reader = null;
+		if(retVal != null) {
+			issuedReader = retVal;
+		}
 		return retVal;
 	}
 
@@ -145,11 +192,36 @@ public class FileSource implements SplittingReaderSource {
 		return true;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.RestartableSplittingReaderSource#getReaderId(biz.c24.io.spring.batch.reader.source.SplittingReader)
+	 */
+	@Override
+	public String getReaderId(SplittingReader reader) {
+		// We only ever have one reader
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.RestartableSplittingReaderSource#seek(java.lang.String, long)
+	 */
+	@Override
+	public void seek(String readerId, long position) throws IOException {
+		if(reader == null) {
+			throw new IOException("Cannot seek in " + name + " as its reader has already been consumed");
+		}
+		reader.seek(position);
+	}
+
 	@Override
 	public void discard(SplittingReader reader) throws IOException {
 		if(this.reader == reader) {
 			reader.close();
 			this.reader = null;
+		} else if(reader != null && issuedReader == reader) {
+			reader.close();
+			issuedReader = null;
 		}
 		
 	}
@@ -217,7 +289,109 @@ public class FileSource implements SplittingReaderSource {
      */
     public void setConsistentLineTerminators(boolean consistentLineTerminators) {
         this.consistentLineTerminators = consistentLineTerminators;
+    }
+
+    /**
+     * Are lines located and decoded directly from the underlying bytes?
+     * @return true if a ByteSplittingReader is being used
+     */
+    public boolean isByteSplitting() {
+        return byteSplitting;
+    }
+
+    /**
+     * If set, lines are located in the raw bytes of the file and only the bytes making up each line are decoded,
+     * avoiding decoding the whole file through an InputStreamReader first. Only valid for ASCII-compatible encodings
+     * such as UTF-8 and ISO-8859-1.
+     *
+     * Reader positions become byte rather than character offsets, so a restarted job must use the same setting.
+     *
+     * @param byteSplitting Set to true to split the file on its bytes
+     */
+    public void setByteSplitting(boolean byteSplitting) {
+        this.byteSplitting = byteSplitting;
     }	
+    
+    /**
+     * Restricts an InputStream to the byte range [start, end) of the underlying data
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        
+        /**
+         * How many more bytes we can return. Negative if unbounded.
+         */
+        private long remaining;
+        
+        /**
+         * @param in The stream to read from
+         * @param start The offset of the first byte to return
+         * @param end The offset at which to stop returning data (exclusive); negative to read to the end of the stream
+         */
+        public RangeInputStream(InputStream in, long start, long end) throws IOException {
+            super(in);
+            long toSkip = start;
+            while(toSkip > 0) {
+                long skipped = in.skip(toSkip);
+                if(skipped <= 0) {
+                    if(in.read() < 0) {
+                        throw new IOException("Start offset " + start + " is beyond the end of the stream");
+                    }
+                    skipped = 1;
+                }
+                toSkip -= skipped;
+            }
+            remaining = end < 0? -1 : end - start;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            if(remaining == 0) {
+                return -1;
+            }
+            int b = in.read();
+            if(b >= 0 && remaining > 0) {
+                remaining--;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(remaining == 0) {
+                return -1;
+            } else if(remaining > 0 && len > remaining) {
+                len = (int)remaining;
+            }
+            int read = in.read(b, off, len);
+            if(read > 0 && remaining > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            if(remaining >= 0 && n > remaining) {
+                n = remaining;
+            }
+            long skipped = in.skip(n);
+            if(skipped > 0 && remaining > 0) {
+                remaining -= skipped;
+            }
+            return skipped;
+        }
+        
+        @Override
+        public int available() throws IOException {
+            int available = in.available();
+            return remaining >= 0 && available > remaining? (int)remaining : available;
+        }
+        
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 	
 }
 
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.core.io.Resource;
+
+import biz.c24.io.spring.util.C24Utils;
+
+/**
+ * An implementation of SplittingReaderSource which extracts its data from gzip compressed files without first
+ * decompressing them to disk.
+ * Expects to be told the path of the file to read from by the supplied Resource or,
+ * if not specified, a property called input.file in the job parameters
+ * (as populated by Spring Batch's org.springframework.batch.admin.integration.FileToJobLaunchRequestAdapter)
+ *
+ * Files consisting of multiple gzip members are read as the concatenation of the members. If the members are BGZF
+ * blocks (which record their compressed size, as written by bgzip) and parallelism is greater than 1, up to
+ * 2 x parallelism blocks are inflated ahead of the reader in parallel, either on the supplied inflaterExecutor or on a
+ * pool of our own. The data is still delivered in its original order. Other files are decompressed sequentially.
+ *
+ * When a step is restarted, the characters consumed by the previous execution are decompressed and skipped over
+ * without being split or parsed.
+ *
+ * @author Andrew Elmore
+ */
+public class GzipFileSource implements RestartableSplittingReaderSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GzipFileSource.class);
+
+    /**
+     * The size of the buffer used to read the compressed file
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+	private SplittingReader reader = null;
+	
+	/**
+	 * The reader handed out by getNextReader. We still own it so close it when it's discarded or we're closed.
+	 */
+	private SplittingReader issuedReader = null;
+
+	private String name;
+
+	private Resource resource = null;
+
+	private String encoding = C24Utils.DEFAULT_FILE_ENCODING;
+
+	private boolean consistentLineTerminators = true;
+	
+	private boolean byteSplitting = false;
+
+	/**
+	 * How many lines at the start of the file should we skip?
+	 */
+	private int skipLines = 0;
+
+	/**
+	 * How many BGZF blocks should we inflate in parallel? 1 disables parallel inflation.
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The Executor to inflate blocks on. If not supplied, we create (and own) our own.
+	 */
+	private Executor inflaterExecutor = null;
+	private ExecutorService ownedExecutor = null;
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.SplittingReaderSource#getName()
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/* (non-Javadoc)
+	 * @see biz.c24.spring.batch.BufferedReaderSource#initialise(org.springframework.batch.core.StepExecution)
+	 */
+	public void initialise(StepExecution stepExecution) {
+
+        try {
+    	    // Get an InputStream and a name for where we're reading from
+    	    // Use the Resource if supplied
+    	    InputStream source = null;
+    	    if(resource != null) {
+    	        name = resource.getFilename();
+    	        source = resource.getInputStream();
+    	    } else {
+
+    	        // If no resource supplied, fallback to a Job parameter called input.file
+    	        name = stepExecution.getJobParameters().getString("input.file");
+
+    	        // Remove any leading file:// if it exists
+    	        if(name.startsWith("file://")) {
+    	            name = name.substring("file://".length());
+    	        }
+
+    	        source = new FileInputStream(name);
+    	    }
+
+    	    InputStream in = new BufferedInputStream(source, BUFFER_SIZE);
+    	    if(parallelism > 1) {
+    	        if(inflaterExecutor == null && ownedExecutor == null) {
+    	            ownedExecutor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("GzipFileSource", "inflater"));
+    	        }
+    	        in = new BgzfInputStream(in, inflaterExecutor != null? inflaterExecutor : ownedExecutor, parallelism * 2);
+    	    } else {
+    	        in = new GZIPInputStream(in, BUFFER_SIZE);
+    	    }
+
+			// Prime the reader
+    	    LOG.debug("Opening {} with encoding {}", name, getEncoding());
+			if(byteSplitting) {
+			    reader = new ByteSplittingReader(in, getEncoding());
+			} else {
+			    reader = new SplittingReader(new InputStreamReader(in, getEncoding()), consistentLineTerminators);
+			}
+			if(skipLines > 0) {
+				for(int i = 0; i < skipLines && reader.ready(); i++) {
+					// Skip the line
+					reader.readLine();
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see biz.c24.spring.batch.BufferedReaderSource#close()
+	 */
+	public void close() {
+		try {
+			if(reader != null) {
+				reader.close();
+				// Spring Batch lifecycle will ensure that this doesn't happen while
+				// someone is still trying to read (ie calling getReader and risking an NPE)
+				reader = null;
+			}
+			if(issuedReader != null) {
+				issuedReader.close();
+				issuedReader = null;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if(ownedExecutor != null) {
+				ownedExecutor.shutdownNow();
+				ownedExecutor = null;
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see biz.c24.spring.batch.BufferedReaderSource#getReader()
+	 */
+	public SplittingReader getReader() {
+		try {
+			if(reader != null && reader.ready()) {
+				return reader;
+			} else {
+				return null;
+			}
+		} catch (IOException e) {
+			// Stream has been closed beneath our feet. Nothing to read.
+			return null;
+		}
+	}
+
+	@Override
+	public SplittingReader getNextReader() {
+	    SplittingReader retVal = reader;
+		reader = null;
+		if(retVal != null) {
+			issuedReader = retVal;
+		}
+		return retVal;
+	}
+
+	@Override
+	public boolean useMultipleThreadsPerReader() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.RestartableSplittingReaderSource#getReaderId(biz.c24.io.spring.batch.reader.source.SplittingReader)
+	 */
+	@Override
+	public String getReaderId(SplittingReader reader) {
+		// We only ever have one reader
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.RestartableSplittingReaderSource#seek(java.lang.String, long)
+	 */
+	@Override
+	public void seek(String readerId, long position) throws IOException {
+		if(reader == null) {
+			throw new IOException("Cannot seek in " + name + " as its reader has already been consumed");
+		}
+		reader.seek(position);
+	}
+
+	@Override
+	public void discard(SplittingReader reader) throws IOException {
+		if(this.reader == reader) {
+			reader.close();
+			this.reader = null;
+		} else if(reader != null && issuedReader == reader) {
+			reader.close();
+			issuedReader = null;
+		}
+
+	}
+
+	/**
+	 * How many lines will be skipped at the start of the file before the Reader is handed to callers?
+	 * @return the number of lines to skip at the start of the file
+	 */
+	public int getSkipLines() {
+		return skipLines;
+	}
+
+	/**
+	 * How many lines should be skipped at the start of the file before the Reader is handed to callers?
+	 * @param skipLines
+	 */
+	public void setSkipLines(int skipLines) {
+		this.skipLines = skipLines;
+	}
+
+	/**
+	 * The resource we acquire InputStreams from
+	 * @return the resource that we'll read from
+	 */
+	public Resource getResource() {
+		return resource;
+	}
+
+	/**
+	 * Set the resource we acquire InputStreams from
+	 */
+	public void setResource(Resource resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * Returns the encoding we are using when reading the file.
+	 * @return the encoding being used to read the file
+	 */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Sets the encoding to use to read the file
+     * @param encoding the encoding the use
+     */
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Do we expect all lines in our input to use the same line terminator?
+     * @return
+     */
+    public boolean isConsistentLineTerminators() {
+        return consistentLineTerminators;
+    }
+
+    /**
+     * If we know that all lines within the file use the same line terminator, we can provide a hint to the
+     * SplittingReader to optimise its data extraction
+     *
+     * @param consistentLineTerminators Set to true if all lines use the same line terminator for a speed boost during splitting
+     */
+    public void setConsistentLineTerminators(boolean consistentLineTerminators) {
+        this.consistentLineTerminators = consistentLineTerminators;
+    }
+
+    /**
+     * Are lines located and decoded directly from the underlying bytes?
+     * @return true if a ByteSplittingReader is being used
+     */
+    public boolean isByteSplitting() {
+        return byteSplitting;
+    }
+
+    /**
+     * If set, lines are located in the raw bytes of the file and only the bytes making up each line are decoded,
+     * avoiding decoding the whole file through an InputStreamReader first. Only valid for ASCII-compatible encodings
+     * such as UTF-8 and ISO-8859-1.
+     *
+     * Reader positions become byte rather than character offsets, so a restarted job must use the same setting.
+     *
+     * @param byteSplitting Set to true to split the file on its bytes
+     */
+    public void setByteSplitting(boolean byteSplitting) {
+        this.byteSplitting = byteSplitting;
+    }
+
+    /**
+     * How many BGZF blocks will be inflated in parallel?
+     * @return The number of blocks inflated in parallel; 1 if inflation is sequential
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets how many BGZF blocks should be inflated in parallel. Defaults to the number of available processors;
+     * set to 1 to always inflate sequentially on the reading thread.
+     *
+     * @param parallelism The number of blocks to inflate in parallel
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * The Executor on which BGZF blocks are inflated
+     * @return The supplied Executor, null if we are using our own
+     */
+    public Executor getInflaterExecutor() {
+        return inflaterExecutor;
+    }
+
+    /**
+     * Sets the Executor (for example a Spring TaskExecutor) on which BGZF blocks are inflated. If not set, we create
+     * a pool of parallelism daemon threads which is shut down when we are closed.
+     *
+     * @param inflaterExecutor The Executor to inflate blocks on
+     */
+    public void setInflaterExecutor(Executor inflaterExecutor) {
+        this.inflaterExecutor = inflaterExecutor;
+    }
+
+}
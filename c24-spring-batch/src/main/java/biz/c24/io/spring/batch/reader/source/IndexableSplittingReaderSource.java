@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A RestartableSplittingReaderSource which reads a single file, whose reader positions are byte offsets in that file
+ * and which can read an arbitrary byte range of the file directly.
+ *
+ * This allows an ElementIndex recorded while splitting the file to be used to read elements in any order, from any
+ * number of threads, without splitting the file again.
+ *
+ * @author Andrew Elmore
+ */
+public interface IndexableSplittingReaderSource extends RestartableSplittingReaderSource {
+
+	/**
+	 * The file this source is reading from
+	 *
+	 * @return The file, null if the source has not been initialised
+	 */
+	public abstract File getFile();
+
+	/**
+	 * The offset of the first byte of the file this source is responsible for. Non-zero if the file has been
+	 * partitioned.
+	 */
+	public abstract long getStartOffset();
+
+	/**
+	 * The offset (exclusive) at which this source stops reading. Less than the length of the file if it has been
+	 * partitioned.
+	 */
+	public abstract long getEndOffset();
+
+	/**
+	 * Reads and decodes the specified range of the file. May be called concurrently by multiple threads, and
+	 * independently of any reader the source has supplied.
+	 *
+	 * @param position The offset in the file of the first byte to read
+	 * @param length The number of bytes to read
+	 * @return The decoded data
+	 * @throws IOException If the range cannot be read
+	 */
+	public abstract CharSequence read(long position, int length) throws IOException;
+
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests whether a whole line matches a regular expression, as per Pattern.matcher(line).matches().
+ *
+ * The patterns used to split files into elements are nearly always a literal with an optional leading and/or trailing .*
+ * (for example <code>.*&lt;receipt .*</code>). LineMatcher.compile analyses the pattern and, where it has one of these
+ * forms, returns a matcher which scans the line directly for the literal rather than running the regex engine.
+ * When the line is a CharArraySequence the underlying array is scanned without any per-character bounds checks.
+ * Any other pattern falls back to java.util.regex.
+ *
+ * Literal matchers are immutable and can be shared between threads; the regex fallback is not. Callers should obtain a
+ * matcher for each thread via newMatcher.
+ *
+ * @author Andrew Elmore
+ *
+ */
+public abstract class LineMatcher {
+
+	/**
+	 * Below this length, a simple scan for the first character outperforms Boyer-Moore-Horspool
+	 */
+	private static final int MIN_BOYER_MOORE_LENGTH = 4;
+
+	/**
+	 * Characters which have a special meaning in a regular expression
+	 */
+	private static final String META_CHARS = "\\[](){}.*+?^$|";
+
+	private final Pattern pattern;
+
+	protected LineMatcher(Pattern pattern) {
+		this.pattern = pattern;
+	}
+
+	/**
+	 * Creates the most efficient LineMatcher for pattern
+	 *
+	 * @param pattern The pattern that lines must match
+	 * @return A LineMatcher for pattern
+	 */
+	public static LineMatcher compile(Pattern pattern) {
+		LineMatcher matcher = compileLiteral(pattern);
+		return matcher != null? matcher : new RegexLineMatcher(pattern);
+	}
+
+	/**
+	 * The pattern that this LineMatcher was compiled from
+	 */
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Returns a LineMatcher equivalent to this one that is safe for use by the calling thread
+	 */
+	public LineMatcher newMatcher() {
+		return this;
+	}
+
+	/**
+	 * Release any reference held to the last line matched
+	 */
+	public void reset() {
+
+	}
+
+	/**
+	 * Does the whole of line match our pattern?
+	 *
+	 * @param line The line to test
+	 * @return True iff line matches
+	 */
+	public abstract boolean matches(CharSequence line);
+
+	/**
+	 * Attempts to create a literal matcher for pattern
+	 *
+	 * @return A literal matcher, null if pattern is not of a supported form
+	 */
+	private static LineMatcher compileLiteral(Pattern pattern) {
+		// Without DOTALL, .* won't match line terminators; we'd have to replicate that so leave it to the regex engine
+		if(pattern.flags() != Pattern.DOTALL) {
+			return null;
+		}
+
+		String regex = pattern.pattern();
+		int start = 0;
+		int end = regex.length();
+
+		// As the whole line must match, leading ^ and trailing $ are redundant
+		if(start < end && regex.charAt(start) == '^') {
+			start++;
+		}
+		if(end > start && regex.charAt(end - 1) == '$' && !isEscaped(regex, end - 1)) {
+			end--;
+		}
+
+		boolean leadingWildcard = regex.startsWith(".*", start);
+		if(leadingWildcard) {
+			start += 2;
+		}
+		boolean trailingWildcard = end - start >= 2 && regex.startsWith(".*", end - 2) && !isEscaped(regex, end - 2);
+		if(trailingWildcard) {
+			end -= 2;
+		}
+
+		String literal = unescape(regex, start, end);
+		if(literal == null) {
+			return null;
+		}
+
+		if(literal.length() == 0) {
+			// Either .* (matches everything) or an empty pattern
+			return leadingWildcard || trailingWildcard? new AnyLineMatcher(pattern) : new EqualsLineMatcher(pattern, literal);
+		} else if(leadingWildcard && trailingWildcard) {
+			return literal.length() < MIN_BOYER_MOORE_LENGTH? new ContainsLineMatcher(pattern, literal) : new BoyerMooreLineMatcher(pattern, literal);
+		} else if(trailingWildcard) {
+			return new PrefixLineMatcher(pattern, literal);
+		} else if(leadingWildcard) {
+			return new SuffixLineMatcher(pattern, literal);
+		} else {
+			return new EqualsLineMatcher(pattern, literal);
+		}
+	}
+
+	/**
+	 * Is the character at index in regex preceded by an odd number of backslashes?
+	 */
+	private static boolean isEscaped(String regex, int index) {
+		int count = 0;
+		while(index > 0 && regex.charAt(--index) == '\\') {
+			count++;
+		}
+		return count % 2 == 1;
+	}
+
+	/**
+	 * Converts the region [start, end) of regex to the literal text it matches
+	 *
+	 * @return The literal text, null if the region contains anything other than literal characters
+	 */
+	private static String unescape(String regex, int start, int end) {
+		StringBuilder literal = new StringBuilder(end - start);
+		int i = start;
+		while(i < end) {
+			char c = regex.charAt(i);
+			if(c == '\\') {
+				if(i + 1 >= end) {
+					return null;
+				}
+				char next = regex.charAt(i + 1);
+				if(next == 'Q') {
+					// Quoted section runs until \E or the end of the pattern
+					int quoteEnd = regex.indexOf("\\E", i + 2);
+					if(quoteEnd < 0 || quoteEnd + 2 > end) {
+						return null;
+					}
+					literal.append(regex, i + 2, quoteEnd);
+					i = quoteEnd + 2;
+				} else if(Character.isLetterOrDigit(next)) {
+					// Character class, back reference or other construct
+					return null;
+				} else {
+					literal.append(next);
+					i += 2;
+				}
+			} else if(META_CHARS.indexOf(c) >= 0) {
+				return null;
+			} else {
+				literal.append(c);
+				i++;
+			}
+		}
+		return literal.toString();
+	}
+
+	/**
+	 * Does line contain literal at offset?
+	 */
+	private static boolean regionMatches(CharSequence line, int offset, char[] literal) {
+		if(line instanceof CharArraySequence) {
+			CharArraySequence seq = (CharArraySequence)line;
+			return regionMatches(seq.getArray(), seq.getStart() + offset, literal);
+		}
+		for(int i = 0; i < literal.length; i++) {
+			if(line.charAt(offset + i) != literal[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean regionMatches(char[] array, int offset, char[] literal) {
+		for(int i = 0; i < literal.length; i++) {
+			if(array[offset + i] != literal[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Matches every line (.*)
+	 */
+	private static class AnyLineMatcher extends LineMatcher {
+
+		public AnyLineMatcher(Pattern pattern) {
+			super(pattern);
+		}
+
+		@Override
+		public boolean matches(CharSequence line) {
+			return true;
+		}
+	}
+
+	/**
+	 * Base class for matchers which look for a literal
+	 */
+	private static abstract class LiteralLineMatcher extends LineMatcher {
+
+		protected final char[] literal;
+
+		public LiteralLineMatcher(Pattern pattern, String literal) {
+			super(pattern);
+			this.literal = literal.toCharArray();
+		}
+	}
+
+	/**
+	 * Matches lines consisting solely of the literal
+	 */
+	private static class EqualsLineMatcher extends LiteralLineMatcher {
+
+		public EqualsLineMatcher(Pattern pattern, String literal) {
+			super(pattern, literal);
+		}
+
+		@Override
+		public boolean matches(CharSequence line) {
+			return line.length() == literal.length && regionMatches(line, 0, literal);
+		}
+	}
+
+	/**
+	 * Matches lines starting with the literal (LITERAL.*)
+	 */
+	private static class PrefixLineMatcher extends LiteralLineMatcher {
+
+		public PrefixLineMatcher(Pattern pattern, String literal) {
+			super(pattern, literal);
+		}
+
+		@Override
+		public boolean matches(CharSequence line) {
+			return line.length() >= literal.length && regionMatches(line, 0, literal);
+		}
+	}
+
+	/**
+	 * Matches lines ending with the literal (.*LITERAL)
+	 */
+	private static class SuffixLineMatcher extends LiteralLineMatcher {
+
+		public SuffixLineMatcher(Pattern pattern, String literal) {
+			super(pattern, literal);
+		}
+
+		@Override
+		public boolean matches(CharSequence line) {
+			return line.length() >= literal.length && regionMatches(line, line.length() - literal.length, literal);
+		}
+	}
+
+	/**
+	 * Matches lines containing a short literal (.*LITERAL.*) by scanning for its first character
+	 */
+	private static class ContainsLineMatcher extends LiteralLineMatcher {
+
+		public ContainsLineMatcher(Pattern pattern, String literal) {
+			super(pattern, literal);
+		}
+
+		@Override
+		public boolean matches(CharSequence line) {
+			int last = line.length() - literal.length;
+			char first = literal[0];
+
+			if(line instanceof CharArraySequence) {
+				CharArraySequence seq = (CharArraySequence)line;
+				char[] array = seq.getArray();
+				int offset = seq.getStart();
+				for(int i = offset; i <= offset + last; i++) {
+					if(array[i] == first && regionMatches(array, i, literal)) {
+						return true;
+					}
+				}
+			} else {
+				for(int i = 0; i <= last; i++) {
+					if(line.charAt(i) == first && regionMatches(line, i, literal)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Matches lines containing a longer literal (.*LITERAL.*) using Boyer-Moore-Horspool.
+	 * The skip table is indexed on the low byte of each character; characters which collide share the smallest shift,
+	 * which is always safe.
+	 */
+	private static class BoyerMooreLineMatcher extends LiteralLineMatcher {
+
+		private final int[] shift = new int[256];
+
+		public BoyerMooreLineMatcher(Pattern pattern, String literal) {
+			super(pattern, literal);
+			int length = this.literal.length;
+			for(int i = 0; i < shift.length; i++) {
+				shift[i] = length;
+			}
+			for(int i = 0; i < length - 1; i++) {
+				shift[this.literal[i] & 0xFF] = length - 1 - i;
+			}
+		}
+
+		@Override
+		public boolean matches(CharSequence line) {
+			int length = literal.length;
+			int lastIndex = length - 1;
+			char lastChar = literal[lastIndex];
+
+			if(line instanceof CharArraySequence) {
+				CharArraySequence seq = (CharArraySequence)line;
+				char[] array = seq.getArray();
+				int i = seq.getStart();
+				int last = i + line.length() - length;
+				while(i <= last) {
+					char c = array[i + lastIndex];
+					if(c == lastChar && regionMatches(array, i, literal)) {
+						return true;
+					}
+					i += shift[c & 0xFF];
+				}
+			} else {
+				int i = 0;
+				int last = line.length() - length;
+				while(i <= last) {
+					char c = line.charAt(i + lastIndex);
+					if(c == lastChar && regionMatches(line, i, literal)) {
+						return true;
+					}
+					i += shift[c & 0xFF];
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Falls back to java.util.regex for patterns we can't otherwise handle.
+	 * Holds a Matcher so is not thread safe.
+	 */
+	private static class RegexLineMatcher extends LineMatcher {
+
+		private final Matcher matcher;
+
+		public RegexLineMatcher(Pattern pattern) {
+			super(pattern);
+			matcher = pattern.matcher("");
+		}
+
+		@Override
+		public LineMatcher newMatcher() {
+			return new RegexLineMatcher(getPattern());
+		}
+
+		@Override
+		public void reset() {
+			matcher.reset("");
+		}
+
+		@Override
+		public boolean matches(CharSequence line) {
+			return matcher.reset(line).matches();
+		}
+	}
+
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.Resource;
+
+import biz.c24.io.spring.batch.partition.ByteRangePartitioner;
+import biz.c24.io.spring.util.C24Utils;
+
+/**
+ * An implementation of SplittingReaderSource which memory-maps uncompressed files rather than streaming them.
+ * Line boundaries are located on the raw bytes of the file and only the data making up each line is decoded,
+ * which for large files substantially reduces copying and decoding overhead compared to FileSource.
+ * 
+ * Expects to be told the path of the file to read from by the supplied Resource (which must resolve to a File) or, 
+ * if not specified, a property called input.file in the job parameters
+ * (as populated by Spring Batch's org.springframework.batch.admin.integration.FileToJobLaunchRequestAdapter)
+ * 
+ * If the step's ExecutionContext contains a byte range (as populated by the ByteRangePartitioner), only that range of
+ * the file is mapped. In that case the file path in the ExecutionContext takes precedence over the job parameter.
+ * 
+ * The file's encoding must be ASCII-compatible, e.g. UTF-8, US-ASCII or ISO-8859-1.
+ * 
+ * When a step is restarted, the reader moves directly to the byte offset reached by the previous execution.
+ * 
+ * As reader positions are byte offsets in the file, the source can also read arbitrary ranges of the file, allowing
+ * a C24ItemReader to read elements via an ElementIndex.
+ * 
+ * @author Andrew Elmore
+ */
+public class MappedFileSource implements IndexableSplittingReaderSource {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(MappedFileSource.class);
+	
+	private MappedSplittingReader reader = null;
+	
+	/**
+	 * The reader handed out by getNextReader. We still own it so close it when it's discarded or we're closed.
+	 */
+	private SplittingReader issuedReader = null;
+	
+	private String name;
+	
+	private File file = null;
+	
+	private long startOffset = 0;
+	
+	private long endOffset = 0;
+	
+	/**
+	 * Opened on demand to service reads of arbitrary ranges of the file
+	 */
+	private FileChannel rangeChannel = null;
+	
+	private Resource resource = null;
+	
+	private String encoding = C24Utils.DEFAULT_FILE_ENCODING;
+	
+	/**
+	 * How many lines at the start of the file should we skip?
+	 */
+	private int skipLines = 0;
+	
+	/**
+	 * The maximum number of bytes of the file to map at any one time
+	 */
+	private int mappingSize = MappedSplittingReader.DEFAULT_MAPPING_SIZE;
+	
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.SplittingReaderSource#getName()
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/* (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.SplittingReaderSource#initialise(org.springframework.batch.core.StepExecution)
+	 */
+	public void initialise(StepExecution stepExecution) {
+	    
+        try {
+    	    // Work out which file we're reading from
+    	    // Use the Resource if supplied
+    	    
+    	    // If we've been partitioned, find out which part of the file we're responsible for
+    	    ExecutionContext context = stepExecution != null? stepExecution.getExecutionContext() : null;
+    	    long startOffset = 0;
+    	    long endOffset = Long.MAX_VALUE;
+    	    if(context != null && context.containsKey(ByteRangePartitioner.START_OFFSET_KEY)) {
+    	        startOffset = context.getLong(ByteRangePartitioner.START_OFFSET_KEY);
+    	        endOffset = context.getLong(ByteRangePartitioner.END_OFFSET_KEY, Long.MAX_VALUE);
+    	    }
+    	    
+    	    if(resource != null) {
+    	        name = resource.getFilename();
+    	        file = resource.getFile();
+    	    } else {
+    	        
+    	        // If no resource supplied, fallback to a property called input.file in the partition's ExecutionContext
+    	        // or failing that the Job parameters
+    	        if(context != null && context.containsKey(ByteRangePartitioner.FILE_KEY)) {
+    	            name = context.getString(ByteRangePartitioner.FILE_KEY);
+    	        } else {
+    	            name = stepExecution.getJobParameters().getString("input.file");
+    	        }
+    	        
+    	        // Remove any leading file:// if it exists
+    	        if(name.startsWith("file://")) {
+    	            name = name.substring("file://".length());
+    	        }
+    	      
+    	        file = new File(name);   
+    	    }
+    
+			// Prime the reader
+    	    LOG.debug("Mapping {} with encoding {}", name, getEncoding());
+    	    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    	    try {
+    	        this.startOffset = startOffset;
+    	        this.endOffset = Math.min(endOffset, raf.length());
+    	        reader = new MappedSplittingReader(raf.getChannel(), startOffset, this.endOffset, getEncoding(), mappingSize);
+    	    } catch(RuntimeException ex) {
+    	        raf.close();
+    	        throw ex;
+    	    }
+			// Header lines only exist at the start of the file
+			if(skipLines > 0 && startOffset == 0) {
+				for(int i = 0; i < skipLines && reader.ready(); i++) {
+					// Skip the line
+					reader.readLine();
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} 
+	}
+	
+	/* (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.SplittingReaderSource#close()
+	 */
+	public void close() {
+		synchronized(this) {
+			if(rangeChannel != null) {
+				try {
+					rangeChannel.close();
+				} catch(IOException e) {
+					LOG.warn("Failed to close {}", name, e);
+				}
+				rangeChannel = null;
+			}
+		}
+		try {
+			if(reader != null) {
+				reader.close();
+				// Spring Batch lifecycle will ensure that this doesn't happen while 
+				// someone is still trying to read (ie calling getReader and risking an NPE)
+				reader = null;
+			}
+			if(issuedReader != null) {
+				issuedReader.close();
+				issuedReader = null;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.SplittingReaderSource#getReader()
+	 */
+	public SplittingReader getReader() {
+		try {
+			if(reader != null && reader.ready()) {
+				return reader;
+			} else {
+				return null;
+			}
+		} catch (IOException e) {
+			// Stream has been closed beneath our feet. Nothing to read.
+			return null;
+		}
+	}
+
+	@Override
+	public SplittingReader getNextReader() {
+	    SplittingReader retVal = reader;
+		reader = null;
+		if(retVal != null) {
+			issuedReader = retVal;
+		}
+		return retVal;
+	}
+
+	@Override
+	public boolean useMultipleThreadsPerReader() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.RestartableSplittingReaderSource#getReaderId(biz.c24.io.spring.batch.reader.source.SplittingReader)
+	 */
+	@Override
+	public String getReaderId(SplittingReader reader) {
+		// We only ever have one reader
+		return null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.RestartableSplittingReaderSource#seek(java.lang.String, long)
+	 */
+	@Override
+	public void seek(String readerId, long position) throws IOException {
+		if(reader == null) {
+			throw new IOException("Cannot seek in " + name + " as its reader has already been consumed");
+		}
+		reader.seek(position);
+	}
+
+	@Override
+	public void discard(SplittingReader reader) throws IOException {
+		if(this.reader == reader) {
+			reader.close();
+			this.reader = null;
+		} else if(reader != null && issuedReader == reader) {
+			reader.close();
+			issuedReader = null;
+		}
+		
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.IndexableSplittingReaderSource#getFile()
+	 */
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.IndexableSplittingReaderSource#getStartOffset()
+	 */
+	@Override
+	public long getStartOffset() {
+		return startOffset;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.IndexableSplittingReaderSource#getEndOffset()
+	 */
+	@Override
+	public long getEndOffset() {
+		return endOffset;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.IndexableSplittingReaderSource#read(long, int)
+	 */
+	@Override
+	public CharSequence read(long position, int length) throws IOException {
+		FileChannel channel;
+		synchronized(this) {
+			if(rangeChannel == null) {
+				if(file == null) {
+					throw new IOException("Source has not been initialised");
+				}
+				rangeChannel = new RandomAccessFile(file, "r").getChannel();
+			}
+			channel = rangeChannel;
+		}
+		// Positional reads don't affect the channel's position so can be issued concurrently
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Cannot read [" + position + ", " + (position + length) + ") from " + name + "; it is only " + channel.size() + " bytes long");
+			}
+		}
+		return new String(buffer.array(), 0, length, encoding);
+	}
+
+	/**
+	 * How many lines will be skipped at the start of the file before the Reader is handed to callers?
+	 * @return the number of lines to skip at the start of the file
+	 */
+	public int getSkipLines() {
+		return skipLines;
+	}
+
+	/**
+	 * How many lines should be skipped at the start of the file before the Reader is handed to callers?
+	 * @param skipLines
+	 */
+	public void setSkipLines(int skipLines) {
+		this.skipLines = skipLines;
+	}
+
+	/**
+	 * The resource we read from
+	 * @return the resource that we'll read from
+	 */
+	public Resource getResource() {
+		return resource;
+	}
+
+	/**
+	 * Set the resource we read from. The resource must be resolvable to a File.
+	 */
+	public void setResource(Resource resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * Returns the encoding we are using when reading the file.
+	 * @return the encoding being used to read the file
+	 */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Sets the encoding to use to read the file. Must be ASCII-compatible.
+     * @param encoding the encoding the use
+     */
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * The maximum number of bytes of the file that will be mapped into memory at any one time
+     * @return the mapping size in bytes
+     */
+    public int getMappingSize() {
+        return mappingSize;
+    }
+
+    /**
+     * Set the maximum number of bytes of the file to map into memory at any one time.
+     * Larger values mean fewer remappings; the default of 64MB is adequate for most cases.
+     * 
+     * @param mappingSize the mapping size in bytes
+     */
+    public void setMappingSize(int mappingSize) {
+        if(mappingSize <= 0) {
+            throw new IllegalArgumentException("mappingSize must be positive");
+        }
+        this.mappingSize = mappingSize;
+    }	
+	
+}
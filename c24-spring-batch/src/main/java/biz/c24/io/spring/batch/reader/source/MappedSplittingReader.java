@@ -0,0 +1,603 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * SplittingReader which reads directly from a memory-mapped region of a file.
+ *
+ * The file is mapped in windows of mappingSize bytes. Line and delimiter boundaries are located on the raw bytes
+ * and only the bytes which make up each returned line are decoded, avoiding both the copy from the kernel into
+ * an InputStream buffer and decoding data ahead of the point at which it is needed.
+ *
+ * As terminators and delimiters are matched as single bytes, the encoding must be ASCII-compatible
+ * (e.g. UTF-8, US-ASCII or ISO-8859-x) and delimiters passed to readUntil/readUntilInclusive must be ASCII characters.
+ *
+ * @author Andrew Elmore
+ *
+ */
+public class MappedSplittingReader extends SplittingReader {
+
+    /**
+     * Default size of the region of the file we map at any one time
+     */
+    public static final int DEFAULT_MAPPING_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Upper bound on the number of bytes any of the encodings we support uses for a single character
+     */
+    private static final int MAX_BYTES_PER_CHAR = 8;
+
+    /**
+     * The file we're reading from
+     */
+    private final FileChannel channel;
+
+    /**
+     * Offset in the file at which we stop reading (exclusive)
+     */
+    private final long end;
+
+    /**
+     * Maximum number of bytes to map at any one time
+     */
+    private final int mappingSize;
+
+    private final Charset charset;
+
+    /**
+     * Used when callers consume us as a plain Reader
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * The currently mapped region of the file
+     */
+    private MappedByteBuffer window = null;
+
+    /**
+     * Offset in the file of the first byte in window
+     */
+    private long windowStart = 0;
+
+    /**
+     * Offset in the file of the next byte to be consumed
+     */
+    private long position;
+
+    /**
+     * Reusable buffer we copy lines into prior to decoding them
+     */
+    private byte[] scratch = new byte[1024];
+
+    /**
+     * Reusable buffer we decode lines into for the readXXXSequence methods, and the view we hand out over it
+     */
+    private char[] decoded = new char[1024];
+    private final CharArraySequence view = new CharArraySequence(decoded);
+
+    /**
+     * Used to decode lines for the readXXXSequence methods
+     */
+    private final CharsetDecoder lineDecoder;
+
+    /**
+     * Allow up to one 'line' of data to be pushed back, as per SplittingReader
+     */
+    private String cached = null;
+
+    /**
+     * The offset in the file at which the cached line started
+     */
+    private long cachedStart = 0;
+
+    /**
+     * The last line we returned and where it started; lets us track our position accurately across a pushback
+     */
+    private CharSequence lastLine = null;
+    private long lastLineStart = 0;
+
+    private boolean isOpen = true;
+
+    /**
+     * Construct a MappedSplittingReader which reads the whole of the supplied file
+     *
+     * @param channel The file to read from. Will be closed when this reader is closed.
+     * @param encoding The (ASCII-compatible) encoding of the file
+     * @throws IOException
+     */
+    public MappedSplittingReader(FileChannel channel, String encoding) throws IOException {
+        this(channel, 0, channel.size(), encoding, DEFAULT_MAPPING_SIZE);
+    }
+
+    /**
+     * Construct a MappedSplittingReader which reads the byte range [start, end) of the supplied file
+     *
+     * @param channel The file to read from. Will be closed when this reader is closed.
+     * @param start The offset of the first byte to read
+     * @param end The offset at which to stop reading (exclusive)
+     * @param encoding The (ASCII-compatible) encoding of the file
+     * @param mappingSize The maximum number of bytes to map at any one time
+     * @throws IOException
+     */
+    public MappedSplittingReader(FileChannel channel, long start, long end, String encoding, int mappingSize) throws IOException {
+        if(start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid range [" + start + ", " + end + ")");
+        }
+        if(mappingSize <= 0) {
+            throw new IllegalArgumentException("mappingSize must be positive");
+        }
+        this.channel = channel;
+        this.position = start;
+        this.end = Math.min(end, channel.size());
+        this.mappingSize = mappingSize;
+        this.charset = Charset.forName(encoding);
+        if(!Arrays.equals("\r\n".getBytes(charset), new byte[] {'\r', '\n'})) {
+            throw new IllegalArgumentException("Encoding " + encoding + " is not ASCII-compatible so cannot be split on raw bytes");
+        }
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.lineDecoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Returns this reader; there is no intermediate Reader between us and the file
+     */
+    @Override
+    public Reader getReader() {
+        return this;
+    }
+
+    /**
+     * The offset in the file of the next byte that will be consumed, taking into account any line that has been
+     * pushed back.
+     *
+     * @return The offset in the file of the next byte to be read
+     */
+    @Override
+    public long getPosition() {
+        return cached != null? cachedStart : position;
+    }
+
+    /**
+     * Moves directly to the supplied offset in the file, discarding any pushed back line.
+     * Unlike SplittingReader, we can move in either direction without reading any intervening data.
+     *
+     * @param position The offset in the file of the next byte to read; should be the start of a line
+     * @throws IOException If position is beyond the end of the range we're reading
+     */
+    @Override
+    public void seek(long position) throws IOException {
+        if(position < 0 || position > end) {
+            throw new IOException("Cannot seek to position " + position + "; data ends at " + end);
+        }
+        cached = null;
+        lastLine = null;
+        this.position = position;
+    }
+
+    /**
+     * Ensures that the byte at offset pos is in our mapped window
+     *
+     * @param pos The offset in the file we need access to
+     * @param force Remap starting at pos even if pos is already in the current window
+     */
+    private void map(long pos, boolean force) throws IOException {
+        if(force || window == null || pos < windowStart || pos >= windowStart + window.limit()) {
+            map(pos, mappingSize);
+        }
+    }
+
+    /**
+     * Maps up to length bytes starting at pos
+     */
+    private void map(long pos, int length) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(length, end - pos));
+        windowStart = pos;
+    }
+
+    private byte byteAt(long pos) throws IOException {
+        map(pos, false);
+        return window.get((int)(pos - windowStart));
+    }
+
+    /**
+     * Finds the first occurrence of the byte b in the range [from, end)
+     *
+     * @param lineStart Where the data we are extracting starts. If we need to remap, we'll try to keep this in the window.
+     * @param from Where to start looking
+     * @param b The byte to look for
+     * @return The offset of b, end if not found
+     */
+    private long indexOf(long lineStart, long from, byte b) throws IOException {
+        long pos = from;
+        while(pos < end) {
+            if(window != null && pos == windowStart + window.limit() && lineStart > windowStart && lineStart < pos) {
+                // Keep the start of our data in the window so that we can copy it out in one go
+                map(lineStart, true);
+            } else {
+                map(pos, false);
+            }
+            int limit = window.limit();
+            int i = ByteScanner.indexOf(window, (int)(pos - windowStart), limit, b);
+            if(i < limit) {
+                return windowStart + i;
+            }
+            pos = windowStart + limit;
+        }
+        return end;
+    }
+
+    /**
+     * Copies the bytes in [from, to) into scratch and moves our position to the end of them
+     * 
+     * @return The number of bytes copied
+     */
+    private int copy(long from, long to) throws IOException {
+        long length = to - from;
+        if(length > Integer.MAX_VALUE) {
+            throw new IOException("Line starting at offset " + from + " is too long to extract");
+        }
+        int len = (int)length;
+        if(scratch.length < len) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+
+        long pos = from;
+        int off = 0;
+        while(off < len) {
+            map(pos, false);
+            int i = (int)(pos - windowStart);
+            int toCopy = Math.min(len - off, window.limit() - i);
+            window.position(i);
+            window.get(scratch, off, toCopy);
+            off += toCopy;
+            pos += toCopy;
+        }
+
+        position = to;
+        lastLineStart = from;
+        return len;
+    }
+
+    /**
+     * Decodes the bytes in [from, to) into a String and moves our position to the end of them
+     */
+    private String extract(long from, long to) throws IOException {
+        int len = copy(from, to);
+        String line = new String(scratch, 0, len, charset);
+        lastLine = line;
+        return line;
+    }
+
+    /**
+     * Decodes the bytes in [from, to) into our reusable view and moves our position to the end of them
+     */
+    private CharSequence extractSequence(long from, long to) throws IOException {
+        int len = copy(from, to);
+        // Each byte in an ASCII-compatible encoding decodes to at most one char
+        // (multi-byte sequences which decode to surrogate pairs are at least 4 bytes long)
+        if(decoded.length < len) {
+            decoded = new char[Math.max(len, decoded.length * 2)];
+        }
+        CharBuffer out = CharBuffer.wrap(decoded);
+        lineDecoder.reset();
+        lineDecoder.decode(ByteBuffer.wrap(scratch, 0, len), out, true);
+        lineDecoder.flush(out);
+        view.set(decoded, 0, out.position());
+        lastLine = view;
+        return view;
+    }
+
+    private String takeCached() {
+        String result = cached;
+        cached = null;
+        lastLine = result;
+        lastLineStart = cachedStart;
+        return result;
+    }
+
+    /**
+     * Validates that c can be matched as a single byte
+     */
+    private byte toByte(char c) {
+        if(c > 0x7F) {
+            throw new IllegalArgumentException("MappedSplittingReader can only split on ASCII characters");
+        }
+        return (byte)c;
+    }
+
+    /**
+     * @return The offset at which the data returned by readUntil(c) would end, -1 if there is no more data
+     */
+    private long findUntil(char c) throws IOException {
+        long start = position;
+        if(start >= end) {
+            return -1;
+        }
+        // Skip the first character - if it matches c, we want the next one anyway
+        return indexOf(start, start + 1, toByte(c));
+    }
+
+    /**
+     * @return The offset at which the data returned by readUntilInclusive(c) would end, -1 if there is no more data
+     */
+    private long findUntilInclusive(char c) throws IOException {
+        long start = position;
+        if(start >= end) {
+            return -1;
+        }
+        long found = indexOf(start, start, toByte(c));
+        return found < end? found + 1 : end;
+    }
+
+    /**
+     * @return The offset at which the data returned by readLine would end, -1 if there is no more data
+     */
+    private long findLineEnd() throws IOException {
+        long start = position;
+        if(start >= end) {
+            return -1;
+        }
+
+        long pos = start;
+        while(pos < end) {
+            if(window != null && pos == windowStart + window.limit() && start > windowStart && start < pos) {
+                map(start, true);
+            } else {
+                map(pos, false);
+            }
+            int limit = window.limit();
+            int i = ByteScanner.indexOfEither(window, (int)(pos - windowStart), limit, (byte)'\n', (byte)'\r');
+            if(i < limit) {
+                long next = windowStart + i + 1;
+                if(window.get(i) == '\r' && next < end && byteAt(next) == '\n') {
+                    next++;
+                }
+                return next;
+            }
+            pos = windowStart + limit;
+        }
+
+        return end;
+    }
+
+    /**
+     * As per SplittingReader.readUntil
+     *
+     * @param c The ASCII character to stop extracting on.
+     */
+    @Override
+    public String readUntil(char c) throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        long to = findUntil(c);
+        return to < 0? null : extract(position, to);
+    }
+
+    /**
+     * As per SplittingReader.readUntilSequence
+     *
+     * @param c The ASCII character to stop extracting on.
+     */
+    @Override
+    public CharSequence readUntilSequence(char c) throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        long to = findUntil(c);
+        return to < 0? null : extractSequence(position, to);
+    }
+
+    /**
+     * As per SplittingReader.readUntilInclusive
+     *
+     * @param c The ASCII character to stop extracting on.
+     */
+    @Override
+    public String readUntilInclusive(char c) throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        long to = findUntilInclusive(c);
+        return to < 0? null : extract(position, to);
+    }
+
+    /**
+     * As per SplittingReader.readUntilInclusiveSequence
+     *
+     * @param c The ASCII character to stop extracting on.
+     */
+    @Override
+    public CharSequence readUntilInclusiveSequence(char c) throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        long to = findUntilInclusive(c);
+        return to < 0? null : extractSequence(position, to);
+    }
+
+    /**
+     * Reads a line from the file. A line is terminated with one of:
+     * \n
+     * \r
+     * \r\n
+     *
+     * @return The extracted String, including its terminator
+     */
+    @Override
+    public String readLine() throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        long to = findLineEnd();
+        return to < 0? null : extract(position, to);
+    }
+
+    /**
+     * As per readLine but decodes the line into a reusable buffer rather than creating a String.
+     * The returned CharSequence is only valid until the next call to a read or pushback method on this reader.
+     *
+     * @return The extracted line, including its terminator
+     */
+    @Override
+    public CharSequence readLineSequence() throws IOException {
+        if(cached != null) {
+            return takeCached();
+        }
+        long to = findLineEnd();
+        return to < 0? null : extractSequence(position, to);
+    }
+
+    /**
+     * Allow a caller to hand back a line of input to us. Subsequent attempts to read data will consume
+     * from this data first.
+     */
+    @Override
+    public void pushback(String line) {
+        cached = line;
+        // If it's what we just handed out, we know where it came from
+        cachedStart = line == lastLine? lastLineStart : position;
+        lastLine = null;
+    }
+
+    /**
+     * Allow a caller to hand back a line of input to us. Subsequent attempts to read data will consume
+     * from this data first.
+     * 
+     * If line is what we just handed out from one of the readXXXSequence methods, we simply rewind to where it started.
+     */
+    @Override
+    public void pushback(CharSequence line) {
+        if(line == view && line == lastLine) {
+            position = lastLineStart;
+            lastLine = null;
+        } else {
+            pushback(line == null? null : line.toString());
+        }
+    }
+
+    /**
+     * Whether or not this Reader has more data available
+     */
+    @Override
+    public boolean ready() throws IOException {
+        if(!isOpen) {
+            throw new IOException("Stream closed");
+        }
+        return cached != null || position < end;
+    }
+
+    /**
+     * Closes this reader and the underlying file
+     */
+    @Override
+    public void close() throws IOException {
+        isOpen = false;
+        window = null;
+        cached = null;
+        lastLine = null;
+        channel.close();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.Reader#read(char[], int, int)
+     */
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+
+        if(!isOpen) {
+            throw new IOException("Stream closed");
+        }
+
+        int startOffset = off;
+
+        if(cached != null && len > 0) {
+            // Use this up first
+            int charsToCopy = Math.min(len, cached.length());
+            cached.getChars(0, charsToCopy, cbuf, off);
+            off += charsToCopy;
+            len -= charsToCopy;
+            cached = charsToCopy < cached.length()? cached.substring(charsToCopy) : null;
+            // We no longer know precisely where the remainder of the cached data started
+            cachedStart = position;
+        }
+        lastLine = null;
+
+        if(len > 0 && position < end) {
+            CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+
+            while(out.hasRemaining() && position < end) {
+                map(position, false);
+                int i = (int)(position - windowStart);
+                window.position(i);
+                boolean endOfInput = windowStart + window.limit() >= end;
+
+                CoderResult result = decoder.decode(window, out, endOfInput);
+                int consumed = window.position() - i;
+                position += consumed;
+
+                if(result.isError()) {
+                    // Shouldn't happen as we replace malformed input
+                    throw new CharacterCodingException();
+                } else if(result.isOverflow()) {
+                    break;
+                } else if(consumed == 0 && !endOfInput) {
+                    // A multi-byte character straddles the end of our window.
+                    // Make sure that we map enough to hold it even if mappingSize is tiny
+                    map(position, Math.max(mappingSize, MAX_BYTES_PER_CHAR));
+                }
+            }
+
+            if(position >= end) {
+                decoder.flush(out);
+                decoder.reset();
+            }
+
+            off = out.position();
+
+            if(off == startOffset && len == 1 && position < end) {
+                // The next character needs a surrogate pair but the caller only has room for one char
+                char[] pair = new char[2];
+                int charsRead = read(pair, 0, 2);
+                cbuf[off++] = pair[0];
+                if(charsRead > 1) {
+                    cached = String.valueOf(pair[1]);
+                    cachedStart = position;
+                }
+            }
+        }
+
+        return startOffset == off? -1 : off - startOffset;
+    }
+}
@@ -0,0 +1,612 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import biz.c24.io.spring.util.C24Utils;
+
+/**
+ * An implementation of SplittingReaderSource which reads from a number of files, supplying a separate SplittingReader
+ * for each.
+ * The files are either the supplied Resources (which, when configured from a String, can be an Ant-style pattern such
+ * as file:/data/in/*.csv) or, if none are supplied, those matching a pattern in a property called input.file in the
+ * job parameters. As with Spring Batch's MultiResourceItemReader, the files are read in order of their filenames so that,
+ * on restart, the files the previous execution completed are the same ones.
+ *
+ * Where there is more than one file, callers are advised to use a thread per reader so that several files are parsed
+ * at once. To avoid them waiting on the filesystem, the next openAhead files are opened, and their first buffer read,
+ * ahead of time on the openExecutor (or on a pool of our own if none is supplied). Each file is closed as soon as its
+ * end is reached so that a large number of files doesn't exhaust the available file handles.
+ *
+ * When a step is restarted, files prior to the one being read by the previous execution are skipped without being
+ * opened.
+ *
+ * A thread given a reader by getNextReader waits for its file to be opened without holding our lock, so other threads
+ * can take the files after it in the meantime.
+ *
+ * @author Andrew Elmore
+ */
+public class MultiResourceSplittingReaderSource implements RestartableSplittingReaderSource {
+
+	/**
+	 * The default number of files to open ahead of the one being read
+	 */
+	public static final int DEFAULT_OPEN_AHEAD = 2;
+
+	/**
+	 * The size of the buffer used to read each file
+	 */
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Orders Resources by filename, falling back on their descriptions where the filenames are the same
+	 */
+	private static final Comparator<Resource> FILENAME_ORDER = new Comparator<Resource>() {
+		@Override
+		public int compare(Resource r1, Resource r2) {
+			String name1 = r1.getFilename() != null? r1.getFilename() : "";
+			String name2 = r2.getFilename() != null? r2.getFilename() : "";
+			int result = name1.compareTo(name2);
+			return result != 0? result : r1.getDescription().compareTo(r2.getDescription());
+		}
+	};
+
+	/**
+	 * A description of the files we're reading from
+	 */
+	private String name;
+
+	/**
+	 * The Resources configured by our user
+	 */
+	private Resource[] resources = null;
+
+	/**
+	 * The Resources we're reading in this execution
+	 */
+	private Resource[] activeResources = null;
+
+	/**
+	 * The index in activeResources of the next file to open. Guarded by this.
+	 */
+	private int nextResource = 0;
+
+	/**
+	 * The current reader to be returned in calls to getReader if not exhausted
+	 */
+	private volatile ResourceReader reader = null;
+
+	/**
+	 * Once the current reader has been handed out by getNextReader, the file following it. It isn't waited for until
+	 * it's asked for so that we don't hold our lock while it's opened. Guarded by this.
+	 */
+	private FutureTask<ResourceReader> nextFile = null;
+
+	/**
+	 * A hint to our users; should they use multiple threads on a single reader or ask us
+	 * for a different reader for each thread?
+	 */
+	private boolean useMultipleThreadsPerReader = true;
+
+	/**
+	 * How many lines at the start of each file should we skip?
+	 */
+	private int skipLines = 0;
+
+	private String encoding = C24Utils.DEFAULT_FILE_ENCODING;
+
+	private boolean consistentLineTerminators = true;
+
+	/**
+	 * How many files should we open ahead of the one currently being read? 0 opens them as they are needed.
+	 */
+	private int openAhead = DEFAULT_OPEN_AHEAD;
+
+	/**
+	 * The Executor to open files on. If not supplied, we create (and own) our own.
+	 */
+	private Executor openExecutor = null;
+	private ExecutorService ownedExecutor = null;
+
+	/**
+	 * The files following the current reader's, in order. Guarded by this.
+	 */
+	private final LinkedList<FutureTask<ResourceReader>> opened = new LinkedList<FutureTask<ResourceReader>>();
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.SplittingReaderSource#getName()
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/* (non-Javadoc)
+	 * @see biz.c24.spring.batch.BufferedReaderSource#initialise(org.springframework.batch.core.StepExecution)
+	 */
+	public void initialise(StepExecution stepExecution) {
+
+		try {
+			Resource[] files = resources;
+			if(files != null) {
+				name = files.length == 1? files[0].getDescription() : files.length + " files";
+			} else {
+				// If no resources supplied, fallback to a Job parameter called input.file
+				name = stepExecution.getJobParameters().getString("input.file");
+				files = new PathMatchingResourcePatternResolver().getResources(name);
+			}
+			// The resolver makes no promises about the order; restarts rely on it being the same every time
+			files = files.clone();
+			Arrays.sort(files, FILENAME_ORDER);
+
+			synchronized(this) {
+				cancelOpens();
+				if(openAhead > 0 && openExecutor == null && ownedExecutor == null) {
+					ownedExecutor = Executors.newFixedThreadPool(openAhead, new DaemonThreadFactory("MultiResourceSplittingReaderSource", "opener"));
+				}
+
+				activeResources = files;
+				nextResource = 0;
+				FutureTask<ResourceReader> first = takeNextFile();
+				reader = first != null? await(first) : null;
+
+				// With more than one file, there's no point contending for a single reader
+				useMultipleThreadsPerReader = files.length <= 1;
+			}
+
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see biz.c24.spring.batch.BufferedReaderSource#close()
+	 */
+	public void close() {
+		try {
+			synchronized(this) {
+				cancelOpens();
+				if(reader != null) {
+					reader.close();
+					reader = null;
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if(ownedExecutor != null) {
+				ownedExecutor.shutdownNow();
+				ownedExecutor = null;
+			}
+		}
+	}
+
+	/**
+	 * Takes the file following the current one, keeping the queue of files opened ahead of time topped up.
+	 * Callers must hold our lock.
+	 *
+	 * @return The task opening the next file, which may not have been started, null if there are no more
+	 */
+	private FutureTask<ResourceReader> takeNextFile() {
+		fillOpenQueue();
+		if(opened.isEmpty()) {
+			// Either there are no more files or we aren't opening them ahead of time
+			return nextResource < activeResources.length? new FutureTask<ResourceReader>(new Opener(activeResources[nextResource++])) : null;
+		}
+		FutureTask<ResourceReader> next = opened.removeFirst();
+		fillOpenQueue();
+		return next;
+	}
+
+	/**
+	 * Starts opening files until openAhead are queued or we run out.
+	 * Callers must hold our lock.
+	 */
+	private void fillOpenQueue() {
+		while(opened.size() < openAhead && nextResource < activeResources.length) {
+			FutureTask<ResourceReader> task = new FutureTask<ResourceReader>(new Opener(activeResources[nextResource++]));
+			(openExecutor != null? openExecutor : ownedExecutor).execute(task);
+			opened.add(task);
+		}
+	}
+
+	/**
+	 * Abandons any files being or waiting to be opened. Callers must hold our lock.
+	 */
+	private void cancelOpens() {
+		if(nextFile != null) {
+			if(!nextFile.cancel(true)) {
+				closeQuietly(nextFile);
+			}
+			nextFile = null;
+		}
+		for(FutureTask<ResourceReader> task : opened) {
+			if(!task.cancel(true)) {
+				// Already opened
+				closeQuietly(task);
+			}
+		}
+		opened.clear();
+	}
+
+	private static void closeQuietly(FutureTask<ResourceReader> task) {
+		try {
+			if(task.isDone() && !task.isCancelled()) {
+				task.get().close();
+			}
+		} catch(Exception ex) {
+			// We were discarding it anyway
+		}
+	}
+
+	/**
+	 * Waits for a file to be opened, opening it on this thread if that hasn't been started
+	 */
+	private static ResourceReader await(FutureTask<ResourceReader> task) throws IOException {
+		// Does nothing if the task has already been run, or is being run, elsewhere
+		task.run();
+		try {
+			return task.get();
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a file to be opened");
+		} catch(ExecutionException ex) {
+			if(ex.getCause() instanceof IOException) {
+				throw (IOException)ex.getCause();
+			}
+			throw new IOException("Failed to open file", ex.getCause());
+		}
+	}
+
+	/**
+	 * Opens a file, skips any lines we've been asked to and reads its first buffer
+	 */
+	private class Opener implements Callable<ResourceReader> {
+
+		private final Resource resource;
+
+		public Opener(Resource resource) {
+			this.resource = resource;
+		}
+
+		@Override
+		public ResourceReader call() throws IOException {
+			InputStream in = new BufferedInputStream(new ClosingInputStream(resource.getInputStream()), BUFFER_SIZE);
+			ResourceReader newReader = new ResourceReader(resource.getDescription(), new InputStreamReader(in, getEncoding()), consistentLineTerminators);
+			if(skipLines > 0) {
+				for(int i = 0; i < skipLines && newReader.ready(); i++) {
+					// Skip the line
+					newReader.readLine();
+				}
+			} else {
+				// Fill the buffer so that the caller doesn't have to wait for the disk
+				in.mark(1);
+				in.read();
+				in.reset();
+			}
+			return newReader;
+		}
+	}
+
+	/**
+	 * Releases the underlying file as soon as its end is reached; our callers don't necessarily close the readers
+	 * they're given
+	 */
+	private static class ClosingInputStream extends FilterInputStream {
+
+		private boolean closed = false;
+
+		public ClosingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(closed) {
+				return -1;
+			}
+			int b = super.read();
+			if(b < 0) {
+				close();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(closed) {
+				return -1;
+			}
+			int read = super.read(b, off, len);
+			if(read < 0) {
+				close();
+			}
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return closed? 0 : super.available();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(!closed) {
+				closed = true;
+				super.close();
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see biz.c24.spring.batch.BufferedReaderSource#getReader()
+	 */
+	public SplittingReader getReader() {
+		try {
+			if(reader != null && !reader.ready()) {
+				synchronized(this) {
+					// Multiple threads could be calling this in parallel; check the work hasn't already been performed for us
+					while(reader == null? nextFile != null : !reader.ready()) {
+						// Our current reader is exhausted or has been handed out...
+						advance();
+					}
+				}
+			}
+
+			return reader;
+
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.SplittingReaderSource#getNextReader()
+	 */
+	@Override
+	public SplittingReader getNextReader() {
+		FutureTask<ResourceReader> file;
+		synchronized(this) {
+			SplittingReader retVal = reader;
+			if(retVal != null) {
+				reader = null;
+				nextFile = takeNextFile();
+				return retVal;
+			}
+			file = nextFile;
+			if(file == null) {
+				return null;
+			}
+			nextFile = takeNextFile();
+		}
+
+		// Wait for the file to be opened without stopping other callers from taking the ones after it
+		try {
+			return await(file);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Replaces the current reader with one for the following file. Callers must hold our lock.
+	 */
+	private void advance() throws IOException {
+		FutureTask<ResourceReader> next = nextFile != null? nextFile : takeNextFile();
+		nextFile = null;
+		reader = next != null? await(next) : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.SplittingReaderSource#useMultipleThreadsPerReader()
+	 */
+	@Override
+	public boolean useMultipleThreadsPerReader() {
+		return useMultipleThreadsPerReader;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.SplittingReaderSource#discard(biz.c24.io.spring.batch.reader.source.SplittingReader)
+	 */
+	@Override
+	public synchronized void discard(SplittingReader reader) throws IOException {
+		if(this.reader == reader) {
+			this.reader = null;
+			nextFile = takeNextFile();
+		}
+		reader.close();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.RestartableSplittingReaderSource#getReaderId(biz.c24.io.spring.batch.reader.source.SplittingReader)
+	 */
+	@Override
+	public String getReaderId(SplittingReader reader) {
+		return reader instanceof ResourceReader? ((ResourceReader)reader).getResourceName() : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.RestartableSplittingReaderSource#seek(java.lang.String, long)
+	 */
+	@Override
+	public synchronized void seek(String readerId, long position) throws IOException {
+		if(reader == null && nextFile != null) {
+			advance();
+		}
+		if(reader != null && !reader.getResourceName().equals(readerId)) {
+			// Skip over the files the previous execution completed without opening them
+			reader.close();
+			cancelOpens();
+			reader = null;
+			while(nextResource < activeResources.length) {
+				Resource resource = activeResources[nextResource++];
+				if(resource.getDescription().equals(readerId)) {
+					reader = new Opener(resource).call();
+					break;
+				}
+			}
+		}
+		if(reader == null) {
+			throw new IOException("Cannot find " + readerId + " in " + name);
+		}
+		reader.seek(position);
+	}
+
+	/**
+	 * Records which file a SplittingReader is reading so that we can find it again on restart
+	 */
+	private static class ResourceReader extends SplittingReader {
+
+		private final String resourceName;
+
+		public ResourceReader(String resourceName, Reader reader, boolean consistentLineTerminators) {
+			super(reader, consistentLineTerminators);
+			this.resourceName = resourceName;
+		}
+
+		public String getResourceName() {
+			return resourceName;
+		}
+	}
+
+	/**
+	 * The files we read from
+	 * @return The resources we'll read from, null if they are taken from the job parameters
+	 */
+	public Resource[] getResources() {
+		return resources;
+	}
+
+	/**
+	 * Sets the files to read from. They are read in order of their filenames.
+	 * @param resources The resources to read from
+	 */
+	public void setResources(Resource[] resources) {
+		this.resources = resources;
+	}
+
+	/**
+	 * How many lines will be skipped at the start of each file before the Reader is handed to callers?
+	 * @return the number of lines to skip at the start of each file
+	 */
+	public int getSkipLines() {
+		return skipLines;
+	}
+
+	/**
+	 * How many lines should be skipped at the start of each file before the Reader is handed to callers?
+	 * @param skipLines
+	 */
+	public void setSkipLines(int skipLines) {
+		this.skipLines = skipLines;
+	}
+
+	/**
+	 * Returns the encoding we are using when reading the files.
+	 * @return the encoding being used to read the files
+	 */
+	public String getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Sets the encoding to use to read the files
+	 * @param encoding the encoding the use
+	 */
+	public void setEncoding(String encoding) {
+		this.encoding = encoding;
+	}
+
+	/**
+	 * Do we expect all lines in our input to use the same line terminator?
+	 * @return
+	 */
+	public boolean isConsistentLineTerminators() {
+		return consistentLineTerminators;
+	}
+
+	/**
+	 * If we know that all lines within the files use the same line terminator, we can provide a hint to the
+	 * SplittingReader to optimise its data extraction
+	 *
+	 * @param consistentLineTerminators Set to true if all lines use the same line terminator for a speed boost during splitting
+	 */
+	public void setConsistentLineTerminators(boolean consistentLineTerminators) {
+		this.consistentLineTerminators = consistentLineTerminators;
+	}
+
+	/**
+	 * How many files are opened ahead of the one being read?
+	 * @return The number of files opened ahead of time, 0 if they are opened as needed
+	 */
+	public int getOpenAhead() {
+		return openAhead;
+	}
+
+	/**
+	 * Sets how many files should be opened, and their first buffer read, ahead of the one being read.
+	 * Defaults to DEFAULT_OPEN_AHEAD; 0 opens each file on the thread that needs it.
+	 *
+	 * @param openAhead The number of files to open ahead of time
+	 */
+	public void setOpenAhead(int openAhead) {
+		this.openAhead = openAhead;
+	}
+
+	/**
+	 * The Executor on which files are opened
+	 * @return The supplied Executor, null if we are using our own
+	 */
+	public Executor getOpenExecutor() {
+		return openExecutor;
+	}
+
+	/**
+	 * Sets the Executor (for example a Spring TaskExecutor) on which files are opened ahead of time.
+	 * If not set, we create a pool of openAhead daemon threads which is shut down when we are closed.
+	 *
+	 * @param openExecutor The Executor to open files on
+	 */
+	public void setOpenExecutor(Executor openExecutor) {
+		this.openExecutor = openExecutor;
+	}
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.IOException;
+
+/**
+ * A SplittingReaderSource which can reposition itself to a previously recorded point, allowing a restarted step
+ * to resume from where a failed execution left off rather than from the start of the data.
+ * 
+ * A point in the source is identified by the id of one of its SplittingReaders (for sources which supply more 
+ * than one) and a position as returned by that reader's getPosition method.
+ * 
+ * @author Andrew Elmore
+ */
+public interface RestartableSplittingReaderSource extends SplittingReaderSource {
+	
+	/**
+	 * Identifies which of this source's readers the supplied SplittingReader is
+	 * 
+	 * @param reader A SplittingReader obtained from this source
+	 * @return An identifier that remains stable across executions, null if the source only supplies one reader
+	 */
+	public abstract String getReaderId(SplittingReader reader);
+	
+	/**
+	 * Repositions the source so that the next data read is at position in the reader identified by readerId. 
+	 * Any preceding readers are discarded.
+	 * Must be called after initialise and before any data has been read.
+	 * 
+	 * @param readerId The reader to move to, as returned by getReaderId
+	 * @param position The position within that reader, as returned by SplittingReader.getPosition
+	 * @throws IOException If the source cannot be repositioned, for example because the reader no longer exists
+	 */
+	public abstract void seek(String readerId, long position) throws IOException;
+
+}
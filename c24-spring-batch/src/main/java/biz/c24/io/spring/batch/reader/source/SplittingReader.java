@@ -12,6 +12,11 @@ import java.io.Reader;
  * In the best case (where only a '\r' or '\n' is used as the line terminator or readUntil is used) performance is 15-20% faster 
  * than BufferedReader.
  * 
+ * The readUntil loops deliberately compare one char at a time. Testing four chars per step, whether by OR-ing the
+ * comparisons or by multiplying the chars' differences from the delimiter, measured 1.5-3x slower than the simple loop,
+ * which the JIT already unrolls. Readers over bytes (the MappedSplittingReader and ByteSplittingReader) search
+ * 8 bytes per step with the ByteScanner for both lines and delimiters.
+ * 
  * @author Andrew Elmore
  *
  */
@@ -34,6 +39,10 @@ public class SplittingReader extends Reader {
      * Index in the buffer up to which data is populated
      */
     private int endIndex = 0;
+    /**
+     * Number of characters read from the sourceReader prior to those currently in the buffer
+     */
+    private long bufferOffset = 0;
     
     /**
      * Tracks whether we've been closed or not
@@ -56,9 +65,44 @@ public class SplittingReader extends Reader {
      */
     private Character terminator = null;
     
+    /**
+     * Reusable view over the buffer, handed out by the readXXXSequence methods where a result doesn't span buffer refills
+     */
+    private final CharArraySequence view;
+    
+    /**
+     * Whether view still refers to data which is in the buffer
+     */
+    private boolean viewValid = false;
+    
+    /**
+     * Reusable buffer to accumulate results which span buffer refills
+     */
+    private StringBuilder accumulator = new StringBuilder();
+    
+    /**
+     * If we have to grow the accumulator beyond this many chars, we'll discard it after use
+     */
+    private static final int MAX_RETAINED_ACCUMULATOR_SIZE = 1024 * 1024;
+    
+    /**
+     * Tracks the data we've extracted in the current read operation
+     */
+    private boolean hasFragment = false;
+    private boolean accumulating = false;
+    private int fragmentStart = 0;
+    private int fragmentEnd = 0;
+    
     public SplittingReader(Reader reader) {
-        this.sourceReader = reader;
-        this.consistentLineTerminators = false;
+        this(reader, false);
+    }
+
+    /**
+     * For use by subclasses which supply their data from somewhere other than a Reader.
+     * Such subclasses must override all of the data access methods.
+     */
+    protected SplittingReader() {
+        this(null, false);
     }
     
     /**
@@ -69,6 +113,7 @@ public class SplittingReader extends Reader {
     public SplittingReader(Reader reader, boolean consistentLineTerminators) {
         this.sourceReader = reader;
         this.consistentLineTerminators = consistentLineTerminators;
+        this.view = new CharArraySequence(buffer);
     }
     
     public Reader getReader() {
@@ -82,6 +127,12 @@ public class SplittingReader extends Reader {
      * @throws IOException
      */
     private boolean fillBuffer() throws IOException {
+        viewValid = false;
+        if(endIndex > 0) {
+            // Everything in the buffer has now been consumed
+            bufferOffset += endIndex;
+            index = 0;
+        }
         if(endIndex >= 0) {
             endIndex = sourceReader.read(buffer, 0, buffer.length);
         }
@@ -102,44 +153,51 @@ public class SplittingReader extends Reader {
      * @throws IOException
      */
     public String readUntil(char c) throws IOException {
-        String result = null;
-        
+        return toString(readUntilSequence(c));
+    }
+    
+    /**
+     * As per readUntil but avoids creating a String for the result where possible.
+     * The returned CharSequence is only valid until the next call to a read or pushback method on this reader.
+     * 
+     * @param c The character to stop extracting on. 
+     * @return The extracted characters, null if there are none
+     * @throws IOException
+     */
+    public CharSequence readUntilSequence(char c) throws IOException {
         if(cached != null) {
-            result = cached;
-            cached = null;
-        } else {
-            boolean parsing = true;
+            return takeCached();
+        } 
+        
+        boolean parsing = true;
+        startResult();
 
-            while(parsing) {
-                // Skip the first character - if it matches c, we want the next one anyway
-                int i = result == null? index + 1 : index;
-                // As odd as this construction looks, we get approx 6% speed increase over a straight while loop and updating the member var in place
-                for(; i < endIndex; i++) {
-                    if(buffer[i] == c) {
-                        parsing = false;
-                        break;
-                    }
-                }
-                
-                if(i > index && i <= endIndex) {
-                    // Cache what we have so far
-                    String fragment = new String(buffer, index, i - index);
-                    result = result == null? fragment : result + fragment;
+        while(parsing) {
+            // Skip the first character - if it matches c, we want the next one anyway
+            int i = hasFragment? index : index + 1;
+            // As odd as this construction looks, we get approx 6% speed increase over a straight while loop and updating the member var in place
+            for(; i < endIndex; i++) {
+                if(buffer[i] == c) {
+                    parsing = false;
+                    break;
                 }
-                
-                if(parsing) {
-                    // We're here because we ran out of data. See if there's any more
-                    if(fillBuffer()) {
-                        index = 0;
-                    } else {
-                        parsing = false;
-                    }
+            }
+            
+            if(i > index && i <= endIndex) {
+                // Cache what we have so far
+                addFragment(i);
+            }
+            
+            if(parsing) {
+                // We're here because we ran out of data. See if there's any more
+                if(refillBuffer()) {
+                    index = 0;
                 } else {
-                    index = i;
+                    parsing = false;
                 }
             }
         }
-        return result;
+        return result();
     }
     
     
@@ -156,44 +214,51 @@ public class SplittingReader extends Reader {
      * @throws IOException
      */
     public String readUntilInclusive(char c) throws IOException {
-        String result = null;
-        
+        return toString(readUntilInclusiveSequence(c));
+    }
+    
+    /**
+     * As per readUntilInclusive but avoids creating a String for the result where possible.
+     * The returned CharSequence is only valid until the next call to a read or pushback method on this reader.
+     * 
+     * @param c The character to stop extracting on. 
+     * @return The extracted characters, null if there are none
+     * @throws IOException
+     */
+    public CharSequence readUntilInclusiveSequence(char c) throws IOException {
         if(cached != null) {
-            result = cached;
-            cached = null;
-        } else {
-            boolean parsing = true;
+            return takeCached();
+        } 
+        
+        boolean parsing = true;
+        startResult();
 
-            while(parsing) {
-                int i = index;
-                // As odd as this construction looks, we get approx 6% speed increase over a straight while loop and updating the member var in place
-                for(; i < endIndex; i++) {
-                    if(buffer[i] == c) {
-                        parsing = false;
-                        i++;
-                        break;
-                    }
-                }
-                
-                if(i > index && i <= endIndex) {
-                    // Cache what we have so far
-                    String fragment = new String(buffer, index, i - index);
-                    result = result == null? fragment : result + fragment;
+        while(parsing) {
+            int i = index;
+            // As odd as this construction looks, we get approx 6% speed increase over a straight while loop and updating the member var in place
+            for(; i < endIndex; i++) {
+                if(buffer[i] == c) {
+                    parsing = false;
+                    i++;
+                    break;
                 }
-                
-                if(parsing) {
-                    // We're here because we ran out of data. See if there's any more
-                    if(fillBuffer()) {
-                        index = 0;
-                    } else {
-                        parsing = false;
-                    }
+            }
+            
+            if(i > index && i <= endIndex) {
+                // Cache what we have so far
+                addFragment(i);
+            }
+            
+            if(parsing) {
+                // We're here because we ran out of data. See if there's any more
+                if(refillBuffer()) {
+                    index = 0;
                 } else {
-                    index = i;
+                    parsing = false;
                 }
             }
         }
-        return result;
+        return result();
     }
     
     /**
@@ -209,19 +274,38 @@ public class SplittingReader extends Reader {
      * @throws IOException
      */
     public String readLine() throws IOException {
-        String result = null;
-        
+        return toString(readLineSequence());
+    }
+    
+    /**
+     * As per readLine but avoids creating a String for the result where possible.
+     * The returned CharSequence is only valid until the next call to a read or pushback method on this reader.
+     * 
+     * @return The extracted characters, null if there are none
+     * @throws IOException
+     */
+    public CharSequence readLineSequence() throws IOException {
         if(consistentLineTerminators && terminator != null) {
-            return readUntilInclusive(terminator);
+            return readUntilInclusiveSequence(terminator);
         } else if(cached != null) {
-            result = cached;
-            cached = null;
-        } else {
-            boolean parsing = true;
-            char last = 'a';
+            return takeCached();
+        } 
+        
+        boolean parsing = true;
+        char last = 'a';
+        startResult();
 
-            while(parsing) {
-                int i = index;
+        while(parsing) {
+            int i = index;
+            if(last == '\r') {
+                // The previous buffer ended with a \r; the line ends here, possibly after a \n
+                if(buffer[i] == '\n') {
+                    i++;
+                } else if(consistentLineTerminators) {
+                    terminator = '\r';
+                }
+                parsing = false;
+            } else {
                 // As odd as this construction looks, we get approx 6% speed increase over a straight while loop and updating the member var in place
                 for(; i < endIndex; i++) {
                     char c = buffer[i];
@@ -229,44 +313,124 @@ public class SplittingReader extends Reader {
                     // \r
                     // \n
                     // \r\n
-                    if(c == '\n') {
+                    // Neither is above \r, so a single comparison rules out almost every character; we only need to
+                    // look more closely near a match
+                    if(c > '\r') {
+                        continue;
+                    } else if(c == '\n') {
                         i++;
                         parsing = false;
-                        if(consistentLineTerminators && last != '\r') {
+                        if(consistentLineTerminators) {
                             terminator = '\n';
                         }
                         break;
-                    } else if(last == '\r') {
-                        parsing = false;
-                        if(consistentLineTerminators && c != '\n') {
-                            terminator = '\r';
+                    } else if(c == '\r') {
+                        i++;
+                        if(i < endIndex) {
+                            if(buffer[i] == '\n') {
+                                i++;
+                            } else if(consistentLineTerminators) {
+                                terminator = '\r';
+                            }
+                            parsing = false;
+                        } else {
+                            // Need to see the next character to know whether it's a \r\n
+                            last = '\r';
                         }
                         break;
                     }
-                    last = c;
                 }
-                
-                if(i > index && i <= endIndex) {
-                    // Cache what we have so far
-                    String fragment = new String(buffer, index, i - index);
-                    result = result == null? fragment : result + fragment;
-                }
-                
-                if(parsing) {
-                    // We're here because we ran out of data. See if there's any more
-                    if(fillBuffer()) {
-                        index = 0;
-                    } else {
-                        parsing = false;
-                    }
+            }
+            
+            if(i > index && i <= endIndex) {
+                // Cache what we have so far
+                addFragment(i);
+            }
+            
+            if(parsing) {
+                // We're here because we ran out of data. See if there's any more
+                if(refillBuffer()) {
+                    index = 0;
                 } else {
-                    index = i;
+                    parsing = false;
                 }
             }
         }
-        return result;
+        return result();
     }        
     
+    /**
+     * Records that the data in the buffer between index and end forms part of the result we're extracting.
+     * Whilst the result is contained within the buffer we simply note where it is; if it spans more than one 
+     * buffer's worth of data it is accumulated in our reusable StringBuilder rather than by String concatenation.
+     */
+    private void addFragment(int end) {
+        if(accumulating) {
+            accumulator.append(buffer, index, end - index);
+        } else {
+            fragmentStart = index;
+            fragmentEnd = end;
+            hasFragment = true;
+        }
+        index = end;
+    }
+    
+    /**
+     * Refills the buffer, first preserving any part of the current result which is in it
+     * 
+     * @return True iff we read more data from the underlying sourceReader
+     * @throws IOException
+     */
+    private boolean refillBuffer() throws IOException {
+        if(hasFragment && !accumulating) {
+            accumulator.setLength(0);
+            accumulator.append(buffer, fragmentStart, fragmentEnd - fragmentStart);
+            accumulating = true;
+        }
+        return fillBuffer();
+    }
+    
+    /**
+     * Resets our state ready to extract a new result
+     */
+    private void startResult() {
+        hasFragment = false;
+        accumulating = false;
+        viewValid = false;
+    }
+    
+    /**
+     * Returns the data we've extracted, wrapped as appropriate
+     */
+    private CharSequence result() {
+        CharSequence result = null;
+        if(accumulating) {
+            result = accumulator;
+        } else {
+            if(accumulator.capacity() > MAX_RETAINED_ACCUMULATOR_SIZE) {
+                // Don't hang on to the memory from an unusually long line
+                accumulator = new StringBuilder();
+            }
+            if(hasFragment) {
+                // Still in the buffer - return a view over it
+                view.set(buffer, fragmentStart, fragmentEnd);
+                viewValid = true;
+                result = view;
+            }
+        }
+        return result;
+    }
+    
+    private String takeCached() {
+        String result = cached;
+        cached = null;
+        return result;
+    }
+    
+    private static String toString(CharSequence seq) {
+        return seq == null? null : seq.toString();
+    }
+    
     /**
      * Allow a caller to hand back a line of input to us. Subsequent attempts to read data will consume
      * from this data first.
@@ -277,6 +441,70 @@ public class SplittingReader extends Reader {
         cached = line;
     }
     
+    /**
+     * Allow a caller to hand back a line of input to us. Subsequent attempts to read data will consume
+     * from this data first.
+     * 
+     * If line is the CharSequence most recently returned from one of the readXXXSequence methods, we simply
+     * rewind rather than copying its contents.
+     * 
+     * @param line
+     */
+    public void pushback(CharSequence line) {
+        if(line == view && viewValid) {
+            index = view.getStart();
+            viewValid = false;
+        } else {
+            cached = toString(line);
+        }
+    }
+    
+    /**
+     * Returns the position of the next character that will be consumed, taking into account any line that has been
+     * pushed back. The position can later be passed to seek on a SplittingReader over the same data to resume reading 
+     * from that point.
+     * 
+     * This implementation returns the number of characters consumed from the underlying Reader; subclasses may use
+     * a different measure.
+     * 
+     * @return The position of the next character to be read
+     */
+    public long getPosition() {
+        return bufferOffset + index - (cached != null? cached.length() : 0);
+    }
+    
+    /**
+     * Moves to a position previously returned by getPosition, discarding any pushed back line.
+     * 
+     * This implementation can only move forwards and does so by discarding characters; it does not need to split
+     * them into lines. 
+     * 
+     * @param position The position to move to
+     * @throws IOException If position is before our current position or beyond the end of the data
+     */
+    public void seek(long position) throws IOException {
+        long current = getPosition();
+        if(position < current) {
+            throw new IOException("Cannot seek backwards from position " + current + " to " + position);
+        }
+        
+        cached = null;
+        viewValid = false;
+        long toSkip = position - (bufferOffset + index);
+        while(toSkip > 0) {
+            int available = endIndex - index;
+            if(available > 0) {
+                int skipped = (int)Math.min(available, toSkip);
+                index += skipped;
+                toSkip -= skipped;
+            } else if(fillBuffer()) {
+                index = 0;
+            } else {
+                throw new IOException("Cannot seek to position " + position + "; data ends at " + getPosition());
+            }
+        }
+    }
+    
     /**
      * Whether or not this Reader has more data available
      */
@@ -15,10 +15,22 @@
  */
 package biz.c24.io.spring.batch.reader.source;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -33,9 +45,19 @@ import biz.c24.io.spring.util.C24Utils;
  * if not specified, from a property called input.file in the job parameters
  * (as populated by Spring Batch's org.springframework.batch.admin.integration.FileToJobLaunchRequestAdapter)
  * 
+ * When a step is restarted, entries prior to the one being read by the previous execution are skipped without being
+ * decompressed.
+ * 
+ * If a prefetchDepth is set, the next prefetchDepth entries are decompressed into memory ahead of time on the 
+ * prefetchExecutor (or on a pool of our own if none is supplied) so that callers of getReader and getNextReader 
+ * don't have to wait for them to be inflated. Entries larger than maxPrefetchSize are streamed from the zip file
+ * as usual, so at most prefetchDepth * maxPrefetchSize bytes are held in memory.
+ * An entry handed out by getNextReader is waited for by the thread that asked for it, without holding our lock, so 
+ * other threads can take the entries after it in the meantime.
+ * 
  * @author Andrew Elmore
  */
-public class ZipFileSource implements SplittingReaderSource {
+public class ZipFileSource implements RestartableSplittingReaderSource {
 	
 	/**
 	 * The name of the zip file we're reading from
@@ -45,7 +67,13 @@ public class ZipFileSource implements SplittingReaderSource {
 	/**
 	 * The current BufferedReader to be returned in calls to getReader if not exhausted
 	 */
-	private volatile SplittingReader reader = null;
+	private volatile ZipEntryReader reader = null;
+	
+	/**
+	 * Once the current reader has been handed out by getNextReader, the entry following it. Its reader isn't created 
+	 * until it's asked for so that we don't hold our lock while it's decompressed. Guarded by this.
+	 */
+	private PrefetchedEntry nextEntry = null;
 	
 	/**
 	 * The underlying zipFile
@@ -77,6 +105,32 @@ public class ZipFileSource implements SplittingReaderSource {
 	
 	private boolean consistentLineTerminators = true;
 	
+	/**
+	 * The default maximum size of entry we'll decompress into memory ahead of time
+	 */
+	public static final int DEFAULT_MAX_PREFETCH_SIZE = 8 * 1024 * 1024;
+	
+	/**
+	 * How many entries should we decompress ahead of the one currently being read? 0 disables prefetching.
+	 */
+	private int prefetchDepth = 0;
+	
+	/**
+	 * The largest entry, in uncompressed bytes, that we'll decompress into memory ahead of time
+	 */
+	private int maxPrefetchSize = DEFAULT_MAX_PREFETCH_SIZE;
+	
+	/**
+	 * The Executor to decompress entries on. If not supplied, we create (and own) our own.
+	 */
+	private Executor prefetchExecutor = null;
+	private ExecutorService ownedExecutor = null;
+	
+	/**
+	 * The entries following the current reader's, in order. Guarded by this.
+	 */
+	private final LinkedList<PrefetchedEntry> prefetched = new LinkedList<PrefetchedEntry>();
+	
 	/*
 	 * (non-Javadoc)
 	 * @see biz.c24.io.spring.batch.reader.source.SplittingReaderSource#getName()
@@ -111,18 +165,33 @@ public class ZipFileSource implements SplittingReaderSource {
                 source = new File(name);   
             }
 
-			zipFile = new ZipFile(source);
-			zipEntries = zipFile.entries();
-			ZipEntry entry = getNextZipEntry();
-			if(entry != null) {
-				// Prime the reader
-				reader = getReader(entry);
-			}
-			
-			// If we have a large number of ZipEntries and the first one looks relatively small, advise 
-			// callers to use a thread per reader
-			if(entry != null && zipFile.size() > 20 && (entry.getSize() == -1 || entry.getSize() < 100000)) {
-				useMultipleThreadsPerReader = false;
+			synchronized(this) {
+				cancelPrefetches();
+				if(prefetchDepth > 0 && prefetchExecutor == null && ownedExecutor == null) {
+					ownedExecutor = Executors.newFixedThreadPool(prefetchDepth, new DaemonThreadFactory("ZipFileSource", "prefetch"));
+				}
+				
+				zipFile = new ZipFile(source);
+				zipEntries = zipFile.entries();
+				PrefetchedEntry next = takeNextEntry();
+				ZipEntry entry = next != null? next.entry : null;
+				if(next != null) {
+					// Prime the reader
+					reader = getReader(next);
+				}
+				
+				if(prefetchDepth > 0) {
+					// Entries which fit in our prefetch buffers are inflated ahead of time, so the threads sharing a 
+					// reader no longer share any decompression work; once there are enough of them, give each thread 
+					// an entry of its own
+					if(entry != null && zipFile.size() > Math.max(20, prefetchDepth) && (entry.getSize() == -1 || entry.getSize() <= maxPrefetchSize)) {
+						useMultipleThreadsPerReader = false;
+					}
+				} else if(entry != null && zipFile.size() > 20 && (entry.getSize() == -1 || entry.getSize() < 100000)) {
+					// If we have a large number of ZipEntries and the first one looks relatively small, advise 
+					// callers to use a thread per reader
+					useMultipleThreadsPerReader = false;
+				}
 			}
 			
 		} catch (IOException e) {
@@ -134,6 +203,13 @@ public class ZipFileSource implements SplittingReaderSource {
 	 * @see biz.c24.spring.batch.BufferedReaderSource#close()
 	 */
 	public void close() {
+		synchronized(this) {
+			cancelPrefetches();
+		}
+		if(ownedExecutor != null) {
+			ownedExecutor.shutdownNow();
+			ownedExecutor = null;
+		}
 		if(zipFile != null) {
 			try {
 				zipFile.close();
@@ -143,8 +219,10 @@ public class ZipFileSource implements SplittingReaderSource {
 		}
 	}
 	
-	private SplittingReader getReader(ZipEntry entry) throws IOException {
-	    SplittingReader newReader = new SplittingReader(new InputStreamReader(zipFile.getInputStream(entry), getEncoding()), consistentLineTerminators);
+	private ZipEntryReader getReader(PrefetchedEntry next) throws IOException {
+		byte[] data = next.await();
+		InputStream in = data != null? new ByteArrayInputStream(data) : zipFile.getInputStream(next.entry);
+	    ZipEntryReader newReader = new ZipEntryReader(next.entry.getName(), new InputStreamReader(in, getEncoding()), consistentLineTerminators);
 		if(skipLines > 0) {
 			for(int i = 0; i < skipLines && newReader.ready(); i++) {
 				// Skip the line
@@ -170,17 +248,144 @@ public class ZipFileSource implements SplittingReaderSource {
 		return next;
 	}
 	
+	/**
+	 * Takes the entry following the current one, keeping the prefetch queue topped up.
+	 * Callers must hold our lock.
+	 * 
+	 * @return The next entry, null if there are no more
+	 */
+	private PrefetchedEntry takeNextEntry() {
+		fillPrefetchQueue();
+		if(prefetched.isEmpty()) {
+			// Prefetching is disabled
+			ZipEntry next = getNextZipEntry();
+			return next != null? new PrefetchedEntry(next, null) : null;
+		}
+		PrefetchedEntry next = prefetched.removeFirst();
+		fillPrefetchQueue();
+		return next;
+	}
+	
+	/**
+	 * Starts decompressing entries until prefetchDepth are queued or we run out.
+	 * Callers must hold our lock.
+	 */
+	private void fillPrefetchQueue() {
+		while(prefetched.size() < prefetchDepth) {
+			ZipEntry entry = getNextZipEntry();
+			if(entry == null) {
+				break;
+			}
+			FutureTask<byte[]> task = null;
+			if(entry.getSize() <= maxPrefetchSize) {
+				task = new FutureTask<byte[]>(new Inflater(entry));
+				(prefetchExecutor != null? prefetchExecutor : ownedExecutor).execute(task);
+			}
+			prefetched.add(new PrefetchedEntry(entry, task));
+		}
+	}
+	
+	/**
+	 * Abandons any entries being or waiting to be decompressed. Callers must hold our lock.
+	 */
+	private void cancelPrefetches() {
+		if(nextEntry != null) {
+			nextEntry.cancel();
+			nextEntry = null;
+		}
+		for(PrefetchedEntry entry : prefetched) {
+			entry.cancel();
+		}
+		prefetched.clear();
+	}
+	
+	/**
+	 * A ZipEntry and, if it is being decompressed ahead of time, the task doing so
+	 */
+	private static class PrefetchedEntry {
+		
+		private final ZipEntry entry;
+		private final FutureTask<byte[]> data;
+		
+		public PrefetchedEntry(ZipEntry entry, FutureTask<byte[]> data) {
+			this.entry = entry;
+			this.data = data;
+		}
+		
+		/**
+		 * Waits for the entry to be decompressed
+		 * 
+		 * @return The decompressed entry, null if it was not prefetched and must be streamed from the zip file
+		 */
+		public byte[] await() throws IOException {
+			if(data == null) {
+				return null;
+			}
+			try {
+				return data.get();
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for " + entry.getName() + " to be decompressed");
+			} catch(ExecutionException ex) {
+				if(ex.getCause() instanceof IOException) {
+					throw (IOException)ex.getCause();
+				}
+				throw new IOException("Failed to decompress " + entry.getName(), ex.getCause());
+			}
+		}
+		
+		public void cancel() {
+			if(data != null) {
+				data.cancel(true);
+			}
+		}
+	}
+	
+	/**
+	 * Decompresses a ZipEntry into memory, giving up if it turns out to be larger than maxPrefetchSize
+	 */
+	private class Inflater implements Callable<byte[]> {
+		
+		private final ZipEntry entry;
+		
+		public Inflater(ZipEntry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public byte[] call() throws IOException {
+			long size = entry.getSize();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(size >= 0? (int)size : 8192);
+			InputStream in = zipFile.getInputStream(entry);
+			try {
+				byte[] buffer = new byte[8192];
+				int read;
+				while((read = in.read(buffer)) >= 0) {
+					if(out.size() + read > maxPrefetchSize) {
+						// Too big to hold in memory; it will be streamed instead
+						return null;
+					}
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+			return out.toByteArray();
+		}
+	}
+	
 	/* (non-Javadoc)
 	 * @see biz.c24.spring.batch.BufferedReaderSource#getReader()
 	 */
 	public SplittingReader getReader() {
 		try {
-			if(reader != null && !reader.ready()) {
+			ZipEntryReader current = reader;
+			if(current == null || !current.ready()) {
 				synchronized(this) {
 					// Multiple threads could be calling this in parallel; check the work hasn't already been performed for us
-					if(reader != null && !reader.ready()) {
-						// Our current reader is exhausted...
-						getNextReader();
+					if(reader == null? nextEntry != null : !reader.ready()) {
+						// Our current reader is exhausted or has been handed out...
+						advance();
 					}
 				}
 			}
@@ -193,25 +398,37 @@ public class ZipFileSource implements SplittingReaderSource {
 	}
 
 	@Override
-	public synchronized SplittingReader getNextReader() {
-	    SplittingReader retVal = reader;
-		
-		if(retVal != null) {
-			// Set up the next reader to return
-			ZipEntry next = getNextZipEntry();
-			if(next != null) {
-				try {
-					reader = getReader(next);
-				} catch (IOException e) {
-					throw new RuntimeException(e);
-				}
-			} else {
+	public SplittingReader getNextReader() {
+		PrefetchedEntry entry;
+		synchronized(this) {
+		    SplittingReader retVal = reader;
+			if(retVal != null) {
 				reader = null;
+				nextEntry = takeNextEntry();
+				return retVal;
+			}
+			entry = nextEntry;
+			if(entry == null) {
+				return null;
 			}
+			nextEntry = takeNextEntry();
 		}
 		
-		return retVal;
-
+		// Wait for the entry to be decompressed without stopping other callers from taking the ones after it
+		try {
+			return getReader(entry);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Replaces the current reader with one for the following entry. Callers must hold our lock.
+	 */
+	private void advance() throws IOException {
+		PrefetchedEntry next = nextEntry != null? nextEntry : takeNextEntry();
+		nextEntry = null;
+		reader = next != null? getReader(next) : null;
 	}
 
 	@Override
@@ -222,11 +439,64 @@ public class ZipFileSource implements SplittingReaderSource {
 	@Override
 	public synchronized void discard(SplittingReader reader) throws IOException {
 		if(this.reader == reader) {
-			getNextReader();
+			this.reader = null;
+			nextEntry = takeNextEntry();
 		}	
 		reader.close();
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.RestartableSplittingReaderSource#getReaderId(biz.c24.io.spring.batch.reader.source.SplittingReader)
+	 */
+	@Override
+	public String getReaderId(SplittingReader reader) {
+		return reader instanceof ZipEntryReader? ((ZipEntryReader)reader).getEntryName() : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.reader.source.RestartableSplittingReaderSource#seek(java.lang.String, long)
+	 */
+	@Override
+	public synchronized void seek(String readerId, long position) throws IOException {
+		if(reader == null && nextEntry != null) {
+			advance();
+		}
+		// Skip over the entries the previous execution completed
+		while(reader != null && !reader.getEntryName().equals(readerId)) {
+			reader.close();
+			PrefetchedEntry next = takeNextEntry();
+			while(next != null && !next.entry.getName().equals(readerId)) {
+				// Skip straight past it without opening it
+				next.cancel();
+				next = takeNextEntry();
+			}
+			reader = next != null? getReader(next) : null;
+		}
+		if(reader == null) {
+			throw new IOException("Cannot find entry " + readerId + " in " + name);
+		}
+		reader.seek(position);
+	}
+	
+	/**
+	 * Records which ZipEntry a SplittingReader is reading so that we can find it again on restart
+	 */
+	private static class ZipEntryReader extends SplittingReader {
+		
+		private final String entryName;
+		
+		public ZipEntryReader(String entryName, Reader reader, boolean consistentLineTerminators) {
+			super(reader, consistentLineTerminators);
+			this.entryName = entryName;
+		}
+		
+		public String getEntryName() {
+			return entryName;
+		}
+	}
+	
 	/**
 	 * How many lines will be skipped at the start of the file before the Reader is handed to callers?
 	 * @return the number of lines to skip at the start of each ZipEntry
@@ -292,6 +562,60 @@ public class ZipFileSource implements SplittingReaderSource {
     public void setConsistentLineTerminators(boolean consistentLineTerminators) {
         this.consistentLineTerminators = consistentLineTerminators;
     }   
+    
+    /**
+     * How many entries are decompressed ahead of the one being read?
+     * @return The number of entries prefetched, 0 if prefetching is disabled
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * Sets how many entries should be decompressed into memory ahead of the one being read so that callers don't 
+     * have to wait for them to be inflated. Defaults to 0, which disables prefetching.
+     * 
+     * @param prefetchDepth The number of entries to prefetch
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * The largest entry, in uncompressed bytes, that will be decompressed into memory ahead of time
+     * @return The maximum prefetched entry size
+     */
+    public int getMaxPrefetchSize() {
+        return maxPrefetchSize;
+    }
+
+    /**
+     * Sets the largest entry, in uncompressed bytes, that will be decompressed into memory ahead of time. Larger 
+     * entries are streamed from the zip file when they are reached. Defaults to DEFAULT_MAX_PREFETCH_SIZE.
+     * 
+     * @param maxPrefetchSize The maximum prefetched entry size
+     */
+    public void setMaxPrefetchSize(int maxPrefetchSize) {
+        this.maxPrefetchSize = maxPrefetchSize;
+    }
+
+    /**
+     * The Executor on which entries are decompressed
+     * @return The supplied Executor, null if we are using our own
+     */
+    public Executor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    /**
+     * Sets the Executor (for example a Spring TaskExecutor) on which entries are decompressed when prefetching. 
+     * If not set, we create a pool of prefetchDepth daemon threads which is shut down when we are closed.
+     * 
+     * @param prefetchExecutor The Executor to decompress entries on
+     */
+    public void setPrefetchExecutor(Executor prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+    }
 	
 	
 }
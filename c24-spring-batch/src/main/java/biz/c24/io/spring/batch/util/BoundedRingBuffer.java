@@ -0,0 +1,267 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free, multi-producer multi-consumer queue backed by a ring buffer.
+ * 
+ * Each slot in the ring carries a sequence number which tells producers and consumers whether it is free to be
+ * written to or ready to be read from, so the only contended operations are a CAS on the head (for consumers) 
+ * or tail (for producers) index. 
+ * 
+ * The blocking put and take methods spin briefly and then park with an increasing backoff rather than using locks 
+ * and conditions; the number of times they had to wait is recorded as producer and consumer stalls.
+ * 
+ * Once closed, producers can no longer add to the buffer and consumers will drain any remaining entries before
+ * take returns null.
+ * 
+ * @author Andrew Elmore
+ *
+ * @param <E> The type of entry held in the buffer
+ */
+public class BoundedRingBuffer<E> {
+	
+	/**
+	 * How many times we'll yield before we start parking
+	 */
+	private static final int SPIN_TRIES = 64;
+	
+	/**
+	 * The bounds of how long we park for while waiting
+	 */
+	private static final long MIN_PARK_NANOS = 1000;
+	private static final long MAX_PARK_NANOS = 1000000;
+	
+	private final Object[] entries;
+	
+	/**
+	 * Sequence numbers for each slot.
+	 * If a slot's sequence equals the tail position that maps to it, it is free to be written to.
+	 * If it equals the head position + 1, it is ready to be read.
+	 */
+	private final AtomicLongArray sequences;
+	
+	private final int mask;
+	
+	/**
+	 * The next position to be written to
+	 */
+	private final AtomicLong tail = new AtomicLong(0);
+	
+	/**
+	 * The next position to be read from
+	 */
+	private final AtomicLong head = new AtomicLong(0);
+	
+	private volatile boolean closed = false;
+	
+	private final AtomicLong producerStalls = new AtomicLong(0);
+	private final AtomicLong consumerStalls = new AtomicLong(0);
+	
+	/**
+	 * @param capacity The minimum number of entries the buffer must be able to hold. Will be rounded up to a power of 2
+	 * (and at least 2, as a single slot can't distinguish between published and free).
+	 */
+	public BoundedRingBuffer(int capacity) {
+		if(capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+		}
+		int size = 2;
+		while(size < capacity) {
+			size <<= 1;
+		}
+		
+		entries = new Object[size];
+		sequences = new AtomicLongArray(size);
+		for(int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+	}
+	
+	/**
+	 * Adds e to the buffer if there is space
+	 * 
+	 * @param e The entry to add
+	 * @return true iff e was added
+	 */
+	public boolean offer(E e) {
+		if(e == null) {
+			throw new NullPointerException();
+		}
+		
+		long pos = tail.get();
+		int index;
+		while(true) {
+			index = (int)(pos & mask);
+			long diff = sequences.get(index) - pos;
+			if(diff == 0) {
+				// The slot is free; try to claim it
+				if(tail.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+				pos = tail.get();
+			} else if(diff < 0) {
+				// The slot still holds an entry from the previous lap. We're full.
+				return false;
+			} else {
+				// Another producer beat us to it
+				pos = tail.get();
+			}
+		}
+		
+		entries[index] = e;
+		// Publish the entry to consumers
+		sequences.lazySet(index, pos + 1);
+		return true;
+	}
+	
+	/**
+	 * Removes the entry at the head of the buffer if there is one
+	 * 
+	 * @return The entry, null if the buffer is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long pos = head.get();
+		int index;
+		while(true) {
+			index = (int)(pos & mask);
+			long diff = sequences.get(index) - (pos + 1);
+			if(diff == 0) {
+				// The slot has been published; try to claim it
+				if(head.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+				pos = head.get();
+			} else if(diff < 0) {
+				// Nothing has been published to this slot yet. We're empty.
+				return null;
+			} else {
+				// Another consumer beat us to it
+				pos = head.get();
+			}
+		}
+		
+		E e = (E)entries[index];
+		entries[index] = null;
+		// Free the slot for the producer's next lap
+		sequences.lazySet(index, pos + mask + 1);
+		return e;
+	}
+	
+	/**
+	 * Adds e to the buffer, waiting for space if necessary
+	 * 
+	 * @param e The entry to add
+	 * @return true if e was added, false if the buffer was closed before space became available
+	 * @throws InterruptedException
+	 */
+	public boolean put(E e) throws InterruptedException {
+		int attempt = 0;
+		while(!closed) {
+			if(offer(e)) {
+				return true;
+			}
+			if(attempt == 0) {
+				producerStalls.incrementAndGet();
+			}
+			backoff(attempt++);
+		}
+		return false;
+	}
+	
+	/**
+	 * Removes the entry at the head of the buffer, waiting for one to become available if necessary
+	 * 
+	 * @return The entry, null if the buffer has been closed and there are no further entries
+	 * @throws InterruptedException
+	 */
+	public E take() throws InterruptedException {
+		int attempt = 0;
+		while(true) {
+			E e = poll();
+			if(e != null) {
+				return e;
+			} else if(closed) {
+				// Entries may have been added between our poll and the close
+				return poll();
+			}
+			if(attempt == 0) {
+				consumerStalls.incrementAndGet();
+			}
+			backoff(attempt++);
+		}
+	}
+	
+	private static void backoff(int attempt) throws InterruptedException {
+		if(Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		if(attempt < SPIN_TRIES) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, MIN_PARK_NANOS << Math.min(attempt - SPIN_TRIES, 10)));
+		}
+	}
+	
+	/**
+	 * Prevents further entries from being added. Consumers will be able to remove any remaining entries.
+	 */
+	public void close() {
+		closed = true;
+	}
+	
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * The approximate number of entries currently in the buffer
+	 */
+	public int size() {
+		// Read head first so that we can't observe it beyond tail
+		long headPos = head.get();
+		long size = tail.get() - headPos;
+		return (int)Math.max(0, Math.min(size, entries.length));
+	}
+	
+	/**
+	 * The maximum number of entries the buffer can hold
+	 */
+	public int getCapacity() {
+		return entries.length;
+	}
+	
+	/**
+	 * The number of times that a producer has had to wait for space in the buffer
+	 */
+	public long getProducerStalls() {
+		return producerStalls.get();
+	}
+	
+	/**
+	 * The number of times that a consumer has had to wait for an entry to be added to the buffer
+	 */
+	public long getConsumerStalls() {
+		return consumerStalls.get();
+	}
+
+}
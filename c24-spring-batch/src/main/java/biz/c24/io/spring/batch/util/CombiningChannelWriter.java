@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.util;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Allows multiple threads to write to a GatheringByteChannel, combining the buffers from concurrent writes into a
+ * single gathering write.
+ *
+ * A writer queues its buffers and then takes the lock. Whichever thread holds the lock writes everything queued at
+ * the time, so a writer usually finds, on acquiring the lock, that its buffers have already been written and it can
+ * return straight away. Under contention this replaces a write per thread with one write for all of them, while the
+ * data from each call still appears contiguously and in the order the calls were queued.
+ *
+ * @author Andrew Elmore
+ */
+public class CombiningChannelWriter {
+
+	/**
+	 * The most buffers we'll pass to a single gathering write; operating systems typically limit this to 1024
+	 */
+	private static final int MAX_BUFFERS_PER_WRITE = 512;
+
+	private final GatheringByteChannel channel;
+
+	/**
+	 * Flushed before each write so that data written to the channel by other means appears first
+	 */
+	private final Flushable before;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final ConcurrentLinkedQueue<Batch> pending = new ConcurrentLinkedQueue<Batch>();
+
+	private long writes = 0;
+	private long batches = 0;
+
+	/**
+	 * The buffers passed to a single call to write
+	 */
+	private static class Batch {
+		private final ByteBuffer[] buffers;
+		private boolean written = false;
+		private IOException failure = null;
+
+		public Batch(ByteBuffer[] buffers) {
+			this.buffers = buffers;
+		}
+	}
+
+	/**
+	 * @param channel The channel to write to
+	 * @param before If not null, flushed before every write to the channel
+	 */
+	public CombiningChannelWriter(GatheringByteChannel channel, Flushable before) {
+		this.channel = channel;
+		this.before = before;
+	}
+
+	/**
+	 * Writes the remaining bytes of buffers to the channel, contiguously. Returns once they have been written.
+	 *
+	 * @param buffers The data to write
+	 * @throws IOException If the channel could not be written to. Buffers written in the same gathering write as
+	 * those that failed will also fail.
+	 */
+	public void write(ByteBuffer[] buffers) throws IOException {
+		Batch batch = new Batch(buffers);
+		pending.add(batch);
+
+		lock.lock();
+		try {
+			// Keep going until our own batch has been written, then leave the rest to the threads that queued them
+			while(!batch.written) {
+				writePending();
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		// The thread which wrote our batch released the lock before we acquired it, so we see its outcome
+		if(batch.failure != null) {
+			IOException ex = new IOException("Failed to write to channel: " + batch.failure.getMessage());
+			ex.initCause(batch.failure);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Writes as many of the pending batches as we can in a single gathering write. Must hold the lock.
+	 */
+	private void writePending() {
+		List<Batch> batchesToWrite = new ArrayList<Batch>();
+		List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+		Batch batch;
+		// Only the thread holding the lock removes batches, so the one we peek at is the one we'll poll
+		while((batch = pending.peek()) != null) {
+			if(!batchesToWrite.isEmpty() && buffers.size() + batch.buffers.length > MAX_BUFFERS_PER_WRITE) {
+				break;
+			}
+			pending.poll();
+			batchesToWrite.add(batch);
+			for(ByteBuffer buffer : batch.buffers) {
+				if(buffer.hasRemaining()) {
+					buffers.add(buffer);
+				}
+			}
+		}
+
+		IOException failure = null;
+		try {
+			if(before != null) {
+				before.flush();
+			}
+			ByteBuffer[] toWrite = buffers.toArray(new ByteBuffer[buffers.size()]);
+			int offset = 0;
+			while(offset < toWrite.length) {
+				channel.write(toWrite, offset, toWrite.length - offset);
+				while(offset < toWrite.length && !toWrite[offset].hasRemaining()) {
+					offset++;
+				}
+			}
+			writes++;
+			batches += batchesToWrite.size();
+		} catch(IOException ioEx) {
+			failure = ioEx;
+		} catch(RuntimeException ex) {
+			// Make sure the other writers don't wait for data that will never be written
+			failure = new IOException(ex.toString());
+			failure.initCause(ex);
+		}
+
+		for(Batch written : batchesToWrite) {
+			written.failure = failure;
+			written.written = true;
+		}
+	}
+
+	/**
+	 * The average number of calls to write whose data was written by each gathering write. Higher values indicate
+	 * that more writes were combined.
+	 */
+	public double getCombiningRatio() {
+		lock.lock();
+		try {
+			return writes > 0? (double)batches / writes : 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.util;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import biz.c24.io.spring.batch.reader.source.DaemonThreadFactory;
+
+/**
+ * A reactive-streams Publisher whose items are produced in two stages: each is first split out of a shared source,
+ * one at a time, and then processed on one of up to parallelism threads (rails).
+ *
+ * Work is only started in response to demand. No more items are split than the Subscriber has requested, and no
+ * more than parallelism are in progress at once, so nothing is read ahead of the Subscriber and there is no
+ * unbounded buffer between the stages. If ordered, items are delivered in the order in which they were split, an
+ * item which is processed early being held until those before it have been delivered; otherwise each is delivered
+ * as soon as it has been processed.
+ *
+ * Signals to the Subscriber are serialised but may be made from any of the rails. A failure to split or process an
+ * item terminates the stream with onError once any items ahead of it (if ordered) have been delivered.
+ *
+ * As the items are consumed from a shared source, only one Subscriber may be subscribed at a time; the source is
+ * opened when it subscribes and closed once the stream has terminated or been cancelled and no rails are busy.
+ *
+ * @author Andrew Elmore
+ *
+ * @param <S> The type of item split out of the source
+ * @param <T> The type of item published
+ */
+public abstract class ParallelPublisher<S, T> implements Publisher<T> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ParallelPublisher.class);
+
+	/**
+	 * Placeholder for an item which processed to null, so that the items after it aren't held up
+	 */
+	private static final Object SKIPPED = new Object();
+
+	/**
+	 * Given to Subscribers we reject
+	 */
+	private static final Subscription CANCELLED = new Subscription() {
+		public void request(long n) {
+		}
+		public void cancel() {
+		}
+	};
+
+	private int parallelism = 1;
+
+	private boolean ordered = true;
+
+	private Executor executor = null;
+
+	private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+	/**
+	 * The maximum number of items processed at once
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the maximum number of items to process at once. Defaults to 1.
+	 *
+	 * @param parallelism The number of rails
+	 */
+	public void setParallelism(int parallelism) {
+		if(parallelism <= 0) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Are items delivered in the order they were split?
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Sets whether items are delivered in the order they were split (the default) or in the order in which their
+	 * processing completes. Unordered delivery avoids a slow item holding up those behind it.
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	/**
+	 * The Executor the rails run on, null if the publisher creates a pool for each subscription
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets the Executor to run the rails on. It should be able to run parallelism tasks at once. If not set, a pool
+	 * of parallelism daemon threads is created for each subscription.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Called when a Subscriber subscribes, before any items are split
+	 */
+	protected abstract void open();
+
+	/**
+	 * Splits the next item out of the source. Never called concurrently, but may be called by any of the rails.
+	 *
+	 * @return The next item, null if the source has been exhausted
+	 */
+	protected abstract S split() throws Exception;
+
+	/**
+	 * Processes an item. Called by the same thread that split it.
+	 *
+	 * @param item An item returned by split
+	 * @return The item to publish, null to skip it
+	 */
+	protected abstract T process(S item) throws Exception;
+
+	/**
+	 * Called once the stream has terminated or been cancelled and no rails are still splitting or processing
+	 */
+	protected abstract void close();
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.reactivestreams.Publisher#subscribe(org.reactivestreams.Subscriber)
+	 */
+	@Override
+	public void subscribe(Subscriber<? super T> subscriber) {
+		if(subscriber == null) {
+			throw new NullPointerException("subscriber must not be null");
+		}
+		if(!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(CANCELLED);
+			subscriber.onError(new IllegalStateException(getClass().getSimpleName() + " only supports one Subscriber at a time"));
+			return;
+		}
+
+		try {
+			open();
+		} catch(RuntimeException ex) {
+			subscribed.set(false);
+			subscriber.onSubscribe(CANCELLED);
+			subscriber.onError(ex);
+			return;
+		}
+
+		new ItemSubscription(subscriber).start();
+	}
+
+	/**
+	 * Wraps a failure to split or process an item so that it can be queued in its place
+	 */
+	private static class Failure {
+		private final Throwable cause;
+
+		public Failure(Throwable cause) {
+			this.cause = cause;
+		}
+	}
+
+	/**
+	 * The state of a single subscription. Everything other than the split sequence is guarded by this object's lock;
+	 * splitting is serialised by splitLock.
+	 */
+	private class ItemSubscription implements Subscription {
+
+		private final Subscriber<? super T> subscriber;
+		private final Executor railExecutor;
+		private final ExecutorService ownedExecutor;
+
+		private final Object splitLock = new Object();
+		/**
+		 * The sequence number to give the next item split. Guarded by splitLock.
+		 */
+		private long nextSplit = 0;
+
+		/**
+		 * Requested items that no rail has yet been started for
+		 */
+		private long demand = 0;
+		private int busyRails = 0;
+
+		/**
+		 * Processed items awaiting delivery; keyed by sequence if ordered, otherwise in completion order
+		 */
+		private final Map<Long, Object> pending = new HashMap<Long, Object>();
+		private final LinkedList<Object> completed = new LinkedList<Object>();
+		private long nextDelivery = 0;
+
+		/**
+		 * Set once the source has no more items, or an item has failed, so that no more are split
+		 */
+		private volatile boolean exhausted = false;
+		private volatile boolean failed = false;
+		private volatile boolean cancelled = false;
+
+		/**
+		 * A failure to report immediately, regardless of ordering
+		 */
+		private Throwable immediateFailure = null;
+
+		private boolean emitting = false;
+		private boolean terminated = false;
+		private boolean closed = false;
+
+		public ItemSubscription(Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+			if(executor != null) {
+				railExecutor = executor;
+				ownedExecutor = null;
+			} else {
+				ownedExecutor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory(ParallelPublisher.this.getClass().getSimpleName(), "rail"));
+				railExecutor = ownedExecutor;
+			}
+		}
+
+		/**
+		 * Hands ourselves to the Subscriber. Any items processed before onSubscribe returns are held until it has.
+		 */
+		public void start() {
+			synchronized(this) {
+				emitting = true;
+			}
+			try {
+				subscriber.onSubscribe(this);
+			} catch(Throwable ex) {
+				LOG.warn("Subscriber threw from onSubscribe; cancelling", ex);
+				cancel();
+			}
+			synchronized(this) {
+				emitting = false;
+			}
+			drain();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.reactivestreams.Subscription#request(long)
+		 */
+		@Override
+		public void request(long n) {
+			synchronized(this) {
+				if(cancelled || terminated) {
+					return;
+				}
+				if(n <= 0) {
+					immediateFailure = new IllegalArgumentException("Requested " + n + " items; requests must be positive");
+				} else {
+					demand += n;
+					if(demand < 0) {
+						// Effectively unbounded
+						demand = Long.MAX_VALUE;
+					}
+				}
+			}
+			dispatch();
+			drain();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.reactivestreams.Subscription#cancel()
+		 */
+		@Override
+		public void cancel() {
+			synchronized(this) {
+				cancelled = true;
+				demand = 0;
+				pending.clear();
+				completed.clear();
+			}
+			closeIfIdle();
+		}
+
+		/**
+		 * Starts a rail for each unit of demand, up to parallelism
+		 */
+		private void dispatch() {
+			while(true) {
+				synchronized(this) {
+					if(demand == 0 || busyRails >= parallelism || exhausted || failed || cancelled || terminated || immediateFailure != null) {
+						return;
+					}
+					if(demand != Long.MAX_VALUE) {
+						demand--;
+					}
+					busyRails++;
+				}
+				try {
+					railExecutor.execute(new Rail());
+				} catch(RejectedExecutionException ex) {
+					synchronized(this) {
+						busyRails--;
+						immediateFailure = ex;
+					}
+					drain();
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Splits and processes a single item
+		 */
+		private class Rail implements Runnable {
+
+			/*
+			 * (non-Javadoc)
+			 * @see java.lang.Runnable#run()
+			 */
+			@Override
+			public void run() {
+				long sequence = -1;
+				S item = null;
+				Object result = null;
+
+				synchronized(splitLock) {
+					if(!exhausted && !failed && !cancelled) {
+						try {
+							item = split();
+							if(item == null) {
+								exhausted = true;
+							}
+						} catch(Throwable ex) {
+							failed = true;
+							result = new Failure(ex);
+						}
+						if(item != null || result != null) {
+							sequence = nextSplit++;
+						}
+					}
+				}
+
+				if(item != null) {
+					try {
+						result = process(item);
+						if(result == null) {
+							result = SKIPPED;
+						}
+					} catch(Throwable ex) {
+						failed = true;
+						result = new Failure(ex);
+					}
+				}
+
+				complete(sequence, result);
+			}
+		}
+
+		/**
+		 * Records the outcome of a rail and delivers whatever is now ready
+		 *
+		 * @param sequence The sequence number of the item the rail split, -1 if there wasn't one
+		 * @param result The processed item, SKIPPED, a Failure or null if nothing was split
+		 */
+		private void complete(long sequence, Object result) {
+			synchronized(this) {
+				busyRails--;
+				if(result == SKIPPED || result == null) {
+					// The demand this rail was started for hasn't been met
+					if(demand != Long.MAX_VALUE && !cancelled) {
+						demand++;
+					}
+				}
+				if(sequence >= 0 && !cancelled && !terminated) {
+					if(ordered) {
+						pending.put(sequence, result);
+					} else if(result != SKIPPED) {
+						completed.add(result);
+					}
+				}
+			}
+			drain();
+			dispatch();
+			closeIfIdle();
+		}
+
+		/**
+		 * Delivers any items that are ready, and completes the stream once there are no more. Only one thread
+		 * delivers at a time; if another already is, it will pick up anything we've added.
+		 */
+		@SuppressWarnings("unchecked")
+		private void drain() {
+			synchronized(this) {
+				if(emitting) {
+					return;
+				}
+				emitting = true;
+			}
+
+			while(true) {
+				Object next = null;
+				boolean complete = false;
+				Throwable error = null;
+
+				synchronized(this) {
+					if(cancelled || terminated) {
+						emitting = false;
+						break;
+					}
+					if(immediateFailure != null) {
+						error = immediateFailure;
+					} else if(ordered && pending.containsKey(nextDelivery)) {
+						next = pending.remove(nextDelivery++);
+					} else if(!ordered && !completed.isEmpty()) {
+						next = completed.removeFirst();
+					} else if(exhausted && busyRails == 0 && pending.isEmpty() && completed.isEmpty()) {
+						complete = true;
+					} else {
+						emitting = false;
+						break;
+					}
+
+					if(next instanceof Failure) {
+						error = ((Failure)next).cause;
+					}
+					if(error != null || complete) {
+						terminated = true;
+						pending.clear();
+						completed.clear();
+					}
+				}
+
+				if(error != null) {
+					subscriber.onError(error);
+				} else if(complete) {
+					subscriber.onComplete();
+				} else if(next != SKIPPED) {
+					try {
+						subscriber.onNext((T)next);
+					} catch(Throwable ex) {
+						LOG.warn("Subscriber threw from onNext; cancelling", ex);
+						cancel();
+					}
+				}
+			}
+
+			closeIfIdle();
+		}
+
+		/**
+		 * Closes the source and releases our threads once we've finished and no rails are still using them
+		 */
+		private void closeIfIdle() {
+			synchronized(this) {
+				if(closed || busyRails > 0 || !(terminated || cancelled)) {
+					return;
+				}
+				closed = true;
+			}
+			try {
+				close();
+			} catch(RuntimeException ex) {
+				LOG.warn("Failed to close " + ParallelPublisher.this.getClass().getSimpleName(), ex);
+			} finally {
+				if(ownedExecutor != null) {
+					ownedExecutor.shutdown();
+				}
+				subscribed.set(false);
+			}
+		}
+	}
+
+}
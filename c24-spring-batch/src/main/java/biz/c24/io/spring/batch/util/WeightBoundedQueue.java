@@ -0,0 +1,236 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.util;
+
+import java.util.LinkedList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A blocking FIFO queue bounded by the total weight (typically an estimate of the memory used) of its entries rather
+ * than by their number.
+ *
+ * A producer waits until the entry it is adding fits within the capacity. So that entries heavier than the capacity
+ * can still be passed on, an entry is always accepted when the queue is empty. The weight held is therefore never
+ * more than the greater of the capacity and the heaviest single entry.
+ *
+ * Once closed, producers can no longer add to the queue and consumers will drain any remaining entries before take
+ * returns null. Clearing the queue discards its entries, for example when consumers are no longer interested in them.
+ *
+ * @author Andrew Elmore
+ *
+ * @param <E> The type of entry held in the queue
+ */
+public class WeightBoundedQueue<E> {
+
+	private final long capacity;
+
+	private final LinkedList<E> entries = new LinkedList<E>();
+	private final LinkedList<Long> weights = new LinkedList<Long>();
+
+	private long weight = 0;
+
+	private boolean closed = false;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	private long producerStalls = 0;
+	private long consumerStalls = 0;
+
+	/**
+	 * @param capacity The total weight of entries the queue can hold
+	 */
+	public WeightBoundedQueue(long capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Adds entry to the tail of the queue, waiting until there is room for it
+	 *
+	 * @param entry The entry to add
+	 * @param entryWeight The entry's weight; must not be negative
+	 * @return False if the queue has been closed and the entry was not added
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public boolean put(E entry, long entryWeight) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			boolean stalled = false;
+			while(!closed && !entries.isEmpty() && weight + entryWeight > capacity) {
+				stalled = true;
+				notFull.await();
+			}
+			if(stalled) {
+				producerStalls++;
+			}
+			if(closed) {
+				return false;
+			}
+			entries.addLast(entry);
+			weights.addLast(entryWeight);
+			weight += entryWeight;
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the entry at the head of the queue, waiting for one if necessary
+	 *
+	 * @return The entry, null if the queue has been closed and is empty
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public E take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			boolean stalled = false;
+			while(entries.isEmpty() && !closed) {
+				stalled = true;
+				notEmpty.await();
+			}
+			if(stalled) {
+				consumerStalls++;
+			}
+			if(entries.isEmpty()) {
+				return null;
+			}
+			weight -= weights.removeFirst();
+			// Several smaller entries may now fit
+			notFull.signalAll();
+			return entries.removeFirst();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the entry at the head of the queue if there is one, without waiting
+	 *
+	 * @return The entry, null if the queue is empty
+	 */
+	public E poll() {
+		lock.lock();
+		try {
+			if(entries.isEmpty()) {
+				return null;
+			}
+			weight -= weights.removeFirst();
+			notFull.signalAll();
+			return entries.removeFirst();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Prevents any further entries being added. Waiting producers are woken and waiting consumers will receive null
+	 * once the queue is empty.
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			notFull.signalAll();
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Discards all entries in the queue
+	 */
+	public void clear() {
+		lock.lock();
+		try {
+			entries.clear();
+			weights.clear();
+			weight = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isClosed() {
+		lock.lock();
+		try {
+			return closed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The number of entries in the queue
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The total weight of the entries in the queue
+	 */
+	public long getWeight() {
+		lock.lock();
+		try {
+			return weight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * The number of times a producer had to wait for room in the queue
+	 */
+	public long getProducerStalls() {
+		lock.lock();
+		try {
+			return producerStalls;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The number of times a consumer had to wait for an entry
+	 */
+	public long getConsumerStalls() {
+		lock.lock();
+		try {
+			return consumerStalls;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+}
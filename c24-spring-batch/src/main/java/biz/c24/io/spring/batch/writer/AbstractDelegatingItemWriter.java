@@ -0,0 +1,154 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer;
+
+import java.util.List;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.annotation.AfterStep;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.core.listener.StepListenerFactoryBean;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Required;
+
+/**
+ * Base class for ItemWriters which convert the items they are given and pass the results on to a delegate ItemWriter.
+ * 
+ * The delegate's ItemStream callbacks and any step listener methods are invoked along with our own, so the delegate
+ * should not also be registered with the step.
+ * 
+ * @author Andrew Elmore
+ */
+public abstract class AbstractDelegatingItemWriter<T> implements ItemWriter<T>, ItemStream {
+
+	/**
+	 * Where we write the converted items
+	 */
+	private ItemWriter<?> delegate = null;
+	
+	/**
+	 * Writes items to our delegate
+	 * 
+	 * @param items The converted items
+	 */
+	@SuppressWarnings("unchecked")
+	protected void writeToDelegate(List<?> items) throws Exception {
+		((ItemWriter<Object>)delegate).write(items);
+	}
+	
+	/**
+	 * Releases any transient state left over from the step. Called before the delegate is told the step has ended.
+	 */
+	protected void release() {
+	}
+	
+	/**
+	 * Passes the start of the step on to our delegate
+	 * 
+	 * @param stepExecution The step execution context
+	 */
+	@BeforeStep
+	public void setup(StepExecution stepExecution) {
+		StepExecutionListener listener = getDelegateListener();
+		if(listener != null) {
+			listener.beforeStep(stepExecution);
+		}
+	}
+	
+	/**
+	 * Releases any transient state left over from this step and passes the end of the step on to our delegate
+	 * 
+	 * @param stepExecution The step execution context
+	 * @return The delegate's ExitStatus, if it returns one
+	 */
+	@AfterStep
+	public ExitStatus cleanup(StepExecution stepExecution) {
+		release();
+		StepExecutionListener listener = getDelegateListener();
+		return listener != null? listener.afterStep(stepExecution) : null;
+	}
+	
+	/**
+	 * Gets a StepExecutionListener which invokes the delegate's step listener methods, if it has any
+	 */
+	private StepExecutionListener getDelegateListener() {
+		if(StepListenerFactoryBean.isListener(delegate)) {
+			Object listener = StepListenerFactoryBean.getListener(delegate);
+			if(listener instanceof StepExecutionListener) {
+				return (StepExecutionListener)listener;
+			}
+		}
+		return null;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemStream#open(org.springframework.batch.item.ExecutionContext)
+	 */
+	@Override
+	public void open(ExecutionContext executionContext) throws ItemStreamException {
+		if(delegate instanceof ItemStream) {
+			((ItemStream)delegate).open(executionContext);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemStream#update(org.springframework.batch.item.ExecutionContext)
+	 */
+	@Override
+	public void update(ExecutionContext executionContext) throws ItemStreamException {
+		if(delegate instanceof ItemStream) {
+			((ItemStream)delegate).update(executionContext);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemStream#close()
+	 */
+	@Override
+	public void close() throws ItemStreamException {
+		if(delegate instanceof ItemStream) {
+			((ItemStream)delegate).close();
+		}
+	}
+	
+	/**
+	 * Get the ItemWriter the converted items are written to
+	 * 
+	 * @return The delegate ItemWriter
+	 */
+	public ItemWriter<?> getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Set the ItemWriter to write the converted items to
+	 * 
+	 * @param delegate The delegate ItemWriter
+	 */
+	@Required
+	public void setDelegate(ItemWriter<?> delegate) {
+		this.delegate = delegate;
+	}
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import biz.c24.io.spring.batch.metrics.BatchMetrics;
+import biz.c24.io.spring.batch.util.WeightBoundedQueue;
+import biz.c24.io.spring.batch.writer.source.ByteWriterSource;
+import biz.c24.io.spring.batch.writer.source.WriterSource;
+
+/**
+ * Writes formatted chunks to a WriterSource from a single, dedicated thread.
+ *
+ * Chunk threads publish their data to a bounded queue and carry on. The output thread takes everything queued and
+ * writes it out in one go - a single gathering write where the WriterSource is a ByteWriterSource, otherwise a
+ * sequence of writes followed by a flush of the Writer - so no chunk thread ever waits on I/O for another's data.
+ *
+ * Each published chunk is a barrier which is released once its data has been written and flushed; callers must
+ * await it before committing the chunk. Once a write has failed, the output is incomplete so every subsequent chunk
+ * fails too.
+ *
+ * @author Andrew Elmore
+ */
+class AsyncChunkWriter implements Runnable {
+
+	/**
+	 * The most chunks we'll combine into a single write
+	 */
+	private static final int MAX_CHUNKS_PER_WRITE = 512;
+
+	private final WriterSource writerSource;
+
+	/**
+	 * The encoding of our ByteWriterSource, null if we're writing chars
+	 */
+	private final Charset byteEncoding;
+
+	private final WeightBoundedQueue<Chunk> queue;
+
+	/**
+	 * ByteBufferWriters whose data has been written, ready for chunk threads to reuse
+	 */
+	private final ConcurrentLinkedQueue<ByteBufferWriter> spareWriters = new ConcurrentLinkedQueue<ByteBufferWriter>();
+
+	private final BatchMetrics.Timer writeTimer;
+	private final BatchMetrics.Counter charsCounter;
+
+	private Thread thread = null;
+
+	/**
+	 * Only accessed by the output thread
+	 */
+	private IOException failure = null;
+
+	/**
+	 * A formatted chunk awaiting output
+	 */
+	static class Chunk {
+		private final String chars;
+		private final ByteBuffer bytes;
+		private final ByteBufferWriter owner;
+		private final long charCount;
+		private final CountDownLatch written = new CountDownLatch(1);
+		private volatile IOException failure = null;
+
+		private Chunk(String chars, ByteBuffer bytes, ByteBufferWriter owner, long charCount) {
+			this.chars = chars;
+			this.bytes = bytes;
+			this.owner = owner;
+			this.charCount = charCount;
+		}
+
+		/**
+		 * Waits until this chunk has been written and flushed
+		 *
+		 * @throws IOException If the chunk could not be written
+		 * @throws InterruptedException If interrupted while waiting
+		 */
+		public void await() throws IOException, InterruptedException {
+			written.await();
+			if(failure != null) {
+				IOException ex = new IOException("Failed to write chunk: " + failure.getMessage());
+				ex.initCause(failure);
+				throw ex;
+			}
+		}
+
+		private void done(IOException failure) {
+			this.failure = failure;
+			written.countDown();
+		}
+	}
+
+	/**
+	 * @param writerSource The initialised WriterSource to write to
+	 * @param byteEncoding If not null, chunks are published as ByteBufferWriters encoding to this charset and written
+	 * to writerSource, which must be a ByteWriterSource, as bytes
+	 * @param maxQueuedBytes The limit on the size of the chunks waiting to be written
+	 * @param writeTimer If not null, records the time spent on each write
+	 * @param charsCounter If not null, counts the characters written
+	 */
+	public AsyncChunkWriter(WriterSource writerSource, Charset byteEncoding, long maxQueuedBytes,
+			BatchMetrics.Timer writeTimer, BatchMetrics.Counter charsCounter) {
+		this.writerSource = writerSource;
+		this.byteEncoding = byteEncoding;
+		this.queue = new WeightBoundedQueue<Chunk>(maxQueuedBytes);
+		this.writeTimer = writeTimer;
+		this.charsCounter = charsCounter;
+	}
+
+	/**
+	 * Starts the output thread
+	 *
+	 * @param name The name to give it
+	 */
+	public synchronized void start(String name) {
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Writes any chunks still queued then stops the output thread
+	 *
+	 * @throws InterruptedException If interrupted while waiting for the output thread to finish
+	 */
+	public synchronized void stop() throws InterruptedException {
+		queue.close();
+		if(thread != null) {
+			thread.join();
+			thread = null;
+		}
+	}
+
+	/**
+	 * Queues chars for output, waiting if the queue is full
+	 *
+	 * @param chars The formatted chunk
+	 * @return The chunk, to await before committing
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public Chunk write(String chars) throws InterruptedException {
+		// Java holds two bytes per char
+		return publish(new Chunk(chars, null, null, chars.length()), 2L * chars.length());
+	}
+
+	/**
+	 * Queues the data encoded by writer for output, waiting if the queue is full. The caller hands writer over and
+	 * must not use it again; it should take a replacement from getSpareWriter.
+	 *
+	 * @param writer The ByteBufferWriter holding the formatted chunk
+	 * @return The chunk, to await before committing
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public Chunk write(ByteBufferWriter writer) throws InterruptedException {
+		ByteBuffer bytes = writer.getBytes();
+		return publish(new Chunk(null, bytes, writer, writer.getCharCount()), bytes.remaining());
+	}
+
+	/**
+	 * Gets an empty ByteBufferWriter, reusing one whose data has already been written if possible
+	 */
+	public ByteBufferWriter getSpareWriter() {
+		ByteBufferWriter writer = spareWriters.poll();
+		return writer != null? writer : new ByteBufferWriter(byteEncoding);
+	}
+
+	/**
+	 * The estimated size of the chunks waiting to be written
+	 */
+	public long getQueuedBytes() {
+		return queue.getWeight();
+	}
+
+	private Chunk publish(Chunk chunk, long weight) throws InterruptedException {
+		if(!queue.put(chunk, weight)) {
+			throw new IllegalStateException("Cannot write a chunk once the writer has been closed");
+		}
+		return chunk;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		try {
+			Chunk chunk;
+			while((chunk = queue.take()) != null) {
+				// Take whatever else has been queued in the meantime
+				chunks.add(chunk);
+				while(chunks.size() < MAX_CHUNKS_PER_WRITE && (chunk = queue.poll()) != null) {
+					chunks.add(chunk);
+				}
+				write(chunks);
+				chunks.clear();
+			}
+		} catch(InterruptedException ex) {
+			// Don't leave anyone waiting for chunks we'll never write
+			queue.close();
+			IOException interrupted = new IOException("Writer thread interrupted");
+			Chunk chunk;
+			while((chunk = queue.poll()) != null) {
+				chunk.done(interrupted);
+			}
+		}
+	}
+
+	/**
+	 * Writes out the supplied chunks and releases their barriers
+	 */
+	private void write(List<Chunk> chunks) {
+		if(failure == null) {
+			BatchMetrics.Timer writeTimer = this.writeTimer;
+			long start = writeTimer != null? System.nanoTime() : 0;
+			try {
+				if(byteEncoding != null) {
+					ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+					for(int i = 0; i < buffers.length; i++) {
+						buffers[i] = chunks.get(i).bytes;
+					}
+					((ByteWriterSource)writerSource).write(buffers);
+				} else {
+					Writer outputWriter = writerSource.getWriter();
+					synchronized(outputWriter) {
+						for(Chunk chunk : chunks) {
+							outputWriter.write(chunk.chars);
+						}
+						outputWriter.flush();
+					}
+				}
+			} catch(IOException ioEx) {
+				failure = ioEx;
+			} catch(RuntimeException ex) {
+				failure = new IOException(ex.toString());
+				failure.initCause(ex);
+			}
+			if(writeTimer != null) {
+				writeTimer.record(System.nanoTime() - start);
+			}
+		}
+
+		for(Chunk chunk : chunks) {
+			if(failure == null && charsCounter != null) {
+				charsCounter.increment(chunk.charCount);
+			}
+			if(chunk.owner != null) {
+				chunk.owner.reset();
+				spareWriters.add(chunk.owner);
+			}
+			chunk.done(failure);
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A Writer which encodes everything written to it into a reusable ByteBuffer, so that a thread can format and
+ * encode its output without copying it into a String first.
+ *
+ * As with an OutputStreamWriter, malformed and unmappable characters are replaced. A high surrogate at the end of one
+ * write is held back until the next, so surrogate pairs may be split between writes.
+ *
+ * Not thread-safe; each thread should have its own.
+ *
+ * @author Andrew Elmore
+ */
+class ByteBufferWriter extends Writer {
+
+	private static final int INITIAL_CAPACITY = 8192;
+
+	/**
+	 * If the buffer grows beyond this many bytes, we'll discard it rather than reusing it
+	 */
+	private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+	private final CharsetEncoder encoder;
+
+	private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+	/**
+	 * Used to copy Strings so that the encoder can work on an array
+	 */
+	private final char[] chars = new char[INITIAL_CAPACITY];
+
+	/**
+	 * A high surrogate held back from the last write
+	 */
+	private char pending;
+	private boolean hasPending = false;
+	private final CharBuffer pair = CharBuffer.allocate(2);
+
+	/**
+	 * The number of chars written since we were last reset
+	 */
+	private long charCount = 0;
+
+	public ByteBufferWriter(Charset charset) {
+		encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Writer#write(char[], int, int)
+	 */
+	@Override
+	public void write(char[] cbuf, int off, int len) {
+		encode(CharBuffer.wrap(cbuf, off, len));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Writer#write(java.lang.String, int, int)
+	 */
+	@Override
+	public void write(String str, int off, int len) {
+		int end = off + len;
+		while(off < end) {
+			int chunk = Math.min(chars.length, end - off);
+			str.getChars(off, off + chunk, chars, 0);
+			encode(CharBuffer.wrap(chars, 0, chunk));
+			off += chunk;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Writer#flush()
+	 */
+	@Override
+	public void flush() {
+		// Our data is retrieved by getBytes
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Writer#close()
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Encodes everything written since we were last reset and returns it, ready to be read. The buffer is only valid
+	 * until reset is called.
+	 */
+	public ByteBuffer getBytes() {
+		if(hasPending) {
+			// Its low surrogate never arrived
+			pair.clear();
+			pair.put(pending);
+			pair.flip();
+			hasPending = false;
+			encode(pair, true);
+		} else {
+			encode(CharBuffer.wrap(chars, 0, 0), true);
+		}
+		while(encoder.flush(buffer).isOverflow()) {
+			grow();
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * The number of chars written since we were last reset
+	 */
+	public long getCharCount() {
+		return charCount;
+	}
+
+	/**
+	 * Discards everything written so far, ready for reuse
+	 */
+	public void reset() {
+		encoder.reset();
+		hasPending = false;
+		charCount = 0;
+		if(buffer.capacity() > MAX_RETAINED_CAPACITY) {
+			buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+		} else {
+			buffer.clear();
+		}
+	}
+
+	private void encode(CharBuffer in) {
+		charCount += in.remaining();
+
+		// Complete any surrogate pair left over from the last write
+		while(hasPending && in.hasRemaining()) {
+			pair.clear();
+			pair.put(pending).put(in.get());
+			pair.flip();
+			hasPending = false;
+			encode(pair, false);
+			if(pair.hasRemaining()) {
+				// The second char is also a high surrogate
+				pending = pair.get();
+				hasPending = true;
+			}
+		}
+
+		encode(in, false);
+		if(in.hasRemaining()) {
+			// All that can be left is a high surrogate
+			pending = in.get();
+			hasPending = true;
+		}
+	}
+
+	private void encode(CharBuffer in, boolean endOfInput) {
+		while(true) {
+			CoderResult result = encoder.encode(in, buffer, endOfInput);
+			if(result.isOverflow()) {
+				grow();
+			} else {
+				// As we replace malformed and unmappable characters, this is an underflow
+				return;
+			}
+		}
+	}
+
+	private void grow() {
+		ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+		buffer.flip();
+		grown.put(buffer);
+		buffer = grown;
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.springframework.batch.item.ItemWriter;
+
+/**
+ * ItemWriter that waits for the results of an asynchronous ItemProcessor, such as the
+ * C24AsyncTransformItemProcessor, and writes them to a delegate ItemWriter in the order the items were read.
+ * 
+ * Null results, which the processor uses to filter items out, are dropped. If processing an item failed, the
+ * exception it failed with is rethrown from write so that the step's skip and retry policies see the original
+ * exception rather than an ExecutionException.
+ * 
+ * @author Andrew Elmore
+ */
+public class C24AsyncItemWriter extends AbstractDelegatingItemWriter<Future<Object>> {
+
+	/**
+	 * Default constructor. Requires that the delegate is initialised separately.
+	 */
+	public C24AsyncItemWriter() {
+	}
+	
+	/**
+	 * Construct a C24AsyncItemWriter
+	 * 
+	 * @param delegate The ItemWriter to write the processed items to
+	 */
+	public C24AsyncItemWriter(ItemWriter<?> delegate) {
+		setDelegate(delegate);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemWriter#write(java.util.List)
+	 */
+	@Override
+	public void write(List<? extends Future<Object>> items) throws Exception {
+		List<Object> results = new ArrayList<Object>(items.size());
+		for(Future<Object> item : items) {
+			Object result;
+			try {
+				result = item.get();
+			} catch(ExecutionException ex) {
+				Throwable cause = ex.getCause();
+				if(cause instanceof Exception) {
+					throw (Exception)cause;
+				} else if(cause instanceof Error) {
+					throw (Error)cause;
+				}
+				throw ex;
+			}
+			if(result != null) {
+				results.add(result);
+			}
+		}
+		
+		if(!results.isEmpty()) {
+			writeToDelegate(results);
+		}
+	}
+
+}
@@ -18,6 +18,8 @@ package biz.c24.io.spring.batch.writer;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.List;
 
 import javax.annotation.PostConstruct;
@@ -26,11 +28,17 @@ import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.annotation.AfterStep;
 import org.springframework.batch.core.annotation.BeforeStep;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.WriteFailedException;
 import org.springframework.beans.factory.annotation.Required;
 import org.springframework.util.Assert;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
 
 import biz.c24.io.api.data.ComplexDataObject;
 import biz.c24.io.api.presentation.Sink;
+import biz.c24.io.spring.batch.metrics.BatchMetrics;
+import biz.c24.io.spring.batch.writer.source.ByteWriterSource;
 import biz.c24.io.spring.batch.writer.source.WriterSource;
 
 /**
@@ -38,6 +46,18 @@ import biz.c24.io.spring.batch.writer.source.WriterSource;
  * 
  * Allows concurrent calls to write but synchronises on individual CDO write to the writer.
  * 
+ * Where the WriterSource is a ByteWriterSource, such as the FileWriterSource, each thread instead encodes its chunk
+ * into a reusable buffer of its own and hands the bytes to the WriterSource. This avoids copying the chunk into a
+ * String and then into the Writer's buffer, and leaves the WriterSource free to combine chunks from concurrent writes.
+ * 
+ * If asyncWrite is set, chunk threads don't write to the WriterSource themselves but queue their formatted chunks for
+ * a single dedicated output thread, which writes out everything queued in one go and then flushes. So that a chunk
+ * is never committed before its data has been written, the chunk thread waits for its chunk to be flushed before
+ * the chunk's transaction commits, or before write returns if there is no transaction.
+ * 
+ * If a BatchMetrics is set, the time spent formatting each chunk, waiting for the shared Writer and writing to it are
+ * recorded along with the number of characters written.
+ * 
  * @author Andrew Elmore
  */
 public class C24ItemWriter implements ItemWriter<ComplexDataObject>{
@@ -45,6 +65,38 @@ public class C24ItemWriter implements ItemWriter<ComplexDataObject>{
 	private Sink templateSink = null;
 	private ThreadLocal<Sink> sink = new ThreadLocal<Sink>();
 	private WriterSource writerSource = null;
+	
+	/**
+	 * The encoding of our ByteWriterSource, null if our WriterSource only accepts chars
+	 */
+	private volatile Charset byteEncoding = null;
+	
+	/**
+	 * The default limit on the size of the chunks queued for the output thread
+	 */
+	public static final long DEFAULT_MAX_QUEUED_BYTES = 16L * 1024 * 1024;
+	
+	private boolean asyncWrite = false;
+	private long maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+	
+	/**
+	 * Our output thread, null unless we're writing asynchronously
+	 */
+	private volatile AsyncChunkWriter asyncWriter = null;
+	
+	/**
+	 * The BatchMetrics we record our performance to, if any
+	 */
+	private BatchMetrics metrics = null;
+	
+	/**
+	 * Meters we record to, all null unless a BatchMetrics has been set
+	 */
+	private BatchMetrics.Timer formatTimer = null;
+	private BatchMetrics.Timer lockWaitTimer = null;
+	private BatchMetrics.Timer writeTimer = null;
+	private BatchMetrics.Timer flushWaitTimer = null;
+	private BatchMetrics.Counter charsCounter = null;
 
 	
 	/**
@@ -64,6 +116,13 @@ public class C24ItemWriter implements ItemWriter<ComplexDataObject>{
 	@BeforeStep
 	public void setup(StepExecution stepExecution) {	
 		writerSource.initialise(stepExecution);
+		byteEncoding = writerSource instanceof ByteWriterSource? Charset.forName(((ByteWriterSource)writerSource).getEncoding()) : null;
+		// Our sinks' Writers depend on the WriterSource
+		sink = new ThreadLocal<Sink>();
+		if(asyncWrite) {
+			asyncWriter = new AsyncChunkWriter(writerSource, byteEncoding, maxQueuedBytes, writeTimer, charsCounter);
+			asyncWriter.start(ClassUtils.getShortName(C24ItemWriter.class) + "-output");
+		}
 	}
 	
 	
@@ -72,15 +131,40 @@ public class C24ItemWriter implements ItemWriter<ComplexDataObject>{
 	 */
 	@AfterStep
 	public void cleanup() {
+		AsyncChunkWriter asyncWriter = this.asyncWriter;
+		if(asyncWriter != null) {
+			this.asyncWriter = null;
+			try {
+				// Write out anything still queued before we close the WriterSource
+				asyncWriter.stop();
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
 		writerSource.close();
 	}
 	
 	/**
-	 * Writes the contents of the StringWriter to our output file
+	 * Writes the data formatted by sink to our WriterSource, leaving the sink with an empty Writer for the next chunk.
 	 * 
-	 * @param writer The StringWriter to read the data from
+	 * The data is queued for our asynchronous writer if we have one. Otherwise bytes already encoded by a 
+	 * ByteBufferWriter are handed straight to our ByteWriterSource; the contents of a StringWriter are written to the
+	 * WriterSource's Writer while holding its lock.
+	 * 
+	 * @param sink The Sink whose Writer holds the formatted data
 	 */
-	private void write(Sink sink) throws IOException {
+	private void write(Sink sink) throws IOException, InterruptedException {
+		
+		AsyncChunkWriter asyncWriter = this.asyncWriter;
+		if(asyncWriter != null) {
+			writeAsync(sink, asyncWriter);
+			return;
+		}
+		
+		if(sink.getWriter() instanceof ByteBufferWriter) {
+			writeBytes((ByteBufferWriter)sink.getWriter());
+			return;
+		}
 		
 		StringWriter writer = (StringWriter)sink.getWriter();
 		
@@ -92,8 +176,20 @@ public class C24ItemWriter implements ItemWriter<ComplexDataObject>{
 		String element = buffer.toString();
 		
 		Writer outputWriter = writerSource.getWriter();
-		synchronized(outputWriter) {
-			outputWriter.write(element);
+		BatchMetrics.Timer lockWaitTimer = this.lockWaitTimer;
+		if(lockWaitTimer != null) {
+			long waitStart = System.nanoTime();
+			synchronized(outputWriter) {
+				long writeStart = System.nanoTime();
+				lockWaitTimer.record(writeStart - waitStart);
+				outputWriter.write(element);
+				writeTimer.record(System.nanoTime() - writeStart);
+			}
+			charsCounter.increment(element.length());
+		} else {
+			synchronized(outputWriter) {
+				outputWriter.write(element);
+			}
 		}
 		
 		// Reset the buffer for next time
@@ -101,6 +197,83 @@ public class C24ItemWriter implements ItemWriter<ComplexDataObject>{
 		
 	}
 
+	/**
+	 * Hands the bytes encoded by writer to our ByteWriterSource
+	 * 
+	 * @param writer The ByteBufferWriter to take the data from
+	 */
+	private void writeBytes(ByteBufferWriter writer) throws IOException {
+		try {
+			ByteBuffer bytes = writer.getBytes();
+			BatchMetrics.Timer writeTimer = this.writeTimer;
+			if(writeTimer != null) {
+				// As the ByteWriterSource may combine our write with others, this includes any time spent waiting
+				long writeStart = System.nanoTime();
+				((ByteWriterSource)writerSource).write(new ByteBuffer[] {bytes});
+				writeTimer.record(System.nanoTime() - writeStart);
+				charsCounter.increment(writer.getCharCount());
+			} else {
+				((ByteWriterSource)writerSource).write(new ByteBuffer[] {bytes});
+			}
+		} finally {
+			// Reset the buffer for next time
+			writer.reset();
+		}
+	}
+
+	/**
+	 * Queues the contents of the sink's Writer for our output thread and arranges to wait for it to be written
+	 * 
+	 * @param sink The Sink holding the formatted chunk
+	 * @param asyncWriter Our output thread
+	 */
+	private void writeAsync(Sink sink, AsyncChunkWriter asyncWriter) throws IOException, InterruptedException {
+		final AsyncChunkWriter.Chunk chunk;
+		if(sink.getWriter() instanceof ByteBufferWriter) {
+			// Hand the buffer over rather than copying it and carry on with a spare one
+			ByteBufferWriter writer = (ByteBufferWriter)sink.getWriter();
+			sink.setWriter(asyncWriter.getSpareWriter());
+			chunk = asyncWriter.write(writer);
+		} else {
+			StringBuffer buffer = ((StringWriter)sink.getWriter()).getBuffer();
+			chunk = asyncWriter.write(buffer.toString());
+			buffer.setLength(0);
+		}
+		
+		if(TransactionSynchronizationManager.isSynchronizationActive()) {
+			// Leave the wait until the last moment before the chunk commits
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					try {
+						await(chunk);
+					} catch(IOException ioEx) {
+						throw new WriteFailedException(ioEx.getMessage(), ioEx);
+					} catch(InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						throw new WriteFailedException("Interrupted waiting for chunk to be written", ex);
+					}
+				}
+			});
+		} else {
+			await(chunk);
+		}
+	}
+	
+	/**
+	 * Waits for chunk to be written and flushed by our output thread
+	 */
+	private void await(AsyncChunkWriter.Chunk chunk) throws IOException, InterruptedException {
+		BatchMetrics.Timer flushWaitTimer = this.flushWaitTimer;
+		if(flushWaitTimer != null) {
+			long start = System.nanoTime();
+			chunk.await();
+			flushWaitTimer.record(System.nanoTime() - start);
+		} else {
+			chunk.await();
+		}
+	}
+
 	/**
 	 * Get a thread-safe Sink
 	 */
@@ -111,7 +284,8 @@ public class C24ItemWriter implements ItemWriter<ComplexDataObject>{
 		if(sink == null) {
 			// First time this thread has used a sink; create one
 			sink = (Sink)templateSink.clone();
-			sink.setWriter(new StringWriter());
+			Charset encoding = byteEncoding;
+			sink.setWriter(encoding != null? new ByteBufferWriter(encoding) : new StringWriter());
 			this.sink.set(sink);
 		}	
 		
@@ -128,10 +302,24 @@ public class C24ItemWriter implements ItemWriter<ComplexDataObject>{
 		// Get a sink to use
 		Sink sink = getThreadsafeSink();
 
+		BatchMetrics.Timer formatTimer = this.formatTimer;
+		long start = formatTimer != null? System.nanoTime() : 0;
 		
-		for(ComplexDataObject cdo : items) {
-			// Sink the CDO
-			sink.writeObject(cdo);
+		try {
+			for(ComplexDataObject cdo : items) {
+				// Sink the CDO
+				sink.writeObject(cdo);
+			}
+		} catch(Exception ex) {
+			if(sink.getWriter() instanceof ByteBufferWriter) {
+				// Don't write out a partial chunk next time
+				((ByteBufferWriter)sink.getWriter()).reset();
+			}
+			throw ex;
+		}
+		
+		if(formatTimer != null) {
+			formatTimer.record(System.nanoTime() - start);
 		}
 		
 		// Now write the whole lot out
@@ -177,4 +365,89 @@ public class C24ItemWriter implements ItemWriter<ComplexDataObject>{
 		this.writerSource = writerSource;
 	}
 	
+	/**
+	 * Whether chunks are written by a dedicated output thread
+	 * 
+	 * @return True if chunks are written asynchronously
+	 */
+	public boolean isAsyncWrite() {
+		return asyncWrite;
+	}
+	
+	/**
+	 * Sets whether chunk threads should queue their formatted chunks for a dedicated output thread to write rather
+	 * than writing them themselves. This avoids chunk threads queueing on the shared Writer while each other's data is
+	 * written and allows the data from many chunks to be written at once. Takes effect from the next step.
+	 * 
+	 * @param asyncWrite True to write chunks asynchronously
+	 */
+	public void setAsyncWrite(boolean asyncWrite) {
+		this.asyncWrite = asyncWrite;
+	}
+	
+	/**
+	 * The limit on the size of the chunks queued for the output thread
+	 * 
+	 * @return The limit in bytes
+	 */
+	public long getMaxQueuedBytes() {
+		return maxQueuedBytes;
+	}
+	
+	/**
+	 * Sets the limit on the size of the formatted chunks waiting for the output thread when writing asynchronously.
+	 * Chunk threads wait once it is reached, although a single chunk larger than the limit will still be queued.
+	 * Defaults to DEFAULT_MAX_QUEUED_BYTES.
+	 * 
+	 * @param maxQueuedBytes The limit in bytes
+	 */
+	public void setMaxQueuedBytes(long maxQueuedBytes) {
+		this.maxQueuedBytes = maxQueuedBytes;
+	}
+	
+	/**
+	 * The estimated size of the chunks currently waiting for the output thread
+	 * 
+	 * @return The size in bytes, 0 if we're not writing asynchronously
+	 */
+	public long getQueuedBytes() {
+		AsyncChunkWriter asyncWriter = this.asyncWriter;
+		return asyncWriter != null? asyncWriter.getQueuedBytes() : 0;
+	}
+	
+	/**
+	 * Gets the BatchMetrics this C24ItemWriter records its performance to
+	 * 
+	 * @return The BatchMetrics, null if none has been set
+	 */
+	public BatchMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sets the BatchMetrics to record the performance of this C24ItemWriter to
+	 * 
+	 * @param metrics The BatchMetrics to use, null to stop recording
+	 */
+	public void setMetrics(BatchMetrics metrics) {
+		this.metrics = metrics;
+		if(metrics == null) {
+			formatTimer = lockWaitTimer = writeTimer = flushWaitTimer = null;
+			charsCounter = null;
+		} else {
+			String component = ClassUtils.getShortName(C24ItemWriter.class);
+			formatTimer = metrics.timer(BatchMetrics.WRITER_FORMAT, component);
+			lockWaitTimer = metrics.timer(BatchMetrics.WRITER_LOCK_WAIT, component);
+			writeTimer = metrics.timer(BatchMetrics.WRITER_WRITE, component);
+			flushWaitTimer = metrics.timer(BatchMetrics.WRITER_FLUSH_WAIT, component);
+			charsCounter = metrics.counter(BatchMetrics.WRITER_CHARS, component);
+			metrics.gauge(BatchMetrics.WRITER_QUEUE_DEPTH, component, new BatchMetrics.Gauge() {
+				@Override
+				public double value() {
+					return getQueuedBytes();
+				}
+			});
+		}
+	}
+	
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer;
+
+import java.util.List;
+
+import org.springframework.batch.item.ItemWriter;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.api.transform.Transform;
+import biz.c24.io.spring.batch.metrics.BatchMetrics;
+import biz.c24.io.spring.batch.processor.C24TransformItemProcessor;
+import biz.c24.io.spring.transform.TransformPool;
+
+/**
+ * ItemWriter that transforms each chunk with a C24 IO Transform before passing the results to a delegate ItemWriter.
+ * 
+ * Where the C24TransformItemProcessor invokes the transform once per item, this passes the whole chunk to a single
+ * invocation, as the occurrences of the transform's first input, and then validates and optionally converts the 
+ * results to Java Beans in a single pass. This saves the transform's per-invocation setup, which can be a significant
+ * cost with small CDOs, but requires that the transform produces one occurrence of its first output per occurrence
+ * of its first input.
+ * 
+ * Validation failures cause the chunk's write to fail; if they are configured to be skipped, Spring Batch will retry
+ * the chunk an item at a time in the usual way.
+ * 
+ * @author Andrew Elmore
+ */
+public class C24TransformItemWriter extends AbstractDelegatingItemWriter<ComplexDataObject> {
+
+	/**
+	 * Does the transformation, validation and conversion of each chunk
+	 */
+	private final C24TransformItemProcessor processor = new C24TransformItemProcessor();
+	
+	/**
+	 * Default constructor. Requires that the transformer and delegate are initialised separately.
+	 */
+	public C24TransformItemWriter() {
+	}
+	
+	/**
+	 * Construct a C24TransformItemWriter
+	 * 
+	 * @param transform The iO-generated transform to use
+	 * @param delegate The ItemWriter to write the transformed items to
+	 */
+	public C24TransformItemWriter(Transform transform, ItemWriter<?> delegate) {
+		setTransformer(transform);
+		setDelegate(delegate);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.batch.item.ItemWriter#write(java.util.List)
+	 */
+	@Override
+	public void write(List<? extends ComplexDataObject> items) throws Exception {
+		writeToDelegate(processor.processAll(items));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.writer.AbstractDelegatingItemWriter#release()
+	 */
+	@Override
+	protected void release() {
+		processor.cleanup();
+	}
+
+	/**
+	 * Get the C24 IO transformer used by this ItemWriter
+	 * 
+	 * @return The C24 IO transformer
+	 */
+	public Transform getTransformer() {
+		return processor.getTransformer();
+	}
+
+	/**
+	 * Set the C24 IO transformer that this ItemWriter will use
+	 * 
+	 * @param transformer The C24 IO transformer to use
+	 */
+	public void setTransformer(Transform transformer) {
+		processor.setTransformer(transformer);
+	}
+	
+	/**
+	 * Get the pool this ItemWriter borrows transforms from
+	 * 
+	 * @return The TransformPool, null if we use a single transformer
+	 */
+	public TransformPool getTransformPool() {
+		return processor.getTransformPool();
+	}
+	
+	/**
+	 * Set a pool to borrow transforms from, so that concurrent threads never share a Transform. 
+	 * If set, any transformer is ignored.
+	 * 
+	 * @param transformPool The TransformPool to use
+	 */
+	public void setTransformPool(TransformPool transformPool) {
+		processor.setTransformPool(transformPool);
+	}
+	
+	/**
+	 * Whether or not this writer validates the CDOs resulting from the transformation
+	 * 
+	 * @return True if if validates generated objects
+	 */
+	public boolean isValidating() {
+		return processor.isValidating();
+	}
+
+	/**
+	 * Turn validation on or off
+	 * 
+	 * @param validate 
+	 */
+	public void setValidation(boolean validate) {
+		processor.setValidation(validate);
+	}
+	
+	/**
+	 * Do we abort on first failure or fully validate the object
+	 * @return True iff this writer will abort on first failure
+	 */
+	public boolean isFailfast() {
+		return processor.isFailfast();
+	}
+
+	/**
+	 * Controls whether this writer aborts on first failure or fully validates the object
+	 * @param failfast
+	 */
+	public void setFailfast(boolean failfast) {
+		processor.setFailfast(failfast);
+	}
+	
+	/**
+	 * Returns the Java Bean class the transformed CDOs are converted to, if any
+	 * 
+	 * @return The target class, null if ComplexDataObjects are written
+	 */
+	public Class<?> getTargetClass() {
+		return processor.getTargetClass();
+	}
+
+	/**
+	 * Turns on/off writing POJOs or ComplexDataObjects
+	 * 
+	 * @param targetClass The Java Bean class to sink to, or CDO if null
+	 */
+	public void setTargetClass(Class<?> targetClass) {
+		processor.setTargetClass(targetClass);
+	}
+	
+	/**
+	 * Gets the BatchMetrics this writer records its performance to
+	 * 
+	 * @return The BatchMetrics, null if none has been set
+	 */
+	public BatchMetrics getMetrics() {
+		return processor.getMetrics();
+	}
+	
+	/**
+	 * Sets the BatchMetrics to record the time spent transforming and validating to
+	 * 
+	 * @param metrics The BatchMetrics to use, null to stop recording
+	 */
+	public void setMetrics(BatchMetrics metrics) {
+		processor.setMetrics(metrics);
+	}
+
+}
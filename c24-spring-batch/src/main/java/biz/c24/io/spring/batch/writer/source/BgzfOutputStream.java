@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer.source;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes gzip data as a series of independent gzip members, one per block, compressing the blocks in parallel.
+ *
+ * Each member whose compressed size allows it records that size in a BC extra field, as BGZF (and bgzip) does, so
+ * that the blocks can be located and inflated in parallel by the GzipFileSource. With a block size of no more than
+ * MAX_BGZF_BLOCK_SIZE every member will carry the field and the output is a BGZF file, ending with the standard
+ * empty BGZF block. Any gzip reader which supports multiple members can read the output whatever the block size.
+ *
+ * @author Andrew Elmore
+ */
+class BgzfOutputStream extends ParallelDeflaterOutputStream {
+
+	/**
+	 * The largest block size which guarantees that every member fits within BGZF's 64KB limit
+	 */
+	public static final int MAX_BGZF_BLOCK_SIZE = 0xff00;
+
+	/**
+	 * The most a BGZF member can hold, including its header and trailer
+	 */
+	private static final int MAX_BGZF_MEMBER_SIZE = 65536;
+
+	/**
+	 * The header of a member with a BC extra field, up to the field's value
+	 */
+	private static final byte[] BGZF_HEADER = {
+		0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff, 6, 0, 'B', 'C', 2, 0
+	};
+
+	/**
+	 * The header of a member without an extra field
+	 */
+	private static final byte[] GZIP_HEADER = {
+		0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, 0, (byte)0xff
+	};
+
+	/**
+	 * The empty block which marks the end of a BGZF file
+	 */
+	private static final byte[] EOF_BLOCK = {
+		0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+	};
+
+	private static final int TRAILER_LENGTH = 8;
+
+	/**
+	 * @param out Where to write the compressed data
+	 * @param level The compression level, 0-9 or Deflater.DEFAULT_COMPRESSION
+	 * @param blockSize The amount of uncompressed data in each member
+	 * @param executor Where to compress blocks
+	 * @param window The maximum number of blocks to compress at once
+	 */
+	public BgzfOutputStream(OutputStream out, int level, int blockSize, Executor executor, int window) {
+		super(out, level, blockSize, executor, window);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.writer.source.ParallelDeflaterOutputStream#compress(java.util.zip.Deflater, byte[], int, byte[], boolean)
+	 */
+	@Override
+	protected byte[] compress(Deflater deflater, byte[] data, int length, byte[] dictionary, boolean last) {
+		if(length == 0) {
+			// The final block is empty; our trailer will end the file
+			return new byte[0];
+		}
+
+		deflater.setInput(data, 0, length);
+		byte[] deflated = deflate(deflater, -1);
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+
+		int memberSize = BGZF_HEADER.length + 2 + deflated.length + TRAILER_LENGTH;
+		boolean bgzf = memberSize <= MAX_BGZF_MEMBER_SIZE;
+		if(!bgzf) {
+			memberSize = GZIP_HEADER.length + deflated.length + TRAILER_LENGTH;
+		}
+
+		byte[] member = new byte[memberSize];
+		int pos;
+		if(bgzf) {
+			System.arraycopy(BGZF_HEADER, 0, member, 0, BGZF_HEADER.length);
+			pos = putShort(member, BGZF_HEADER.length, memberSize - 1);
+		} else {
+			System.arraycopy(GZIP_HEADER, 0, member, 0, GZIP_HEADER.length);
+			pos = GZIP_HEADER.length;
+		}
+		System.arraycopy(deflated, 0, member, pos, deflated.length);
+		pos = putInt(member, pos + deflated.length, crc.getValue());
+		putInt(member, pos, length);
+		return member;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.writer.source.ParallelDeflaterOutputStream#writeTrailer()
+	 */
+	@Override
+	protected void writeTrailer() throws IOException {
+		out.write(EOF_BLOCK);
+	}
+
+	private static int putShort(byte[] b, int pos, int value) {
+		b[pos] = (byte)value;
+		b[pos + 1] = (byte)(value >>> 8);
+		return pos + 2;
+	}
+
+	private static int putInt(byte[] b, int pos, long value) {
+		putShort(b, pos, (int)value & 0xFFFF);
+		putShort(b, pos + 2, (int)(value >>> 16) & 0xFFFF);
+		return pos + 4;
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer.source;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A WriterSource which can also accept data that callers have already encoded, allowing each thread to encode its
+ * output into a buffer of its own and only hand the finished bytes over to be written.
+ *
+ * Bytes and characters can be written to the same ByteWriterSource; they appear in the output in the order in which
+ * the calls to write or to the Writer's methods returned.
+ *
+ * @author Andrew Elmore
+ */
+public interface ByteWriterSource extends WriterSource {
+
+	/**
+	 * The encoding that data passed to write must already be in
+	 *
+	 * @return The name of the encoding
+	 */
+	public abstract String getEncoding();
+
+	/**
+	 * Writes the remaining bytes of buffers, in order and without data from any other write between them.
+	 * May be called concurrently by multiple threads. Returns once the data has been written, after which the caller
+	 * is free to reuse the buffers.
+	 *
+	 * @param buffers The encoded data to write
+	 * @throws IOException If the data could not be written
+	 */
+	public abstract void write(ByteBuffer[] buffers) throws IOException;
+
+}
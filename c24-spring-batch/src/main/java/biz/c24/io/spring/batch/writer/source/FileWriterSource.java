@@ -19,10 +19,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 
 import org.springframework.batch.core.StepExecution;
 import org.springframework.core.io.FileSystemResource;
 
+import biz.c24.io.spring.batch.util.CombiningChannelWriter;
 import biz.c24.io.spring.util.C24Utils;
 
 /**
@@ -30,11 +32,17 @@ import biz.c24.io.spring.util.C24Utils;
  * Expects to be told the path of the file to write to by the supplied Resource or, 
  * if not specified, a parameter output.file in the job parameters.
  * 
+ * As a ByteWriterSource, data which has already been encoded can also be written straight to the file's channel.
+ * 
  * @author Andrew Elmore
  */
-public class FileWriterSource implements WriterSource {
+public class FileWriterSource implements ByteWriterSource {
 
 	private OutputStreamWriter outputFile = null;
+	/**
+	 * Writes encoded data directly to the file's channel, after anything written to outputFile
+	 */
+	private CombiningChannelWriter channelWriter = null;
 	private FileSystemResource resource = null;
 	private String encoding = C24Utils.DEFAULT_FILE_ENCODING;
 	
@@ -50,7 +58,9 @@ public class FileWriterSource implements WriterSource {
 	    }
 	
 	    try {
-	    	outputFile = new OutputStreamWriter(new FileOutputStream(fileName), getEncoding());
+	    	FileOutputStream outputStream = new FileOutputStream(fileName);
+	    	outputFile = new OutputStreamWriter(outputStream, getEncoding());
+	    	channelWriter = new CombiningChannelWriter(outputStream.getChannel(), outputFile);
 	    } catch(IOException ioEx) {
 	    	throw new RuntimeException(ioEx);
 	    }
@@ -66,6 +76,7 @@ public class FileWriterSource implements WriterSource {
 		    	throw new RuntimeException(ioEx);
 		    } finally {
 		    	outputFile = null;
+		    	channelWriter = null;
 		    }
 		}	
 	}
@@ -75,6 +86,15 @@ public class FileWriterSource implements WriterSource {
 		return outputFile;
 	}
 	
+	/**
+	 * Writes data already in our encoding straight to the file. Where several threads write concurrently, their data
+	 * is combined into a single write.
+	 */
+	@Override
+	public void write(ByteBuffer[] buffers) throws IOException {
+		channelWriter.write(buffers);
+	}
+	
 
     /**
      * The resource we use to determine our output path
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer.source;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * WriterSource that writes all output to a single gzip file, compressing blocks of it in parallel.
+ * 
+ * Each block is written as a separate gzip member. With the default block size, and any block size up to 
+ * BgzfOutputStream.MAX_BGZF_BLOCK_SIZE, the file is in the BGZF format written by bgzip, which the GzipFileSource 
+ * can inflate in parallel. Larger blocks produce a standard multi-member gzip file.
+ * 
+ * @author Andrew Elmore
+ */
+public class GzipFileWriterSource extends ParallelDeflaterWriterSource {
+
+	/**
+	 * The default block size; the largest that produces a BGZF file
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = BgzfOutputStream.MAX_BGZF_BLOCK_SIZE;
+
+	public GzipFileWriterSource() {
+		super(DEFAULT_BLOCK_SIZE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.writer.source.ParallelDeflaterWriterSource#createStream(java.io.OutputStream, java.lang.String, java.util.concurrent.Executor, int)
+	 */
+	@Override
+	protected ParallelDeflaterOutputStream createStream(OutputStream out, String fileName, Executor executor,
+			int window) throws IOException {
+		return new BgzfOutputStream(out, getLevel(), getBlockSize(), executor, window);
+	}
+
+}
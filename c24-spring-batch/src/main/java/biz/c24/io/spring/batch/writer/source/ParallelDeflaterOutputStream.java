@@ -0,0 +1,457 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer.source;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the data written to it in fixed-size blocks, deflating up to window blocks in parallel on an Executor
+ * and writing the compressed blocks to the underlying stream in their original order, in the manner of pigz.
+ *
+ * Subclasses determine how each block is compressed and framed and may write a header, via out, on construction and
+ * a trailer once all blocks have been written. Blocks are only compressed once they are full, so flush writes out the
+ * blocks that have already been compressed but does not compress a partial block; everything written is only
+ * guaranteed to be in the underlying stream once finish or close has been called.
+ *
+ * Not thread safe; intended to be wrapped in a single Writer.
+ *
+ * @author Andrew Elmore
+ */
+abstract class ParallelDeflaterOutputStream extends OutputStream {
+
+	/**
+	 * The size of the deflate window, and hence the most useful dictionary
+	 */
+	protected static final int DICTIONARY_SIZE = 32 * 1024;
+
+	/**
+	 * Deflater's flushing deflate method and its SYNC_FLUSH mode. They were added in Java 7 so, as we're built for
+	 * Java 6, they're looked up reflectively; null and -1 respectively on earlier JVMs.
+	 */
+	private static final Method FLUSHING_DEFLATE = findFlushingDeflate();
+	protected static final int SYNC_FLUSH = findSyncFlush();
+
+	protected final OutputStream out;
+
+	private final int level;
+
+	private final int blockSize;
+
+	private final Executor executor;
+
+	/**
+	 * The maximum number of blocks being compressed at once
+	 */
+	private final int window;
+
+	/**
+	 * Blocks being compressed, in stream order
+	 */
+	private final LinkedList<FutureTask<byte[]>> pending = new LinkedList<FutureTask<byte[]>>();
+
+	/**
+	 * Deflaters and block buffers not currently in use by a compressing thread
+	 */
+	private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+	private final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+
+	/**
+	 * The block being filled
+	 */
+	private byte[] current;
+	private int count = 0;
+
+	/**
+	 * The end of the previous block, if subclasses want it as a dictionary
+	 */
+	private byte[] dictionary = null;
+
+	private long bytesIn = 0;
+	private long bytesOut = 0;
+	private long blocks = 0;
+
+	private boolean finished = false;
+
+	/**
+	 * Once set, Deflaters are ended rather than pooled
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * @param out Where to write the compressed data
+	 * @param level The compression level, 0-9 or Deflater.DEFAULT_COMPRESSION
+	 * @param blockSize The amount of uncompressed data in each block
+	 * @param executor Where to compress blocks
+	 * @param window The maximum number of blocks to compress at once
+	 */
+	protected ParallelDeflaterOutputStream(OutputStream out, int level, int blockSize, Executor executor, int window) {
+		if(blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be positive");
+		}
+		if((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		}
+		this.out = out;
+		this.level = level;
+		this.blockSize = blockSize;
+		this.executor = executor;
+		this.window = Math.max(1, window);
+		current = new byte[blockSize];
+	}
+
+	/**
+	 * Compresses a block. Called concurrently on the Executor's threads.
+	 *
+	 * @param deflater A raw (nowrap) Deflater at our compression level which has just been reset
+	 * @param data The uncompressed data
+	 * @param length The amount of data in the block
+	 * @param dictionary The last DICTIONARY_SIZE bytes (or fewer) of the previous block if usesDictionary returns true
+	 * and this isn't the first block; otherwise null
+	 * @param last True if this is the last block; it may be empty
+	 * @return The compressed block, framed as it should appear in the output
+	 */
+	protected abstract byte[] compress(Deflater deflater, byte[] data, int length, byte[] dictionary, boolean last)
+			throws IOException;
+
+	/**
+	 * Whether compress should be given the end of the previous block as a dictionary
+	 */
+	protected boolean usesDictionary() {
+		return false;
+	}
+
+	/**
+	 * Called, in stream order, as each block is handed over to be compressed
+	 *
+	 * @param data The uncompressed data
+	 * @param length The amount of data in the block
+	 */
+	protected void blockSubmitted(byte[] data, int length) {
+	}
+
+	/**
+	 * Writes anything which must follow the compressed blocks
+	 */
+	protected void writeTrailer() throws IOException {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.OutputStream#write(int)
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		current[count++] = (byte)b;
+		if(count == blockSize) {
+			submit(false);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while(len > 0) {
+			int copy = Math.min(len, blockSize - count);
+			System.arraycopy(b, off, current, count, copy);
+			count += copy;
+			off += copy;
+			len -= copy;
+			if(count == blockSize) {
+				submit(false);
+			}
+		}
+	}
+
+	/**
+	 * Writes out any blocks that have already been compressed. Doesn't compress the current, partial, block.
+	 */
+	@Override
+	public void flush() throws IOException {
+		writeCompleted(false);
+		out.flush();
+	}
+
+	/**
+	 * Compresses and writes out everything written so far, followed by any trailer, without closing the underlying
+	 * stream. Nothing further can be written.
+	 */
+	public void finish() throws IOException {
+		if(!finished) {
+			submit(true);
+			finished = true;
+			writeCompleted(true);
+			writeTrailer();
+			out.flush();
+			endDeflaters();
+			buffers.clear();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.OutputStream#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if(!finished) {
+				finish();
+			}
+		} finally {
+			closed = true;
+			for(FutureTask<byte[]> task : pending) {
+				task.cancel(true);
+			}
+			pending.clear();
+			// If finish failed, the Deflaters' native memory would otherwise be held until they're finalized
+			endDeflaters();
+			buffers.clear();
+			out.close();
+		}
+	}
+
+	/**
+	 * Whether this JVM's Deflater supports flushing without finishing the stream
+	 */
+	protected static boolean isSyncFlushSupported() {
+		return FLUSHING_DEFLATE != null && SYNC_FLUSH >= 0;
+	}
+
+	/**
+	 * The amount of uncompressed data handed over to be compressed so far
+	 */
+	public long getBytesIn() {
+		return bytesIn;
+	}
+
+	/**
+	 * The amount of compressed data, excluding any header or trailer, written so far
+	 */
+	public long getBytesOut() {
+		return bytesOut;
+	}
+
+	/**
+	 * The number of blocks handed over to be compressed so far
+	 */
+	public long getBlockCount() {
+		return blocks;
+	}
+
+	/**
+	 * Ends the pooled Deflaters. Those still in use by a compressing thread are ended as it returns them if we've
+	 * been closed.
+	 */
+	private void endDeflaters() {
+		Deflater deflater;
+		while((deflater = deflaters.poll()) != null) {
+			deflater.end();
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if(finished) {
+			throw new IOException("Stream has been finished");
+		}
+	}
+
+	/**
+	 * Hands the current block over to be compressed and starts a new one
+	 */
+	private void submit(boolean last) throws IOException {
+		// Make sure we don't get more than window blocks ahead
+		while(pending.size() >= window) {
+			writeNext();
+		}
+
+		byte[] data = current;
+		int length = count;
+		blockSubmitted(data, length);
+		FutureTask<byte[]> task = new FutureTask<byte[]>(new BlockDeflater(data, length, dictionary, last));
+
+		if(usesDictionary() && !last) {
+			// Taken now as data goes back into the pool once it's been compressed
+			int dictionaryLength = Math.min(length, DICTIONARY_SIZE);
+			if(dictionaryLength > 0) {
+				dictionary = new byte[dictionaryLength];
+				System.arraycopy(data, length - dictionaryLength, dictionary, 0, dictionaryLength);
+			}
+		}
+
+		executor.execute(task);
+		pending.add(task);
+		bytesIn += length;
+		blocks++;
+
+		byte[] next = buffers.poll();
+		current = next != null? next : new byte[blockSize];
+		count = 0;
+
+		writeCompleted(false);
+	}
+
+	/**
+	 * Writes out compressed blocks from the head of the queue
+	 *
+	 * @param wait If true, waits for and writes every pending block; otherwise writes only those already compressed
+	 */
+	private void writeCompleted(boolean wait) throws IOException {
+		while(!pending.isEmpty() && (wait || pending.getFirst().isDone())) {
+			writeNext();
+		}
+	}
+
+	/**
+	 * Waits for the block at the head of the queue to be compressed and writes it out
+	 */
+	private void writeNext() throws IOException {
+		FutureTask<byte[]> next = pending.removeFirst();
+		try {
+			byte[] compressed = next.get();
+			out.write(compressed);
+			bytesOut += compressed.length;
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a block to be compressed");
+		} catch(ExecutionException ex) {
+			if(ex.getCause() instanceof IOException) {
+				throw (IOException)ex.getCause();
+			}
+			throw new IOException("Failed to compress block", ex.getCause());
+		}
+	}
+
+	/**
+	 * Deflates data into a buffer of its own
+	 *
+	 * @param deflater The Deflater to use, which already has its input set
+	 * @param flushMode The flush mode to pass to Deflater.deflate, or -1 to finish the stream
+	 */
+	protected static byte[] deflate(Deflater deflater, int flushMode) {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		byte[] buffer = new byte[16 * 1024];
+		if(flushMode < 0) {
+			deflater.finish();
+			while(!deflater.finished()) {
+				int deflated = deflater.deflate(buffer);
+				compressed.write(buffer, 0, deflated);
+			}
+		} else {
+			// If the buffer was filled there may be more to come
+			int deflated;
+			do {
+				deflated = deflate(deflater, buffer, flushMode);
+				compressed.write(buffer, 0, deflated);
+			} while(deflated == buffer.length);
+		}
+		return compressed.toByteArray();
+	}
+
+	/**
+	 * Calls Deflater.deflate(buffer, 0, buffer.length, flushMode)
+	 */
+	private static int deflate(Deflater deflater, byte[] buffer, int flushMode) {
+		if(FLUSHING_DEFLATE == null) {
+			throw new IllegalStateException("Flushing a Deflater requires Java 7 or later");
+		}
+		try {
+			return (Integer)FLUSHING_DEFLATE.invoke(deflater, buffer, 0, buffer.length, flushMode);
+		} catch(InvocationTargetException ex) {
+			if(ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)ex.getCause();
+			}
+			throw new IllegalStateException("Failed to deflate block", ex.getCause());
+		} catch(IllegalAccessException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static Method findFlushingDeflate() {
+		try {
+			return Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+		} catch(NoSuchMethodException ex) {
+			return null;
+		}
+	}
+
+	private static int findSyncFlush() {
+		try {
+			return Deflater.class.getField("SYNC_FLUSH").getInt(null);
+		} catch(NoSuchFieldException ex) {
+			return -1;
+		} catch(IllegalAccessException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Compresses a single block on the Executor
+	 */
+	private class BlockDeflater implements Callable<byte[]> {
+
+		private final byte[] data;
+		private final int length;
+		private final byte[] dictionary;
+		private final boolean last;
+
+		public BlockDeflater(byte[] data, int length, byte[] dictionary, boolean last) {
+			this.data = data;
+			this.length = length;
+			this.dictionary = dictionary;
+			this.last = last;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public byte[] call() throws IOException {
+			Deflater deflater = deflaters.poll();
+			if(deflater == null) {
+				deflater = new Deflater(level, true);
+			}
+			try {
+				return compress(deflater, data, length, dictionary, last);
+			} finally {
+				deflater.reset();
+				deflaters.add(deflater);
+				buffers.add(data);
+				if(closed) {
+					endDeflaters();
+				}
+			}
+		}
+	}
+
+}
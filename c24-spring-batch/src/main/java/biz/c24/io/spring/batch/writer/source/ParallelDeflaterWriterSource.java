@@ -0,0 +1,265 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer.source;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.ClassUtils;
+
+import biz.c24.io.spring.batch.reader.source.DaemonThreadFactory;
+import biz.c24.io.spring.util.C24Utils;
+
+/**
+ * Base class for WriterSources which write a single compressed file, compressing fixed-size blocks of the output in
+ * parallel rather than on whichever thread holds the Writer.
+ *
+ * Expects to be told the path of the file to write to by the supplied Resource or, if not specified, by the parameter
+ * output.file in the job parameters. Up to 2 x parallelism blocks are compressed at once, either on the supplied
+ * deflaterExecutor or on a pool of parallelism daemon threads which we create for the duration of the step.
+ *
+ * As a ByteWriterSource, data which has already been encoded is copied straight into the block being filled.
+ *
+ * @author Andrew Elmore
+ */
+public abstract class ParallelDeflaterWriterSource implements ByteWriterSource {
+
+	private FileSystemResource resource = null;
+	private String encoding = C24Utils.DEFAULT_FILE_ENCODING;
+	private int level = Deflater.DEFAULT_COMPRESSION;
+	private int blockSize;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The Executor to compress blocks on. If not supplied, we create (and own) our own.
+	 */
+	private Executor deflaterExecutor = null;
+	private ExecutorService ownedExecutor = null;
+
+	private ParallelDeflaterOutputStream outputStream = null;
+	private OutputStreamWriter outputWriter = null;
+
+	/**
+	 * @param blockSize The default block size
+	 */
+	protected ParallelDeflaterWriterSource(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Creates the compressing stream to write our file through
+	 *
+	 * @param out The file
+	 * @param fileName The file's path
+	 * @param executor Where to compress blocks
+	 * @param window The maximum number of blocks to compress at once
+	 */
+	protected abstract ParallelDeflaterOutputStream createStream(OutputStream out, String fileName, Executor executor,
+			int window) throws IOException;
+
+	@Override
+	public void initialise(StepExecution stepExecution) {
+		// Extract the name of the file we're supposed to be writing to
+        String fileName = resource != null? resource.getPath() : stepExecution.getJobParameters().getString("output.file");
+
+	    // Remove any leading file:// if it exists
+	    if(fileName.startsWith("file://")) {
+	    		fileName = fileName.substring("file://".length());
+	    }
+
+	    Executor executor = deflaterExecutor;
+	    if(executor == null) {
+	    	ownedExecutor = Executors.newFixedThreadPool(Math.max(1, parallelism),
+	    			new DaemonThreadFactory(ClassUtils.getShortName(getClass()), "deflater"));
+	    	executor = ownedExecutor;
+	    }
+
+	    FileOutputStream fileStream = null;
+	    try {
+	    	fileStream = new FileOutputStream(fileName);
+	    	outputStream = createStream(fileStream, fileName, executor, Math.max(1, parallelism) * 2);
+	    	outputWriter = new OutputStreamWriter(outputStream, getEncoding());
+	    } catch(IOException ioEx) {
+	    	if(fileStream != null) {
+	    		try {
+	    			fileStream.close();
+	    		} catch(IOException closeEx) {
+	    			// We're already failing
+	    		}
+	    	}
+	    	shutdownExecutor();
+	    	throw new RuntimeException(ioEx);
+	    }
+	}
+
+	@Override
+	public void close() {
+		try {
+			if(outputWriter != null)  {
+				outputWriter.close();
+			}
+		} catch(IOException ioEx) {
+	    	throw new RuntimeException(ioEx);
+	    } finally {
+	    	outputWriter = null;
+	    	outputStream = null;
+	    	shutdownExecutor();
+	    }
+	}
+
+	private void shutdownExecutor() {
+		if(ownedExecutor != null) {
+			ownedExecutor.shutdownNow();
+			ownedExecutor = null;
+		}
+	}
+
+	@Override
+	public Writer getWriter() {
+		return outputWriter;
+	}
+
+	/**
+	 * Copies data already in our encoding into the block being filled, after anything written to our Writer
+	 */
+	@Override
+	public void write(ByteBuffer[] buffers) throws IOException {
+		Writer outputWriter = this.outputWriter;
+		synchronized(outputWriter) {
+			outputWriter.flush();
+			for(ByteBuffer buffer : buffers) {
+				if(buffer.hasArray()) {
+					outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+					buffer.position(buffer.limit());
+				} else {
+					byte[] data = new byte[buffer.remaining()];
+					buffer.get(data);
+					outputStream.write(data);
+				}
+			}
+		}
+	}
+
+    /**
+     * The resource we use to determine our output path
+     * @return the resource this WriterSource will write to
+     */
+    public FileSystemResource getResource() {
+        return resource;
+    }
+
+    /**
+     * Set the resource we acquire our output path from
+     */
+    public void setResource(FileSystemResource resource) {
+        this.resource = resource;
+    }
+
+    /**
+     * Returns the encoding we are using when writing the file.
+     * Defaults to UTF-8
+     * @return the encoding being used to write the file
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Sets the encoding to use to write the file
+     * @param encoding the encoding the use
+     */
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * The compression level
+     * @return The level, 0-9 or Deflater.DEFAULT_COMPRESSION
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the compression level, from 0 (none) to 9 (best). Defaults to Deflater.DEFAULT_COMPRESSION.
+     * @param level The level, 0-9 or Deflater.DEFAULT_COMPRESSION
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * The amount of uncompressed data compressed in each block
+     * @return The block size in bytes
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the amount of uncompressed data compressed in each block. Larger blocks compress slightly better but
+     * require more memory, as up to 2 x parallelism are held at once.
+     * @param blockSize The block size in bytes
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * The number of blocks compressed in parallel
+     * @return The parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads we create to compress blocks, if no deflaterExecutor is supplied.
+     * Defaults to the number of available processors.
+     * @param parallelism The number of blocks to compress in parallel
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * The Executor on which blocks are compressed
+     * @return The supplied Executor, null if we are using our own
+     */
+    public Executor getDeflaterExecutor() {
+        return deflaterExecutor;
+    }
+
+    /**
+     * Sets the Executor (for example a Spring TaskExecutor) on which blocks are compressed. If not set, we create
+     * a pool of parallelism daemon threads which is shut down when we are closed.
+     * @param deflaterExecutor The Executor to compress blocks on
+     */
+    public void setDeflaterExecutor(Executor deflaterExecutor) {
+        this.deflaterExecutor = deflaterExecutor;
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer.source;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * WriterSource that writes all output to a single entry in a zip file, compressing blocks of it in parallel.
+ * 
+ * As with the ZipFileWriterSource, the entry is named after the file with any leading path and the suffix stripped
+ * off. The blocks form a single deflate stream so the file can be read by any zip tool. Requires Java 7 or later; 
+ * it can't be created on earlier JVMs.
+ * 
+ * @author Andrew Elmore
+ */
+public class ParallelZipFileWriterSource extends ParallelDeflaterWriterSource {
+
+	/**
+	 * The default block size, as used by pigz
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+	private static String pathSepString = System.getProperty("file.separator");
+
+	public ParallelZipFileWriterSource() {
+		super(DEFAULT_BLOCK_SIZE);
+		// Fail when we're configured rather than when the first file is written
+		if(!ParallelDeflaterOutputStream.isSyncFlushSupported()) {
+			throw new IllegalStateException("ParallelZipFileWriterSource requires Java 7 or later");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.writer.source.ParallelDeflaterWriterSource#createStream(java.io.OutputStream, java.lang.String, java.util.concurrent.Executor, int)
+	 */
+	@Override
+	protected ParallelDeflaterOutputStream createStream(OutputStream out, String fileName, Executor executor,
+			int window) throws IOException {
+	    // Strip off the leading path and the suffix (ie the zip extension)
+	    int tailStarts = fileName.lastIndexOf(pathSepString) + 1;
+	    int tailEnds = fileName.lastIndexOf('.');
+	    if(tailEnds < tailStarts) {
+	    	tailEnds = fileName.length();
+	    }
+	    String tailName = fileName.substring(tailStarts, tailEnds);
+
+		return new ParallelZipOutputStream(out, tailName, getLevel(), getBlockSize(), executor, window);
+	}
+
+}
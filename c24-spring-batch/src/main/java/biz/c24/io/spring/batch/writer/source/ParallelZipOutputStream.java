@@ -0,0 +1,265 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer.source;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Calendar;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a zip file containing a single deflated entry, compressing the entry's data in blocks in parallel.
+ *
+ * As pigz does, each block is deflated with the end of the previous block as its dictionary and all but the last end
+ * with a sync flush, so the blocks form a single deflate stream and compress almost as well as if the data had been
+ * deflated sequentially. As the entry's size and CRC aren't known until the end, they follow the data in a data
+ * descriptor; Zip64 extensions are used where the entry or file is too large for the original format.
+ *
+ * Requires Java 7 or later for Deflater's sync flush, which is called reflectively as we're built for Java 6.
+ *
+ * @author Andrew Elmore
+ */
+class ParallelZipOutputStream extends ParallelDeflaterOutputStream {
+
+	private static final long LOCAL_HEADER_SIG = 0x04034b50L;
+	private static final long DATA_DESCRIPTOR_SIG = 0x08074b50L;
+	private static final long CENTRAL_HEADER_SIG = 0x02014b50L;
+	private static final long ZIP64_END_SIG = 0x06064b50L;
+	private static final long ZIP64_LOCATOR_SIG = 0x07064b50L;
+	private static final long END_SIG = 0x06054b50L;
+
+	/**
+	 * The largest value that fits in the original format's 4 byte fields
+	 */
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+	private static final int VERSION = 20;
+	private static final int ZIP64_VERSION = 45;
+
+	/**
+	 * The sizes and CRC follow the data; the name is UTF-8
+	 */
+	private static final int FLAGS = 0x0808;
+
+	private static final int DEFLATED = 8;
+
+	private final byte[] name;
+	private final long dosTime;
+	private final CRC32 crc = new CRC32();
+	private final long headerLength;
+
+	/**
+	 * @param out Where to write the zip file
+	 * @param entryName The name of the entry
+	 * @param level The compression level, 0-9 or Deflater.DEFAULT_COMPRESSION
+	 * @param blockSize The amount of uncompressed data in each block
+	 * @param executor Where to compress blocks
+	 * @param window The maximum number of blocks to compress at once
+	 */
+	public ParallelZipOutputStream(OutputStream out, String entryName, int level, int blockSize, Executor executor,
+			int window) throws IOException {
+		super(out, level, blockSize, executor, window);
+		name = getBytes(entryName);
+		dosTime = toDosTime(System.currentTimeMillis());
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		writeInt(header, LOCAL_HEADER_SIG);
+		writeShort(header, VERSION);
+		writeShort(header, FLAGS);
+		writeShort(header, DEFLATED);
+		writeInt(header, dosTime);
+		// CRC, compressed and uncompressed sizes are in the data descriptor
+		writeInt(header, 0);
+		writeInt(header, 0);
+		writeInt(header, 0);
+		writeShort(header, name.length);
+		writeShort(header, 0);
+		header.write(name);
+		headerLength = header.size();
+		header.writeTo(out);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.writer.source.ParallelDeflaterOutputStream#usesDictionary()
+	 */
+	@Override
+	protected boolean usesDictionary() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.writer.source.ParallelDeflaterOutputStream#blockSubmitted(byte[], int)
+	 */
+	@Override
+	protected void blockSubmitted(byte[] data, int length) {
+		crc.update(data, 0, length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.writer.source.ParallelDeflaterOutputStream#compress(java.util.zip.Deflater, byte[], int, byte[], boolean)
+	 */
+	@Override
+	protected byte[] compress(Deflater deflater, byte[] data, int length, byte[] dictionary, boolean last) {
+		if(dictionary != null) {
+			deflater.setDictionary(dictionary);
+		}
+		deflater.setInput(data, 0, length);
+		// A sync flush ends the block on a byte boundary without ending the deflate stream
+		return deflate(deflater, last? -1 : SYNC_FLUSH);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see biz.c24.io.spring.batch.writer.source.ParallelDeflaterOutputStream#writeTrailer()
+	 */
+	@Override
+	protected void writeTrailer() throws IOException {
+		long size = getBytesIn();
+		long compressedSize = getBytesOut();
+		boolean zip64Sizes = size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC;
+
+		ByteArrayOutputStream trailer = new ByteArrayOutputStream();
+
+		// As the local header has no Zip64 field, readers use 8 byte sizes if the sizes don't fit in 4
+		writeInt(trailer, DATA_DESCRIPTOR_SIG);
+		writeInt(trailer, crc.getValue());
+		if(zip64Sizes) {
+			writeLong(trailer, compressedSize);
+			writeLong(trailer, size);
+		} else {
+			writeInt(trailer, compressedSize);
+			writeInt(trailer, size);
+		}
+
+		long centralOffset = headerLength + compressedSize + trailer.size();
+
+		ByteArrayOutputStream extra = new ByteArrayOutputStream();
+		if(zip64Sizes) {
+			// Our local header is at offset 0, so we never need its offset in here
+			writeShort(extra, 1);
+			writeShort(extra, 16);
+			writeLong(extra, size);
+			writeLong(extra, compressedSize);
+		}
+
+		int version = zip64Sizes? ZIP64_VERSION : VERSION;
+		writeInt(trailer, CENTRAL_HEADER_SIG);
+		writeShort(trailer, version);
+		writeShort(trailer, version);
+		writeShort(trailer, FLAGS);
+		writeShort(trailer, DEFLATED);
+		writeInt(trailer, dosTime);
+		writeInt(trailer, crc.getValue());
+		writeInt(trailer, zip64Sizes? ZIP64_MAGIC : compressedSize);
+		writeInt(trailer, zip64Sizes? ZIP64_MAGIC : size);
+		writeShort(trailer, name.length);
+		writeShort(trailer, extra.size());
+		// Comment length, disk number, internal and external attributes and the local header's offset
+		writeShort(trailer, 0);
+		writeShort(trailer, 0);
+		writeShort(trailer, 0);
+		writeInt(trailer, 0);
+		writeInt(trailer, 0);
+		trailer.write(name);
+		extra.writeTo(trailer);
+
+		long centralSize = headerLength + compressedSize + trailer.size() - centralOffset;
+
+		if(centralOffset >= ZIP64_MAGIC) {
+			long zip64EndOffset = centralOffset + centralSize;
+			writeInt(trailer, ZIP64_END_SIG);
+			writeLong(trailer, 44);
+			writeShort(trailer, ZIP64_VERSION);
+			writeShort(trailer, ZIP64_VERSION);
+			writeInt(trailer, 0);
+			writeInt(trailer, 0);
+			writeLong(trailer, 1);
+			writeLong(trailer, 1);
+			writeLong(trailer, centralSize);
+			writeLong(trailer, centralOffset);
+
+			writeInt(trailer, ZIP64_LOCATOR_SIG);
+			writeInt(trailer, 0);
+			writeLong(trailer, zip64EndOffset);
+			writeInt(trailer, 1);
+		}
+
+		writeInt(trailer, END_SIG);
+		writeShort(trailer, 0);
+		writeShort(trailer, 0);
+		writeShort(trailer, 1);
+		writeShort(trailer, 1);
+		writeInt(trailer, centralSize);
+		writeInt(trailer, Math.min(centralOffset, ZIP64_MAGIC));
+		writeShort(trailer, 0);
+
+		trailer.writeTo(out);
+	}
+
+	/**
+	 * The CRC of the data written so far
+	 */
+	public long getCrc() {
+		return crc.getValue();
+	}
+
+	private static byte[] getBytes(String name) {
+		try {
+			return name.getBytes("UTF-8");
+		} catch(UnsupportedEncodingException ex) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Converts a time to the MS-DOS date and time used by zip files
+	 */
+	private static long toDosTime(long time) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+		int year = calendar.get(Calendar.YEAR);
+		if(year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return ((long)(year - 1980) << 25) | ((calendar.get(Calendar.MONTH) + 1) << 21) |
+				(calendar.get(Calendar.DAY_OF_MONTH) << 16) | (calendar.get(Calendar.HOUR_OF_DAY) << 11) |
+				(calendar.get(Calendar.MINUTE) << 5) | (calendar.get(Calendar.SECOND) >> 1);
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value & 0xFF);
+		out.write((value >>> 8) & 0xFF);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, long value) {
+		writeShort(out, (int)(value & 0xFFFF));
+		writeShort(out, (int)((value >>> 16) & 0xFFFF));
+	}
+
+	private static void writeLong(ByteArrayOutputStream out, long value) {
+		writeInt(out, value & 0xFFFFFFFFL);
+		writeInt(out, value >>> 32);
+	}
+
+}
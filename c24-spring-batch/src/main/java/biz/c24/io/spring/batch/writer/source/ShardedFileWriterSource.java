@@ -0,0 +1,338 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer.source;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.core.io.FileSystemResource;
+
+import biz.c24.io.spring.util.C24Utils;
+
+/**
+ * WriterSource that splits its output over several files, or shards, so that concurrent writers never contend for
+ * a file.
+ *
+ * Expects to be told the path of the output file by the supplied Resource or, if not specified, a parameter
+ * output.file in the job parameters. The shards are named after it with a sequence number inserted before any file
+ * suffix, so output to /tmp/out.txt is written to /tmp/out-1.txt, /tmp/out-2.txt and so on.
+ *
+ * Encoded data passed to write is written to a shard that no other thread is writing to at the time; a new shard is
+ * only created when every existing one is in use, so there are as many shards as there were concurrent writes.
+ * A thread calling getWriter is given a shard of its own for as long as the step runs.
+ *
+ * If merge is set, the shards are concatenated into the output file, in the order they were created, when the
+ * WriterSource is closed and are then deleted. As each chunk is written in full to a single shard, chunks remain
+ * contiguous in the merged file.
+ *
+ * Any shards of the output file left by an earlier run are deleted when the WriterSource is initialised, so that a
+ * run using fewer shards than its predecessor doesn't leave stale output alongside its own.
+ *
+ * @author Andrew Elmore
+ */
+public class ShardedFileWriterSource implements ByteWriterSource {
+
+	private FileSystemResource resource = null;
+	private String encoding = C24Utils.DEFAULT_FILE_ENCODING;
+	private boolean merge = false;
+
+	private String fileName = null;
+
+	/**
+	 * Every shard we've created, in order of creation
+	 */
+	private final List<Shard> shards = new ArrayList<Shard>();
+
+	/**
+	 * Shards not currently being written to by write
+	 */
+	private final ConcurrentLinkedQueue<Shard> freeShards = new ConcurrentLinkedQueue<Shard>();
+
+	/**
+	 * Shards given to threads calling getWriter
+	 */
+	private ThreadLocal<Shard> threadShard = new ThreadLocal<Shard>();
+
+	/**
+	 * One of our output files
+	 */
+	private static class Shard {
+		private final File file;
+		private final FileChannel channel;
+		private final OutputStreamWriter writer;
+
+		public Shard(File file, String encoding) throws IOException {
+			this.file = file;
+			FileOutputStream outputStream = new FileOutputStream(file);
+			this.channel = outputStream.getChannel();
+			this.writer = new OutputStreamWriter(outputStream, encoding);
+		}
+
+		public void write(ByteBuffer[] buffers) throws IOException {
+			// Anything written to our Writer must come first
+			writer.flush();
+			for(ByteBuffer buffer : buffers) {
+				while(buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void initialise(StepExecution stepExecution) {
+		// Extract the name of the file we're supposed to be writing to
+	    String fileName = resource != null? resource.getPath() : stepExecution.getJobParameters().getString("output.file");
+
+	    // Remove any leading file:// if it exists
+	    if(fileName.startsWith("file://")) {
+	    		fileName = fileName.substring("file://".length());
+	    }
+
+	    synchronized(shards) {
+	    	deleteStaleShards(fileName);
+	    	this.fileName = fileName;
+	    	shards.clear();
+	    	freeShards.clear();
+	    	threadShard = new ThreadLocal<Shard>();
+	    }
+	}
+
+	/**
+	 * Deletes the shards of fileName written by a previous run. As shards are numbered consecutively, we stop at the
+	 * first that doesn't exist.
+	 */
+	private static void deleteStaleShards(String fileName) {
+		for(int i = 1; ; i++) {
+			File shard = new File(getShardFileName(fileName, i));
+			if(!shard.exists()) {
+				break;
+			}
+			if(!shard.delete()) {
+				throw new RuntimeException(new IOException("Failed to delete stale shard " + shard.getPath()));
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		List<Shard> toClose;
+		synchronized(shards) {
+			if(fileName == null) {
+				return;
+			}
+			toClose = new ArrayList<Shard>(shards);
+			shards.clear();
+			freeShards.clear();
+			threadShard = new ThreadLocal<Shard>();
+		}
+
+		try {
+			IOException failure = null;
+			for(Shard shard : toClose) {
+				try {
+					shard.writer.close();
+				} catch(IOException ioEx) {
+					if(failure == null) {
+						failure = ioEx;
+					}
+				}
+			}
+			if(failure != null) {
+				throw failure;
+			}
+
+			if(merge) {
+				merge(toClose);
+			}
+		} catch(IOException ioEx) {
+			throw new RuntimeException(ioEx);
+		} finally {
+			fileName = null;
+		}
+	}
+
+	/**
+	 * Concatenates the shards into our output file and deletes them
+	 */
+	private void merge(List<Shard> toMerge) throws IOException {
+		FileOutputStream outputStream = new FileOutputStream(fileName);
+		try {
+			FileChannel output = outputStream.getChannel();
+			for(Shard shard : toMerge) {
+				FileInputStream inputStream = new FileInputStream(shard.file);
+				try {
+					FileChannel input = inputStream.getChannel();
+					long size = input.size();
+					long position = 0;
+					// transferTo may transfer less than we asked for
+					while(position < size) {
+						position += input.transferTo(position, size - position, output);
+					}
+				} finally {
+					inputStream.close();
+				}
+			}
+		} finally {
+			outputStream.close();
+		}
+
+		for(Shard shard : toMerge) {
+			if(!shard.file.delete()) {
+				throw new IOException("Failed to delete merged shard " + shard.file.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Returns a Writer to a shard which is used only by the calling thread
+	 */
+	@Override
+	public Writer getWriter() {
+		Shard shard = threadShard.get();
+		if(shard == null) {
+			shard = newShard();
+			threadShard.set(shard);
+		}
+		return shard.writer;
+	}
+
+	/**
+	 * Writes data already in our encoding to a shard no other thread is writing to
+	 */
+	@Override
+	public void write(ByteBuffer[] buffers) throws IOException {
+		Shard shard = freeShards.poll();
+		if(shard == null) {
+			shard = newShard();
+		}
+		try {
+			shard.write(buffers);
+		} finally {
+			freeShards.add(shard);
+		}
+	}
+
+	/**
+	 * Creates the next shard
+	 */
+	private Shard newShard() {
+		synchronized(shards) {
+			if(fileName == null) {
+				throw new IllegalStateException("ShardedFileWriterSource has not been initialised");
+			}
+			try {
+				Shard shard = new Shard(new File(getShardFileName(fileName, shards.size() + 1)), encoding);
+				shards.add(shard);
+				return shard;
+			} catch(IOException ioEx) {
+				throw new RuntimeException(ioEx);
+			}
+		}
+	}
+
+	/**
+	 * Gets the name of a shard of the supplied output file
+	 *
+	 * @param fileName The name of the output file
+	 * @param shard The 1-based sequence number of the shard
+	 * @return The fileName with -shard inserted before any suffix
+	 */
+	static String getShardFileName(String fileName, int shard) {
+		int suffix = fileName.lastIndexOf('.');
+		int separator = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf(File.separatorChar));
+		if(suffix > separator + 1) {
+			return fileName.substring(0, suffix) + "-" + shard + fileName.substring(suffix);
+		} else {
+			return fileName + "-" + shard;
+		}
+	}
+
+	/**
+	 * The paths of the shards written to so far
+	 *
+	 * @return The paths, in order of creation
+	 */
+	public List<String> getShardFileNames() {
+		synchronized(shards) {
+			List<String> names = new ArrayList<String>(shards.size());
+			for(Shard shard : shards) {
+				names.add(shard.file.getPath());
+			}
+			return names;
+		}
+	}
+
+    /**
+     * The resource we use to determine our output path
+     * @return the resource this ShardedFileWriterSource will write to
+     */
+    public FileSystemResource getResource() {
+        return resource;
+    }
+
+    /**
+     * Set the resource we acquire our output path from
+     */
+    public void setResource(FileSystemResource resource) {
+        this.resource = resource;
+    }
+
+    /**
+     * Returns the encoding we are using when writing the files.
+     * Defaults to UTF-8
+     * @return the encoding being used to write the files
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Sets the encoding to use to write the files
+     * @param encoding the encoding the use
+     */
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Whether the shards are concatenated into a single file when we are closed
+     * @return true if the shards are merged
+     */
+    public boolean isMerge() {
+        return merge;
+    }
+
+    /**
+     * Sets whether the shards should be concatenated into the output file, and deleted, when we are closed.
+     * Defaults to false.
+     * @param merge true to merge the shards
+     */
+    public void setMerge(boolean merge) {
+        this.merge = merge;
+    }
+
+}
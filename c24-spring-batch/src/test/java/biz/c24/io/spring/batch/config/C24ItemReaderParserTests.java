@@ -23,6 +23,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -33,6 +34,9 @@ import biz.c24.io.examples.models.basic.EmployeeElement;
 import biz.c24.io.spring.batch.reader.C24ItemReader;
 import biz.c24.io.spring.batch.reader.source.SplittingReaderSource;
 import biz.c24.io.spring.batch.reader.source.FileSource;
+import biz.c24.io.spring.batch.reader.source.GzipFileSource;
+import biz.c24.io.spring.batch.reader.source.MappedFileSource;
+import biz.c24.io.spring.batch.reader.source.MultiResourceSplittingReaderSource;
 import biz.c24.io.spring.batch.reader.source.ZipFileSource;
 import biz.c24.io.spring.source.SourceFactory;
 import biz.c24.io.spring.source.XmlSourceFactory;
@@ -108,6 +112,26 @@ public class C24ItemReaderParserTests {
     @Qualifier("spelZipFileSourceResourceReader")
     private C24ItemReader<Employee> spelZipFileSourceResourceReader;
 
+    @Autowired
+    @Qualifier("mappedFileSourceResourceReader")
+    private C24ItemReader<Employee> mappedFileSourceResourceReader;
+
+    @Autowired
+    @Qualifier("indexedMappedFileSourceReader")
+    private C24ItemReader<Employee> indexedMappedFileSourceReader;
+
+    @Autowired
+    @Qualifier("gzipFileSourceResourceReader")
+    private C24ItemReader<Employee> gzipFileSourceResourceReader;
+
+    @Autowired
+    @Qualifier("multiFileSourceResourceReader")
+    private C24ItemReader<Employee> multiFileSourceResourceReader;
+
+    @Autowired
+    @Qualifier("pipelinedCsvReader")
+    private C24ItemReader<Employee> pipelinedCsvReader;
+
     @Autowired
     @Qualifier("spelValidatingCsvReader")
     private C24ItemReader<Employee> spelValidatingCsvReader;
@@ -159,6 +183,17 @@ public class C24ItemReaderParserTests {
             assertThat(fileSource.getResource(), expectedResource != null? is(expectedResource) : nullValue());
             assertThat(fileSource.getEncoding(), is(expectedEncoding));
             assertThat(fileSource.isConsistentLineTerminators(), is(expectedConsistentLineTerminators));
+        } else if(source instanceof MappedFileSource) {
+            MappedFileSource fileSource = (MappedFileSource)source;
+            assertThat(fileSource.getSkipLines(), is(expectedSkipLines));
+            assertThat(fileSource.getResource(), expectedResource != null? is(expectedResource) : nullValue());
+            assertThat(fileSource.getEncoding(), is(expectedEncoding));
+        } else if(source instanceof GzipFileSource) {
+            GzipFileSource fileSource = (GzipFileSource)source;
+            assertThat(fileSource.getSkipLines(), is(expectedSkipLines));
+            assertThat(fileSource.getResource(), expectedResource != null? is(expectedResource) : nullValue());
+            assertThat(fileSource.getEncoding(), is(expectedEncoding));
+            assertThat(fileSource.isConsistentLineTerminators(), is(expectedConsistentLineTerminators));
         }
 	}
 
@@ -184,8 +219,28 @@ public class C24ItemReaderParserTests {
         validateReader(fileSourceResourceReader, null, null, false, FileSource.class);
         validateReader(zipFileSourceReader, null, null, false, ZipFileSource.class);
         validateReader(zipFileSourceResourceReader, null, null, false, ZipFileSource.class);
+        validateReader(mappedFileSourceResourceReader, null, null, false, MappedFileSource.class);
+        assertThat(mappedFileSourceResourceReader.isIndexed(), is(false));
+        validateReader(indexedMappedFileSourceReader, ".*", null, false, MappedFileSource.class);
+        assertThat(indexedMappedFileSourceReader.isIndexed(), is(true));
+        validateReader(gzipFileSourceResourceReader, null, null, false, GzipFileSource.class);
+        validateReader(multiFileSourceResourceReader, null, null, false, MultiResourceSplittingReaderSource.class);
+        validateReader(pipelinedCsvReader, ".*", null, false, FileSource.class);
+        assertThat(pipelinedCsvReader.isPipelined(), is(true));
+        assertThat(pipelinedCsvReader.getPipelineCapacity(), is(256));
+        assertThat(pipelinedCsvReader.isSaveState(), is(false));
+        assertThat(splittingNonValidatingCsvReader.isPipelined(), is(false));
+        assertThat(splittingNonValidatingCsvReader.isSaveState(), is(true));
         validateBatchReader(batchItemSourceReader, FileSource.class, false);
+        assertThat(batchItemSourceReader.isSaveState(), is(false));
+        assertThat(batchItemSourceReader.getParserThreads(), is(2));
+        assertThat(batchItemSourceReader.getMaxQueuedBytes(), is(1048576L));
+        assertThat(batchItemSourceReader.getBytesPerChar(), is(12.0));
         validateBatchReader(spelBatchItemSourceReader, FileSource.class, true);
+        assertThat(spelBatchItemSourceReader.isSaveState(), is(true));
+        assertThat(spelBatchItemSourceReader.getParserThreads(), is(1));
+        assertThat(spelBatchItemSourceReader.getMaxQueuedBytes(), is(C24BatchItemReader.DEFAULT_MAX_QUEUED_BYTES));
+        assertThat(spelBatchItemSourceReader.getBytesPerChar(), is(C24BatchItemReader.DEFAULT_BYTES_PER_CHAR));
 
     }
 	
@@ -193,10 +248,30 @@ public class C24ItemReaderParserTests {
 	public void validateSourceParser() {
         validateSource(fileSourceReader.getSource(), FileSource.class, 0, null, "UTF-8", false);
         validateSource(fileSourceResourceReader.getSource(), FileSource.class, 5, UrlResource.class, "TestEncoding", true);
+        assertThat(((FileSource)fileSourceResourceReader.getSource()).isByteSplitting(), is(true));
+        assertThat(((FileSource)fileSourceReader.getSource()).isByteSplitting(), is(false));
         validateSource(spelFileSourceResourceReader.getSource(), FileSource.class, 3, UrlResource.class, "TestEncoding", false);
         validateSource(zipFileSourceReader.getSource(), ZipFileSource.class, 0, null, "UTF-8", false);
         validateSource(zipFileSourceResourceReader.getSource(), ZipFileSource.class, 4, UrlResource.class, "TestEncoding", true);
+        ZipFileSource zipSource = (ZipFileSource)zipFileSourceResourceReader.getSource();
+        assertThat(zipSource.getPrefetchDepth(), is(4));
+        assertThat(zipSource.getMaxPrefetchSize(), is(65536));
+        assertThat(zipSource.getPrefetchExecutor(), is(instanceOf(SimpleAsyncTaskExecutor.class)));
+        assertThat(((ZipFileSource)zipFileSourceReader.getSource()).getPrefetchDepth(), is(0));
         validateSource(spelZipFileSourceResourceReader.getSource(), ZipFileSource.class, 3, UrlResource.class, "TestEncoding", false);
+        validateSource(mappedFileSourceResourceReader.getSource(), MappedFileSource.class, 2, UrlResource.class, "TestEncoding", true);
+        assertThat(((MappedFileSource)mappedFileSourceResourceReader.getSource()).getMappingSize(), is(1024));
+        validateSource(gzipFileSourceResourceReader.getSource(), GzipFileSource.class, 1, UrlResource.class, "TestEncoding", true);
+        GzipFileSource gzipSource = (GzipFileSource)gzipFileSourceResourceReader.getSource();
+        assertThat(gzipSource.getParallelism(), is(3));
+        assertThat(gzipSource.isByteSplitting(), is(true));
+        assertThat(gzipSource.getInflaterExecutor(), is(instanceOf(SimpleAsyncTaskExecutor.class)));
+        MultiResourceSplittingReaderSource multiSource = (MultiResourceSplittingReaderSource)multiFileSourceResourceReader.getSource();
+        assertThat(multiSource.getResources().length, is(2));
+        assertThat(multiSource.getSkipLines(), is(2));
+        assertThat(multiSource.getEncoding(), is("TestEncoding"));
+        assertThat(multiSource.getOpenAhead(), is(5));
+        assertThat(multiSource.getOpenExecutor(), is(instanceOf(SimpleAsyncTaskExecutor.class)));
 
     }
 	
@@ -15,6 +15,8 @@
  */
 package biz.c24.io.spring.batch.config;
 
+import java.util.zip.Deflater;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,6 +28,9 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import biz.c24.io.api.presentation.Sink;
 import biz.c24.io.spring.batch.writer.C24ItemWriter;
 import biz.c24.io.spring.batch.writer.source.FileWriterSource;
+import biz.c24.io.spring.batch.writer.source.GzipFileWriterSource;
+import biz.c24.io.spring.batch.writer.source.ParallelZipFileWriterSource;
+import biz.c24.io.spring.batch.writer.source.ShardedFileWriterSource;
 import biz.c24.io.spring.batch.writer.source.WriterSource;
 import biz.c24.io.spring.batch.writer.source.ZipFileWriterSource;
 import biz.c24.io.spring.util.C24Utils;
@@ -59,6 +64,18 @@ public class C24ItemWriterParserTests {
 	@Qualifier("ioCustomItemWriter")
 	private C24ItemWriter ioCustomItemWriter;
 	
+	@Autowired
+	@Qualifier("ioShardedItemWriter")
+	private C24ItemWriter ioShardedItemWriter;
+	
+	@Autowired
+	@Qualifier("ioGzipItemWriter")
+	private C24ItemWriter ioGzipItemWriter;
+	
+	@Autowired
+	@Qualifier("ioParallelZipItemWriter")
+	private C24ItemWriter ioParallelZipItemWriter;
+	
 	@Test
 	public void validateParser() {
 		
@@ -66,6 +83,10 @@ public class C24ItemWriterParserTests {
 		
 		assertThat(ioItemWriter.getWriterSource(), is(fileWriterSource));
 		assertThat(ioItemWriter.getSink(), is(textualSink));
+		assertThat(ioItemWriter.isAsyncWrite(), is(true));
+		assertThat(ioItemWriter.getMaxQueuedBytes(), is(1048576L));
+		assertThat(ioDefaultItemWriter.isAsyncWrite(), is(false));
+		assertThat(ioDefaultItemWriter.getMaxQueuedBytes(), is(C24ItemWriter.DEFAULT_MAX_QUEUED_BYTES));
 	}
 	
 	@Test
@@ -88,6 +109,42 @@ public class C24ItemWriterParserTests {
         assertThat(fileSource.getResource().getPath(), is("/tmp/test.zip"));
         assertThat(fileSource.getEncoding(), is("TestEncoding"));
     }
+    
+    @Test
+    public void validateShardedFileWriterParsing() {
+        WriterSource source = ioShardedItemWriter.getWriterSource();
+        assertThat(source, is(ShardedFileWriterSource.class));
+        
+        ShardedFileWriterSource fileSource = (ShardedFileWriterSource) source;
+        assertThat(fileSource.getResource().getPath(), is("/tmp/sharded.csv"));
+        assertThat(fileSource.getEncoding(), is(C24Utils.DEFAULT_FILE_ENCODING));
+        assertThat(fileSource.isMerge(), is(true));
+    }
+    
+    @Test
+    public void validateGzipFileWriterParsing() {
+        WriterSource source = ioGzipItemWriter.getWriterSource();
+        assertThat(source, is(GzipFileWriterSource.class));
+        
+        GzipFileWriterSource fileSource = (GzipFileWriterSource) source;
+        assertThat(fileSource.getResource().getPath(), is("/tmp/test.csv.gz"));
+        assertThat(fileSource.getLevel(), is(1));
+        assertThat(fileSource.getBlockSize(), is(32768));
+        assertThat(fileSource.getParallelism(), is(3));
+        assertThat(fileSource.getDeflaterExecutor(), is(nullValue()));
+    }
+    
+    @Test
+    public void validateParallelZipFileWriterParsing() {
+        WriterSource source = ioParallelZipItemWriter.getWriterSource();
+        assertThat(source, is(ParallelZipFileWriterSource.class));
+        
+        ParallelZipFileWriterSource fileSource = (ParallelZipFileWriterSource) source;
+        assertThat(fileSource.getResource().getPath(), is("/tmp/parallel.zip"));
+        assertThat(fileSource.getEncoding(), is(C24Utils.DEFAULT_FILE_ENCODING));
+        assertThat(fileSource.getLevel(), is(Deflater.DEFAULT_COMPRESSION));
+        assertThat(fileSource.getBlockSize(), is(ParallelZipFileWriterSource.DEFAULT_BLOCK_SIZE));
+    }
 	
 
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.config;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.spring.batch.metrics.BatchMetrics;
+import biz.c24.io.spring.batch.processor.C24TransformItemProcessor;
+import biz.c24.io.spring.batch.reader.C24BatchItemReader;
+import biz.c24.io.spring.batch.reader.C24ItemReader;
+import biz.c24.io.spring.batch.writer.C24ItemWriter;
+
+/**
+ * Validate the metrics-ref attribute of the reader, processor and writer parsers.
+ * Uses a fixture of its own as Micrometer requires Java 8.
+ * 
+ * @author Andrew Elmore
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("metrics.xml")
+public class C24MetricsParserTests {
+	
+	@Autowired
+	private BatchMetrics batchMetrics;
+	
+	@Autowired
+	@Qualifier("itemReader")
+	private C24ItemReader<ComplexDataObject> itemReader;
+	
+	@Autowired
+	@Qualifier("metricsItemReader")
+	private C24ItemReader<ComplexDataObject> metricsItemReader;
+	
+	@Autowired
+	@Qualifier("metricsBatchItemReader")
+	private C24BatchItemReader metricsBatchItemReader;
+	
+	@Autowired
+	@Qualifier("metricsTransformItemProcessor")
+	private C24TransformItemProcessor metricsTransformItemProcessor;
+	
+	@Autowired
+	@Qualifier("metricsItemWriter")
+	private C24ItemWriter metricsItemWriter;
+	
+	@Test
+	public void validateMetrics() {
+		assertThat(itemReader.getMetrics(), nullValue());
+		assertThat(metricsItemReader.getMetrics(), is(batchMetrics));
+		assertThat(metricsItemReader.isPipelined(), is(true));
+		assertThat(metricsBatchItemReader.getMetrics(), is(batchMetrics));
+		assertThat(metricsTransformItemProcessor.getMetrics(), is(batchMetrics));
+		assertThat(metricsItemWriter.getMetrics(), is(batchMetrics));
+	}
+
+}
@@ -28,6 +28,7 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import biz.c24.io.api.transform.Transform;
 import biz.c24.io.spring.batch.processor.C24TransformItemProcessor;
 import biz.c24.io.spring.batch.processor.C24TransformItemProcessorTests.MyEmail;
+import biz.c24.io.spring.transform.TransformPool;
 
 /**
  * Validate the C24TranformItemProcessor parser
@@ -62,9 +63,16 @@ public class C24TransformItemProcessorParserTests {
 	@Qualifier("javaSinkItemProcessor")
 	C24TransformItemProcessor javaSinkItemProcessor;
 	
+	@Autowired
+	@Qualifier("pooledTransformItemProcessor")
+	C24TransformItemProcessor pooledTransformItemProcessor;
+	
 	@Autowired
 	Transform transform;
 	
+	@Autowired
+	TransformPool transformPool;
+	
 	
 	private void validateProcessor(C24TransformItemProcessor processor, boolean validating, boolean failfast, Class<?> clazz) {
 		assertThat(processor.getTransformer(), is(transform));
@@ -86,6 +94,12 @@ public class C24TransformItemProcessorParserTests {
 		validateProcessor(fullyValidatingTransformItemProcessor, true, false, null);
 		validateProcessor(javaSinkItemProcessor, false, true, MyEmail.class);
         validateProcessor(spelTransformItemProcessor, true, true, null);
+        
+        assertThat(pooledTransformItemProcessor.getTransformPool(), is(transformPool));
+        assertThat(pooledTransformItemProcessor.getTransformer(), nullValue());
+        assertThat(pooledTransformItemProcessor.isValidating(), is(true));
+        assertThat(transformPool.getMaxSize(), is(4));
+        assertThat(transformItemProcessor.getTransformPool(), nullValue());
 
 	}
 	
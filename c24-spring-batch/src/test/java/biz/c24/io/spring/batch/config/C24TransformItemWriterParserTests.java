@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.config;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import biz.c24.io.api.transform.Transform;
+import biz.c24.io.spring.batch.processor.C24AsyncTransformItemProcessor;
+import biz.c24.io.spring.batch.writer.C24AsyncItemWriter;
+import biz.c24.io.spring.batch.writer.C24ItemWriter;
+import biz.c24.io.spring.batch.writer.C24TransformItemWriter;
+
+/**
+ * Validate the C24TransformItemWriter, C24AsyncTransformItemProcessor and C24AsyncItemWriter parsers
+ * 
+ * @author Andrew Elmore
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("transform-item-writer.xml")
+public class C24TransformItemWriterParserTests {
+	
+	@Autowired
+	@Qualifier("transformItemWriter")
+	C24TransformItemWriter transformItemWriter;
+	
+	@Autowired
+	@Qualifier("validatingTransformItemWriter")
+	C24TransformItemWriter validatingTransformItemWriter;
+	
+	@Autowired
+	@Qualifier("emailItemWriter")
+	C24ItemWriter emailItemWriter;
+	
+	@Autowired
+	@Qualifier("asyncTransformItemProcessor")
+	C24AsyncTransformItemProcessor asyncTransformItemProcessor;
+	
+	@Autowired
+	@Qualifier("executorTransformItemProcessor")
+	C24AsyncTransformItemProcessor executorTransformItemProcessor;
+	
+	@Autowired
+	@Qualifier("asyncItemWriter")
+	C24AsyncItemWriter asyncItemWriter;
+	
+	@Autowired
+	Executor taskExecutor;
+	
+	@Autowired
+	Transform transform;
+	
+	@Test
+	public void validateParser() {
+		assertThat(transformItemWriter.getTransformer(), is(transform));
+		assertThat(transformItemWriter.getDelegate(), is((Object)emailItemWriter));
+		assertThat(transformItemWriter.isValidating(), is(false));
+		assertThat(transformItemWriter.isFailfast(), is(true));
+		assertThat(transformItemWriter.getTargetClass(), nullValue());
+		
+		assertThat(validatingTransformItemWriter.getDelegate(), is((Object)emailItemWriter));
+		assertThat(validatingTransformItemWriter.isValidating(), is(true));
+		assertThat(validatingTransformItemWriter.isFailfast(), is(false));
+	}
+	
+	@Test
+	public void validateAsyncParsers() {
+		assertThat(asyncTransformItemProcessor.getTransformer(), is(transform));
+		assertThat(asyncTransformItemProcessor.isValidating(), is(true));
+		assertThat(asyncTransformItemProcessor.getParallelism(), is(3));
+		assertThat(asyncTransformItemProcessor.getTaskExecutor(), nullValue());
+		
+		assertThat(executorTransformItemProcessor.isValidating(), is(false));
+		assertThat(executorTransformItemProcessor.getTaskExecutor(), is(taskExecutor));
+		
+		assertThat(asyncItemWriter.getDelegate(), is((Object)emailItemWriter));
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Andrew Elmore
+ */
+public class MicrometerBatchMetricsTests {
+
+    private MeterRegistry registry;
+    private MicrometerBatchMetrics metrics;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new MicrometerBatchMetrics(registry);
+        metrics.setTags("step", "load");
+    }
+
+    @Test
+    public void testTimer() {
+        BatchMetrics.Timer timer = metrics.timer(BatchMetrics.READER_PARSE, "C24ItemReader");
+        timer.record(TimeUnit.MILLISECONDS.toNanos(5));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(10));
+
+        io.micrometer.core.instrument.Timer meter = registry.find(BatchMetrics.READER_PARSE)
+                .tags("step", "load", BatchMetrics.COMPONENT_TAG, "C24ItemReader").timer();
+        assertThat(meter.count(), is(2L));
+        assertThat(meter.totalTime(TimeUnit.MILLISECONDS), is(15.0));
+    }
+
+    @Test
+    public void testCounter() {
+        metrics.counter(BatchMetrics.WRITER_CHARS, "C24ItemWriter").increment(100);
+        // Obtaining the same counter again continues the count
+        metrics.counter(BatchMetrics.WRITER_CHARS, "C24ItemWriter").increment(50);
+
+        assertThat(registry.find(BatchMetrics.WRITER_CHARS).tags(BatchMetrics.COMPONENT_TAG, "C24ItemWriter").counter().count(), is(150.0));
+    }
+
+    @Test
+    public void testGaugeReplaced() {
+        metrics.gauge(BatchMetrics.READER_QUEUE_DEPTH, "C24ItemReader", new FixedGauge(3));
+        assertThat(registry.find(BatchMetrics.READER_QUEUE_DEPTH).gauge().value(), is(3.0));
+
+        // As happens when a step-scoped reader is recreated
+        metrics.gauge(BatchMetrics.READER_QUEUE_DEPTH, "C24ItemReader", new FixedGauge(7));
+        assertThat(registry.find(BatchMetrics.READER_QUEUE_DEPTH).gauge().value(), is(7.0));
+        assertThat(registry.find(BatchMetrics.READER_QUEUE_DEPTH).gauges().size(), is(1));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnpairedTags() {
+        metrics.setTags("step");
+    }
+
+    private static class FixedGauge implements BatchMetrics.Gauge {
+
+        private final double value;
+
+        public FixedGauge(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double value() {
+            return value;
+        }
+    }
+
+}
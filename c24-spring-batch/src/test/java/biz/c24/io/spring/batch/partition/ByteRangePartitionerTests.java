@@ -0,0 +1,175 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.partition;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.FileSystemResource;
+
+import biz.c24.io.spring.batch.reader.source.FileSource;
+import biz.c24.io.spring.batch.reader.source.MappedFileSource;
+import biz.c24.io.spring.batch.reader.source.SplittingReader;
+import biz.c24.io.spring.batch.reader.source.SplittingReaderSource;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Validate that the ByteRangePartitioner splits files on element boundaries and that the sources
+ * honour the ranges it generates
+ * 
+ * @author Andrew Elmore
+ */
+public class ByteRangePartitionerTests {
+    
+    private File file;
+    
+    private String contents;
+    
+    @Before
+    public void setUp() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Header line\n");
+        for(int i = 0; i < 100; i++) {
+            builder.append("START ").append(i).append("\r\n");
+            // Vary the size of the elements
+            for(int j = 0; j < i % 7; j++) {
+                builder.append("  detail ").append(j).append('\n');
+            }
+        }
+        contents = builder.toString();
+        
+        file = File.createTempFile("ByteRangePartitionerTests", ".txt");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+    
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+    
+    private ByteRangePartitioner createPartitioner(String startPattern) {
+        ByteRangePartitioner partitioner = new ByteRangePartitioner();
+        partitioner.setResource(new FileSystemResource(file));
+        partitioner.setElementStartPattern(startPattern);
+        partitioner.validateConfiguration();
+        return partitioner;
+    }
+    
+    @Test
+    public void testPartitionBoundaries() throws IOException {
+        Map<String, ExecutionContext> partitions = createPartitioner("START.*").partition(8);
+        
+        assertThat(partitions.size(), is(8));
+        long expectedStart = 0;
+        for(int i = 0; i < partitions.size(); i++) {
+            ExecutionContext context = partitions.get("partition" + i);
+            assertThat(context.getString(ByteRangePartitioner.FILE_KEY), is(file.getAbsolutePath()));
+            long start = context.getLong(ByteRangePartitioner.START_OFFSET_KEY);
+            long end = context.getLong(ByteRangePartitioner.END_OFFSET_KEY);
+            
+            // Ranges must be contiguous and every range but the first must start on an element
+            assertThat(start, is(expectedStart));
+            assertTrue(end > start);
+            if(i > 0) {
+                assertTrue(contents.startsWith("START", (int)start));
+            }
+            expectedStart = end;
+        }
+        assertThat(expectedStart, is(file.length()));
+    }
+    
+    @Test
+    public void testMorePartitionsThanElements() throws IOException {
+        // Only one element start in the middle of the file matches so every cut moves to either it or the end of the file
+        Map<String, ExecutionContext> partitions = createPartitioner("START 50\\s*").partition(50);
+        
+        assertThat(partitions.size(), is(2));
+        long boundary = contents.indexOf("START 50\r\n");
+        assertThat(partitions.get("partition0").getLong(ByteRangePartitioner.END_OFFSET_KEY), is(boundary));
+        assertThat(partitions.get("partition1").getLong(ByteRangePartitioner.START_OFFSET_KEY), is(boundary));
+        assertThat(partitions.get("partition1").getLong(ByteRangePartitioner.END_OFFSET_KEY), is(file.length()));
+    }
+    
+    @Test
+    public void testEmptyFile() throws IOException {
+        new FileOutputStream(file).close();
+        
+        Map<String, ExecutionContext> partitions = createPartitioner("START.*").partition(4);
+        
+        assertThat(partitions.size(), is(1));
+        assertThat(partitions.get("partition0").getLong(ByteRangePartitioner.START_OFFSET_KEY), is(0L));
+        assertThat(partitions.get("partition0").getLong(ByteRangePartitioner.END_OFFSET_KEY), is(0L));
+    }
+    
+    @Test
+    public void testFileSourceReadsPartitions() throws IOException {
+        FileSource source = new FileSource();
+        source.setSkipLines(1);
+        verifyPartitionsReassemble(source);
+    }
+
+    @Test
+    public void testMappedFileSourceReadsPartitions() throws IOException {
+        MappedFileSource source = new MappedFileSource();
+        source.setSkipLines(1);
+        verifyPartitionsReassemble(source);
+    }
+    
+    /**
+     * Reads every partition through the source and ensures that, between them, they return every line of the file 
+     * bar the header exactly once
+     */
+    private void verifyPartitionsReassemble(SplittingReaderSource source) throws IOException {
+        Map<String, ExecutionContext> partitions = createPartitioner("START.*").partition(5);
+        
+        StringBuilder reassembled = new StringBuilder();
+        for(int i = 0; i < partitions.size(); i++) {
+            StepExecution stepExecution = new StepExecution("partition" + i, new JobExecution(1L));
+            stepExecution.setExecutionContext(partitions.get("partition" + i));
+            source.initialise(stepExecution);
+            
+            SplittingReader reader = source.getNextReader();
+            String line;
+            boolean first = true;
+            while((line = reader.readLine()) != null) {
+                if(first && i > 0) {
+                    assertTrue(line.startsWith("START"));
+                }
+                first = false;
+                reassembled.append(line);
+            }
+            source.close();
+        }
+        
+        assertThat(reassembled.toString(), is(contents.substring("Header line\n".length())));
+    }
+
+}
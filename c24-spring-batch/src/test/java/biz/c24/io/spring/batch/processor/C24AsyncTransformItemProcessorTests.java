@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.api.data.ValidationException;
+import biz.c24.io.api.transform.Transform;
+import biz.c24.io.examples.models.basic.Email;
+import biz.c24.io.examples.models.basic.Employee;
+import biz.c24.io.examples.transforms.basic.EmployeeToEmailTransform;
+
+/**
+ * Test the C24AsyncTransformItemProcessor
+ * 
+ * @author Andrew Elmore
+ */
+public class C24AsyncTransformItemProcessorTests {
+	
+	private Transform employeeToEmail = new EmployeeToEmailTransform();
+	
+	/**
+	 * Fails if an instance is used by more than one thread at a time, as an iO-generated transform may
+	 */
+	public static class SingleThreadedTransform extends EmployeeToEmailTransform {
+		
+		private static final AtomicInteger instances = new AtomicInteger();
+		private static volatile boolean sharedUse = false;
+		
+		private final AtomicInteger callers = new AtomicInteger();
+		
+		public SingleThreadedTransform() {
+			instances.incrementAndGet();
+		}
+		
+		@Override
+		public Object[][] transform(Object[][] in) throws ValidationException {
+			if(callers.incrementAndGet() > 1) {
+				sharedUse = true;
+			}
+			try {
+				// Give other threads the chance to call us at the same time
+				Thread.sleep(1);
+				return super.transform(in);
+			} catch(InterruptedException ex) {
+				throw new IllegalStateException(ex);
+			} finally {
+				callers.decrementAndGet();
+			}
+		}
+	}
+	
+	private static Employee createEmployee(String firstName, String lastName) {
+		Employee employee = new Employee();
+		employee.setFirstName(firstName);
+		employee.setLastName(lastName);
+		employee.setSalutation("Mr");
+		employee.setJobTitle("Compliance Officer");
+		return employee;
+	}
+	
+	@Test
+	public void testParallelTransform() throws Exception {
+		C24AsyncTransformItemProcessor transformer = new C24AsyncTransformItemProcessor();
+		transformer.setTransformer(employeeToEmail);
+		transformer.setValidation(true);
+		transformer.setParallelism(4);
+		
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for(int i = 0; i < 100; i++) {
+			results.add(transformer.process(createEmployee("Dave", "Taylor")));
+		}
+		for(Future<Object> result : results) {
+			assertThat(result.get(), instanceOf(Email.class));
+		}
+		
+		transformer.cleanup();
+	}
+	
+	@Test
+	public void testTransformerIsNotShared() throws Exception {
+		SingleThreadedTransform.instances.set(0);
+		SingleThreadedTransform.sharedUse = false;
+		
+		C24AsyncTransformItemProcessor transformer = new C24AsyncTransformItemProcessor();
+		transformer.setTransformer(new SingleThreadedTransform());
+		transformer.setParallelism(4);
+		
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for(int i = 0; i < 200; i++) {
+			results.add(transformer.process(createEmployee("Dave", "Taylor")));
+		}
+		for(Future<Object> result : results) {
+			assertThat(result.get(), instanceOf(Email.class));
+		}
+		
+		assertThat(SingleThreadedTransform.sharedUse, is(false));
+		// No more instances, including the one supplied, than threads
+		assertTrue(SingleThreadedTransform.instances.get() <= 4);
+		
+		transformer.cleanup();
+	}
+	
+	@Test
+	public void testInvalidTransform() throws Exception {
+		C24AsyncTransformItemProcessor transformer = new C24AsyncTransformItemProcessor();
+		transformer.setTransformer(employeeToEmail);
+		transformer.setValidation(true);
+		
+		// Use of @ is invalid in an email address
+		Future<Object> result = transformer.process(createEmployee("@ave", "T@ylor"));
+		try {
+			result.get();
+			fail("C24AsyncTransformItemProcessor failed to detect invalid CDO");
+		} catch(ExecutionException ex) {
+			// Expected behaviour
+			assertThat(ex.getCause(), instanceOf(org.springframework.batch.item.validator.ValidationException.class));
+		}
+		
+		transformer.cleanup();
+	}
+	
+	@Test
+	public void testTaskExecutor() throws Exception {
+		final AtomicInteger submitted = new AtomicInteger();
+		// Runs each task on a thread of its own
+		Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				submitted.incrementAndGet();
+				new Thread(command).start();
+			}
+		};
+		
+		C24AsyncTransformItemProcessor transformer = new C24AsyncTransformItemProcessor(employeeToEmail, executor);
+		
+		ComplexDataObject employee = createEmployee("Dave", "Taylor");
+		Future<Object> result = transformer.process(employee);
+		assertThat(result.get(10, TimeUnit.SECONDS), instanceOf(Email.class));
+		assertThat(submitted.get(), is(1));
+		
+		transformer.cleanup();
+	}
+
+}
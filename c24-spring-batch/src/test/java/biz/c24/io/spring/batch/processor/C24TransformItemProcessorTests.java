@@ -26,6 +26,7 @@ import biz.c24.io.examples.models.basic.Email;
 import biz.c24.io.examples.models.basic.Employee;
 import biz.c24.io.examples.transforms.basic.EmployeeToEmailTransform;
 import biz.c24.io.spring.batch.C24CompoundValidationException;
+import biz.c24.io.spring.transform.TransformPool;
 
 /**
  * Test the C24TransformItemProcessor
@@ -57,6 +58,32 @@ public class C24TransformItemProcessorTests {
 	}
 	
 	
+	@Test
+	public void testPooledTransform() throws Exception {
+		Employee validEmployee = new Employee();
+		
+		validEmployee.setFirstName("Dave");
+		validEmployee.setLastName("Taylor");
+		validEmployee.setSalutation("Mr");
+		validEmployee.setJobTitle("Compliance Officer");
+		
+		TransformPool pool = new TransformPool(EmployeeToEmailTransform.class, 2);
+		pool.afterPropertiesSet();
+		
+		C24TransformItemProcessor transformer = new C24TransformItemProcessor();
+		transformer.setTransformPool(pool);
+		transformer.setValidation(true);
+		
+		assertThat(transformer.process(validEmployee), instanceOf(Email.class));
+		assertThat(transformer.process(validEmployee), instanceOf(Email.class));
+		
+		// The transform should have been returned to the pool and reused each time
+		assertThat(pool.getBorrowCount(), is(2L));
+		assertThat(pool.getSize(), is(1));
+		assertThat(pool.getIdleCount(), is(1));
+	}
+	
+	
 	@Test
 	public void testInvalidTransform() throws Exception {
 		Employee employee = new Employee();
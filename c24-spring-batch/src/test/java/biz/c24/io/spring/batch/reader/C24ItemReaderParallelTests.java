@@ -112,12 +112,41 @@ public class C24ItemReaderParallelTests {
         assertThat(source.useMultipleThreadsPerReader(), is(true));
     }
     
+    @Test
+    public void testPipelinedZipCombinedRead() throws UnexpectedInputException, ParseException, NonTransientResourceException, IOException, ValidationException {
+        
+        ZipFileSource source = new ZipFileSource();
+        source.setResource(new ClassPathResource("employees-1500-valid-combined-noparent.xml.zip"));
+        
+        // Validation & splitting - start pattern only
+        Collection<ComplexDataObject> objs = readFile(employeeXmlModel, ".*<employee .*", null, true, source, null, true);
+        assertThat(objs.size(), is(1500));
+
+        // Validation & splitting - start & stop patterns
+        objs = readFile(employeeXmlModel, ".*<employee .*", ".*/>.*", true, source, null, true);
+        assertThat(objs.size(), is(1500));
+    }
+    
+    @Test
+    public void testPipelinedZipSingleRead() throws UnexpectedInputException, ParseException, NonTransientResourceException, IOException, ValidationException {
+        
+        ZipFileSource source = new ZipFileSource();
+        source.setResource(new ClassPathResource("employees-100-valid-individual-noparent.xml.zip"));
+        
+        // The splitter thread should move through each of the entries in turn
+        Collection<ComplexDataObject> objs = readFile(employeeXmlModel, ".*<employee.*", ".*/>.*", true, source, null, true);
+        assertThat(objs.size(), is(100));
+    }
     
     private Collection<ComplexDataObject> readFile(C24Model model, String optionalElementStartRegEx, String optionalElementStopRegEx, boolean validate, SplittingReaderSource source) throws IOException, UnexpectedInputException, ParseException, NonTransientResourceException, ValidationException {
         return readFile(model, optionalElementStartRegEx, optionalElementStopRegEx, validate, source, null);
     }
 
     private Collection<ComplexDataObject> readFile(C24Model model, String optionalElementStartRegEx, String optionalElementStopRegEx, boolean validate, SplittingReaderSource source, SourceFactory factory) throws IOException, UnexpectedInputException, ParseException, NonTransientResourceException, ValidationException { 
+        return readFile(model, optionalElementStartRegEx, optionalElementStopRegEx, validate, source, factory, false);
+    }
+
+    private Collection<ComplexDataObject> readFile(C24Model model, String optionalElementStartRegEx, String optionalElementStopRegEx, boolean validate, SplittingReaderSource source, SourceFactory factory, boolean pipelined) throws IOException, UnexpectedInputException, ParseException, NonTransientResourceException, ValidationException { 
         C24ItemReader<ComplexDataObject> reader = new C24ItemReader<ComplexDataObject>();
         reader.setModel(model);
         if(optionalElementStartRegEx != null) {
@@ -132,6 +161,7 @@ public class C24ItemReaderParallelTests {
         
         reader.setSource(source);
         reader.setValidate(validate);
+        reader.setPipelined(pipelined);
         
         StepExecution stepExecution = getStepExecution();
         
@@ -15,23 +15,32 @@
  */
 package biz.c24.io.spring.batch.reader;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.NonTransientResourceException;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.UnexpectedInputException;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.FileCopyUtils;
 import biz.c24.io.api.data.ComplexDataObject;
 import biz.c24.io.api.data.ValidationException;
 import biz.c24.io.examples.models.basic.EmployeeElement;
 import biz.c24.io.spring.batch.C24CompoundValidationException;
+import biz.c24.io.spring.batch.reader.source.ElementIndex;
+import biz.c24.io.spring.batch.reader.source.SplittingReader;
 import biz.c24.io.spring.batch.reader.source.SplittingReaderSource;
 import biz.c24.io.spring.batch.reader.source.FileSource;
+import biz.c24.io.spring.batch.reader.source.MappedFileSource;
 import biz.c24.io.spring.batch.reader.source.ZipFileSource;
 import biz.c24.io.spring.core.C24Model;
 import biz.c24.io.spring.source.SourceFactory;
@@ -251,6 +260,150 @@ public class C24ItemReaderTests {
 		assertThat(source.useMultipleThreadsPerReader(), is(true));
 	}
 	
+	@Test
+	public void testRestart() throws UnexpectedInputException, ParseException, NonTransientResourceException, IOException, ValidationException {
+		
+		FileSource source = new FileSource();
+		source.setSkipLines(1);
+		source.setResource(new ClassPathResource("employees-3-valid-header.csv"));
+		
+		// Splitting, so we restart from the recorded position
+		assertThat(restart(employeeModel, ".*", source, 1), is(2));
+		assertThat(restart(employeeModel, ".*", source, 3), is(0));
+		
+		// No splitting, so we skip by re-parsing
+		assertThat(restart(employeeModel, null, source, 2), is(1));
+		
+		MappedFileSource mappedSource = new MappedFileSource();
+		mappedSource.setResource(new ClassPathResource("employees-3-valid.csv"));
+		assertThat(restart(employeeModel, ".*", mappedSource, 2), is(1));
+		
+		ZipFileSource zipSource = new ZipFileSource();
+		zipSource.setResource(new ClassPathResource("employees-5-valid.zip"));
+		assertThat(restart(employeeModel, ".*", zipSource, 3), is(2));
+		
+		// 1 reader per ZipEntry; the restart point includes the entry
+		zipSource.setResource(new ClassPathResource("employees-50-valid.zip"));
+		assertThat(restart(employeeModel, ".*", zipSource, 27), is(23));
+	}
+	
+	@Test
+	public void testIndexed() throws UnexpectedInputException, ParseException, NonTransientResourceException, IOException, ValidationException {
+		
+		File file = File.createTempFile("C24ItemReaderTests", ".csv");
+		File indexFile = ElementIndex.indexFileFor(file);
+		try {
+			FileCopyUtils.copy(new ClassPathResource("employees-3-valid.csv").getInputStream(), new FileOutputStream(file));
+			MappedFileSource source = new MappedFileSource();
+			source.setResource(new FileSystemResource(file));
+			
+			// The first execution splits the file and records the index
+			C24ItemReader<ComplexDataObject> reader = new C24ItemReaderBuilder().startPattern(".*").source(source).model(employeeModel).indexed();
+			assertThat(runJob(reader, employeeModel).size(), is(3));
+			assertThat(reader.getElementCount(), is(-1L));
+			assertThat(indexFile.exists(), is(true));
+			assertThat(ElementIndex.load(indexFile, file).size(), is(3L));
+			
+			// Subsequent ones read via it
+			reader = new C24ItemReaderBuilder().startPattern(".*").source(source).model(employeeModel).indexed();
+			assertThat(runJob(reader, employeeModel).size(), is(3));
+			assertThat(reader.getElementCount(), is(3L));
+			
+			// Restarting moves straight to the next element
+			ExecutionContext executionContext = new ExecutionContext();
+			reader = new C24ItemReaderBuilder().startPattern(".*").source(source).model(employeeModel).indexed();
+			reader.setup(getStepExecution());
+			reader.open(executionContext);
+			assertThat(reader.read(), is(notNullValue()));
+			reader.update(executionContext);
+			reader.cleanup();
+			assertThat(executionContext.getLong("C24ItemReader.element.count"), is(3L));
+			
+			reader = new C24ItemReaderBuilder().startPattern(".*").source(source).model(employeeModel).indexed();
+			reader.setup(getStepExecution());
+			reader.open(executionContext);
+			int count = 0;
+			while(reader.read() != null) {
+				count++;
+			}
+			reader.cleanup();
+			assertThat(count, is(2));
+			assertThat(reader.getReadCount(), is(3L));
+			
+			// Once the file changes, the index is no longer used
+			assertThat(file.setLastModified(file.lastModified() - 60000), is(true));
+			assertThat(ElementIndex.load(indexFile, file), is(nullValue()));
+			reader = new C24ItemReaderBuilder().startPattern(".*").source(source).model(employeeModel).indexed();
+			reader.setup(getStepExecution());
+			assertThat(reader.getElementCount(), is(-1L));
+			reader.cleanup();
+		} finally {
+			file.delete();
+			indexFile.delete();
+		}
+	}
+	
+	/**
+	 * Reads numRead objects, saves the reader's state and restarts a new reader from it
+	 * 
+	 * @return The number of objects read by the restarted reader
+	 */
+	@Test
+	public void testLegacyReadLineOverride() throws UnexpectedInputException, ParseException, NonTransientResourceException, IOException, ValidationException {
+		
+		FileSource source = new FileSource();
+		source.setResource(new ClassPathResource("employees-3-valid.csv"));
+		
+		final AtomicInteger linesRead = new AtomicInteger();
+		// Subclasses written before readLineSequence was introduced override readLine
+		C24ItemReader<ComplexDataObject> reader = new C24ItemReader<ComplexDataObject>() {
+			@Override
+			protected String readLine(SplittingReader reader) throws IOException {
+				String line = reader.readLine();
+				if(line != null) {
+					linesRead.incrementAndGet();
+				}
+				return line;
+			}
+		};
+		reader.setModel(employeeModel);
+		reader.setElementStartPattern(".*");
+		reader.setSource(source);
+		
+		Collection<ComplexDataObject> objs = runJob(reader, employeeModel);
+		assertThat(objs.size(), is(3));
+		// Lines pushed back at the start of the next element are read again
+		assertTrue(linesRead.get() >= 3);
+	}
+	
+	private int restart(C24Model model, String optionalElementStartRegEx, SplittingReaderSource source, int numRead) throws IOException, UnexpectedInputException, ParseException, NonTransientResourceException, ValidationException {
+		ExecutionContext executionContext = new ExecutionContext();
+		
+		C24ItemReader<ComplexDataObject> reader = new C24ItemReaderBuilder().startPattern(optionalElementStartRegEx).source(source).model(model);
+		reader.setup(getStepExecution());
+		reader.open(executionContext);
+		for(int i = 0; i < numRead; i++) {
+			assertThat(reader.read(), is(notNullValue()));
+		}
+		reader.update(executionContext);
+		reader.close();
+		reader.cleanup();
+		
+		reader = new C24ItemReaderBuilder().startPattern(optionalElementStartRegEx).source(source).model(model).quickValidate();
+		reader.setup(getStepExecution());
+		reader.open(executionContext);
+		int count = 0;
+		while(reader.read() != null) {
+			count++;
+		}
+		reader.update(executionContext);
+		reader.close();
+		reader.cleanup();
+		
+		assertThat(executionContext.getLong("C24ItemReader.read.count"), is((long)(numRead + count)));
+		return count;
+	}
+	
 	private Collection<ComplexDataObject> readFile(C24Model model, String optionalElementStartRegEx, String optionalElementStopRegEx, boolean validate, SplittingReaderSource source) throws IOException, UnexpectedInputException, ParseException, NonTransientResourceException, ValidationException {
 		return readFile(model, optionalElementStartRegEx, optionalElementStopRegEx, validate, source, null);
 	}
@@ -275,7 +428,9 @@ public class C24ItemReaderTests {
 	
 	private static class C24ItemReaderBuilder extends C24ItemReader<ComplexDataObject> {
 		public C24ItemReaderBuilder startPattern(String regex) {
-			setElementStartPattern(regex);
+			if(regex != null) {
+				setElementStartPattern(regex);
+			}
 			return this;
 		}
 		
@@ -299,6 +454,11 @@ public class C24ItemReaderTests {
 			return this;
 		}
 		
+		public C24ItemReaderBuilder indexed() {
+			setIndexed(true);
+			return this;
+		}
+		
 		public C24ItemReaderBuilder quickValidate() {
 			setValidate(true);
 			return this;
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.performance;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import biz.c24.io.spring.batch.reader.source.LineMatcher;
+import biz.c24.io.spring.batch.reader.source.SplittingReader;
+
+/**
+ * Compares the per-line cost of matching the elementStartPattern using java.util.regex (as C24ItemReader used to)
+ * against the specialised LineMatcher now used.
+ *
+ * @author Andrew Elmore
+ *
+ */
+public class LineMatcherPerformance {
+
+    private static long WARMUP_SECS = 3;
+    private static long RUN_SECS = 3;
+
+    private static String[] PATTERNS = {
+        ".*<receipt .*",
+        "<receipt .*",
+        ".*</receipt>.*",
+        "\\{1:.*",
+        ".*<(receipt|order) .*"
+    };
+
+    public static void main(String[] args) throws IOException {
+
+        String receipt = "<receipt receiptId=\"e16dea4b-5e46-4001-8180-735a862f540e\" customerId=\"37189\" timestamp=\"2012-03-01T00:58:27\">\n" +
+                "\t<item productId=\"258\" quantity=\"8\" price=\"46.96\"/>\n" +
+                "\t<item productId=\"299\" quantity=\"2\" price=\"5.98\"/>\n" +
+                "\t<item productId=\"281\" quantity=\"6\" price=\"23.94\"/>\n" +
+                "\t<item productId=\"279\" quantity=\"6\" price=\"29.94\"/>\n" +
+                "\t<item productId=\"341\" quantity=\"5\" price=\"14.95\"/>\n" +
+                "\t<item productId=\"342\" quantity=\"3\" price=\"8.97\"/>\n" +
+                "\t<item productId=\"320\" quantity=\"4\" price=\"13.96\"/>\n" +
+                "\t<item productId=\"336\" quantity=\"4\" price=\"14.76\"/>\n" +
+                "</receipt>\n";
+
+        // Read the lines up front so that only the cost of matching is measured.
+        // Each line gets its own SplittingReader so that we can retain the CharArraySequence it returns.
+        List<CharSequence> lines = new ArrayList<CharSequence>();
+        for(int i = 0; i < 1000; i++) {
+            SplittingReader reader = new SplittingReader(new StringReader(receipt));
+            String line;
+            while((line = reader.readLine()) != null) {
+                lines.add(new SplittingReader(new StringReader(line)).readLineSequence());
+            }
+        }
+
+        DecimalFormat df = new DecimalFormat("#0.00");
+
+        for(String regex : PATTERNS) {
+            Pattern pattern = Pattern.compile(regex, Pattern.DOTALL);
+            LineMatcher lineMatcher = LineMatcher.compile(pattern).newMatcher();
+
+            double regexCost = run(lines, pattern.matcher(""), null);
+            double lineMatcherCost = run(lines, null, lineMatcher);
+
+            System.out.println(regex + " [" + lineMatcher.getClass().getSimpleName() + "]");
+            System.out.println("    java.util.regex (ns/line): " + df.format(regexCost));
+            System.out.println("    LineMatcher (ns/line):     " + df.format(lineMatcherCost));
+        }
+    }
+
+    /**
+     * Repeatedly matches each of the lines using whichever of regex and lineMatcher is not null
+     *
+     * @return The mean cost per line in nanoseconds, excluding warm up
+     */
+    private static double run(List<CharSequence> lines, Matcher regex, LineMatcher lineMatcher) {
+        // Run WarmUp
+        long stopTime = System.currentTimeMillis() + (WARMUP_SECS * 1000);
+        while(System.currentTimeMillis() < stopTime) {
+            matchAll(lines, regex, lineMatcher);
+        }
+
+        // Now run the actual test
+        long numLines = 0;
+        long cumulativeTime = 0;
+        stopTime = System.currentTimeMillis() + (RUN_SECS * 1000);
+        while(System.currentTimeMillis() < stopTime) {
+            long start = System.nanoTime();
+            matches += matchAll(lines, regex, lineMatcher);
+            cumulativeTime += System.nanoTime() - start;
+            numLines += lines.size();
+        }
+
+        return cumulativeTime / (double)numLines;
+    }
+
+    /**
+     * Accumulates the number of matches so that the work can't be optimised away
+     */
+    private static long matches = 0;
+
+    private static int matchAll(List<CharSequence> lines, Matcher regex, LineMatcher lineMatcher) {
+        int count = 0;
+        for(CharSequence line : lines) {
+            if(regex != null? regex.reset(line).matches() : lineMatcher.matches(line)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compare the ByteScanner against a byte at a time search
+ *
+ * @author Andrew Elmore
+ */
+public class ByteScannerTests {
+
+    @Test
+    public void testZeroBytes() {
+        assertThat(ByteScanner.zeroBytes(0x0101010101010101L), is(0L));
+        assertThat(ByteScanner.zeroBytes(0L), is(0x8080808080808080L));
+        // Bytes either side of a zero, including 0x80 and 0x01, must not be flagged
+        assertThat(ByteScanner.zeroBytes(0x0180000101FF0080L), is(0x0000800000008000L));
+    }
+
+    @Test
+    public void testIndexOf() {
+        for(ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer buffer = ByteBuffer.wrap("abcdefghij\nlmnopqrstuvwxyz\n0123".getBytes()).order(order);
+            assertThat(ByteScanner.indexOf(buffer, 0, buffer.limit(), (byte)'\n'), is(10));
+            assertThat(ByteScanner.indexOf(buffer, 11, buffer.limit(), (byte)'\n'), is(26));
+            assertThat(ByteScanner.indexOf(buffer, 27, buffer.limit(), (byte)'\n'), is(buffer.limit()));
+            assertThat(ByteScanner.indexOf(buffer, 0, 10, (byte)'\n'), is(10));
+            assertThat(ByteScanner.indexOf(buffer, 0, buffer.limit(), (byte)'a'), is(0));
+            assertThat(ByteScanner.indexOf(buffer, 0, buffer.limit(), (byte)'3'), is(buffer.limit() - 1));
+        }
+    }
+
+    @Test
+    public void testIndexOfEither() {
+        for(ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer buffer = ByteBuffer.wrap("abcdefghijklm\r\nopqrstuvwx\nz".getBytes()).order(order);
+            assertThat(ByteScanner.indexOfEither(buffer, 0, buffer.limit(), (byte)'\n', (byte)'\r'), is(13));
+            assertThat(ByteScanner.indexOfEither(buffer, 14, buffer.limit(), (byte)'\n', (byte)'\r'), is(14));
+            assertThat(ByteScanner.indexOfEither(buffer, 15, buffer.limit(), (byte)'\n', (byte)'\r'), is(25));
+            assertThat(ByteScanner.indexOfEither(buffer, 26, buffer.limit(), (byte)'\n', (byte)'\r'), is(buffer.limit()));
+        }
+    }
+
+    @Test
+    public void testAgainstScalarSearch() {
+        Random random = new Random(42);
+        byte[] data = new byte[4096];
+        // Include high bytes, which would trip up a sign-sensitive implementation
+        for(int i = 0; i < data.length; i++) {
+            int r = random.nextInt(100);
+            data[i] = r == 0? (byte)'\n' : r == 1? (byte)'\r' : (byte)random.nextInt(256);
+        }
+        for(ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer buffer = ByteBuffer.wrap(data).order(order);
+            for(int from = 0; from < 200; from++) {
+                for(int limit = from; limit < from + 300; limit += 7) {
+                    assertThat(ByteScanner.indexOf(buffer, from, limit, (byte)'\n'), is(scalarIndexOf(data, from, limit, (byte)'\n', (byte)'\n')));
+                    assertThat(ByteScanner.indexOf(buffer, from, limit, (byte)0xE9), is(scalarIndexOf(data, from, limit, (byte)0xE9, (byte)0xE9)));
+                    assertThat(ByteScanner.indexOfEither(buffer, from, limit, (byte)'\n', (byte)'\r'), is(scalarIndexOf(data, from, limit, (byte)'\n', (byte)'\r')));
+                }
+            }
+        }
+    }
+
+    private static int scalarIndexOf(byte[] data, int from, int limit, byte a, byte b) {
+        for(int i = from; i < limit; i++) {
+            if(data[i] == a || data[i] == b) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Validate the ElementIndex, including its persistence and staleness checks
+ *
+ * @author Andrew Elmore
+ *
+ */
+public class ElementIndexTests {
+
+    private File file = null;
+    private File indexFile = null;
+
+    private void createFile(int length) throws IOException {
+        file = File.createTempFile("ElementIndexTests", ".txt");
+        indexFile = ElementIndex.indexFileFor(file);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if(file != null) {
+            file.delete();
+            indexFile.delete();
+        }
+    }
+
+    /**
+     * Builds an index of numElements elements where element i starts at 10 * i and is (i % 7) + 1 bytes long
+     */
+    private static ElementIndex.Builder build(int numElements) {
+        ElementIndex.Builder builder = new ElementIndex.Builder();
+        for(int i = 0; i < numElements; i++) {
+            builder.add(10L * i, (i % 7) + 1);
+        }
+        return builder;
+    }
+
+    @Test
+    public void testCursor() {
+        ElementIndex index = build(1000).build(10000, 0);
+        assertThat(index.size(), is(1000L));
+
+        // Sequentially
+        ElementIndex.Cursor cursor = index.cursor();
+        assertThat(cursor.getElement(), is(-1L));
+        for(int i = 0; i < 1000; i++) {
+            assertThat(cursor.next(), is(true));
+            assertThat(cursor.getElement(), is((long)i));
+            assertThat(cursor.getStart(), is(10L * i));
+            assertThat(cursor.getLength(), is((long)(i % 7) + 1));
+            assertThat(cursor.getEnd(), is(10L * i + (i % 7) + 1));
+        }
+        assertThat(cursor.next(), is(false));
+
+        // Randomly, forwards and backwards, within and across sample intervals
+        for(int i : new int[] {999, 0, 500, 501, 620, 129, 128, 127, 999, 3}) {
+            assertThat(cursor.moveTo(i), is(true));
+            assertThat(cursor.getStart(), is(10L * i));
+            assertThat(cursor.getLength(), is((long)(i % 7) + 1));
+        }
+        assertThat(cursor.moveTo(1000), is(false));
+        assertThat(cursor.moveTo(-1), is(false));
+    }
+
+    @Test
+    public void testIndexOf() {
+        ElementIndex index = build(1000).build(10000, 0);
+        assertThat(index.indexOf(0), is(0L));
+        assertThat(index.indexOf(1), is(1L));
+        assertThat(index.indexOf(10), is(1L));
+        assertThat(index.indexOf(1285), is(129L));
+        assertThat(index.indexOf(1290), is(129L));
+        assertThat(index.indexOf(9990), is(999L));
+        assertThat(index.indexOf(9991), is(1000L));
+        assertThat(index.indexOf(Long.MAX_VALUE), is(1000L));
+
+        ElementIndex empty = new ElementIndex.Builder().build(0, 0);
+        assertThat(empty.size(), is(0L));
+        assertThat(empty.indexOf(0), is(0L));
+        assertThat(empty.cursor().next(), is(false));
+    }
+
+    @Test
+    public void testLargeOffsets() {
+        // Offsets beyond 4GB, as found in large files
+        ElementIndex.Builder builder = new ElementIndex.Builder();
+        builder.add(5000000000L, 100);
+        builder.add(5000000100L, 3000000000L);
+        ElementIndex index = builder.build(9000000000L, 0);
+        ElementIndex.Cursor cursor = index.cursor();
+        assertThat(cursor.moveTo(1), is(true));
+        assertThat(cursor.getStart(), is(5000000100L));
+        assertThat(cursor.getLength(), is(3000000000L));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testOverlappingElements() {
+        ElementIndex.Builder builder = new ElementIndex.Builder();
+        builder.add(0, 10);
+        builder.add(5, 10);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testElementsBeyondFile() {
+        build(10).build(50, 0);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        createFile(10000);
+        assertThat(ElementIndex.load(indexFile, file), is(nullValue()));
+
+        build(1000).build(file.length(), file.lastModified()).save(indexFile);
+        ElementIndex index = ElementIndex.load(indexFile, file);
+        assertThat(index, is(notNullValue()));
+        assertThat(index.size(), is(1000L));
+        assertThat(index.isValidFor(file), is(true));
+        ElementIndex.Cursor cursor = index.cursor();
+        assertThat(cursor.moveTo(777), is(true));
+        assertThat(cursor.getStart(), is(7770L));
+        assertThat(cursor.getLength(), is(1L));
+
+        // The index is no longer used once the file changes
+        assertThat(file.setLastModified(file.lastModified() - 60000), is(true));
+        assertThat(index.isValidFor(file), is(false));
+        assertThat(ElementIndex.load(indexFile, file), is(nullValue()));
+
+        build(1000).build(file.length(), file.lastModified()).save(indexFile);
+        assertThat(ElementIndex.load(indexFile, file), is(notNullValue()));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(20000);
+        } finally {
+            raf.close();
+        }
+        assertThat(ElementIndex.load(indexFile, file), is(nullValue()));
+    }
+
+    @Test(expected=IOException.class)
+    public void testTruncatedIndex() throws IOException {
+        createFile(10000);
+        build(1000).build(file.length(), file.lastModified()).save(indexFile);
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+        try {
+            raf.setLength(raf.length() - 10);
+        } finally {
+            raf.close();
+        }
+        ElementIndex.load(indexFile, file);
+    }
+
+    @Test(expected=IOException.class)
+    public void testNotAnIndex() throws IOException {
+        createFile(10000);
+        FileOutputStream out = new FileOutputStream(indexFile);
+        try {
+            out.write("Not an index".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        ElementIndex.load(indexFile, file);
+    }
+
+}
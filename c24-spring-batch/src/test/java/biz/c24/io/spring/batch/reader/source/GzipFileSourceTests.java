@@ -0,0 +1,284 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Validate the GzipFileSource against single member, multi-member and BGZF files
+ *
+ * @author Andrew Elmore
+ *
+ */
+public class GzipFileSourceTests {
+
+    private static final int NUM_LINES = 2000;
+
+    private File file = null;
+
+    private static String line(int i) {
+        // Include a multi-byte character so that some are split across blocks
+        return "Line " + i + " été\n";
+    }
+
+    private static byte[] content(int from, int to) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for(int i = from; i < to; i++) {
+            builder.append(line(i));
+        }
+        return builder.toString().getBytes("UTF-8");
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Compresses data as a series of BGZF blocks of at most blockSize uncompressed bytes, followed by the empty
+     * end of file block
+     */
+    private static byte[] bgzip(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for(int offset = 0; offset < data.length; offset += blockSize) {
+            writeBlock(bytes, data, offset, Math.min(blockSize, data.length - offset));
+        }
+        writeBlock(bytes, data, 0, 0);
+        return bytes.toByteArray();
+    }
+
+    private static void writeBlock(ByteArrayOutputStream out, byte[] data, int offset, int length) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        byte[] buffer = new byte[length + 1024];
+        int compressedLength = 0;
+        while(!deflater.finished()) {
+            compressedLength += deflater.deflate(buffer, compressedLength, buffer.length - compressedLength);
+        }
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+
+        int blockSize = 18 + compressedLength + 8;
+        out.write(new byte[] {0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff, 6, 0, 'B', 'C', 2, 0}, 0, 16);
+        writeShort(out, blockSize - 1);
+        out.write(buffer, 0, compressedLength);
+        writeInt(out, (int)crc.getValue());
+        writeInt(out, length);
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        writeShort(out, value & 0xFFFF);
+        writeShort(out, (value >> 16) & 0xFFFF);
+    }
+
+    private GzipFileSource createSource(byte[]... members) throws IOException {
+        file = File.createTempFile("GzipFileSourceTests", ".gz");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for(byte[] member : members) {
+                out.write(member);
+            }
+        } finally {
+            out.close();
+        }
+        GzipFileSource source = new GzipFileSource();
+        source.setResource(new FileSystemResource(file));
+        return source;
+    }
+
+    @After
+    public void tearDown() {
+        if(file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSingleMember() throws IOException {
+        GzipFileSource source = createSource(gzip(content(0, NUM_LINES)));
+        source.setParallelism(1);
+        readAll(source, 0);
+
+        // Not BGZF so will be inflated sequentially regardless
+        source.setParallelism(4);
+        readAll(source, 0);
+    }
+
+    @Test
+    public void testMultipleMembers() throws IOException {
+        GzipFileSource source = createSource(gzip(content(0, 500)), gzip(content(500, 1500)), gzip(content(1500, NUM_LINES)));
+        source.setParallelism(1);
+        readAll(source, 0);
+        source.setParallelism(4);
+        readAll(source, 0);
+    }
+
+    @Test
+    public void testBgzf() throws IOException {
+        GzipFileSource source = createSource(bgzip(content(0, NUM_LINES), 1000));
+        source.setParallelism(1);
+        readAll(source, 0);
+        source.setParallelism(4);
+        readAll(source, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            source.setInflaterExecutor(executor);
+            readAll(source, 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBgzfBlocksInflatedInParallel() throws IOException {
+        byte[] data = content(0, NUM_LINES);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BgzfInputStream in = new BgzfInputStream(new ByteArrayInputStream(bgzip(data, 1000)), executor, 8);
+            assertThat(readFully(in), is(new String(data, "UTF-8")));
+            assertThat(in.getBlockCount(), is((long)(data.length + 999) / 1000 + 1));
+            in.close();
+
+            // A plain gzip member following the BGZF blocks is inflated sequentially
+            byte[] trailing = content(NUM_LINES, NUM_LINES + 10);
+            ByteArrayOutputStream mixed = new ByteArrayOutputStream();
+            mixed.write(bgzip(data, 1000));
+            mixed.write(gzip(trailing));
+            in = new BgzfInputStream(new ByteArrayInputStream(mixed.toByteArray()), executor, 8);
+            assertThat(readFully(in), is(new String(data, "UTF-8") + new String(trailing, "UTF-8")));
+            in.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSkipLinesAndSeek() throws IOException {
+        GzipFileSource source = createSource(bgzip(content(0, NUM_LINES), 1000));
+        source.setSkipLines(1);
+        source.initialise(null);
+        SplittingReader reader = source.getReader();
+        assertThat(reader.readLine(), is(line(1)));
+        for(int i = 2; i < 1000; i++) {
+            reader.readLine();
+        }
+        long position = reader.getPosition();
+        source.close();
+
+        source.initialise(null);
+        source.seek(null, position);
+        assertThat(source.getReader().readLine(), is(line(1000)));
+        source.close();
+    }
+
+    @Test
+    public void testByteSplitting() throws IOException {
+        GzipFileSource source = createSource(bgzip(content(0, NUM_LINES), 1000));
+        source.setByteSplitting(true);
+        source.setSkipLines(1);
+        source.initialise(null);
+        SplittingReader reader = source.getReader();
+        assertThat(reader, is(instanceOf(ByteSplittingReader.class)));
+        for(int i = 1; i < 1000; i++) {
+            assertThat(reader.readLine(), is(line(i)));
+        }
+        long position = reader.getPosition();
+        source.close();
+
+        source.initialise(null);
+        source.seek(null, position);
+        assertThat(source.getReader().readLine(), is(line(1000)));
+        source.close();
+    }
+
+    @Test
+    public void testIssuedReaderIsClosed() throws IOException {
+        GzipFileSource source = createSource(gzip(content(0, NUM_LINES)));
+        source.initialise(null);
+        SplittingReader reader = source.getNextReader();
+        assertThat(source.getNextReader(), is(nullValue()));
+        source.discard(reader);
+        assertClosed(reader);
+        source.close();
+
+        // Readers which are never discarded are closed with the source
+        source.initialise(null);
+        reader = source.getNextReader();
+        source.close();
+        assertClosed(reader);
+    }
+
+    private static void assertClosed(SplittingReader reader) {
+        try {
+            reader.ready();
+            fail("Reader " + reader + " has not been closed");
+        } catch(IOException ex) {
+            // Expected
+        }
+    }
+
+    private void readAll(GzipFileSource source, int firstLine) throws IOException {
+        source.initialise(null);
+        assertThat(source.useMultipleThreadsPerReader(), is(true));
+        SplittingReader reader = source.getReader();
+        for(int i = firstLine; i < NUM_LINES; i++) {
+            assertThat(reader.readLine(), is(line(i)));
+        }
+        assertThat(reader.readLine(), is(nullValue()));
+        assertThat(source.getReader(), is(nullValue()));
+        source.close();
+    }
+
+    private static String readFully(BgzfInputStream in) throws IOException {
+        InputStreamReader reader = new InputStreamReader(in, "UTF-8");
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[1024];
+        int read;
+        while((read = reader.read(buffer)) >= 0) {
+            builder.append(buffer, 0, read);
+        }
+        return builder.toString();
+    }
+
+}
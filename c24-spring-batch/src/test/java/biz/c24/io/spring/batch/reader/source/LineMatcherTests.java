@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Validate that LineMatchers select the right strategy and agree with java.util.regex
+ *
+ * @author Andrew Elmore
+ *
+ */
+public class LineMatcherTests {
+
+    private static final String[] LINES = {
+        "",
+        "\n",
+        "<receipt receiptId=\"e16dea4b\" customerId=\"37189\">\n",
+        "\t<item productId=\"258\" quantity=\"8\" price=\"46.96\"/>\n",
+        "</receipt>\n",
+        "<receipt",
+        "<receipt \r\n",
+        "{1:F01BANKBEBBAXXX2222123456}{2:I100BANKDEFFXXXXU3003}\r\n",
+        "{1:",
+        "x{1:",
+        "abc",
+        "abc\n",
+        "ab",
+        "xabcx",
+        "aaabaaab",
+        "a.b",
+        "a*b",
+        "été <receipt āȁ"
+    };
+
+    private static final String[] PATTERNS = {
+        ".*",
+        "",
+        ".*<receipt .*",
+        "<receipt .*",
+        "^<receipt .*",
+        ".*</receipt>.*",
+        ".*/>\n",
+        ".*/>\n$",
+        "\\{1:.*",
+        ".*\\{1:.*",
+        "abc",
+        "^abc$",
+        ".*b.*",
+        ".*ab.*",
+        ".*aaab.*",
+        ".*\\Qa.b\\E.*",
+        "a\\.b",
+        "a\\*b",
+        ".*abc",
+        ".*āȁ",
+        ".*é <rec.*",
+        // Fall back to regex
+        ".*<(receipt|item) .*",
+        "\\s*<receipt .*",
+        "[a-z]*",
+        "a.*b",
+        ".*a+.*",
+        "a.b",
+        "a\\.*"
+    };
+
+    @Test
+    public void testStrategySelection() {
+        assertThat(strategy(".*"), is("AnyLineMatcher"));
+        assertThat(strategy(".*<receipt .*"), is("BoyerMooreLineMatcher"));
+        assertThat(strategy(".*ab.*"), is("ContainsLineMatcher"));
+        assertThat(strategy("<receipt .*"), is("PrefixLineMatcher"));
+        assertThat(strategy("\\{1:.*"), is("PrefixLineMatcher"));
+        assertThat(strategy(".*/>\n"), is("SuffixLineMatcher"));
+        assertThat(strategy("^abc$"), is("EqualsLineMatcher"));
+        assertThat(strategy(".*\\Qa.b\\E.*"), is("ContainsLineMatcher"));
+
+        assertThat(strategy(".*<(receipt|item) .*"), is("RegexLineMatcher"));
+        assertThat(strategy("a\\.*"), is("RegexLineMatcher"));
+        assertThat(strategy("\\s*<receipt .*"), is("RegexLineMatcher"));
+
+        // Without DOTALL .* doesn't match line terminators so leave it to the regex engine
+        assertThat(LineMatcher.compile(Pattern.compile(".*<receipt .*")).getClass().getSimpleName(), is("RegexLineMatcher"));
+    }
+
+    @Test
+    public void testNewMatcher() {
+        LineMatcher literal = LineMatcher.compile(Pattern.compile(".*<receipt .*", Pattern.DOTALL));
+        assertThat(literal.newMatcher(), is(sameInstance(literal)));
+
+        LineMatcher regex = LineMatcher.compile(Pattern.compile("[a-z]*", Pattern.DOTALL));
+        assertThat(regex.newMatcher(), is(not(sameInstance(regex))));
+        assertThat(regex.newMatcher().getPattern(), is(sameInstance(regex.getPattern())));
+    }
+
+    @Test
+    public void testMatchesString() {
+        for(String regex : PATTERNS) {
+            Pattern pattern = Pattern.compile(regex, Pattern.DOTALL);
+            LineMatcher matcher = LineMatcher.compile(pattern);
+            for(String line : LINES) {
+                assertThat("Pattern " + regex + " on line " + line, matcher.matches(line), is(pattern.matcher(line).matches()));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesCharArraySequence() {
+        // Embed each line in a larger array to ensure we respect the view's bounds
+        CharArraySequence seq = new CharArraySequence(new char[0]);
+        for(String regex : PATTERNS) {
+            Pattern pattern = Pattern.compile(regex, Pattern.DOTALL);
+            LineMatcher matcher = LineMatcher.compile(pattern);
+            for(String line : LINES) {
+                char[] array = ("<receipt abc" + line + "abc/>\n").toCharArray();
+                seq.set(array, 12, 12 + line.length());
+                assertThat("Pattern " + regex + " on line " + line, matcher.matches(seq), is(pattern.matcher(line).matches()));
+            }
+        }
+    }
+
+    private static String strategy(String regex) {
+        return LineMatcher.compile(Pattern.compile(regex, Pattern.DOTALL)).getClass().getSimpleName();
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Validate the functionally correct behaviour of the MappedSplittingReader
+ *
+ * @author Andrew Elmore
+ *
+ */
+public class MappedSplittingReaderTests {
+    
+    private File file = null;
+    
+    private MappedSplittingReader createReader(String contents, String encoding, int mappingSize) throws IOException {
+        file = File.createTempFile("MappedSplittingReaderTests", ".txt");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes(encoding));
+        } finally {
+            out.close();
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        return new MappedSplittingReader(raf.getChannel(), 0, raf.length(), encoding, mappingSize);
+    }
+    
+    @After
+    public void tearDown() {
+        if(file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLineSplit() throws IOException {
+        MappedSplittingReader reader = createReader("String 1\nString 2\r\nString 3\rString 4", "UTF-8", MappedSplittingReader.DEFAULT_MAPPING_SIZE);
+        
+        assertThat(reader.readLine(), is("String 1\n"));
+        assertThat(reader.readLine(), is("String 2\r\n"));
+        assertThat(reader.readLine(), is("String 3\r"));
+        assertThat(reader.readLine(), is("String 4"));
+        assertThat(reader.readLine(), is(nullValue()));
+        reader.close();
+    }
+    
+    @Test
+    public void testLineSplitAcrossMappings() throws IOException {
+        // Use a mapping size smaller than the lines so that every line straddles a remapping
+        MappedSplittingReader reader = createReader("String 1\nString 2\r\nString 3\rString 4", "UTF-8", 3);
+        
+        assertThat(reader.readLine(), is("String 1\n"));
+        assertThat(reader.readLine(), is("String 2\r\n"));
+        assertThat(reader.readLine(), is("String 3\r"));
+        assertThat(reader.readLine(), is("String 4"));
+        assertThat(reader.readLine(), is(nullValue()));
+        reader.close();
+    }
+    
+    @Test 
+    public void testLinePushback() throws IOException {
+        MappedSplittingReader reader = createReader("String 1\nString 2\r\n", "UTF-8", 4);
+        
+        String line = reader.readLine();
+        assertThat(line, is("String 1\n"));
+        assertThat(reader.getPosition(), is(9L));
+        reader.pushback(line);
+        assertThat(reader.getPosition(), is(0L));
+        assertThat(reader.readLine(), is("String 1\n"));
+        assertThat(reader.readLine(), is("String 2\r\n"));
+        assertThat(reader.getPosition(), is(19L));
+        assertThat(reader.readLine(), is(nullValue()));
+        reader.close();
+    }    
+    
+    @Test 
+    public void testSequencePushback() throws IOException {
+        MappedSplittingReader reader = createReader("String 1\nSt\u00fcring 2\r\n", "UTF-8", 4);
+        
+        CharSequence line = reader.readLineSequence();
+        assertThat(line.toString(), is("String 1\n"));
+        reader.pushback(line);
+        assertThat(reader.getPosition(), is(0L));
+        assertThat(reader.readLineSequence().toString(), is("String 1\n"));
+        assertThat(reader.readUntilSequence('r').toString(), is("St\u00fc"));
+        assertThat(reader.readUntilInclusiveSequence('\r').toString(), is("ring 2\r"));
+        assertThat(reader.readLineSequence().toString(), is("\n"));
+        assertThat(reader.readLineSequence(), is(nullValue()));
+        reader.close();
+    }    
+    
+    @Test
+    public void readUntil() throws IOException {
+        MappedSplittingReader reader = createReader("String 1\nString 2\r\nString 3\rString 4", "UTF-8", 5);
+        
+        assertThat(reader.readUntil('i'), is("Str"));
+        assertThat(reader.readUntil('i'), is("ing 1\nStr"));
+        assertThat(reader.readUntil('i'), is("ing 2\r\nStr"));
+        assertThat(reader.readUntil('i'), is("ing 3\rStr"));
+        assertThat(reader.readUntil('i'), is("ing 4"));
+        assertThat(reader.readUntil('i'), is(nullValue()));        
+        reader.close();
+    }
+    
+    @Test
+    public void readUntilInclusive() throws IOException {
+        MappedSplittingReader reader = createReader("String 1\nString 2\r\nString 3\rString 4", "UTF-8", 5);
+        
+        assertThat(reader.readUntilInclusive('i'), is("Stri"));
+        assertThat(reader.readUntilInclusive('i'), is("ng 1\nStri"));
+        assertThat(reader.readUntilInclusive('i'), is("ng 2\r\nStri"));
+        assertThat(reader.readUntilInclusive('i'), is("ng 3\rStri"));
+        assertThat(reader.readUntilInclusive('i'), is("ng 4"));
+        assertThat(reader.readUntilInclusive('i'), is(nullValue()));        
+        reader.close();
+    }
+    
+    @Test
+    public void multiByteCharacters() throws IOException {
+        String testString = "Caf\u00e9 1\nSt\u00fc\u00dfe \u20ac2\n\ud83d\ude00 3";
+        
+        MappedSplittingReader reader = createReader(testString, "UTF-8", 2);
+        assertThat(reader.readLine(), is("Caf\u00e9 1\n"));
+        assertThat(reader.readLine(), is("St\u00fc\u00dfe \u20ac2\n"));
+        assertThat(reader.readLine(), is("\ud83d\ude00 3"));
+        assertThat(reader.readLine(), is(nullValue()));
+        reader.close();
+        tearDown();
+        
+        // Now consume it as a plain Reader, one character at a time
+        reader = createReader(testString, "UTF-8", 2);
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[1];
+        int read;
+        while((read = reader.read(buffer, 0, 1)) > 0) {
+            builder.append(buffer, 0, read);
+        }
+        assertThat(builder.toString(), is(testString));
+        reader.close();
+    }
+    
+    @Test
+    public void readAfterPartialSplit() throws IOException {
+        MappedSplittingReader reader = createReader("String 1\nString 2\r\nString 3", "UTF-8", 7);
+        
+        assertThat(reader.readLine(), is("String 1\n"));
+        char[] buffer = new char[100];
+        int read = reader.read(buffer, 0, buffer.length);
+        assertThat(new String(buffer, 0, read), is("String 2\r\nString 3"));
+        assertThat(reader.read(buffer, 0, buffer.length), is(-1));
+        reader.close();
+    }
+    
+    @Test
+    public void byteRange() throws IOException {
+        MappedSplittingReader reader = createReader("String 1\nString 2\r\nString 3", "UTF-8", 1024);
+        reader.close();
+        
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        reader = new MappedSplittingReader(raf.getChannel(), 9, 19, "UTF-8", 1024);
+        assertThat(reader.readLine(), is("String 2\r\n"));
+        assertThat(reader.readLine(), is(nullValue()));
+        assertThat(reader.ready(), is(false));
+        reader.close();
+    }
+    
+    @Test
+    public void positionAndSeek() throws IOException {
+        MappedSplittingReader reader = createReader("String 1\nString 2\r\nString 3", "UTF-8", 4);
+        assertThat(reader.getPosition(), is(0L));
+        CharSequence line = reader.readLineSequence();
+        assertThat(reader.getPosition(), is(9L));
+        reader.pushback(line);
+        assertThat(reader.getPosition(), is(0L));
+        
+        // Unlike SplittingReader we can seek in either direction
+        reader.seek(19);
+        assertThat(reader.readLine(), is("String 3"));
+        assertThat(reader.getPosition(), is(27L));
+        reader.seek(9);
+        assertThat(reader.readLine(), is("String 2\r\n"));
+        reader.seek(27);
+        assertThat(reader.readLine(), is(nullValue()));
+        reader.close();
+    }
+    
+    @Test(expected=IOException.class)
+    public void seekBeyondEnd() throws IOException {
+        MappedSplittingReader reader = createReader("String 1", "UTF-8", 1024);
+        try {
+            reader.seek(9);
+        } finally {
+            reader.close();
+        }
+    }
+    
+    @Test(expected=IOException.class)
+    public void readAfterClose() throws IOException {
+        MappedSplittingReader reader = createReader("String 1", "UTF-8", 1024);
+        reader.close();
+        reader.read(new char[10], 0, 10);
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void nonAsciiCompatibleEncoding() throws IOException {
+        createReader("String 1", "UTF-16", 1024);
+    }
+}
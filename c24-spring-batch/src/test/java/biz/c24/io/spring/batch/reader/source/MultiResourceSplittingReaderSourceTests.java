@@ -0,0 +1,251 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Validate the MultiResourceSplittingReaderSource, with and without opening files ahead of time
+ *
+ * @author Andrew Elmore
+ *
+ */
+public class MultiResourceSplittingReaderSourceTests {
+
+    private File dir = null;
+
+    private File[] files = new File[0];
+
+    /**
+     * Creates numFiles files, each containing linesPerFile lines, whose names sort in the order they're created
+     */
+    private MultiResourceSplittingReaderSource createSource(int numFiles, int linesPerFile) throws IOException {
+        dir = File.createTempFile("MultiResourceSplittingReaderSourceTests", "");
+        dir.delete();
+        dir.mkdir();
+        files = new File[numFiles];
+        Resource[] resources = new Resource[numFiles];
+        for(int i = 0; i < numFiles; i++) {
+            files[i] = new File(dir, String.format("file-%03d.txt", i));
+            FileOutputStream out = new FileOutputStream(files[i]);
+            try {
+                for(int j = 0; j < linesPerFile; j++) {
+                    out.write(line(i, j).getBytes("UTF-8"));
+                }
+            } finally {
+                out.close();
+            }
+            resources[i] = new FileSystemResource(files[i]);
+        }
+        MultiResourceSplittingReaderSource source = new MultiResourceSplittingReaderSource();
+        source.setResources(resources);
+        return source;
+    }
+
+    private static String line(int file, int line) {
+        return "File " + file + " line " + line + "\n";
+    }
+
+    @After
+    public void tearDown() {
+        for(File file : files) {
+            file.delete();
+        }
+        if(dir != null) {
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testReaderPerFile() throws IOException {
+        MultiResourceSplittingReaderSource source = createSource(10, 5);
+        source.initialise(null);
+        assertThat(source.useMultipleThreadsPerReader(), is(false));
+        readAll(source, 10, 5, 0);
+        source.close();
+
+        // Can be reused once closed
+        source.initialise(null);
+        readAll(source, 10, 5, 0);
+        source.close();
+    }
+
+    @Test
+    public void testWithoutOpenAhead() throws IOException {
+        MultiResourceSplittingReaderSource source = createSource(5, 5);
+        source.setOpenAhead(0);
+        source.initialise(null);
+        readAll(source, 5, 5, 0);
+        source.close();
+    }
+
+    @Test
+    public void testOpenOnSuppliedExecutor() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            MultiResourceSplittingReaderSource source = createSource(10, 5);
+            source.setOpenAhead(4);
+            source.setOpenExecutor(executor);
+            source.setSkipLines(2);
+            source.initialise(null);
+            readAll(source, 10, 5, 2);
+            source.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSingleFile() throws IOException {
+        MultiResourceSplittingReaderSource source = createSource(1, 5);
+        source.initialise(null);
+        assertThat(source.useMultipleThreadsPerReader(), is(true));
+        SplittingReader reader = source.getReader();
+        for(int j = 0; j < 5; j++) {
+            assertThat(reader.readLine(), is(line(0, j)));
+        }
+        assertThat(source.getReader(), is(nullValue()));
+        source.close();
+    }
+
+    @Test
+    public void testSharedReader() throws IOException {
+        MultiResourceSplittingReaderSource source = createSource(5, 3);
+        source.initialise(null);
+        for(int i = 0; i < 5; i++) {
+            for(int j = 0; j < 3; j++) {
+                SplittingReader reader = source.getReader();
+                assertThat(reader.readLine(), is(line(i, j)));
+            }
+        }
+        assertThat(source.getReader(), is(nullValue()));
+        source.close();
+    }
+
+    @Test
+    public void testSeek() throws IOException {
+        MultiResourceSplittingReaderSource source = createSource(10, 10);
+        source.initialise(null);
+        SplittingReader reader = source.getNextReader();
+        reader.readLine();
+        reader.readLine();
+        long position = reader.getPosition();
+        String readerId = source.getReaderId(reader);
+        assertThat(readerId, is(new FileSystemResource(files[0]).getDescription()));
+        source.close();
+
+        source.initialise(null);
+        source.seek(new FileSystemResource(files[6]).getDescription(), position);
+        reader = source.getNextReader();
+        assertThat(source.getReaderId(reader), is(new FileSystemResource(files[6]).getDescription()));
+        assertThat(reader.readLine(), is(line(6, 2)));
+        assertThat(source.getNextReader().readLine(), is(line(7, 0)));
+        source.close();
+    }
+
+    @Test
+    public void testFilesReadInFilenameOrder() throws IOException {
+        MultiResourceSplittingReaderSource source = createSource(5, 3);
+        Resource[] resources = source.getResources();
+        source.setResources(new Resource[] {resources[3], resources[0], resources[4], resources[2], resources[1]});
+        source.initialise(null);
+        readAll(source, 5, 3, 0);
+        source.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testNextFileIsOpenedOutsideLock() throws Exception {
+        final MultiResourceSplittingReaderSource source = createSource(3, 3);
+        Resource[] resources = source.getResources();
+        final CountDownLatch opening = new CountDownLatch(1);
+        resources[1] = new FileSystemResource(files[1]) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                try {
+                    opening.await();
+                } catch(InterruptedException ex) {
+                    throw new InterruptedIOException();
+                }
+                return super.getInputStream();
+            }
+        };
+        source.setOpenAhead(0);
+        source.initialise(null);
+        SplittingReader reader = source.getNextReader();
+        assertThat(reader.readLine(), is(line(0, 0)));
+
+        final AtomicReference<SplittingReader> next = new AtomicReference<SplittingReader>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                next.set(source.getNextReader());
+            }
+        };
+        thread.start();
+        while(thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+
+        // While file 1 is being opened, other callers can still use the source
+        source.discard(reader);
+        opening.countDown();
+        thread.join();
+        assertThat(next.get().readLine(), is(line(1, 0)));
+        source.close();
+    }
+
+    @Test(expected=IOException.class)
+    public void testSeekToMissingFile() throws IOException {
+        MultiResourceSplittingReaderSource source = createSource(3, 3);
+        source.initialise(null);
+        try {
+            source.seek("missing.txt", 0);
+        } finally {
+            source.close();
+        }
+    }
+
+    private void readAll(MultiResourceSplittingReaderSource source, int numFiles, int linesPerFile, int skipLines) throws IOException {
+        for(int i = 0; i < numFiles; i++) {
+            SplittingReader reader = source.getNextReader();
+            assertThat(reader, is(notNullValue()));
+            assertThat(source.getReaderId(reader), is(new FileSystemResource(files[i]).getDescription()));
+            for(int j = skipLines; j < linesPerFile; j++) {
+                assertThat(reader.readLine(), is(line(i, j)));
+            }
+            assertThat(reader.readLine(), is(nullValue()));
+            assertThat(reader.ready(), is(false));
+            reader.close();
+        }
+        assertThat(source.getNextReader(), is(nullValue()));
+    }
+
+}
@@ -91,6 +91,38 @@ public class SplittingReaderTests {
         assertThat(reader.readUntil('i'), is(nullValue()));        
     }
     
+    @Test
+    public void testReadUntilMatchPositions() throws IOException {
+        // Delimiters at every offset within the chars compared together, and either side of the buffer boundary
+        for(int gap = 0; gap < 10; gap++) {
+            StringBuilder builder = new StringBuilder();
+            while(builder.length() < 20050) {
+                builder.append('<');
+                for(int i = 0; i < gap; i++) {
+                    builder.append('a');
+                }
+            }
+            String testString = builder.append('<').toString();
+            
+            SplittingReader reader = new SplittingReader(new StringReader(testString));
+            StringBuilder exclusive = new StringBuilder();
+            String part;
+            while((part = reader.readUntil('<')) != null) {
+                assertThat(part.lastIndexOf('<'), is(0));
+                exclusive.append(part);
+            }
+            assertThat(exclusive.toString(), is(testString));
+            
+            reader = new SplittingReader(new StringReader(testString));
+            StringBuilder inclusive = new StringBuilder();
+            while((part = reader.readUntilInclusive('<')) != null) {
+                assertThat(part.indexOf('<'), is(part.length() - 1));
+                inclusive.append(part);
+            }
+            assertThat(inclusive.toString(), is(testString));
+        }
+    }
+    
     @Test
     public void testArrayRead() throws IOException {
         String testString = "String 1\nString 2\r\nString 3\rString 4";
@@ -147,6 +179,146 @@ public class SplittingReaderTests {
     }
  
 
+    @Test
+    public void testSequenceLineSplit() throws IOException {
+        String testString = "String 1\nString 2\r\nString 3\rString 4";
+        SplittingReader reader = new SplittingReader(new StringReader(testString), false);
+        
+        assertThat(reader.readLineSequence().toString(), is("String 1\n"));
+        assertThat(reader.readLineSequence().toString(), is("String 2\r\n"));
+        assertThat(reader.readLineSequence().toString(), is("String 3\r"));
+        assertThat(reader.readLineSequence().toString(), is("String 4"));
+        assertThat(reader.readLineSequence(), is(nullValue()));
+    }
+    
+    @Test
+    public void testSequencePushback() throws IOException {
+        String testString = "String 1\nString 2\r\n";
+        SplittingReader reader = new SplittingReader(new StringReader(testString));
+        
+        CharSequence line = reader.readLineSequence();
+        assertThat(line.toString(), is("String 1\n"));
+        reader.pushback(line);
+        assertThat(reader.readLineSequence().toString(), is("String 1\n"));
+        assertThat(reader.readUntilInclusiveSequence('\r').toString(), is("String 2\r"));
+        assertThat(reader.readUntilSequence('i').toString(), is("\n"));
+        assertThat(reader.readLineSequence(), is(nullValue()));
+    }
+    
+    @Test
+    public void testLongLines() throws IOException {
+        // Lines which span several refills of the internal buffer
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 25000; i++) {
+            builder.append((char)('a' + i % 26));
+        }
+        String longLine = builder.toString();
+        String testString = "Short\n" + longLine + "\n" + longLine + "\r\nEnd";
+        
+        SplittingReader reader = new SplittingReader(new StringReader(testString));
+        assertThat(reader.readLineSequence().toString(), is("Short\n"));
+        CharSequence line = reader.readLineSequence();
+        assertThat(line.toString(), is(longLine + "\n"));
+        // Can't rewind a line which spans buffers but we can still push it back
+        reader.pushback(line);
+        assertThat(reader.readLine(), is(longLine + "\n"));
+        assertThat(reader.readLine(), is(longLine + "\r\n"));
+        assertThat(reader.readLine(), is("End"));
+        assertThat(reader.readLine(), is(nullValue()));
+        
+        reader = new SplittingReader(new StringReader(testString));
+        assertThat(reader.readUntil('\r'), is("Short\n" + longLine + "\n" + longLine));
+        assertThat(reader.readUntilInclusive('d'), is("\r\nEnd"));
+        assertThat(reader.readUntilInclusive('d'), is(nullValue()));
+    }
+    
+    @Test
+    public void testTerminatorAtBufferBoundary() throws IOException {
+        // The internal buffer holds 10000 chars; put a \r in its last slot
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 9999; i++) {
+            builder.append('a');
+        }
+        String line = builder.toString();
+        
+        for(boolean consistent : new boolean[] {false, true}) {
+            SplittingReader reader = new SplittingReader(new StringReader(line + "\r\nNext\r\n"), consistent);
+            assertThat(reader.readLine(), is(line + "\r\n"));
+            assertThat(reader.readLine(), is("Next\r\n"));
+            assertThat(reader.readLine(), is(nullValue()));
+            
+            reader = new SplittingReader(new StringReader(line + "\rNext\rLast"), consistent);
+            assertThat(reader.readLine(), is(line + "\r"));
+            assertThat(reader.readLine(), is("Next\r"));
+            assertThat(reader.readLine(), is("Last"));
+            assertThat(reader.readLine(), is(nullValue()));
+            
+            reader = new SplittingReader(new StringReader(line + "\r"), consistent);
+            assertThat(reader.readLine(), is(line + "\r"));
+            assertThat(reader.readLine(), is(nullValue()));
+        }
+    }
+    
+    @Test
+    public void testLowControlCharacters() throws IOException {
+        // Tabs and other characters below \r mustn't be mistaken for terminators
+        String testString = "a\tb\u000Bc\fd\n\u0000e\r\n";
+        SplittingReader reader = new SplittingReader(new StringReader(testString), false);
+        assertThat(reader.readLine(), is("a\tb\u000Bc\fd\n"));
+        assertThat(reader.readLine(), is("\u0000e\r\n"));
+        assertThat(reader.readLine(), is(nullValue()));
+    }
+    
+    @Test
+    public void testPositionAndSeek() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 25000; i++) {
+            builder.append((char)('a' + i % 26));
+        }
+        String longLine = builder.toString() + "\n";
+        String testString = "String 1\n" + longLine + longLine + "End";
+        
+        SplittingReader reader = new SplittingReader(new StringReader(testString));
+        assertThat(reader.getPosition(), is(0L));
+        CharSequence line = reader.readLineSequence();
+        assertThat(reader.getPosition(), is(9L));
+        reader.pushback(line);
+        assertThat(reader.getPosition(), is(0L));
+        reader.readLine();
+        reader.readLine();
+        long thirdLine = reader.getPosition();
+        assertThat(thirdLine, is(9L + longLine.length()));
+        reader.readLine();
+        reader.readLine();
+        assertThat(reader.getPosition(), is((long)testString.length()));
+        
+        // Skip straight to the third line of a new reader, crossing several buffer refills
+        reader = new SplittingReader(new StringReader(testString));
+        reader.pushback(reader.readLineSequence());
+        reader.seek(thirdLine);
+        assertThat(reader.getPosition(), is(thirdLine));
+        assertThat(reader.readLine(), is(longLine));
+        assertThat(reader.readLine(), is("End"));
+        
+        // Seeking to where we already are is a no-op
+        reader.seek(testString.length());
+        assertThat(reader.readLine(), is(nullValue()));
+    }
+    
+    @Test(expected=IOException.class)
+    public void testSeekBackwards() throws IOException {
+        SplittingReader reader = new SplittingReader(new StringReader("String 1\nString 2\n"));
+        reader.readLine();
+        reader.seek(0);
+    }
+    
+    @Test(expected=IOException.class)
+    public void testSeekBeyondEnd() throws IOException {
+        SplittingReader reader = new SplittingReader(new StringReader("String 1\nString 2\n"));
+        reader.seek(100);
+    }
+ 
+
     /* Simple tests used to validate performance of the SplittingReader */
 
     //@Test
@@ -191,6 +363,52 @@ public class SplittingReaderTests {
         
     }
     
+    //@Test
+    public void testPerfShortLines() throws IOException {
+        perfLineSplitting(100, 2000000);
+    }
+    
+    //@Test
+    public void testPerfLongLines() throws IOException {
+        perfLineSplitting(10 * 1024, 20000);
+    }
+    
+    /**
+     * Times splitting numLines lines of lineLength chars with the SplittingReader and, for comparison, BufferedReader
+     */
+    private void perfLineSplitting(int lineLength, int numLines) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for(int i = 0; i < lineLength - 1; i++) {
+            line.append((char)('a' + i % 26));
+        }
+        line.append('\n');
+        StringBuilder builder = new StringBuilder(lineLength * numLines);
+        for(int i = 0; i < numLines; i++) {
+            builder.append(line);
+        }
+        String data = builder.toString();
+        
+        for(int run = 0; run < 5; run++) {
+            long startTime = System.nanoTime();
+            SplittingReader reader = new SplittingReader(new StringReader(data), false);
+            int lines = 0;
+            while(reader.readLineSequence() != null) {
+                lines++;
+            }
+            long splittingTime = System.nanoTime() - startTime;
+            
+            startTime = System.nanoTime();
+            BufferedReader bufferedReader = new BufferedReader(new StringReader(data));
+            while(bufferedReader.readLine() != null) {
+                lines--;
+            }
+            long bufferedTime = System.nanoTime() - startTime;
+            
+            assertThat(lines, is(0));
+            System.out.println(lineLength + " char lines - Splitting: " + splittingTime / 1000000 + "ms, Buffered: " + bufferedTime / 1000000 + "ms");
+        }
+    }
+    
     
     
 
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.reader.source;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Validate the ZipFileSource, with and without prefetching
+ *
+ * @author Andrew Elmore
+ *
+ */
+public class ZipFileSourceTests {
+
+    private File file = null;
+
+    /**
+     * Creates a zip file with numEntries entries, each containing linesPerEntry lines
+     */
+    private ZipFileSource createSource(int numEntries, int linesPerEntry) throws IOException {
+        file = File.createTempFile("ZipFileSourceTests", ".zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for(int i = 0; i < numEntries; i++) {
+                out.putNextEntry(new ZipEntry("entry-" + i + ".txt"));
+                for(int j = 0; j < linesPerEntry; j++) {
+                    out.write(line(i, j).getBytes("UTF-8"));
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        ZipFileSource source = new ZipFileSource();
+        source.setResource(new FileSystemResource(file));
+        return source;
+    }
+
+    private static String line(int entry, int line) {
+        return "Entry " + entry + " line " + line + "\n";
+    }
+
+    @After
+    public void tearDown() {
+        if(file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testNoPrefetch() throws IOException {
+        ZipFileSource source = createSource(5, 10);
+        source.initialise(null);
+        assertThat(source.useMultipleThreadsPerReader(), is(true));
+        readAll(source, 5, 10);
+        source.close();
+    }
+
+    @Test
+    public void testPrefetch() throws IOException {
+        ZipFileSource source = createSource(30, 10);
+        source.setPrefetchDepth(4);
+        source.initialise(null);
+        assertThat(source.useMultipleThreadsPerReader(), is(false));
+        readAll(source, 30, 10);
+        source.close();
+
+        // Can be reused once closed
+        source.initialise(null);
+        readAll(source, 30, 10);
+        source.close();
+    }
+
+    @Test
+    public void testPrefetchOnSuppliedExecutor() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ZipFileSource source = createSource(10, 10);
+            source.setPrefetchDepth(3);
+            source.setPrefetchExecutor(executor);
+            source.initialise(null);
+            readAll(source, 10, 10);
+            source.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEntriesTooLargeToPrefetch() throws IOException {
+        // Each entry is about 200 bytes; those that don't fit are streamed instead
+        ZipFileSource source = createSource(10, 10);
+        source.setPrefetchDepth(2);
+        source.setMaxPrefetchSize(100);
+        source.initialise(null);
+        readAll(source, 10, 10);
+        source.close();
+    }
+
+    @Test
+    public void testSharedReaderWithPrefetch() throws IOException {
+        ZipFileSource source = createSource(5, 3);
+        source.setPrefetchDepth(2);
+        source.initialise(null);
+        for(int i = 0; i < 5; i++) {
+            for(int j = 0; j < 3; j++) {
+                SplittingReader reader = source.getReader();
+                assertThat(reader.readLine(), is(line(i, j)));
+            }
+        }
+        assertThat(source.getReader(), is(nullValue()));
+        source.close();
+    }
+
+    @Test
+    public void testSeekWithPrefetch() throws IOException {
+        ZipFileSource source = createSource(10, 10);
+        source.setPrefetchDepth(3);
+        source.initialise(null);
+        SplittingReader reader = source.getNextReader();
+        reader.readLine();
+        reader.readLine();
+        long position = reader.getPosition();
+        source.close();
+
+        source.initialise(null);
+        source.seek("entry-6.txt", position);
+        reader = source.getNextReader();
+        assertThat(source.getReaderId(reader), is("entry-6.txt"));
+        assertThat(reader.readLine(), is(line(6, 2)));
+        assertThat(source.getNextReader().readLine(), is(line(7, 0)));
+        source.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testNextEntryIsDecompressedOutsideLock() throws Exception {
+        DeferredExecutor executor = new DeferredExecutor(1);
+        final ZipFileSource source = createSource(5, 10);
+        source.setPrefetchDepth(2);
+        source.setPrefetchExecutor(executor);
+        source.initialise(null);
+
+        // Entry 0 was decompressed inline; handing it out mustn't wait for entry 1
+        SplittingReader reader = source.getNextReader();
+        assertThat(source.getReaderId(reader), is("entry-0.txt"));
+
+        final AtomicReference<SplittingReader> next = new AtomicReference<SplittingReader>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                next.set(source.getNextReader());
+            }
+        };
+        thread.start();
+        while(thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+
+        // While it waits for entry 1, other callers can still use the source
+        source.discard(reader);
+        executor.runDeferred();
+        thread.join();
+        assertThat(source.getReaderId(next.get()), is("entry-1.txt"));
+        source.close();
+    }
+
+    private void readAll(ZipFileSource source, int numEntries, int linesPerEntry) throws IOException {
+        for(int i = 0; i < numEntries; i++) {
+            SplittingReader reader = source.getNextReader();
+            assertThat(reader, is(notNullValue()));
+            assertThat(source.getReaderId(reader), is("entry-" + i + ".txt"));
+            for(int j = 0; j < linesPerEntry; j++) {
+                assertThat(reader.readLine(), is(line(i, j)));
+            }
+            assertThat(reader.readLine(), is(nullValue()));
+            reader.close();
+        }
+        assertThat(source.getNextReader(), is(nullValue()));
+    }
+
+    /**
+     * Runs the first few tasks it's given straight away and holds on to the rest until told to run them
+     */
+    private static class DeferredExecutor implements Executor {
+
+        private final List<Runnable> deferred = new ArrayList<Runnable>();
+        private int inline;
+
+        public DeferredExecutor(int inline) {
+            this.inline = inline;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            synchronized(this) {
+                if(inline <= 0) {
+                    deferred.add(task);
+                    return;
+                }
+                inline--;
+            }
+            task.run();
+        }
+
+        public void runDeferred() {
+            List<Runnable> tasks;
+            synchronized(this) {
+                tasks = new ArrayList<Runnable>(deferred);
+                deferred.clear();
+            }
+            for(Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.Test;
+
+/**
+ * @author Andrew Elmore
+ */
+public class BoundedRingBufferTests {
+    
+    @Test
+    public void testCapacity() {
+        assertThat(new BoundedRingBuffer<String>(1).getCapacity(), is(2));
+        assertThat(new BoundedRingBuffer<String>(5).getCapacity(), is(8));
+        assertThat(new BoundedRingBuffer<String>(1024).getCapacity(), is(1024));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new BoundedRingBuffer<String>(0);
+    }
+    
+    @Test
+    public void testOfferPoll() {
+        BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<Integer>(4);
+        assertThat(buffer.poll(), is(nullValue()));
+        
+        // Go round the ring several times
+        for(int lap = 0; lap < 3; lap++) {
+            for(int i = 0; i < 4; i++) {
+                assertThat(buffer.offer(i), is(true));
+            }
+            assertThat(buffer.offer(4), is(false));
+            assertThat(buffer.size(), is(4));
+            
+            for(int i = 0; i < 4; i++) {
+                assertThat(buffer.poll(), is(i));
+            }
+            assertThat(buffer.poll(), is(nullValue()));
+            assertThat(buffer.size(), is(0));
+        }
+    }
+    
+    @Test
+    public void testClose() throws InterruptedException {
+        BoundedRingBuffer<String> buffer = new BoundedRingBuffer<String>(4);
+        buffer.put("a");
+        buffer.put("b");
+        buffer.close();
+        
+        assertThat(buffer.isClosed(), is(true));
+        assertThat(buffer.put("c"), is(false));
+        
+        // Remaining entries can still be consumed
+        assertThat(buffer.take(), is("a"));
+        assertThat(buffer.take(), is("b"));
+        assertThat(buffer.take(), is(nullValue()));
+    }
+    
+    @Test
+    public void testStalls() throws InterruptedException {
+        final BoundedRingBuffer<String> buffer = new BoundedRingBuffer<String>(2);
+        buffer.put("a");
+        buffer.put("a");
+        
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    buffer.take();
+                } catch(InterruptedException ex) {
+                    // Let the test fail
+                }
+            }
+        };
+        consumer.start();
+        
+        // Will have to wait for the consumer
+        assertThat(buffer.put("b"), is(true));
+        consumer.join();
+        assertThat(buffer.getProducerStalls(), is(1L));
+        
+        assertThat(buffer.take(), is("a"));
+        assertThat(buffer.take(), is("b"));
+        
+        Thread closer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch(InterruptedException ex) {
+                    // Close regardless
+                }
+                buffer.close();
+            }
+        };
+        closer.start();
+        
+        // Will have to wait until the buffer is closed
+        assertThat(buffer.take(), is(nullValue()));
+        closer.join();
+        assertThat(buffer.getConsumerStalls(), is(1L));
+    }
+    
+    @Test
+    public void testMultipleProducersAndConsumers() throws InterruptedException {
+        final int producerCount = 4;
+        final int consumerCount = 4;
+        final int perProducer = 50000;
+        
+        final BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<Integer>(16);
+        final AtomicLongArray seen = new AtomicLongArray(producerCount * perProducer);
+        final AtomicLong consumed = new AtomicLong();
+        
+        Thread[] producers = new Thread[producerCount];
+        for(int p = 0; p < producerCount; p++) {
+            final int base = p * perProducer;
+            producers[p] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for(int i = 0; i < perProducer; i++) {
+                            buffer.put(base + i);
+                        }
+                    } catch(InterruptedException ex) {
+                        // Let the test fail
+                    }
+                }
+            };
+            producers[p].start();
+        }
+        
+        Thread[] consumers = new Thread[consumerCount];
+        for(int c = 0; c < consumerCount; c++) {
+            consumers[c] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Integer val;
+                        while((val = buffer.take()) != null) {
+                            seen.incrementAndGet(val);
+                            consumed.incrementAndGet();
+                        }
+                    } catch(InterruptedException ex) {
+                        // Let the test fail
+                    }
+                }
+            };
+            consumers[c].start();
+        }
+        
+        for(Thread producer : producers) {
+            producer.join(30000);
+        }
+        buffer.close();
+        for(Thread consumer : consumers) {
+            consumer.join(30000);
+        }
+        
+        // Every entry must have been consumed exactly once
+        assertThat(consumed.get(), is((long)producerCount * perProducer));
+        for(int i = 0; i < seen.length(); i++) {
+            assertThat(seen.get(i), is(1L));
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * @author Andrew Elmore
+ */
+public class CombiningChannelWriterTests {
+
+    /**
+     * Records everything written to it, writing at most maxPerWrite bytes per call to exercise partial writes
+     */
+    private static class RecordingChannel implements GatheringByteChannel {
+
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private final int maxPerWrite;
+        private boolean fail = false;
+
+        public RecordingChannel(int maxPerWrite) {
+            this.maxPerWrite = maxPerWrite;
+        }
+
+        public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            if(fail) {
+                throw new IOException("Disk full");
+            }
+            long written = 0;
+            for(int i = offset; i < offset + length && written < maxPerWrite; i++) {
+                while(srcs[i].hasRemaining() && written < maxPerWrite) {
+                    data.write(srcs[i].get());
+                    written++;
+                }
+            }
+            return written;
+        }
+
+        public long write(ByteBuffer[] srcs) throws IOException {
+            return write(srcs, 0, srcs.length);
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            return (int)write(new ByteBuffer[] {src});
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {
+        }
+
+        public synchronized String getData() {
+            return new String(data.toByteArray());
+        }
+    }
+
+    private static ByteBuffer[] buffers(String... data) {
+        ByteBuffer[] buffers = new ByteBuffer[data.length];
+        for(int i = 0; i < data.length; i++) {
+            buffers[i] = ByteBuffer.wrap(data[i].getBytes());
+        }
+        return buffers;
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        RecordingChannel channel = new RecordingChannel(3);
+        final AtomicInteger flushes = new AtomicInteger(0);
+        CombiningChannelWriter writer = new CombiningChannelWriter(channel, new Flushable() {
+            public void flush() {
+                flushes.incrementAndGet();
+            }
+        });
+
+        writer.write(buffers("abc", "", "defgh"));
+        writer.write(buffers("ij"));
+        assertThat(channel.getData(), is("abcdefghij"));
+        assertThat(flushes.get(), is(2));
+        assertThat(writer.getCombiningRatio(), is(1.0));
+    }
+
+    @Test
+    public void testConcurrentWritesAreContiguous() throws Exception {
+        final RecordingChannel channel = new RecordingChannel(7);
+        final CombiningChannelWriter writer = new CombiningChannelWriter(channel, null);
+        final int threads = 8;
+        final int writes = 500;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        List<Thread> writers = new ArrayList<Thread>();
+        for(int t = 0; t < threads; t++) {
+            final char id = (char)('A' + t);
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for(int i = 0; i < writes; i++) {
+                            // Each record is split over two buffers which must not be separated
+                            writer.write(buffers("<" + id + i, "/" + id + ">"));
+                        }
+                    } catch(Throwable ex) {
+                        synchronized(failures) {
+                            failures.add(ex);
+                        }
+                    }
+                }
+            };
+            thread.start();
+            writers.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : writers) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        String data = channel.getData();
+        int[] next = new int[threads];
+        int records = 0;
+        int pos = 0;
+        while(pos < data.length()) {
+            assertThat(data.charAt(pos), is('<'));
+            char id = data.charAt(pos + 1);
+            int end = data.indexOf('>', pos);
+            assertThat(data.substring(pos, end + 1), is("<" + id + next[id - 'A'] + "/" + id + ">"));
+            next[id - 'A']++;
+            records++;
+            pos = end + 1;
+        }
+        assertThat(records, is(threads * writes));
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        RecordingChannel channel = new RecordingChannel(100);
+        CombiningChannelWriter writer = new CombiningChannelWriter(channel, null);
+        channel.fail = true;
+        try {
+            writer.write(buffers("abc"));
+            fail("Write should have failed");
+        } catch(IOException ex) {
+            assertThat(ex.getCause().getMessage(), is("Disk full"));
+        }
+
+        // Later writes are unaffected once the channel recovers
+        channel.fail = false;
+        writer.write(buffers("def"));
+        assertThat(channel.getData(), is("def"));
+    }
+
+}
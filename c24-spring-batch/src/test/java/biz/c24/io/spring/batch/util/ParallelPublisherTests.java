@@ -0,0 +1,296 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.util;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * @author Andrew Elmore
+ */
+public class ParallelPublisherTests {
+
+    /**
+     * Publishes the numbers from 0 to count - 1, optionally delaying, skipping or failing some of them
+     */
+    private static class NumberPublisher extends ParallelPublisher<Integer, Integer> {
+        private final int count;
+        private int next = 0;
+        private final AtomicInteger split = new AtomicInteger(0);
+        private final AtomicInteger concurrent = new AtomicInteger(0);
+        private final AtomicInteger maxConcurrent = new AtomicInteger(0);
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private int skip = -1;
+        private int fail = -1;
+        private int slow = -1;
+
+        public NumberPublisher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        protected void open() {
+            next = 0;
+        }
+
+        @Override
+        protected Integer split() {
+            split.incrementAndGet();
+            return next < count? next++ : null;
+        }
+
+        @Override
+        protected Integer process(Integer item) throws Exception {
+            int current = concurrent.incrementAndGet();
+            while(true) {
+                int max = maxConcurrent.get();
+                if(current <= max || maxConcurrent.compareAndSet(max, current)) {
+                    break;
+                }
+            }
+            try {
+                if(item == slow) {
+                    Thread.sleep(200);
+                } else {
+                    Thread.sleep(1);
+                }
+                if(item == fail) {
+                    throw new IllegalStateException("Failed on " + item);
+                }
+                return item == skip? null : item;
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        @Override
+        protected void close() {
+            closed.countDown();
+        }
+    }
+
+    /**
+     * Records everything it receives, requesting initialRequest items on subscription
+     */
+    private static class RecordingSubscriber implements Subscriber<Integer> {
+        private final long initialRequest;
+        private final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+        private volatile Subscription subscription;
+        private volatile Throwable error;
+        private volatile boolean completed = false;
+        private final CountDownLatch terminated = new CountDownLatch(1);
+
+        public RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            if(initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            terminated.countDown();
+        }
+
+        public void await() throws InterruptedException {
+            assertTrue("Timed out waiting for the stream to terminate", terminated.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> range = new ArrayList<Integer>();
+        for(int i = 0; i < count; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    @Test
+    public void testOrdered() throws InterruptedException {
+        NumberPublisher publisher = new NumberPublisher(100);
+        publisher.setParallelism(4);
+        publisher.slow = 3;
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber);
+        subscriber.await();
+
+        assertThat(subscriber.completed, is(true));
+        assertThat(subscriber.error, is(nullValue()));
+        assertThat(subscriber.items, is(range(100)));
+        assertThat(publisher.maxConcurrent.get() > 1, is(true));
+        assertThat(publisher.maxConcurrent.get() <= 4, is(true));
+        assertThat(publisher.closed.await(10, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testUnordered() throws InterruptedException {
+        NumberPublisher publisher = new NumberPublisher(100);
+        publisher.setParallelism(4);
+        publisher.setOrdered(false);
+        publisher.slow = 3;
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber);
+        subscriber.await();
+
+        assertThat(subscriber.completed, is(true));
+        // The slow item doesn't hold up those behind it
+        assertThat(subscriber.items.indexOf(3) > 3, is(true));
+        List<Integer> sorted = new ArrayList<Integer>(subscriber.items);
+        Collections.sort(sorted);
+        assertThat(sorted, is(range(100)));
+    }
+
+    @Test
+    public void testDemand() throws InterruptedException {
+        NumberPublisher publisher = new NumberPublisher(100);
+        publisher.setParallelism(4);
+        RecordingSubscriber subscriber = new RecordingSubscriber(10);
+        publisher.subscribe(subscriber);
+
+        // Nothing is split ahead of demand
+        Thread.sleep(200);
+        assertThat(subscriber.items, is(range(10)));
+        assertThat(publisher.split.get(), is(10));
+        assertThat(subscriber.completed, is(false));
+
+        subscriber.subscription.request(95);
+        subscriber.await();
+        assertThat(subscriber.completed, is(true));
+        assertThat(subscriber.items, is(range(100)));
+    }
+
+    @Test
+    public void testSkip() throws InterruptedException {
+        NumberPublisher publisher = new NumberPublisher(10);
+        publisher.setParallelism(2);
+        publisher.skip = 4;
+        RecordingSubscriber subscriber = new RecordingSubscriber(9);
+        publisher.subscribe(subscriber);
+
+        // The skipped item doesn't use up any of the demand
+        Thread.sleep(200);
+        assertThat(subscriber.items, is(Arrays.asList(0, 1, 2, 3, 5, 6, 7, 8, 9)));
+        subscriber.subscription.request(1);
+        subscriber.await();
+        assertThat(subscriber.completed, is(true));
+    }
+
+    @Test
+    public void testError() throws InterruptedException {
+        NumberPublisher publisher = new NumberPublisher(100);
+        publisher.setParallelism(4);
+        publisher.fail = 20;
+        publisher.slow = 19;
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber);
+        subscriber.await();
+
+        // Everything before the failure is delivered first, even though it completes later
+        assertThat(subscriber.completed, is(false));
+        assertThat(subscriber.error, instanceOf(IllegalStateException.class));
+        assertThat(subscriber.items, is(range(20)));
+        assertThat(publisher.closed.await(10, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        NumberPublisher publisher = new NumberPublisher(100);
+        publisher.setParallelism(2);
+        RecordingSubscriber subscriber = new RecordingSubscriber(5);
+        publisher.subscribe(subscriber);
+        Thread.sleep(100);
+        subscriber.subscription.cancel();
+        assertThat(publisher.closed.await(10, TimeUnit.SECONDS), is(true));
+
+        // Further requests are ignored
+        subscriber.subscription.request(10);
+        Thread.sleep(100);
+        assertThat(subscriber.items, is(range(5)));
+        assertThat(subscriber.completed, is(false));
+        assertThat(subscriber.error, is(nullValue()));
+    }
+
+    @Test
+    public void testInvalidRequest() throws InterruptedException {
+        NumberPublisher publisher = new NumberPublisher(100);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+        subscriber.await();
+        assertThat(subscriber.error, instanceOf(IllegalArgumentException.class));
+    }
+
+    @Test
+    public void testOneSubscriberAtATime() throws InterruptedException {
+        NumberPublisher publisher = new NumberPublisher(10);
+        RecordingSubscriber first = new RecordingSubscriber(0);
+        publisher.subscribe(first);
+
+        RecordingSubscriber second = new RecordingSubscriber(0);
+        publisher.subscribe(second);
+        second.await();
+        assertThat(second.error, instanceOf(IllegalStateException.class));
+
+        // Once the first has finished, the publisher can be subscribed to again
+        first.subscription.request(Long.MAX_VALUE);
+        first.await();
+        assertThat(first.items, is(range(10)));
+        assertThat(publisher.closed.await(10, TimeUnit.SECONDS), is(true));
+
+        RecordingSubscriber third = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(third);
+        third.await();
+        assertThat(third.items, is(range(10)));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new NumberPublisher(1).setParallelism(0);
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * @author Andrew Elmore
+ */
+public class WeightBoundedQueueTests {
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new WeightBoundedQueue<String>(0);
+    }
+
+    @Test
+    public void testPutTake() throws InterruptedException {
+        WeightBoundedQueue<String> queue = new WeightBoundedQueue<String>(100);
+        assertThat(queue.put("a", 10), is(true));
+        assertThat(queue.put("b", 20), is(true));
+        assertThat(queue.size(), is(2));
+        assertThat(queue.getWeight(), is(30L));
+
+        assertThat(queue.take(), is("a"));
+        assertThat(queue.getWeight(), is(20L));
+        assertThat(queue.take(), is("b"));
+        assertThat(queue.getWeight(), is(0L));
+    }
+
+    @Test
+    public void testPoll() throws InterruptedException {
+        WeightBoundedQueue<String> queue = new WeightBoundedQueue<String>(100);
+        assertThat(queue.poll(), nullValue());
+        queue.put("a", 10);
+        assertThat(queue.poll(), is("a"));
+        assertThat(queue.getWeight(), is(0L));
+        assertThat(queue.poll(), nullValue());
+    }
+
+    @Test
+    public void testOversizedEntryAcceptedWhenEmpty()throws InterruptedException {
+        WeightBoundedQueue<String> queue = new WeightBoundedQueue<String>(100);
+        assertThat(queue.put("huge", 1000), is(true));
+        assertThat(queue.getWeight(), is(1000L));
+        assertThat(queue.take(), is("huge"));
+    }
+
+    @Test
+    public void testPutBlocksUntilRoom() throws InterruptedException {
+        final WeightBoundedQueue<String> queue = new WeightBoundedQueue<String>(100);
+        queue.put("a", 60);
+
+        final CountDownLatch added = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    queue.put("b", 60);
+                    added.countDown();
+                } catch(InterruptedException ex) {
+                    // Test will fail
+                }
+            }
+        });
+        producer.start();
+
+        assertThat(added.await(200, TimeUnit.MILLISECONDS), is(false));
+        assertThat(queue.take(), is("a"));
+        assertThat(added.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(queue.take(), is("b"));
+        assertThat(queue.getProducerStalls(), is(1L));
+        producer.join();
+    }
+
+    @Test
+    public void testCloseDrainsThenReturnsNull() throws InterruptedException {
+        WeightBoundedQueue<String> queue = new WeightBoundedQueue<String>(100);
+        queue.put("a", 10);
+        queue.close();
+
+        assertThat(queue.isClosed(), is(true));
+        assertThat(queue.put("b", 10), is(false));
+        assertThat(queue.take(), is("a"));
+        assertThat(queue.take(), is(nullValue()));
+    }
+
+    @Test
+    public void testCloseWakesWaitingThreads() throws InterruptedException {
+        final WeightBoundedQueue<String> queue = new WeightBoundedQueue<String>(100);
+        final AtomicBoolean taken = new AtomicBoolean(true);
+
+        Thread consumer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    taken.set(queue.take() != null);
+                } catch(InterruptedException ex) {
+                    // Test will fail
+                }
+            }
+        });
+        consumer.start();
+        Thread.sleep(100);
+        queue.close();
+        consumer.join(5000);
+        assertThat(consumer.isAlive(), is(false));
+        assertThat(taken.get(), is(false));
+    }
+
+    @Test
+    public void testClear() throws InterruptedException {
+        WeightBoundedQueue<String> queue = new WeightBoundedQueue<String>(100);
+        queue.put("a", 50);
+        queue.put("b", 50);
+        queue.clear();
+        assertThat(queue.size(), is(0));
+        assertThat(queue.getWeight(), is(0L));
+
+        queue.close();
+        assertThat(queue.take(), is(nullValue()));
+    }
+
+}
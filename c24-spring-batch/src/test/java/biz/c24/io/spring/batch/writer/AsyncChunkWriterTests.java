@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.batch.core.StepExecution;
+
+import biz.c24.io.spring.batch.writer.source.ByteWriterSource;
+import biz.c24.io.spring.batch.writer.source.WriterSource;
+
+/**
+ * @author Andrew Elmore
+ */
+public class AsyncChunkWriterTests {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Records what's written to it and how
+     */
+    private static class RecordingWriterSource implements ByteWriterSource {
+
+        private final StringWriter writer = new StringWriter() {
+            @Override
+            public void flush() {
+                flushes++;
+            }
+        };
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int flushes = 0;
+        private int byteWrites = 0;
+        private volatile boolean fail = false;
+
+        public void initialise(StepExecution stepExecution) {
+        }
+
+        public void close() {
+        }
+
+        public Writer getWriter() {
+            return writer;
+        }
+
+        public String getEncoding() {
+            return "UTF-8";
+        }
+
+        public synchronized void write(ByteBuffer[] buffers) throws IOException {
+            if(fail) {
+                throw new IOException("Disk full");
+            }
+            byteWrites++;
+            for(ByteBuffer buffer : buffers) {
+                byte[] data = new byte[buffer.remaining()];
+                buffer.get(data);
+                bytes.write(data);
+            }
+        }
+    }
+
+    @Test
+    public void testCharWrite() throws Exception {
+        RecordingWriterSource source = new RecordingWriterSource();
+        AsyncChunkWriter writer = new AsyncChunkWriter(source, null, 1024, null, null);
+        writer.start("test-output");
+
+        List<AsyncChunkWriter.Chunk> chunks = new ArrayList<AsyncChunkWriter.Chunk>();
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 100; i++) {
+            String chunk = "Chunk " + i + "\n";
+            chunks.add(writer.write(chunk));
+            expected.append(chunk);
+        }
+        for(AsyncChunkWriter.Chunk chunk : chunks) {
+            chunk.await();
+        }
+        writer.stop();
+
+        assertThat(source.writer.toString(), is(expected.toString()));
+        // Every write is followed by a flush, but several chunks may have been written at once
+        assertThat(source.flushes > 0 && source.flushes <= 100, is(true));
+        assertThat(writer.getQueuedBytes(), is(0L));
+    }
+
+    @Test
+    public void testByteWrite() throws Exception {
+        RecordingWriterSource source = new RecordingWriterSource();
+        AsyncChunkWriter writer = new AsyncChunkWriter(source, UTF8, 1024 * 1024, null, null);
+        writer.start("test-output");
+
+        List<AsyncChunkWriter.Chunk> chunks = new ArrayList<AsyncChunkWriter.Chunk>();
+        StringBuilder expected = new StringBuilder();
+        ByteBufferWriter buffer = writer.getSpareWriter();
+        for(int i = 0; i < 100; i++) {
+            String chunk = "Chunk " + i + "\n";
+            buffer.write(chunk);
+            chunks.add(writer.write(buffer));
+            expected.append(chunk);
+            // The ByteBufferWriter now belongs to the output thread
+            buffer = writer.getSpareWriter();
+        }
+        for(AsyncChunkWriter.Chunk chunk : chunks) {
+            chunk.await();
+        }
+        // Any writer we get now will have been reset
+        assertThat(writer.getSpareWriter().getCharCount(), is(0L));
+        writer.stop();
+
+        assertThat(new String(source.bytes.toByteArray(), "UTF-8"), is(expected.toString()));
+        assertThat(source.byteWrites > 0 && source.byteWrites <= 100, is(true));
+    }
+
+    @Test
+    public void testStopWritesQueuedChunks() throws Exception {
+        RecordingWriterSource source = new RecordingWriterSource();
+        AsyncChunkWriter writer = new AsyncChunkWriter(source, null, 1024, null, null);
+        writer.start("test-output");
+        AsyncChunkWriter.Chunk chunk = writer.write("Last chunk");
+        writer.stop();
+
+        chunk.await();
+        assertThat(source.writer.toString(), is("Last chunk"));
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testWriteAfterStop() throws Exception {
+        AsyncChunkWriter writer = new AsyncChunkWriter(new RecordingWriterSource(), null, 1024, null, null);
+        writer.start("test-output");
+        writer.stop();
+        writer.write("Too late");
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        RecordingWriterSource source = new RecordingWriterSource();
+        source.fail = true;
+        AsyncChunkWriter writer = new AsyncChunkWriter(source, UTF8, 1024, null, null);
+        writer.start("test-output");
+
+        ByteBufferWriter buffer = writer.getSpareWriter();
+        buffer.write("First");
+        AsyncChunkWriter.Chunk first = writer.write(buffer);
+        try {
+            first.await();
+            fail("Write should have failed");
+        } catch(IOException ex) {
+            assertThat(ex.getCause().getMessage(), is("Disk full"));
+        }
+
+        // The output is now incomplete, so later chunks fail even though the source has recovered
+        source.fail = false;
+        buffer = writer.getSpareWriter();
+        buffer.write("Second");
+        AsyncChunkWriter.Chunk second = writer.write(buffer);
+        try {
+            second.await();
+            fail("Write should have failed");
+        } catch(IOException ex) {
+            assertThat(ex.getCause().getMessage(), is("Disk full"));
+        }
+        writer.stop();
+        assertThat(source.bytes.size(), is(0));
+    }
+
+}
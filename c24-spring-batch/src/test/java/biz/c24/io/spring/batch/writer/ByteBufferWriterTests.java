@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * @author Andrew Elmore
+ */
+public class ByteBufferWriterTests {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static String decode(ByteBuffer buffer, String encoding) throws UnsupportedEncodingException {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, encoding);
+    }
+
+    @Test
+    public void testWriteAndReset() throws IOException {
+        ByteBufferWriter writer = new ByteBufferWriter(UTF8);
+        writer.write("Andy,Acheson\n");
+        writer.write("caf\u00e9".toCharArray());
+        assertThat(writer.getCharCount(), is(17L));
+        assertThat(decode(writer.getBytes(), "UTF-8"), is("Andy,Acheson\ncaf\u00e9"));
+
+        writer.reset();
+        assertThat(writer.getCharCount(), is(0L));
+        writer.write("Steven");
+        assertThat(decode(writer.getBytes(), "UTF-8"), is("Steven"));
+    }
+
+    @Test
+    public void testGrowth() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        ByteBufferWriter writer = new ByteBufferWriter(UTF8);
+        for(int i = 0; i < 10000; i++) {
+            String line = "Employee " + i + ",\u00a3" + i + "\n";
+            writer.write(line);
+            expected.append(line);
+        }
+        assertThat(decode(writer.getBytes(), "UTF-8"), is(expected.toString()));
+    }
+
+    @Test
+    public void testLongString() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 50000; i++) {
+            expected.append((char)('a' + i % 26));
+        }
+        ByteBufferWriter writer = new ByteBufferWriter(UTF8);
+        writer.write(expected.toString());
+        assertThat(decode(writer.getBytes(), "UTF-8"), is(expected.toString()));
+    }
+
+    @Test
+    public void testSurrogatePairSplitBetweenWrites() throws IOException {
+        String clef = "\ud834\udd1e";
+        ByteBufferWriter writer = new ByteBufferWriter(UTF8);
+        writer.write("a" + clef.charAt(0));
+        writer.write(clef.charAt(1) + "b");
+        assertThat(decode(writer.getBytes(), "UTF-8"), is("a" + clef + "b"));
+    }
+
+    @Test
+    public void testUnpairedSurrogateReplaced() throws IOException {
+        ByteBufferWriter writer = new ByteBufferWriter(UTF8);
+        writer.write("a\ud834");
+        assertThat(decode(writer.getBytes(), "UTF-8"), is("a?"));
+
+        writer.reset();
+        writer.write("\ud834");
+        writer.write("\ud834b");
+        assertThat(decode(writer.getBytes(), "UTF-8"), is("??b"));
+    }
+
+    @Test
+    public void testUnmappableReplaced() throws IOException {
+        ByteBufferWriter writer = new ByteBufferWriter(Charset.forName("US-ASCII"));
+        writer.write("caf\u00e9");
+        assertThat(decode(writer.getBytes(), "US-ASCII"), is("caf?"));
+    }
+
+}
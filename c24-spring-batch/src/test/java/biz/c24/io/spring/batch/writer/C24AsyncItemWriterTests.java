@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.junit.Test;
+import org.springframework.batch.item.ItemWriter;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test the C24AsyncItemWriter
+ * 
+ * @author Andrew Elmore
+ */
+public class C24AsyncItemWriterTests {
+	
+	/**
+	 * Collects whatever it is asked to write
+	 */
+	private static class CollectingItemWriter implements ItemWriter<Object> {
+		
+		private List<List<? extends Object>> chunks = new ArrayList<List<? extends Object>>();
+		
+		@Override
+		public void write(List<? extends Object> items) throws Exception {
+			chunks.add(items);
+		}
+	}
+	
+	/**
+	 * Creates a Future which completes, on another thread, after the supplied delay
+	 */
+	private static Future<Object> complete(final Object result, final Exception failure, long delay) {
+		final FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				if(failure != null) {
+					throw failure;
+				}
+				return result;
+			}
+		});
+		final long sleep = delay;
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(sleep);
+				} catch(InterruptedException ex) {
+					// Complete early
+				}
+				task.run();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+		return task;
+	}
+	
+	@Test
+	public void testWritesInOrder() throws Exception {
+		CollectingItemWriter delegate = new CollectingItemWriter();
+		C24AsyncItemWriter writer = new C24AsyncItemWriter(delegate);
+		
+		// The earlier items complete last
+		List<Future<Object>> items = new ArrayList<Future<Object>>();
+		items.add(complete("one", null, 200));
+		items.add(complete("two", null, 100));
+		items.add(complete(null, null, 0));
+		items.add(complete("three", null, 0));
+		writer.write(items);
+		
+		// The filtered item is dropped and the rest keep their order
+		assertThat(delegate.chunks.size(), is(1));
+		assertThat(delegate.chunks.get(0), is((Object)Arrays.asList("one", "two", "three")));
+	}
+	
+	@Test
+	public void testFailure() throws Exception {
+		CollectingItemWriter delegate = new CollectingItemWriter();
+		C24AsyncItemWriter writer = new C24AsyncItemWriter(delegate);
+		
+		IOException failure = new IOException("Failed to process item");
+		List<Future<Object>> items = new ArrayList<Future<Object>>();
+		items.add(complete("one", null, 0));
+		items.add(complete(null, failure, 50));
+		try {
+			writer.write(items);
+			fail("C24AsyncItemWriter failed to rethrow processing failure");
+		} catch(IOException ioEx) {
+			// The original exception should be rethrown
+			assertThat(ioEx, is(failure));
+		}
+		assertThat(delegate.chunks.size(), is(0));
+	}
+	
+	@Test
+	public void testAllFiltered() throws Exception {
+		CollectingItemWriter delegate = new CollectingItemWriter();
+		C24AsyncItemWriter writer = new C24AsyncItemWriter(delegate);
+		
+		List<Future<Object>> items = new ArrayList<Future<Object>>();
+		items.add(complete(null, null, 0));
+		writer.write(items);
+		
+		assertThat(delegate.chunks.size(), is(0));
+	}
+
+}
@@ -30,6 +30,8 @@ import org.junit.Test;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.StepExecution;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import biz.c24.io.api.presentation.TextualSink;
 import biz.c24.io.examples.models.basic.Employee;
@@ -96,6 +98,45 @@ public class C24ItemWriterTests {
 		}
 	}
 	
+	@Test
+	public void testAsyncFileWrite() throws Exception {
+	
+		// Get somewhere temporary to write out to    
+		File outputFile = File.createTempFile("ItemWriterTest-", ".csv");
+		outputFile.deleteOnExit();
+		String outputFileName = outputFile.getAbsolutePath();
+	
+		// Configure the ItemWriter
+		C24ItemWriter itemWriter = new C24ItemWriter();		
+		itemWriter.setSink(new TextualSink());
+		itemWriter.setWriterSource(new FileWriterSource());
+		itemWriter.setAsyncWrite(true);
+		itemWriter.setup(getStepExecution(outputFileName));
+		
+		// Write the employees out in a transaction; the chunk must be on disk before it commits
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			itemWriter.write(employees);
+			for(TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.beforeCommit(false);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		
+		// Check that we wrote out what was expected before closing the file
+		FileInputStream inputStream = new FileInputStream(outputFileName);
+		try {
+			compareCsv(inputStream, employees);
+		} finally {
+			if(inputStream != null) {
+				inputStream.close();
+			}
+		}
+		
+		itemWriter.cleanup();
+	}
+	
 	@Test
 	public void testZipFileWrite() throws Exception {
 
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012 C24 Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.batch.writer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.annotation.BeforeStep;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.validator.ValidationException;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.api.transform.Transform;
+import biz.c24.io.examples.models.basic.Email;
+import biz.c24.io.examples.models.basic.Employee;
+import biz.c24.io.examples.transforms.basic.EmployeeToEmailTransform;
+
+/**
+ * Test the C24TransformItemWriter
+ * 
+ * @author Andrew Elmore
+ */
+public class C24TransformItemWriterTests {
+	
+	/**
+	 * Collects whatever it is asked to write
+	 */
+	private static class CollectingItemWriter implements ItemWriter<Object> {
+		
+		private List<List<? extends Object>> chunks = new ArrayList<List<? extends Object>>();
+		private StepExecution stepExecution = null;
+		
+		@Override
+		public void write(List<? extends Object> items) throws Exception {
+			chunks.add(items);
+		}
+		
+		@BeforeStep
+		public void setup(StepExecution stepExecution) {
+			this.stepExecution = stepExecution;
+		}
+	}
+	
+	private static Employee createEmployee(String firstName, String lastName) {
+		Employee employee = new Employee();
+		employee.setFirstName(firstName);
+		employee.setLastName(lastName);
+		employee.setSalutation("Mr");
+		employee.setJobTitle("Compliance Officer");
+		return employee;
+	}
+	
+	@Test
+	public void testWholeChunkTransform() throws Exception {
+		// A transform which returns its input
+		Transform transform = mock(Transform.class);
+		when(transform.transform((Object[][])any())).thenAnswer(new Answer<Object[][]>() {
+			@Override
+			public Object[][] answer(InvocationOnMock invocation) throws Throwable {
+				Object[][] in = (Object[][])invocation.getArguments()[0];
+				return new Object[][]{in[0].clone()};
+			}
+		});
+		
+		CollectingItemWriter delegate = new CollectingItemWriter();
+		C24TransformItemWriter writer = new C24TransformItemWriter(transform, delegate);
+		
+		List<Employee> employees = Arrays.asList(createEmployee("Dave", "Taylor"), createEmployee("Andy", "Acheson"), 
+				createEmployee("Tony", "Blair"));
+		writer.write(employees);
+		
+		// The whole chunk should have gone through a single transform call...
+		verify(transform, times(1)).transform((Object[][])any());
+		// ...and on to our delegate in one go, in order
+		assertThat(delegate.chunks.size(), is(1));
+		assertThat(delegate.chunks.get(0), is((Object)employees));
+	}
+	
+	@Test
+	public void testMismatchedResults() throws Exception {
+		// A transform which aggregates its input
+		Transform transform = mock(Transform.class);
+		when(transform.transform((Object[][])any())).thenReturn(new Object[][]{{createEmployee("Dave", "Taylor")}});
+		
+		CollectingItemWriter delegate = new CollectingItemWriter();
+		C24TransformItemWriter writer = new C24TransformItemWriter(transform, delegate);
+		
+		try {
+			writer.write(Arrays.asList(createEmployee("Dave", "Taylor"), createEmployee("Andy", "Acheson")));
+			fail("C24TransformItemWriter failed to detect the transform doesn't produce one output per input");
+		} catch(IllegalStateException isEx) {
+			// Expected behaviour
+		}
+		assertThat(delegate.chunks.size(), is(0));
+	}
+	
+	@Test
+	public void testValidation() throws Exception {
+		CollectingItemWriter delegate = new CollectingItemWriter();
+		C24TransformItemWriter writer = new C24TransformItemWriter(new EmployeeToEmailTransform(), delegate);
+		writer.setValidation(true);
+		
+		writer.write(Arrays.asList(createEmployee("Dave", "Taylor")));
+		assertThat(delegate.chunks.get(0).get(0), instanceOf(Email.class));
+		
+		// Use of @ is invalid in an email address
+		List<ComplexDataObject> invalid = new ArrayList<ComplexDataObject>();
+		invalid.add(createEmployee("@ave", "T@ylor"));
+		try {
+			writer.write(invalid);
+			fail("C24TransformItemWriter failed to detect invalid CDO");
+		} catch(ValidationException vEx) {
+			// Expected behaviour
+		}
+		assertThat(delegate.chunks.size(), is(1));
+	}
+	
+	@Test
+	public void testStepListenerDelegation() {
+		CollectingItemWriter delegate = new CollectingItemWriter();
+		C24TransformItemWriter writer = new C24TransformItemWriter(new EmployeeToEmailTransform(), delegate);
+		
+		StepExecution stepExecution = mock(StepExecution.class);
+		writer.setup(stepExecution);
+		assertThat(delegate.stepExecution, is(stepExecution));
+		writer.cleanup(stepExecution);
+	}
+
+}
@@ -0,0 +1,113 @@
+package biz.c24.io.spring.batch.writer.source;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+
+
+public class GzipFileWriterSourceTests {
+
+    @Test
+    public void testWriteBgzf() throws IOException {
+        File outputFile = File.createTempFile("GzipWriterTest-", ".csv.gz");
+        outputFile.deleteOnExit();
+
+        GzipFileWriterSource source = new GzipFileWriterSource();
+        source.setResource(new FileSystemResource(outputFile.getAbsolutePath()));
+        source.setParallelism(4);
+        source.initialise(null);
+
+        // Enough to span several blocks, written both as chars and as bytes
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 20000; i++) {
+            String line = "Employee " + i + ",Acheson,Barman\n";
+            if(i % 2 == 0) {
+                source.getWriter().write(line);
+            } else {
+                source.write(new ByteBuffer[] {ByteBuffer.wrap(line.getBytes("UTF-8"))});
+            }
+            expected.append(line);
+        }
+        source.close();
+
+        byte[] compressed = readFile(outputFile);
+        // Starts with a BGZF header...
+        assertThat(compressed[3] & 0xFF, is(4));
+        assertThat((char)compressed[12], is('B'));
+        assertThat((char)compressed[13], is('C'));
+        // ...and ends with the BGZF EOF block
+        assertThat(compressed[compressed.length - 28] & 0xFF, is(0x1f));
+        assertThat(compressed[compressed.length - 10] & 0xFF, is(0x03));
+
+        assertThat(new String(gunzip(compressed), "UTF-8"), is(expected.toString()));
+    }
+
+    @Test
+    public void testLargeBlocks() throws IOException {
+        File outputFile = File.createTempFile("GzipWriterTest-", ".bin.gz");
+        outputFile.deleteOnExit();
+
+        GzipFileWriterSource source = new GzipFileWriterSource();
+        source.setResource(new FileSystemResource(outputFile.getAbsolutePath()));
+        source.setEncoding("ISO-8859-1");
+        source.setBlockSize(200000);
+        source.setLevel(Deflater.BEST_SPEED);
+        source.initialise(null);
+
+        // Incompressible data; the members are too big for BGZF but remain valid gzip
+        byte[] data = new byte[1000000];
+        new Random(42).nextBytes(data);
+        source.write(new ByteBuffer[] {ByteBuffer.wrap(data)});
+        source.close();
+
+        assertArrayEquals(data, gunzip(readFile(outputFile)));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        File outputFile = File.createTempFile("GzipWriterTest-", ".csv.gz");
+        outputFile.deleteOnExit();
+
+        GzipFileWriterSource source = new GzipFileWriterSource();
+        source.setResource(new FileSystemResource(outputFile.getAbsolutePath()));
+        source.initialise(null);
+        source.close();
+
+        assertThat(gunzip(readFile(outputFile)).length, is(0));
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        return readFully(new FileInputStream(file));
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        return readFully(new GZIPInputStream(new java.io.ByteArrayInputStream(compressed)));
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package biz.c24.io.spring.batch.writer.source;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+
+
+public class ParallelZipFileWriterSourceTests {
+
+    @Test
+    public void testWrite() throws IOException {
+        // Small blocks so that the entry spans many of them
+        testWrite(1000, Deflater.DEFAULT_COMPRESSION);
+        testWrite(ParallelZipFileWriterSource.DEFAULT_BLOCK_SIZE, Deflater.BEST_COMPRESSION);
+        testWrite(4096, Deflater.NO_COMPRESSION);
+    }
+
+    private void testWrite(int blockSize, int level) throws IOException {
+        File outputFile = File.createTempFile("ParallelZipWriterTest-", ".zip");
+        outputFile.deleteOnExit();
+
+        ParallelZipFileWriterSource source = new ParallelZipFileWriterSource();
+        source.setResource(new FileSystemResource(outputFile.getAbsolutePath()));
+        source.setBlockSize(blockSize);
+        source.setLevel(level);
+        source.setParallelism(3);
+        source.initialise(null);
+
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 20000; i++) {
+            String line = "Employee " + i + ",Blair,Professional Golfer\n";
+            if(i % 3 == 0) {
+                source.getWriter().write(line);
+            } else {
+                source.write(new ByteBuffer[] {ByteBuffer.wrap(line.getBytes("UTF-8"))});
+            }
+            expected.append(line);
+        }
+        source.close();
+        byte[] data = expected.toString().getBytes("UTF-8");
+
+        // Read it via the central directory...
+        ZipFile zipFile = new ZipFile(outputFile);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            ZipEntry entry = entries.nextElement();
+            assertFalse(entries.hasMoreElements());
+            // The leading path and the .zip have been removed
+            assertThat(entry.getName(), is(outputFile.getName().substring(0, outputFile.getName().length() - 4)));
+            assertThat(entry.getMethod(), is(ZipEntry.DEFLATED));
+            assertThat(entry.getSize(), is((long)data.length));
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            assertThat(entry.getCrc(), is(crc.getValue()));
+            assertArrayEquals(data, readFully(zipFile.getInputStream(entry)));
+        } finally {
+            zipFile.close();
+        }
+
+        // ...and by streaming it
+        ZipInputStream zipStream = new ZipInputStream(new FileInputStream(outputFile));
+        assertNotNull(zipStream.getNextEntry());
+        assertArrayEquals(data, readFully(zipStream));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        File outputFile = File.createTempFile("ParallelZipWriterTest-", ".zip");
+        outputFile.deleteOnExit();
+
+        ParallelZipFileWriterSource source = new ParallelZipFileWriterSource();
+        source.setResource(new FileSystemResource(outputFile.getAbsolutePath()));
+        source.initialise(null);
+        source.close();
+
+        ZipFile zipFile = new ZipFile(outputFile);
+        try {
+            ZipEntry entry = zipFile.entries().nextElement();
+            assertThat(readFully(zipFile.getInputStream(entry)).length, is(0));
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package biz.c24.io.spring.batch.writer.source;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+
+
+public class ShardedFileWriterSourceTests {
+
+    @Test
+    public void testShardFileNames() {
+        assertThat(ShardedFileWriterSource.getShardFileName("/tmp/out.txt", 1), is("/tmp/out-1.txt"));
+        assertThat(ShardedFileWriterSource.getShardFileName("/tmp/out.csv.zip", 2), is("/tmp/out.csv-2.zip"));
+        assertThat(ShardedFileWriterSource.getShardFileName("/tmp/out", 3), is("/tmp/out-3"));
+        assertThat(ShardedFileWriterSource.getShardFileName("/tmp.dir/out", 4), is("/tmp.dir/out-4"));
+        assertThat(ShardedFileWriterSource.getShardFileName("/tmp/.out", 5), is("/tmp/.out-5"));
+    }
+
+    @Test
+    public void testWriterPerThread() throws Exception {
+        File outputFile = File.createTempFile("ShardedWriterTest-", ".csv");
+        outputFile.deleteOnExit();
+
+        final ShardedFileWriterSource source = new ShardedFileWriterSource();
+        source.setResource(new FileSystemResource(outputFile.getAbsolutePath()));
+        source.initialise(null);
+
+        // The same thread always gets the same Writer
+        Writer writer = source.getWriter();
+        assertThat(source.getWriter(), is(writer));
+        writer.write("main\n");
+
+        final Writer[] otherWriter = new Writer[1];
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    otherWriter[0] = source.getWriter();
+                    otherWriter[0].write("other\n");
+                } catch(IOException ioEx) {
+                    // Test will fail
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertThat(otherWriter[0], not(writer));
+
+        List<String> shards = source.getShardFileNames();
+        source.close();
+
+        assertThat(shards.size(), is(2));
+        assertThat(readLines(shards.get(0)).toString(), is("[main]"));
+        assertThat(readLines(shards.get(1)).toString(), is("[other]"));
+        for(String shard : shards) {
+            new File(shard).delete();
+        }
+    }
+
+    @Test
+    public void testConcurrentWritesMerged() throws Exception {
+        File outputFile = File.createTempFile("ShardedWriterTest-", ".csv");
+        outputFile.deleteOnExit();
+
+        final ShardedFileWriterSource source = new ShardedFileWriterSource();
+        source.setResource(new FileSystemResource(outputFile.getAbsolutePath()));
+        source.setMerge(true);
+        source.initialise(null);
+
+        final int threads = 4;
+        final int writes = 250;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<Thread>();
+        for(int t = 0; t < threads; t++) {
+            final int id = t;
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for(int i = 0; i < writes; i++) {
+                            // A chunk split over two buffers
+                            source.write(new ByteBuffer[] {
+                                    ByteBuffer.wrap((id + "," + i).getBytes("UTF-8")),
+                                    ByteBuffer.wrap("\n".getBytes("UTF-8"))});
+                        }
+                    } catch(Exception ex) {
+                        // Test will fail
+                    }
+                }
+            };
+            thread.start();
+            writers.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : writers) {
+            thread.join();
+        }
+
+        List<String> shards = source.getShardFileNames();
+        assertTrue(shards.size() >= 1 && shards.size() <= threads);
+        source.close();
+
+        // The shards have been merged and deleted
+        for(String shard : shards) {
+            assertFalse(new File(shard).exists());
+        }
+        List<String> lines = readLines(outputFile.getAbsolutePath());
+        assertThat(lines.size(), is(threads * writes));
+        Set<String> unique = new HashSet<String>(lines);
+        assertThat(unique.size(), is(threads * writes));
+        for(int t = 0; t < threads; t++) {
+            for(int i = 0; i < writes; i++) {
+                assertTrue(unique.contains(t + "," + i));
+            }
+        }
+    }
+
+    @Test
+    public void testStaleShardsDeleted() throws Exception {
+        File outputFile = File.createTempFile("ShardedWriterTest-", ".csv");
+        outputFile.deleteOnExit();
+        String fileName = outputFile.getAbsolutePath();
+
+        // Shards left by an earlier run with more concurrent writers
+        for(int i = 1; i <= 3; i++) {
+            File stale = new File(ShardedFileWriterSource.getShardFileName(fileName, i));
+            FileWriter writer = new FileWriter(stale);
+            writer.write("stale\n");
+            writer.close();
+            stale.deleteOnExit();
+        }
+
+        ShardedFileWriterSource source = new ShardedFileWriterSource();
+        source.setResource(new FileSystemResource(fileName));
+        source.initialise(null);
+        source.getWriter().write("fresh\n");
+        List<String> shards = source.getShardFileNames();
+        source.close();
+
+        assertThat(shards.size(), is(1));
+        assertThat(readLines(shards.get(0)).toString(), is("[fresh]"));
+        assertFalse(new File(ShardedFileWriterSource.getShardFileName(fileName, 2)).exists());
+        assertFalse(new File(ShardedFileWriterSource.getShardFileName(fileName, 3)).exists());
+        new File(shards.get(0)).delete();
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testNotInitialised() {
+        new ShardedFileWriterSource().getWriter();
+    }
+
+    private List<String> readLines(String fileName) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        try {
+            String line;
+            while((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.springframework.batch.item.ItemReader;
+
+/**
+ * Generates the data sets used by the benchmarks. The data is synthesised rather than read from the test resources
+ * so that the benchmarks can be scaled, and is valid against the models used by the Spring Batch tests.
+ *
+ * @author Andrew Elmore
+ */
+public final class BenchmarkData {
+
+	private static final String[][] EMPLOYEES = {
+		{"Mr", "Andy", "Acheson", "Software Developer"},
+		{"Mr", "Joe", "Bloggs", "Security Guard"},
+		{"Mr", "Greg", "Gatsby", "Managing Director"}
+	};
+
+	private static final String RECEIPT =
+			"<receipt receiptId=\"e16dea4b-5e46-4001-8180-735a862f540e\" customerId=\"37189\" timestamp=\"2012-03-01T00:58:27\">\n" +
+			"\t<item productId=\"258\" quantity=\"8\" price=\"46.96\"/>\n" +
+			"\t<item productId=\"299\" quantity=\"2\" price=\"5.98\"/>\n" +
+			"\t<item productId=\"281\" quantity=\"6\" price=\"23.94\"/>\n" +
+			"\t<item productId=\"279\" quantity=\"6\" price=\"29.94\"/>\n" +
+			"\t<item productId=\"341\" quantity=\"5\" price=\"14.95\"/>\n" +
+			"\t<item productId=\"342\" quantity=\"3\" price=\"8.97\"/>\n" +
+			"\t<item productId=\"320\" quantity=\"4\" price=\"13.96\"/>\n" +
+			"\t<item productId=\"336\" quantity=\"4\" price=\"14.76\"/>\n" +
+			"</receipt>\n";
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Employees in the CSV format of the Input model, one per line
+	 *
+	 * @param count The number of employees
+	 */
+	public static String employeesCsv(int count) {
+		StringBuilder builder = new StringBuilder(count * 40);
+		for(int i = 0; i < count; i++) {
+			String[] employee = EMPLOYEES[i % EMPLOYEES.length];
+			builder.append(employee[0]).append(',').append(employee[1]).append(',')
+					.append(employee[2]).append(',').append(employee[3]).append('\n');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Employees in the XML format of the employees model, one employee element per line
+	 *
+	 * @param count The number of employees
+	 */
+	public static String employeesXml(int count) {
+		StringBuilder builder = new StringBuilder(count * 100);
+		builder.append("<employees>\n");
+		for(int i = 0; i < count; i++) {
+			String[] employee = EMPLOYEES[i % EMPLOYEES.length];
+			builder.append("    <employee salutation=\"").append(employee[0])
+					.append("\" firstName=\"").append(employee[1])
+					.append("\" lastName=\"").append(employee[2])
+					.append("\" jobTitle=\"").append(employee[3]).append("\"/>\n");
+		}
+		builder.append("</employees>\n");
+		return builder.toString();
+	}
+
+	/**
+	 * Multi-line receipts in the format of the ReceiptXML model
+	 *
+	 * @param count The number of receipts
+	 */
+	public static String receiptsXml(int count) {
+		StringBuilder builder = new StringBuilder(count * RECEIPT.length());
+		for(int i = 0; i < count; i++) {
+			builder.append(RECEIPT);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Lines of comma delimited printable ASCII
+	 *
+	 * @param count The number of lines
+	 * @param lineLength The length of each line, excluding its terminator
+	 * @param fieldLength The number of characters between delimiters
+	 */
+	public static String lines(int count, int lineLength, int fieldLength) {
+		StringBuilder builder = new StringBuilder(count * (lineLength + 1));
+		for(int i = 0; i < count; i++) {
+			for(int j = 0; j < lineLength; j++) {
+				builder.append((j + 1) % (fieldLength + 1) == 0? ',' : (char)('a' + (i + j) % 26));
+			}
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Writes data to a temporary file, which is deleted when the JVM exits if not before
+	 *
+	 * @param prefix The prefix of the file's name
+	 * @param data The data to write, encoded as UTF-8
+	 */
+	public static File writeTempFile(String prefix, String data) throws IOException {
+		File file = File.createTempFile(prefix, ".dat");
+		file.deleteOnExit();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(data);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Reads from reader until it is exhausted, using the supplied number of threads as a step would
+	 *
+	 * @param reader The reader to drain
+	 * @param pool An executor with at least threads threads; unused if threads is 1
+	 * @param threads The number of threads to call read on
+	 * @return The total number of items read
+	 */
+	public static long readAll(final ItemReader<?> reader, ExecutorService pool, int threads) throws Exception {
+		Callable<Long> worker = new Callable<Long>() {
+			@Override
+			public Long call() throws Exception {
+				long count = 0;
+				while(reader.read() != null) {
+					count++;
+				}
+				return count;
+			}
+		};
+
+		if(threads == 1) {
+			return worker.call();
+		}
+
+		List<Future<Long>> results = new ArrayList<Future<Long>>(threads);
+		for(int i = 0; i < threads; i++) {
+			results.add(pool.submit(worker));
+		}
+		long count = 0;
+		for(Future<Long> result : results) {
+			count += result.get();
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for benchmarks.jar.
+ *
+ * With no arguments (or only a regular expression selecting benchmarks) every selected benchmark is run twice: once
+ * measuring throughput in ops/s and once sampling the time of individual operations to give latency percentiles in
+ * microseconds. Both runs use the GC profiler, so gc.alloc.rate.norm reports the bytes allocated per operation. The
+ * results are also written as JSON to throughput.json and latency.json in the working directory so that they can be
+ * compared between builds.
+ *
+ * Arguments starting with '-' are passed straight to JMH, e.g. -h lists its options.
+ *
+ * @author Andrew Elmore
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		if(args.length > 0 && args[0].startsWith("-")) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+
+		String include = args.length > 0? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+
+		new Runner(options(include, Mode.Throughput, TimeUnit.SECONDS, "throughput.json")).run();
+		new Runner(options(include, Mode.SampleTime, TimeUnit.MICROSECONDS, "latency.json")).run();
+	}
+
+	private static Options options(String include, Mode mode, TimeUnit timeUnit, String resultFile) {
+		return new OptionsBuilder()
+				.include(include)
+				.mode(mode)
+				.timeUnit(timeUnit)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result(resultFile)
+				.build();
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.benchmarks.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.FileSystemResource;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.examples.models.basic.EmployeeElement;
+import biz.c24.io.spring.batch.reader.C24ItemReader;
+import biz.c24.io.spring.batch.reader.source.FileSource;
+import biz.c24.io.spring.benchmarks.BenchmarkData;
+import biz.c24.io.spring.core.C24Model;
+
+/**
+ * Measures the C24ItemReader reading a CSV file of employees in each of its concurrency modes:
+ * <ul>
+ * <li>parser: no elementStartPattern; each thread's iO parser reads directly from the shared source</li>
+ * <li>split: the calling threads take turns to split an element out of the source, then parse it in parallel</li>
+ * <li>pipelined: a dedicated thread splits elements into a queue from which the calling threads parse</li>
+ * </ul>
+ * Each operation is one element read.
+ *
+ * @author Andrew Elmore
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class C24ItemReaderBenchmark {
+
+	private static final int ELEMENTS = 10000;
+
+	private static final C24Model MODEL = new C24Model(EmployeeElement.getInstance());
+
+	@Param({"parser", "split", "pipelined"})
+	public String mode;
+
+	@Param({"1", "4"})
+	public int threads;
+
+	@Param({"false", "true"})
+	public boolean validate;
+
+	private File file;
+	private ExecutorService pool;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		file = BenchmarkData.writeTempFile("C24ItemReaderBenchmark", BenchmarkData.employeesCsv(ELEMENTS));
+		pool = Executors.newFixedThreadPool(threads);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+		file.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ELEMENTS)
+	public long read() throws Exception {
+		FileSource source = new FileSource();
+		source.setResource(new FileSystemResource(file));
+
+		C24ItemReader<ComplexDataObject> reader = new C24ItemReader<ComplexDataObject>();
+		reader.setModel(MODEL);
+		reader.setSource(source);
+		reader.setValidate(validate);
+		reader.setSaveState(false);
+		if(!"parser".equals(mode)) {
+			reader.setElementStartPattern(".*");
+		}
+		reader.setPipelined("pipelined".equals(mode));
+		reader.validateConfiguration();
+
+		reader.setup(null);
+		try {
+			return BenchmarkData.readAll(reader, pool, threads);
+		} finally {
+			reader.cleanup();
+		}
+	}
+
+}
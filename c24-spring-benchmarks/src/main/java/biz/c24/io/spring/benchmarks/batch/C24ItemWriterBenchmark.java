@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.benchmarks.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.core.io.FileSystemResource;
+
+import biz.c24.io.api.presentation.TextualSink;
+import biz.c24.io.examples.models.basic.Employee;
+import biz.c24.io.spring.batch.writer.C24ItemWriter;
+import biz.c24.io.spring.batch.writer.source.FileWriterSource;
+import biz.c24.io.spring.batch.writer.source.WriterSource;
+
+/**
+ * Measures the C24ItemWriter writing chunks of employees as CSV, either to a file or to a Writer which discards its
+ * output so that only the cost of formatting is measured. Each operation is one item written. Run with -t to
+ * measure contention between threads writing to the same WriterSource.
+ *
+ * @author Andrew Elmore
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class C24ItemWriterBenchmark {
+
+	private static final int CHUNK_SIZE = 100;
+
+	@Param({"null", "file"})
+	public String target;
+
+	private C24ItemWriter writer;
+	private File file;
+	private List<Employee> chunk;
+
+	/**
+	 * Discards everything written to it
+	 */
+	private static class NullWriterSource implements WriterSource {
+
+		private final Writer writer = new Writer() {
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+			}
+			@Override
+			public void write(String str) {
+			}
+			@Override
+			public void flush() {
+			}
+			@Override
+			public void close() {
+			}
+		};
+
+		@Override
+		public void initialise(StepExecution stepExecution) {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public Writer getWriter() {
+			return writer;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		WriterSource writerSource;
+		if("file".equals(target)) {
+			file = File.createTempFile("C24ItemWriterBenchmark", ".csv");
+			file.deleteOnExit();
+			FileWriterSource fileWriterSource = new FileWriterSource();
+			fileWriterSource.setResource(new FileSystemResource(file));
+			writerSource = fileWriterSource;
+		} else {
+			writerSource = new NullWriterSource();
+		}
+
+		writer = new C24ItemWriter();
+		writer.setSink(new TextualSink());
+		writer.setWriterSource(writerSource);
+		writer.validateConfiguration();
+		writer.setup(null);
+
+		chunk = new ArrayList<Employee>(CHUNK_SIZE);
+		for(int i = 0; i < CHUNK_SIZE; i++) {
+			Employee employee = new Employee();
+			employee.setSalutation("Mr");
+			employee.setFirstName("Andy");
+			employee.setLastName("Acheson");
+			employee.setJobTitle("Software Developer");
+			chunk.add(employee);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		writer.cleanup();
+		if(file != null) {
+			file.delete();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CHUNK_SIZE)
+	public void write() throws Exception {
+		writer.write(chunk);
+	}
+
+}
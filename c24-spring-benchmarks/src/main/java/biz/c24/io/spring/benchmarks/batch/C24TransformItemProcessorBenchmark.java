@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.benchmarks.batch;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import biz.c24.io.examples.models.basic.Employee;
+import biz.c24.io.examples.transforms.basic.EmployeeToEmailTransform;
+import biz.c24.io.spring.batch.processor.C24TransformItemProcessor;
+
+/**
+ * Measures the C24TransformItemProcessor transforming an Employee into an Email, with and without validation of the
+ * result. Each operation is one item processed. Run with -t to measure contention between threads.
+ *
+ * @author Andrew Elmore
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class C24TransformItemProcessorBenchmark {
+
+	@Param({"false", "true"})
+	public boolean validate;
+
+	private C24TransformItemProcessor processor;
+	private Employee employee;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		processor = new C24TransformItemProcessor(new EmployeeToEmailTransform(), validate);
+
+		employee = new Employee();
+		employee.setSalutation("Mr");
+		employee.setFirstName("Dave");
+		employee.setLastName("Taylor");
+		employee.setJobTitle("Compliance Officer");
+	}
+
+	@Benchmark
+	public Object process() throws Exception {
+		return processor.process(employee);
+	}
+
+}
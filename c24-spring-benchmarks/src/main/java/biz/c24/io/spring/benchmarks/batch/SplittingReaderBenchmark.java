@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.benchmarks.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import biz.c24.io.spring.batch.reader.source.ByteSplittingReader;
+import biz.c24.io.spring.batch.reader.source.MappedSplittingReader;
+import biz.c24.io.spring.batch.reader.source.SplittingReader;
+import biz.c24.io.spring.benchmarks.BenchmarkData;
+
+/**
+ * Measures the cost of scanning for line terminators and delimiters with each of the SplittingReader
+ * implementations, for short (100 byte) and long (10KB) lines. Each operation is one line.
+ *
+ * @author Andrew Elmore
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplittingReaderBenchmark {
+
+	private static final int LINES = 1000;
+
+	/**
+	 * The number of characters between delimiters
+	 */
+	private static final int FIELD_LENGTH = 9;
+
+	@Param({"100", "10000"})
+	public int lineLength;
+
+	/**
+	 * chars: SplittingReader over a Reader; bytes: ByteSplittingReader; mapped: MappedSplittingReader
+	 */
+	@Param({"chars", "bytes", "mapped"})
+	public String reader;
+
+	private String data;
+	private byte[] bytes;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		data = BenchmarkData.lines(LINES, lineLength, FIELD_LENGTH);
+		bytes = data.getBytes("UTF-8");
+		file = BenchmarkData.writeTempFile("SplittingReaderBenchmark", data);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	private SplittingReader createReader() throws IOException {
+		if("chars".equals(reader)) {
+			return new SplittingReader(new StringReader(data), true);
+		} else if("bytes".equals(reader)) {
+			return new ByteSplittingReader(new ByteArrayInputStream(bytes), "UTF-8");
+		} else {
+			return new MappedSplittingReader(new RandomAccessFile(file, "r").getChannel(), "UTF-8");
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void readLines(Blackhole blackhole) throws IOException {
+		SplittingReader splitter = createReader();
+		try {
+			CharSequence line;
+			while((line = splitter.readLineSequence()) != null) {
+				blackhole.consume(line.length());
+			}
+		} finally {
+			splitter.close();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void readDelimited(Blackhole blackhole) throws IOException {
+		SplittingReader splitter = createReader();
+		try {
+			CharSequence field;
+			while((field = splitter.readUntilInclusiveSequence(',')) != null) {
+				blackhole.consume(field.length());
+			}
+		} finally {
+			splitter.close();
+		}
+	}
+
+}
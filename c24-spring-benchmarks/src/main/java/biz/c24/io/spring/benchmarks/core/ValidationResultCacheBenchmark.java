@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.benchmarks.core;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.api.data.ValidationEvent;
+import biz.c24.io.api.presentation.TextualSource;
+import biz.c24.io.examples.models.basic.EmployeesElement;
+import biz.c24.io.spring.benchmarks.BenchmarkData;
+import biz.c24.io.spring.validation.ValidationEngine;
+import biz.c24.io.spring.validation.ValidationResultCache;
+
+/**
+ * Measures whether a ValidationResultCache saves more than it costs validating a document of employees. Each
+ * operation is one document validated, either directly or through the cache keyed on the parsed object or on the
+ * payload it was parsed from. hit is answered from the cache; miss clears it first, so pays for computing the key as
+ * well as for the validation.
+ *
+ * @author Andrew Elmore
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationResultCacheBenchmark {
+
+	@Param({"1", "100"})
+	public int employees;
+
+	/**
+	 * object to key on the parsed object's canonical form, payload to key on the CSV it was parsed from
+	 */
+	@Param({"object", "payload"})
+	public String key;
+
+	private ValidationEngine engine;
+	private ValidationResultCache cache;
+	private ComplexDataObject cdo;
+	private String payload;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		engine = new ValidationEngine();
+		cache = new ValidationResultCache();
+
+		payload = BenchmarkData.employeesCsv(employees);
+		TextualSource source = new TextualSource(new StringReader(payload));
+		cdo = source.readObject(EmployeesElement.getInstance());
+		if(!engine.validateByEvents(cdo).isEmpty()) {
+			throw new IllegalStateException("Benchmark document is invalid");
+		}
+	}
+
+	@Benchmark
+	public List<ValidationEvent> uncached() {
+		return engine.validateByEvents(cdo);
+	}
+
+	@Benchmark
+	public List<ValidationEvent> hit() {
+		return cache.getFailures(cdo, "payload".equals(key)? payload : null, engine);
+	}
+
+	@Benchmark
+	public List<ValidationEvent> miss() {
+		cache.clear();
+		return cache.getFailures(cdo, "payload".equals(key)? payload : null, engine);
+	}
+
+}
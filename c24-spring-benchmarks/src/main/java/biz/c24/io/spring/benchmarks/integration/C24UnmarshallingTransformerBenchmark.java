@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.benchmarks.integration;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+import biz.c24.io.examples.models.basic.EmployeesElement;
+import biz.c24.io.spring.benchmarks.BenchmarkData;
+import biz.c24.io.spring.core.C24Model;
+import biz.c24.io.spring.integration.transformer.C24UnmarshallingTransformer;
+import biz.c24.io.spring.source.TextualSourceFactory;
+
+/**
+ * Measures the C24UnmarshallingTransformer parsing a message containing a CSV document of employees, supplied as
+ * either a String or a byte[]. Each operation is one message transformed.
+ *
+ * @author Andrew Elmore
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class C24UnmarshallingTransformerBenchmark {
+
+	@Param({"string", "bytes"})
+	public String payload;
+
+	@Param({"1", "100"})
+	public int employees;
+
+	private C24UnmarshallingTransformer transformer;
+	private Message<?> message;
+
+	@Setup(Level.Trial)
+	public void setup() throws UnsupportedEncodingException {
+		transformer = new C24UnmarshallingTransformer(new C24Model(EmployeesElement.getInstance()), new TextualSourceFactory());
+
+		String csv = BenchmarkData.employeesCsv(employees);
+		if("bytes".equals(payload)) {
+			message = new GenericMessage<byte[]>(csv.getBytes("UTF-8"));
+		} else {
+			message = new GenericMessage<String>(csv);
+		}
+	}
+
+	@Benchmark
+	public Message<?> transform() {
+		return transformer.transform(message);
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.benchmarks.integration;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.api.presentation.TextualSource;
+import biz.c24.io.examples.models.basic.EmployeesElement;
+import biz.c24.io.spring.benchmarks.BenchmarkData;
+import biz.c24.io.spring.integration.selector.C24BooleanTestXPathMessageSelector;
+import biz.c24.io.spring.integration.selector.C24StringValueTestXPathMessageSelector;
+
+/**
+ * Measures the XPath message selectors evaluating against a document of employees. Each operation is one message
+ * accepted or rejected.
+ *
+ * @author Andrew Elmore
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XPathSelectorBenchmark {
+
+	@Param({"1", "100"})
+	public int employees;
+
+	private C24BooleanTestXPathMessageSelector booleanSelector;
+	private C24StringValueTestXPathMessageSelector stringSelector;
+	private Message<ComplexDataObject> message;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		booleanSelector = new C24BooleanTestXPathMessageSelector("//Employee/FirstName/text()='Andy'");
+
+		stringSelector = new C24StringValueTestXPathMessageSelector("//Employee[1]/FirstName");
+		stringSelector.setValueToTestFor("Andy");
+		stringSelector.afterPropertiesSet();
+
+		TextualSource source = new TextualSource(new StringReader(BenchmarkData.employeesCsv(employees)));
+		message = new GenericMessage<ComplexDataObject>(source.readObject(EmployeesElement.getInstance()));
+	}
+
+	@Benchmark
+	public boolean booleanTest() {
+		return booleanSelector.accept(message);
+	}
+
+	@Benchmark
+	public boolean stringValueTest() {
+		return stringSelector.accept(message);
+	}
+
+}
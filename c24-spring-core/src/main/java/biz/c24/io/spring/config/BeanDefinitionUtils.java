@@ -20,6 +20,8 @@ import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.w3c.dom.Element;
 
 /**
  * Simple helper class to ease building {@link BeanDefinition}s a bit.
@@ -64,4 +66,21 @@ class BeanDefinitionUtils {
 		definition.setSource(source);
 		return definition;
 	}
+
+	/**
+	 * Sets the given property to the value of the given attribute of the element, if it has one.
+	 * 
+	 * @param builder
+	 * @param element
+	 * @param attribute
+	 * @param property
+	 */
+	public static void setPropertyIfAttributeDefined(BeanDefinitionBuilder builder, Element element, String attribute,
+			String property) {
+
+		String value = element.getAttribute(attribute);
+		if (StringUtils.hasText(value)) {
+			builder.addPropertyValue(property, value);
+		}
+	}
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.config;
+
+import static biz.c24.io.spring.config.BeanDefinitionUtils.*;
+
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.AbstractBeanDefinitionParser;
+import org.springframework.beans.factory.xml.BeanDefinitionParser;
+import org.springframework.beans.factory.xml.ParserContext;
+import org.w3c.dom.Element;
+
+import biz.c24.io.spring.validation.ValidationResultCache;
+
+/**
+ * {@link BeanDefinitionParser} to parse {@code validation-cache} elements.
+ * 
+ * @author Andrew Elmore
+ */
+class ValidationResultCacheBeanDefinitionParser extends AbstractBeanDefinitionParser {
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.beans.factory.xml.AbstractBeanDefinitionParser#parseInternal(org.w3c.dom.Element, org.springframework.beans.factory.xml.ParserContext)
+	 */
+	@Override
+	protected AbstractBeanDefinition parseInternal(Element element, ParserContext parserContext) {
+
+		BeanDefinitionBuilder builder = BeanDefinitionBuilder.rootBeanDefinition(ValidationResultCache.class);
+
+		setPropertyIfAttributeDefined(builder, element, "max-size", "maxSize");
+		setPropertyIfAttributeDefined(builder, element, "time-to-live", "timeToLive");
+		setPropertyIfAttributeDefined(builder, element, "algorithm", "algorithm");
+		setPropertyIfAttributeDefined(builder, element, "model-version", "modelVersion");
+
+		return getSourcedBeanDefinition(builder, parserContext.extractSource(element));
+	}
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.transform;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import biz.c24.io.api.transform.Transform;
+
+/**
+ * A bounded pool of instances of an iO-generated Transform, for components which transform on many threads.
+ * 
+ * Generated transforms aren't guaranteed to be thread safe, so a thread borrows an instance for the duration of a
+ * transformation and then releases it. Unlike caching an instance per thread, the number of instances is limited by
+ * maxSize however many threads there are; when every instance is in use, borrowers wait, for up to maxWait 
+ * milliseconds, for one to be released. 
+ * 
+ * initialSize instances are created when the pool is initialised and the pool never shrinks below that size.
+ * Beyond that, instances which have been idle for more than maxIdleTime milliseconds are discarded, so that the pool
+ * gives back the memory used by a burst of concurrent work. Idle instances are reused most recently released first so
+ * that the least recently used age out. Eviction happens as instances are borrowed and released; there is no
+ * background thread.
+ * 
+ * Only instances borrowed from the pool can be released back into it, so that it never hands out an instance it didn't
+ * create or counts one twice.
+ * 
+ * The time borrowers spend waiting is accumulated and can be read via getTotalWaitTime and getWaitCount.
+ * 
+ * @author Andrew Elmore
+ */
+public class TransformPool implements InitializingBean {
+
+	/**
+	 * The default maximum number of instances; transforms are CPU bound, so more than this gains nothing
+	 */
+	public static final int DEFAULT_MAX_SIZE = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * The default time, in milliseconds, an instance beyond initialSize may be idle before it is discarded
+	 */
+	public static final long DEFAULT_MAX_IDLE_TIME = 60 * 1000L;
+	
+	private Class<? extends Transform> transformClass = null;
+	private int maxSize = DEFAULT_MAX_SIZE;
+	private int initialSize = 0;
+	private long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+	private long maxWait = -1;
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition released = lock.newCondition();
+	
+	/**
+	 * Instances not currently borrowed, most recently released first
+	 */
+	private final Deque<IdleTransform> idle = new ArrayDeque<IdleTransform>();
+	
+	/**
+	 * Instances currently borrowed. Transforms aren't expected to override equals, but compare by identity regardless.
+	 */
+	private final Set<Transform> borrowed = Collections.newSetFromMap(new IdentityHashMap<Transform, Boolean>());
+	
+	/**
+	 * The number of instances in existence or being created
+	 */
+	private int size = 0;
+	
+	private long borrowCount = 0;
+	private long waitCount = 0;
+	private long totalWaitNanos = 0;
+	
+	/**
+	 * An instance and when it was released
+	 */
+	private static class IdleTransform {
+		private final Transform transform;
+		private final long releasedAt;
+		
+		public IdleTransform(Transform transform, long releasedAt) {
+			this.transform = transform;
+			this.releasedAt = releasedAt;
+		}
+	}
+	
+	/**
+	 * Default constructor. Requires that the transformClass is set separately.
+	 */
+	public TransformPool() {
+	}
+	
+	/**
+	 * Construct a TransformPool
+	 * 
+	 * @param transformClass The iO-generated transform to pool
+	 * @param maxSize The maximum number of instances
+	 */
+	public TransformPool(Class<? extends Transform> transformClass, int maxSize) {
+		setTransformClass(transformClass);
+		setMaxSize(maxSize);
+	}
+	
+	/**
+	 * Validates our configuration and creates initialSize instances
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		Assert.state(transformClass != null, "The transformClass property must not be null");
+		Assert.state(maxSize > 0, "maxSize must be positive");
+		Assert.state(initialSize <= maxSize, "initialSize must not exceed maxSize");
+		
+		lock.lock();
+		try {
+			while(size < initialSize) {
+				idle.addLast(new IdleTransform(createTransform(), System.nanoTime()));
+				size++;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Borrows an instance, creating one if none are idle and the pool isn't full, otherwise waiting for one to be 
+	 * released. The instance must be passed to release once the caller has finished with it.
+	 * 
+	 * @return An instance for the exclusive use of the caller
+	 * @throws InterruptedException If the caller is interrupted while waiting
+	 * @throws IllegalStateException If no instance was released within maxWait milliseconds
+	 */
+	public Transform borrow() throws InterruptedException {
+		boolean waited = false;
+		long start = 0;
+		long remaining = maxWait >= 0? TimeUnit.MILLISECONDS.toNanos(maxWait) : 0;
+		
+		lock.lockInterruptibly();
+		try {
+			while(true) {
+				IdleTransform available = idle.pollFirst();
+				if(available != null) {
+					recordBorrow(waited, start);
+					borrowed.add(available.transform);
+					return available.transform;
+				}
+				if(size < maxSize) {
+					// Reserve our place and create the instance once we've released the lock
+					size++;
+					recordBorrow(waited, start);
+					break;
+				}
+				
+				if(!waited) {
+					waited = true;
+					start = System.nanoTime();
+				}
+				if(maxWait < 0) {
+					released.await();
+				} else if(remaining <= 0) {
+					recordBorrow(waited, start);
+					throw new IllegalStateException("Timed out after " + maxWait + "ms waiting for an instance of " 
+							+ transformClass.getName());
+				} else {
+					remaining = released.awaitNanos(remaining);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		
+		Transform transform;
+		try {
+			transform = createTransform();
+		} catch(RuntimeException ex) {
+			lock.lock();
+			try {
+				size--;
+				released.signal();
+			} finally {
+				lock.unlock();
+			}
+			throw ex;
+		}
+		lock.lock();
+		try {
+			borrowed.add(transform);
+		} finally {
+			lock.unlock();
+		}
+		return transform;
+	}
+	
+	/**
+	 * Returns a borrowed instance to the pool
+	 * 
+	 * @param transform An instance previously obtained from borrow
+	 * @throws IllegalArgumentException If the instance isn't currently borrowed from this pool
+	 */
+	public void release(Transform transform) {
+		long now = System.nanoTime();
+		lock.lock();
+		try {
+			if(!borrowed.remove(transform)) {
+				throw new IllegalArgumentException("Transform " + transform + " was not borrowed from this pool");
+			}
+			idle.addFirst(new IdleTransform(transform, now));
+			evictIdle(now);
+			released.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Discards idle instances beyond initialSize which have been idle too long. Must hold the lock.
+	 */
+	private void evictIdle(long now) {
+		if(maxIdleTime < 0) {
+			return;
+		}
+		long maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleTime);
+		while(size > initialSize && !idle.isEmpty() && now - idle.peekLast().releasedAt > maxIdleNanos) {
+			idle.pollLast();
+			size--;
+		}
+	}
+	
+	/**
+	 * Records a borrow and, if the borrower had to wait, how long for. Must hold the lock.
+	 */
+	private void recordBorrow(boolean waited, long waitStart) {
+		borrowCount++;
+		if(waited) {
+			waitCount++;
+			totalWaitNanos += System.nanoTime() - waitStart;
+		}
+	}
+	
+	/**
+	 * Creates a new instance of our transformClass. Subclasses may override this to create instances differently.
+	 */
+	protected Transform createTransform() {
+		try {
+			return transformClass.newInstance();
+		} catch(InstantiationException ex) {
+			throw new IllegalStateException("Could not instantiate transform " + transformClass.getName(), ex);
+		} catch(IllegalAccessException ex) {
+			throw new IllegalStateException("Could not instantiate transform " + transformClass.getName(), ex);
+		}
+	}
+	
+	/**
+	 * Whether an instance is currently borrowed from this pool
+	 * 
+	 * @param transform The instance to check
+	 * @return True iff transform was obtained from borrow and hasn't yet been released
+	 */
+	public boolean isBorrowed(Transform transform) {
+		lock.lock();
+		try {
+			return borrowed.contains(transform);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * The number of instances in existence, whether idle or borrowed
+	 */
+	public int getSize() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * The number of instances waiting to be borrowed
+	 */
+	public int getIdleCount() {
+		lock.lock();
+		try {
+			return idle.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * The number of successful and timed out calls to borrow
+	 */
+	public long getBorrowCount() {
+		lock.lock();
+		try {
+			return borrowCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * The number of calls to borrow which had to wait for an instance to be released
+	 */
+	public long getWaitCount() {
+		lock.lock();
+		try {
+			return waitCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * The total time borrowers have spent waiting for an instance to be released
+	 * 
+	 * @param unit The unit to return the time in
+	 */
+	public long getTotalWaitTime(TimeUnit unit) {
+		lock.lock();
+		try {
+			return unit.convert(totalWaitNanos, TimeUnit.NANOSECONDS);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The iO-generated transform we pool
+	 */
+	public Class<? extends Transform> getTransformClass() {
+		return transformClass;
+	}
+
+	/**
+	 * Sets the iO-generated transform to pool. It must have a public default constructor.
+	 */
+	public void setTransformClass(Class<? extends Transform> transformClass) {
+		Assert.notNull(transformClass, "The transform class cannot be set to null");
+		this.transformClass = transformClass;
+	}
+
+	/**
+	 * The maximum number of instances
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Sets the maximum number of instances. Defaults to the number of available processors.
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * The number of instances created up front, below which the pool doesn't shrink
+	 */
+	public int getInitialSize() {
+		return initialSize;
+	}
+
+	/**
+	 * Sets the number of instances to create when the pool is initialised. The pool never shrinks below this size.
+	 * Defaults to 0.
+	 */
+	public void setInitialSize(int initialSize) {
+		this.initialSize = initialSize;
+	}
+
+	/**
+	 * The time, in milliseconds, an instance beyond initialSize may be idle before it is discarded
+	 */
+	public long getMaxIdleTime() {
+		return maxIdleTime;
+	}
+
+	/**
+	 * Sets the time, in milliseconds, an instance beyond initialSize may be idle before it is discarded. 
+	 * A negative value keeps idle instances indefinitely. Defaults to one minute.
+	 */
+	public void setMaxIdleTime(long maxIdleTime) {
+		this.maxIdleTime = maxIdleTime;
+	}
+
+	/**
+	 * The time, in milliseconds, borrow waits for an instance to be released
+	 */
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * Sets the time, in milliseconds, borrow waits for an instance to be released before failing. A negative value
+	 * waits indefinitely. Defaults to -1.
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+}
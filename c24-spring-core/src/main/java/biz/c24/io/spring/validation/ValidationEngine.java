@@ -0,0 +1,274 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.api.data.ValidationEvent;
+import biz.c24.io.api.data.ValidationException;
+import biz.c24.io.api.data.ValidationListener;
+import biz.c24.io.api.data.ValidationManager;
+
+/**
+ * Validates ComplexDataObjects using a pool of ValidationManagers, each with an event collector which is reused from
+ * one validation to the next, so that validating an object costs little more than evaluating its rules.
+ *
+ * Thread safe; a Validator is borrowed for the duration of each validation and is never used by two threads at once.
+ * As the pool only ever holds as many Validators as have been in use at the same time, and doesn't depend on which
+ * threads use it, one engine can be shared by any number of components and threads.
+ *
+ * @author Andrew Elmore
+ */
+public class ValidationEngine {
+
+	/**
+	 * Validators not currently in use
+	 */
+	private final ConcurrentLinkedQueue<Validator> idle = new ConcurrentLinkedQueue<Validator>();
+
+	/**
+	 * A ValidationManager together with the collector listening to it
+	 */
+	public static final class Validator implements ValidationListener {
+
+		private final ValidationManager manager = new ValidationManager();
+
+		private final List<ValidationEvent> failEvents = new ArrayList<ValidationEvent>();
+		private final List<ValidationEvent> passEvents = new ArrayList<ValidationEvent>();
+
+		private Validator() {
+			manager.addValidationListener(this);
+		}
+
+		/**
+		 * Validates cdo, aborting on the first failure
+		 *
+		 * @throws ValidationException Describing the first failure
+		 */
+		public void validateByException(ComplexDataObject cdo) throws ValidationException {
+			clear();
+			manager.validateByException(cdo);
+		}
+
+		/**
+		 * Validates cdo, collecting every event. The events are available from getFailEvents and getPassEvents
+		 * until the next validation or until the Validator is released.
+		 *
+		 * @return True iff cdo is valid
+		 */
+		public boolean validateByEvents(ComplexDataObject cdo) {
+			clear();
+			return manager.validateByEvents(cdo);
+		}
+
+		/**
+		 * Throws the exception that validating by exception would have thrown for event
+		 *
+		 * @param event A failure from validateByEvents
+		 */
+		public void throwValidationException(ValidationEvent event) throws ValidationException {
+			manager.setEventBased(false);
+			manager.fireValidationEvent(event);
+		}
+
+		/**
+		 * The failures found by the last validateByEvents
+		 */
+		public List<ValidationEvent> getFailEvents() {
+			return failEvents;
+		}
+
+		/**
+		 * The passes reported by the last validateByEvents
+		 */
+		public List<ValidationEvent> getPassEvents() {
+			return passEvents;
+		}
+
+		/**
+		 * The underlying ValidationManager, for example to query its statistics
+		 */
+		public ValidationManager getManager() {
+			return manager;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see biz.c24.io.api.data.ValidationListener#validationPassed(biz.c24.io.api.data.ValidationEvent)
+		 */
+		@Override
+		public void validationPassed(ValidationEvent ve) {
+			passEvents.add(ve);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see biz.c24.io.api.data.ValidationListener#validationFailed(biz.c24.io.api.data.ValidationEvent)
+		 */
+		@Override
+		public void validationFailed(ValidationEvent ve) {
+			failEvents.add(ve);
+		}
+
+		private void clear() {
+			failEvents.clear();
+			passEvents.clear();
+		}
+	}
+
+	/**
+	 * Borrows a Validator, creating one if none are idle. It must be handed back to release once finished with.
+	 */
+	public Validator borrow() {
+		Validator validator = idle.poll();
+		return validator != null? validator : new Validator();
+	}
+
+	/**
+	 * Creates a Validator which isn't pooled, for callers which hand on state belonging to its ValidationManager, such
+	 * as its statistics, which later validations would otherwise change
+	 */
+	public static Validator newValidator() {
+		return new Validator();
+	}
+	
+	/**
+	 * Returns a Validator obtained from borrow to the pool
+	 */
+	public void release(Validator validator) {
+		validator.clear();
+		idle.add(validator);
+	}
+
+	/**
+	 * Discards the idle Validators, for example at the end of a step
+	 */
+	public void clear() {
+		idle.clear();
+	}
+
+	/**
+	 * The number of Validators currently in the pool
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * Throws the exception that validating by exception would have thrown for event
+	 *
+	 * @param event A failure found validating by events
+	 */
+	public void throwValidationException(ValidationEvent event) throws ValidationException {
+		Validator validator = borrow();
+		try {
+			validator.throwValidationException(event);
+		} finally {
+			release(validator);
+		}
+	}
+
+	/**
+	 * Validates cdo, aborting on the first failure
+	 *
+	 * @throws ValidationException Describing the first failure
+	 */
+	public void validateByException(ComplexDataObject cdo) throws ValidationException {
+		Validator validator = borrow();
+		try {
+			validator.validateByException(cdo);
+		} finally {
+			release(validator);
+		}
+	}
+
+	/**
+	 * Validates cdo, collecting every failure
+	 *
+	 * @return The failures; an empty list if there were none
+	 */
+	public List<ValidationEvent> validateByEvents(ComplexDataObject cdo) {
+		Validator validator = borrow();
+		try {
+			if(validator.validateByEvents(cdo) || validator.getFailEvents().isEmpty()) {
+				return Collections.emptyList();
+			}
+			return new ArrayList<ValidationEvent>(validator.getFailEvents());
+		} finally {
+			release(validator);
+		}
+	}
+
+	/**
+	 * Validates cdo, either aborting on the first failure or collecting every failure. A single failure is always
+	 * reported by exception, as though validating by exception, so callers need only handle multiple failures.
+	 *
+	 * @param cdo The object to validate
+	 * @param failfast Whether to abort on the first failure
+	 * @return The failures if more than one was found; otherwise an empty list
+	 * @throws ValidationException Describing the failure if failfast is set or only one failure was found
+	 */
+	public List<ValidationEvent> validate(ComplexDataObject cdo, boolean failfast) throws ValidationException {
+		return validate(cdo, failfast, null);
+	}
+
+	/**
+	 * As validate(cdo, failfast), but skipping validation if cache records that an identical object has recently
+	 * passed it.
+	 *
+	 * @param cdo The object to validate
+	 * @param failfast Whether to report only the first failure
+	 * @param cache The cache of passes to consult, null to always validate
+	 * @return The failures if more than one was found and failfast isn't set; otherwise an empty list
+	 * @throws ValidationException Describing the failure if failfast is set or only one failure was found
+	 */
+	public List<ValidationEvent> validate(ComplexDataObject cdo, boolean failfast, ValidationResultCache cache)
+			throws ValidationException {
+		if(cache != null) {
+			if(failfast) {
+				cache.validateByException(cdo, this);
+				return Collections.emptyList();
+			}
+			List<ValidationEvent> failures = cache.getFailures(cdo, this);
+			if(failures.size() == 1) {
+				throwValidationException(failures.get(0));
+			}
+			return failures;
+		}
+
+		Validator validator = borrow();
+		try {
+			if(failfast) {
+				validator.validateByException(cdo);
+			} else if(!validator.validateByEvents(cdo)) {
+				List<ValidationEvent> failEvents = validator.getFailEvents();
+				if(failEvents.size() == 1) {
+					validator.throwValidationException(failEvents.get(0));
+				} else if(!failEvents.isEmpty()) {
+					return new ArrayList<ValidationEvent>(failEvents);
+				}
+			}
+			return Collections.emptyList();
+		} finally {
+			release(validator);
+		}
+	}
+
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.validation;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.api.data.ValidationEvent;
+import biz.c24.io.api.data.ValidationException;
+
+/**
+ * Caches which ComplexDataObjects have passed validation, so that objects identical to one already found valid, such
+ * as resent messages, aren't validated again.
+ *
+ * Only passes are recorded. ValidationEvents refer to the object they were raised against, so an object which fails
+ * is validated every time in order that its failures describe it rather than an earlier, identical, object; this also
+ * means that the cache never holds on to the objects it has seen.
+ *
+ * Passes are keyed by a digest (SHA-256 by default) of the object's canonical form, which is its Java serialised
+ * form unless writeCanonicalForm is overridden, together with its class and model version. Objects which can't be
+ * serialised are simply validated every time. Serialising and digesting an object can cost as much as validating
+ * it, so where the raw payload an object was parsed from is still to hand it should be passed in too; the key is then
+ * a digest of the payload, which is far cheaper to compute. The cache holds at most maxSize passes, discarding the least recently
+ * used, and discards passes once they are older than timeToLive.
+ *
+ * A pass is only used for an object of the very class it was recorded for, so redeploying a model invalidates
+ * everything recorded for the previous version. The model version, by default the Implementation-Version of the
+ * jar the object's class was loaded from, is also part of the key; setting modelVersion overrides it and clears the
+ * cache.
+ *
+ * Thread safe.
+ *
+ * @author Andrew Elmore
+ */
+public class ValidationResultCache {
+
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	public static final long DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000L;
+
+	public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+	private int maxSize = DEFAULT_MAX_SIZE;
+
+	/**
+	 * In milliseconds; negative to keep passes until they are evicted by size
+	 */
+	private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+	private volatile String modelVersion = null;
+
+	/**
+	 * Cloned for each digest, as MessageDigests aren't thread safe
+	 */
+	private volatile MessageDigest digestPrototype;
+
+	/**
+	 * Passes in access order, least recently used first. Guarded by itself.
+	 */
+	private final LinkedHashMap<Key, Pass> passes = new LinkedHashMap<Key, Pass>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Pass> eldest) {
+			if(size() > maxSize) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * The digest of an object's canonical form
+	 */
+	private static final class Key {
+		private final byte[] digest;
+		private final int hashCode;
+
+		public Key(byte[] digest) {
+			this.digest = digest;
+			this.hashCode = Arrays.hashCode(digest);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && Arrays.equals(digest, ((Key)obj).digest);
+		}
+	}
+
+	/**
+	 * A record of an object of type passing validation
+	 */
+	private static final class Pass {
+		private final Class<?> type;
+		private final long recordedAt;
+
+		public Pass(Class<?> type, long recordedAt) {
+			this.type = type;
+			this.recordedAt = recordedAt;
+		}
+	}
+
+	public ValidationResultCache() {
+		setAlgorithm(DEFAULT_ALGORITHM);
+	}
+
+	/**
+	 * Gets the failures found validating cdo with engine, unless an identical object has recently passed validation
+	 *
+	 * @param cdo The object to validate
+	 * @param engine The engine to validate it with on a miss
+	 * @return The failures, raised against cdo; an empty list if cdo is valid
+	 */
+	public List<ValidationEvent> getFailures(ComplexDataObject cdo, ValidationEngine engine) {
+		return getFailures(cdo, null, engine);
+	}
+
+	/**
+	 * As getFailures(cdo, engine), but keyed on the payload cdo was parsed from rather than cdo's canonical form
+	 *
+	 * @param cdo The object to validate
+	 * @param payload The byte[] or CharSequence cdo was parsed from; null, or any other type, to key on cdo itself
+	 * @param engine The engine to validate it with on a miss
+	 * @return The failures, raised against cdo; an empty list if cdo is valid
+	 */
+	public List<ValidationEvent> getFailures(ComplexDataObject cdo, Object payload, ValidationEngine engine) {
+		Key key = getKey(cdo, payload);
+		long now = System.currentTimeMillis();
+		if(isPass(key, cdo.getClass(), now)) {
+			return Collections.emptyList();
+		}
+
+		List<ValidationEvent> failures = engine.validateByEvents(cdo);
+		if(failures.isEmpty()) {
+			recordPass(key, cdo.getClass(), now);
+		}
+		return failures;
+	}
+
+	/**
+	 * Validates cdo with engine, aborting on the first failure, unless an identical object has recently passed
+	 * validation
+	 *
+	 * @param cdo The object to validate
+	 * @param engine The engine to validate it with on a miss
+	 * @throws ValidationException Describing the first failure
+	 */
+	public void validateByException(ComplexDataObject cdo, ValidationEngine engine) throws ValidationException {
+		validateByException(cdo, null, engine);
+	}
+
+	/**
+	 * As validateByException(cdo, engine), but keyed on the payload cdo was parsed from rather than cdo's canonical
+	 * form
+	 *
+	 * @param cdo The object to validate
+	 * @param payload The byte[] or CharSequence cdo was parsed from; null, or any other type, to key on cdo itself
+	 * @param engine The engine to validate it with on a miss
+	 * @throws ValidationException Describing the first failure
+	 */
+	public void validateByException(ComplexDataObject cdo, Object payload, ValidationEngine engine)
+			throws ValidationException {
+		Key key = getKey(cdo, payload);
+		long now = System.currentTimeMillis();
+		if(isPass(key, cdo.getClass(), now)) {
+			return;
+		}
+
+		engine.validateByException(cdo);
+		recordPass(key, cdo.getClass(), now);
+	}
+
+	/**
+	 * Looks up whether an object of type with key has recently passed validation, counting the hit or miss
+	 *
+	 * @param key The object's key, null if it couldn't be computed
+	 */
+	private boolean isPass(Key key, Class<?> type, long now) {
+		if(key != null) {
+			synchronized(passes) {
+				Pass pass = passes.get(key);
+				if(pass != null && pass.type == type && !isExpired(pass, now)) {
+					hits.incrementAndGet();
+					return true;
+				} else if(pass != null) {
+					passes.remove(key);
+				}
+			}
+		}
+		misses.incrementAndGet();
+		return false;
+	}
+
+	private void recordPass(Key key, Class<?> type, long now) {
+		if(key != null) {
+			synchronized(passes) {
+				passes.put(key, new Pass(type, now));
+			}
+		}
+	}
+
+	private boolean isExpired(Pass pass, long now) {
+		return timeToLive >= 0 && now - pass.recordedAt > timeToLive;
+	}
+
+	/**
+	 * Computes the key for cdo, from payload if it is a byte[] or CharSequence and otherwise from cdo's canonical form.
+	 * Identical payloads parse to identical objects, so either identifies cdo.
+	 *
+	 * @return The key, or null if cdo's canonical form couldn't be written
+	 */
+	private Key getKey(ComplexDataObject cdo, Object payload) {
+		MessageDigest digest;
+		try {
+			digest = (MessageDigest)digestPrototype.clone();
+		} catch(CloneNotSupportedException ex) {
+			try {
+				digest = MessageDigest.getInstance(digestPrototype.getAlgorithm());
+			} catch(NoSuchAlgorithmException nsaEx) {
+				throw new IllegalStateException(nsaEx);
+			}
+		}
+
+		Class<?> type = cdo.getClass();
+		String version = modelVersion;
+		if(version == null && type.getPackage() != null) {
+			version = type.getPackage().getImplementationVersion();
+		}
+		update(digest, type.getName());
+		update(digest, version != null? version : "");
+
+		// Keep payload digests distinct from those of canonical forms
+		if(payload instanceof byte[]) {
+			update(digest, "byte[]");
+			digest.update((byte[])payload);
+			return new Key(digest.digest());
+		} else if(payload instanceof CharSequence) {
+			update(digest, "CharSequence");
+			update(digest, (CharSequence)payload);
+			return new Key(digest.digest());
+		}
+		update(digest, "");
+
+		try {
+			OutputStream out = new DigestOutputStream(new NullOutputStream(), digest);
+			writeCanonicalForm(cdo, out);
+			out.close();
+		} catch(IOException ioEx) {
+			return null;
+		}
+		return new Key(digest.digest());
+	}
+
+	private static void update(MessageDigest digest, CharSequence value) {
+		// Digest the chars a buffer at a time rather than paying for a call per byte
+		byte[] buffer = new byte[Math.min(value.length(), 4096) * 2];
+		int length = value.length();
+		for(int i = 0; i < length; ) {
+			int count = 0;
+			for(; count < buffer.length && i < length; i++) {
+				char c = value.charAt(i);
+				buffer[count++] = (byte)(c >>> 8);
+				buffer[count++] = (byte)c;
+			}
+			digest.update(buffer, 0, count);
+		}
+		// Separate the fields
+		digest.update((byte)0xFF);
+		digest.update((byte)0xFF);
+	}
+
+	/**
+	 * Writes the canonical form of cdo, from which its key is derived. Identical objects must produce identical
+	 * output. Writes the object's Java serialised form by default.
+	 *
+	 * @param cdo The object
+	 * @param out Where to write it
+	 * @throws IOException If cdo can't be written, in which case it is not cached
+	 */
+	protected void writeCanonicalForm(ComplexDataObject cdo, OutputStream out) throws IOException {
+		ObjectOutputStream objectOut = new ObjectOutputStream(out);
+		objectOut.writeObject(cdo);
+		objectOut.flush();
+	}
+
+	/**
+	 * Discards every pass
+	 */
+	public void clear() {
+		synchronized(passes) {
+			passes.clear();
+		}
+	}
+
+	/**
+	 * The number of passes currently cached, including any which have expired but not yet been discarded
+	 */
+	public int getSize() {
+		synchronized(passes) {
+			return passes.size();
+		}
+	}
+
+	/**
+	 * The number of lookups answered from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of lookups which required the object to be validated
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * The number of passes discarded to keep the cache within maxSize
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Sets the most passes to cache. Defaults to DEFAULT_MAX_SIZE.
+	 */
+	public void setMaxSize(int maxSize) {
+		if(maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		this.maxSize = maxSize;
+	}
+
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, a pass is used for. Negative to keep passes until they are evicted to make
+	 * room for others. Defaults to 10 minutes.
+	 */
+	public void setTimeToLive(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	public String getAlgorithm() {
+		return digestPrototype.getAlgorithm();
+	}
+
+	/**
+	 * Sets the MessageDigest algorithm used to key passes. Defaults to SHA-256. Changing it clears the cache.
+	 */
+	public void setAlgorithm(String algorithm) {
+		try {
+			digestPrototype = MessageDigest.getInstance(algorithm);
+		} catch(NoSuchAlgorithmException nsaEx) {
+			throw new IllegalArgumentException("Unsupported digest algorithm " + algorithm, nsaEx);
+		}
+		clear();
+	}
+
+	public String getModelVersion() {
+		return modelVersion;
+	}
+
+	/**
+	 * Sets the version of the model being validated, in place of the Implementation-Version of the jar its classes
+	 * were loaded from. Changing it clears the cache.
+	 */
+	public void setModelVersion(String modelVersion) {
+		this.modelVersion = modelVersion;
+		clear();
+	}
+
+	/**
+	 * Discards everything written to it
+	 */
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.config;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.xml.XmlBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+
+import biz.c24.io.spring.transform.TransformPool;
+
+/**
+ *
+ * @author Andrew Elmore
+ */
+public class TransformPoolBeanDefinitionParserIntegrationTests {
+
+	@Test
+	public void plainTransformPoolElementSetsUpAPoolBean() {
+		BeanDefinition definition = getDefinitionFromFile("transform-pool.xml", "defaultPool");
+
+		assertThat(definition, is(notNullValue()));
+		assertThat(definition.getBeanClassName(), is(TransformPool.class.getName()));
+
+		MutablePropertyValues properties = definition.getPropertyValues();
+		assertThat(properties.getPropertyValue("transformClass").getValue(), is((Object) "biz.c24.io.api.transform.Transform"));
+		assertThat(properties.getPropertyValue("maxSize"), is(nullValue()));
+	}
+
+	@Test
+	public void transformPoolAttributesAreApplied() {
+		BeanDefinition definition = getDefinitionFromFile("transform-pool.xml", "customPool");
+
+		MutablePropertyValues properties = definition.getPropertyValues();
+		assertThat(properties.getPropertyValue("maxSize").getValue(), is((Object) "4"));
+		assertThat(properties.getPropertyValue("initialSize").getValue(), is((Object) "2"));
+		assertThat(properties.getPropertyValue("maxIdleTime").getValue(), is((Object) "1000"));
+		assertThat(properties.getPropertyValue("maxWait").getValue(), is((Object) "500"));
+	}
+
+	private BeanDefinition getDefinitionFromFile(String filename, String beanName) {
+		XmlBeanFactory factory = new XmlBeanFactory(new ClassPathResource(filename, this.getClass()));
+		return factory.getBeanDefinition(beanName);
+	}
+}
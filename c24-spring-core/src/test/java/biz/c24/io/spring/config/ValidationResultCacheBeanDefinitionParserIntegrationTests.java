@@ -0,0 +1,59 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.config;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.xml.XmlBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+
+import biz.c24.io.spring.validation.ValidationResultCache;
+
+/**
+ *
+ * @author Andrew Elmore
+ */
+public class ValidationResultCacheBeanDefinitionParserIntegrationTests {
+
+	@Test
+	public void plainValidationCacheElementSetsUpACacheBean() {
+		BeanDefinition definition = getDefinitionFromFile("validation-cache.xml", "defaultCache");
+
+		assertThat(definition, is(notNullValue()));
+		assertThat(definition.getBeanClassName(), is(ValidationResultCache.class.getName()));
+		assertThat(definition.getPropertyValues().isEmpty(), is(true));
+	}
+
+	@Test
+	public void validationCacheAttributesAreApplied() {
+		BeanDefinition definition = getDefinitionFromFile("validation-cache.xml", "customCache");
+
+		MutablePropertyValues properties = definition.getPropertyValues();
+		assertThat(properties.getPropertyValue("maxSize").getValue(), is((Object) "500"));
+		assertThat(properties.getPropertyValue("timeToLive").getValue(), is((Object) "60000"));
+		assertThat(properties.getPropertyValue("algorithm").getValue(), is((Object) "SHA-1"));
+		assertThat(properties.getPropertyValue("modelVersion").getValue(), is((Object) "2.1"));
+	}
+
+	private BeanDefinition getDefinitionFromFile(String filename, String beanName) {
+		XmlBeanFactory factory = new XmlBeanFactory(new ClassPathResource(filename, this.getClass()));
+		return factory.getBeanDefinition(beanName);
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.transform;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import biz.c24.io.api.transform.Transform;
+
+/**
+ * Tests for the TransformPool
+ * 
+ * @author Andrew Elmore
+ */
+public class TransformPoolUnitTests {
+
+	/**
+	 * A pool of mock transforms which counts how many it has created
+	 */
+	private static class MockTransformPool extends TransformPool {
+		
+		private final AtomicInteger created = new AtomicInteger();
+		
+		public MockTransformPool(int maxSize) {
+			super(Transform.class, maxSize);
+		}
+		
+		@Override
+		protected Transform createTransform() {
+			created.incrementAndGet();
+			return mock(Transform.class);
+		}
+	}
+	
+	@Test
+	public void testPrewarm() throws Exception {
+		MockTransformPool pool = new MockTransformPool(4);
+		pool.setInitialSize(2);
+		pool.afterPropertiesSet();
+		
+		assertThat(pool.getSize(), is(2));
+		assertThat(pool.getIdleCount(), is(2));
+		
+		// Borrowing shouldn't create anything new while instances are idle
+		Transform first = pool.borrow();
+		Transform second = pool.borrow();
+		assertThat(first, is(not(second)));
+		assertThat(pool.created.get(), is(2));
+		
+		pool.borrow();
+		assertThat(pool.created.get(), is(3));
+		assertThat(pool.getIdleCount(), is(0));
+	}
+	
+	@Test
+	public void testBounded() throws Exception {
+		final MockTransformPool pool = new MockTransformPool(3);
+		pool.afterPropertiesSet();
+		
+		final Set<Transform> inUse = Collections.newSetFromMap(new ConcurrentHashMap<Transform, Boolean>());
+		ExecutorService executor = Executors.newFixedThreadPool(10);
+		try {
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for(int i = 0; i < 200; i++) {
+				results.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						Transform transform = pool.borrow();
+						try {
+							// No two threads should ever hold the same instance
+							assertTrue(inUse.add(transform));
+							Thread.sleep(1);
+							inUse.remove(transform);
+						} finally {
+							pool.release(transform);
+						}
+						return null;
+					}
+				}));
+			}
+			for(Future<Object> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		
+		assertThat(pool.created.get(), is(3));
+		assertThat(pool.getSize(), is(3));
+		assertThat(pool.getBorrowCount(), is(200L));
+		// With 10 threads sharing 3 instances, some must have waited
+		assertTrue(pool.getWaitCount() > 0);
+		assertTrue(pool.getTotalWaitTime(TimeUnit.NANOSECONDS) > 0);
+	}
+	
+	@Test
+	public void testIdleEviction() throws Exception {
+		MockTransformPool pool = new MockTransformPool(3);
+		pool.setInitialSize(1);
+		pool.setMaxIdleTime(50);
+		pool.afterPropertiesSet();
+		
+		Transform first = pool.borrow();
+		Transform second = pool.borrow();
+		Transform third = pool.borrow();
+		pool.release(first);
+		pool.release(second);
+		pool.release(third);
+		assertThat(pool.getSize(), is(3));
+		
+		Thread.sleep(100);
+		
+		// The most recently released is reused and the others have expired, bar initialSize
+		Transform transform = pool.borrow();
+		assertThat(transform, is(third));
+		pool.release(transform);
+		assertThat(pool.getSize(), is(1));
+	}
+	
+	@Test
+	public void testMaxWait() throws Exception {
+		MockTransformPool pool = new MockTransformPool(1);
+		pool.setMaxWait(20);
+		pool.afterPropertiesSet();
+		
+		Transform transform = pool.borrow();
+		try {
+			pool.borrow();
+			fail("TransformPool failed to time out");
+		} catch(IllegalStateException isEx) {
+			// Expected behaviour
+		}
+		
+		pool.release(transform);
+		assertThat(pool.borrow(), is(transform));
+	}
+	
+	@Test
+	public void testOnlyBorrowedInstancesReleased() throws Exception {
+		MockTransformPool pool = new MockTransformPool(2);
+		pool.afterPropertiesSet();
+		
+		Transform transform = pool.borrow();
+		assertThat(pool.isBorrowed(transform), is(true));
+		Transform foreign = mock(Transform.class);
+		assertThat(pool.isBorrowed(foreign), is(false));
+		try {
+			pool.release(foreign);
+			fail("TransformPool accepted an instance it didn't create");
+		} catch(IllegalArgumentException iaEx) {
+			// Expected behaviour
+		}
+		
+		pool.release(transform);
+		assertThat(pool.isBorrowed(transform), is(false));
+		try {
+			pool.release(transform);
+			fail("TransformPool accepted an instance twice");
+		} catch(IllegalArgumentException iaEx) {
+			// Expected behaviour
+		}
+		assertThat(pool.getIdleCount(), is(1));
+		assertThat(pool.getSize(), is(1));
+	}
+
+}
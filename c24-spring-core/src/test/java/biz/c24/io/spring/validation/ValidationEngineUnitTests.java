@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.validation;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import nonamespace.CustomerLocal;
+
+import org.junit.Test;
+
+/**
+ * Tests for the ValidationEngine
+ * 
+ * @author Andrew Elmore
+ */
+public class ValidationEngineUnitTests {
+	
+	@Test
+	public void testValidatorsAreReused() throws Exception {
+		ValidationEngine engine = new ValidationEngine();
+		// Customer has no mandatory content, so is valid when empty
+		CustomerLocal customer = new CustomerLocal();
+		
+		engine.validateByException(customer);
+		assertThat(engine.validateByEvents(customer).isEmpty(), is(true));
+		assertThat(engine.validate(customer, true).isEmpty(), is(true));
+		assertThat(engine.validate(customer, false).isEmpty(), is(true));
+		
+		// Each validation should have used the same, pooled, Validator
+		assertThat(engine.getIdleCount(), is(1));
+	}
+	
+	@Test
+	public void testConcurrentBorrowers() throws Exception {
+		ValidationEngine engine = new ValidationEngine();
+		// Customer has no mandatory content, so is valid when empty
+		CustomerLocal customer = new CustomerLocal();
+		
+		ValidationEngine.Validator first = engine.borrow();
+		ValidationEngine.Validator second = engine.borrow();
+		assertThat(first, is(not(second)));
+		
+		assertThat(first.validateByEvents(customer), is(true));
+		assertThat(first.getFailEvents().isEmpty(), is(true));
+		
+		engine.release(first);
+		engine.release(second);
+		assertThat(engine.getIdleCount(), is(2));
+		ValidationEngine.Validator reused = engine.borrow();
+		assertTrue(reused == first || reused == second);
+		engine.release(reused);
+		
+		engine.clear();
+		assertThat(engine.getIdleCount(), is(0));
+	}
+	
+	@Test
+	public void testUnpooledValidators() throws Exception {
+		ValidationEngine engine = new ValidationEngine();
+		// Customer has no mandatory content, so is valid when empty
+		CustomerLocal customer = new CustomerLocal();
+		
+		ValidationEngine.Validator first = ValidationEngine.newValidator();
+		ValidationEngine.Validator second = ValidationEngine.newValidator();
+		assertThat(first, is(not(second)));
+		assertThat(first.getManager(), is(not(second.getManager())));
+		
+		assertThat(first.validateByEvents(customer), is(true));
+		// Nothing was borrowed from or returned to the engine's pool
+		assertThat(engine.getIdleCount(), is(0));
+	}
+
+}
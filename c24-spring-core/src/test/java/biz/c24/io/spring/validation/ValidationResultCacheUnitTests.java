@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 C24 Technologies.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *			http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package biz.c24.io.spring.validation;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nonamespace.CustomerLocal;
+
+import org.junit.Test;
+
+import biz.c24.io.api.data.ComplexDataObject;
+import biz.c24.io.api.data.ValidationEvent;
+import biz.c24.io.api.data.ValidationException;
+
+/**
+ * Tests for the ValidationResultCache
+ * 
+ * @author Andrew Elmore
+ */
+public class ValidationResultCacheUnitTests {
+	
+	private ValidationEngine engine = new ValidationEngine();
+	
+	@Test
+	public void testIdenticalObjectsHit() throws Exception {
+		ValidationResultCache cache = new ValidationResultCache();
+		
+		// Customer has no mandatory content, so is valid when empty
+		assertThat(cache.getFailures(new CustomerLocal(), engine).isEmpty(), is(true));
+		assertThat(cache.getMissCount(), is(1L));
+		assertThat(cache.getHitCount(), is(0L));
+		
+		assertThat(cache.getFailures(new CustomerLocal(), engine).isEmpty(), is(true));
+		assertThat(engine.validate(new CustomerLocal(), true, cache).isEmpty(), is(true));
+		assertThat(cache.getMissCount(), is(1L));
+		assertThat(cache.getHitCount(), is(2L));
+		assertThat(cache.getSize(), is(1));
+	}
+	
+	@Test
+	public void testExpiredPassesAreNotUsed() throws Exception {
+		ValidationResultCache cache = new ValidationResultCache();
+		cache.setTimeToLive(0);
+		
+		cache.getFailures(new CustomerLocal(), engine);
+		Thread.sleep(10);
+		cache.getFailures(new CustomerLocal(), engine);
+		assertThat(cache.getMissCount(), is(2L));
+		assertThat(cache.getHitCount(), is(0L));
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws Exception {
+		ValidationResultCache cache = new IdentityCache();
+		cache.setMaxSize(2);
+		CustomerLocal first = new CustomerLocal();
+		CustomerLocal second = new CustomerLocal();
+		CustomerLocal third = new CustomerLocal();
+		
+		cache.getFailures(first, engine);
+		cache.getFailures(second, engine);
+		// Makes second the least recently used
+		cache.getFailures(first, engine);
+		cache.getFailures(third, engine);
+		assertThat(cache.getSize(), is(2));
+		assertThat(cache.getEvictionCount(), is(1L));
+		
+		cache.getFailures(first, engine);
+		assertThat(cache.getHitCount(), is(2L));
+		cache.getFailures(second, engine);
+		assertThat(cache.getMissCount(), is(4L));
+	}
+	
+	@Test
+	public void testModelVersionChangeClears() throws Exception {
+		ValidationResultCache cache = new ValidationResultCache();
+		cache.setModelVersion("1.0");
+		cache.getFailures(new CustomerLocal(), engine);
+		assertThat(cache.getSize(), is(1));
+		
+		cache.setModelVersion("1.1");
+		assertThat(cache.getSize(), is(0));
+		cache.getFailures(new CustomerLocal(), engine);
+		assertThat(cache.getMissCount(), is(2L));
+	}
+	
+	@Test
+	public void testFailuresAreNotCached() throws Exception {
+		final AtomicInteger validations = new AtomicInteger();
+		final List<ValidationEvent> failures = Collections.singletonList((ValidationEvent)null);
+		// Reports a failure for every object
+		ValidationEngine failingEngine = new ValidationEngine() {
+			@Override
+			public List<ValidationEvent> validateByEvents(ComplexDataObject cdo) {
+				validations.incrementAndGet();
+				return failures;
+			}
+		};
+		ValidationResultCache cache = new ValidationResultCache();
+		
+		// Each object must be validated so that its failures refer to it rather than to an earlier, identical, object
+		assertThat(cache.getFailures(new CustomerLocal(), failingEngine), is(failures));
+		assertThat(cache.getFailures(new CustomerLocal(), failingEngine), is(failures));
+		assertThat(validations.get(), is(2));
+		assertThat(cache.getMissCount(), is(2L));
+		assertThat(cache.getSize(), is(0));
+	}
+	
+	@Test
+	public void testValidateByException() throws Exception {
+		final AtomicInteger validations = new AtomicInteger();
+		ValidationEngine countingEngine = new ValidationEngine() {
+			@Override
+			public void validateByException(ComplexDataObject cdo) throws ValidationException {
+				validations.incrementAndGet();
+				super.validateByException(cdo);
+			}
+		};
+		ValidationResultCache cache = new ValidationResultCache();
+		
+		// Customer has no mandatory content, so is valid when empty
+		cache.validateByException(new CustomerLocal(), countingEngine);
+		cache.validateByException(new CustomerLocal(), countingEngine);
+		assertThat(validations.get(), is(1));
+		assertThat(cache.getHitCount(), is(1L));
+	}
+	
+	@Test
+	public void testUnwritableObjectsAreValidated() throws Exception {
+		ValidationResultCache cache = new ValidationResultCache() {
+			@Override
+			protected void writeCanonicalForm(ComplexDataObject cdo, OutputStream out) throws IOException {
+				throw new IOException("Not serialisable");
+			}
+		};
+		
+		assertThat(cache.getFailures(new CustomerLocal(), engine).isEmpty(), is(true));
+		assertThat(cache.getFailures(new CustomerLocal(), engine).isEmpty(), is(true));
+		assertThat(cache.getMissCount(), is(2L));
+		assertThat(cache.getSize(), is(0));
+	}
+	
+	@Test
+	public void testPayloadKeysAvoidCanonicalForm() throws Exception {
+		ValidationResultCache cache = new ValidationResultCache() {
+			@Override
+			protected void writeCanonicalForm(ComplexDataObject cdo, OutputStream out) throws IOException {
+				fail("Payload should have been used as the key");
+			}
+		};
+		
+		cache.getFailures(new CustomerLocal(), "<customer/>", engine);
+		cache.validateByException(new CustomerLocal(), new StringBuilder("<customer/>"), engine);
+		assertThat(cache.getHitCount(), is(1L));
+		
+		cache.getFailures(new CustomerLocal(), "<customer/>".getBytes("UTF-8"), engine);
+		cache.getFailures(new CustomerLocal(), "<customer/>".getBytes("UTF-8"), engine);
+		cache.getFailures(new CustomerLocal(), "<customer></customer>", engine);
+		assertThat(cache.getHitCount(), is(2L));
+		assertThat(cache.getMissCount(), is(3L));
+		assertThat(cache.getSize(), is(3));
+	}
+	
+	/**
+	 * Treats every instance as distinct
+	 */
+	private static class IdentityCache extends ValidationResultCache {
+		@Override
+		protected void writeCanonicalForm(ComplexDataObject cdo, OutputStream out) throws IOException {
+			new DataOutputStream(out).writeInt(System.identityHashCode(cdo));
+		}
+	}
+
+}
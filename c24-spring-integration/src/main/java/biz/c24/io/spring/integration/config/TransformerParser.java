@@ -38,10 +38,16 @@ public class TransformerParser extends AbstractTransformerParser {
 	protected void parseTransformer(Element element,
 			ParserContext parserContext, BeanDefinitionBuilder builder) {
 
-		// Required by schema
+		// One of transform-class and transform-pool-ref is required
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder,
 				element, "transform-class");
 
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder,
+				element, "transform-pool-ref", "transformPool");
+
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder,
+				element, "max-pool-size");
+
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element,
 				"always-return-array");
 		
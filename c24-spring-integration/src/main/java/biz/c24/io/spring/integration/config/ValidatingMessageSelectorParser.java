@@ -39,6 +39,8 @@ public class ValidatingMessageSelectorParser extends AbstractBeanDefinitionParse
 		BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(C24ValidatingMessageSelector.class);
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "fail-fast", "failFast");
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "throw-exception-on-rejection", "throwExceptionOnRejection");
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "validation-cache-ref", "validationCache");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "raw-payload-header", "rawPayloadHeader");
 		
 		return builder.getBeanDefinition();
 	}
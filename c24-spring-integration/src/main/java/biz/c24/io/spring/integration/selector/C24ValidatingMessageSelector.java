@@ -15,6 +15,8 @@
  */
 package biz.c24.io.spring.integration.selector;
 
+import java.util.List;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.messaging.Message;
@@ -23,12 +25,24 @@ import org.springframework.messaging.MessagingException;
 import org.springframework.integration.core.MessageSelector;
 
 import biz.c24.io.api.data.ComplexDataObject;
-import biz.c24.io.api.data.ValidationEventCollector;
+import biz.c24.io.api.data.ValidationEvent;
 import biz.c24.io.api.data.ValidationException;
-import biz.c24.io.api.data.ValidationManager;
 import biz.c24.io.spring.integration.validation.C24AggregatedMessageValidationException;
+import biz.c24.io.spring.validation.ValidationEngine;
+import biz.c24.io.spring.validation.ValidationResultCache;
 
 /**
+ * Accepts messages whose ComplexDataObject payloads are valid.
+ * 
+ * If a ValidationResultCache is set, a payload identical to one which
+ * recently passed validation, such as a resent message, isn't validated
+ * again. Payloads which fail are always validated, so that the failures
+ * reported describe them.
+ * 
+ * Passes are keyed on the payload's serialised form unless rawPayloadHeader
+ * names a header holding the byte[] or String the payload was unmarshalled
+ * from, which is much cheaper to key on.
+ * 
  * @author askogman
  * @author Andrew Elmore
  * 
@@ -42,6 +56,12 @@ public class C24ValidatingMessageSelector implements MessageSelector {
 
 	private volatile boolean failFast = false;
 
+	private volatile ValidationEngine validationEngine = new ValidationEngine();
+
+	private volatile ValidationResultCache validationCache = null;
+
+	private volatile String rawPayloadHeader = null;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -60,50 +80,51 @@ public class C24ValidatingMessageSelector implements MessageSelector {
 					+ "]. Only ComplexDataObject is supported.", e);
 		}
 
+		String header = rawPayloadHeader;
+		Object rawPayload = header != null ? message.getHeaders().get(header)
+				: null;
+
 		boolean result;
 		if (!throwExceptionOnRejection || failFast) {
-			result = validateFailFast(cdo, message);
+			result = validateFailFast(cdo, rawPayload, message);
 		} else {
-			result = validateAllEvents(cdo);
+			result = validateAllEvents(cdo, rawPayload);
 		}
 
 		return result;
 	}
 
-	boolean validateAllEvents(ComplexDataObject cdo) {
+	boolean validateAllEvents(ComplexDataObject cdo, Object rawPayload) {
 
-		ValidationManager manager = new ValidationManager();
-		ValidationEventCollector vec = new ValidationEventCollector();
-		manager.addValidationListener(vec);
+		ValidationResultCache cache = validationCache;
+		List<ValidationEvent> failEvents = cache != null ? cache.getFailures(
+				cdo, rawPayload, validationEngine) : validationEngine
+				.validateByEvents(cdo);
 
 		boolean isValid = false;
 
-		if (manager.validateByEvents(cdo)) {
+		if (failEvents.isEmpty()) {
+			// No fail events, so it passed
 			isValid = true;
-		} else {
-
-			if (vec.hasFailEvents()) {
-				if (throwExceptionOnRejection) {
-					throw new C24AggregatedMessageValidationException(
-							vec.getFailEvents());
-				}
-			} else {
-				// No fail events, so it passed
-				isValid = true;
-			}
-
+		} else if (throwExceptionOnRejection) {
+			throw new C24AggregatedMessageValidationException(
+					failEvents.toArray(new ValidationEvent[failEvents.size()]));
 		}
 
 		return isValid;
 	}
 
-	boolean validateFailFast(ComplexDataObject cdo, Message<?> message) {
-
-		ValidationManager manager = new ValidationManager();
+	boolean validateFailFast(ComplexDataObject cdo, Object rawPayload,
+			Message<?> message) {
 
 		boolean isValid = false;
 		try {
-			manager.validateByException(cdo);
+			ValidationResultCache cache = validationCache;
+			if (cache != null) {
+				cache.validateByException(cdo, rawPayload, validationEngine);
+			} else {
+				validationEngine.validateByException(cdo);
+			}
 			isValid = true;
 		} catch (ValidationException ve) {
 			if (throwExceptionOnRejection) {
@@ -131,6 +152,51 @@ public class C24ValidatingMessageSelector implements MessageSelector {
 		this.throwExceptionOnRejection = throwExceptionOnRejection;
 	}
 
+	public ValidationEngine getValidationEngine() {
+		return validationEngine;
+	}
+
+	/**
+	 * Sets the ValidationEngine to validate with, for example one shared with
+	 * other components. By default each selector has its own.
+	 * 
+	 * @param validationEngine
+	 */
+	public void setValidationEngine(ValidationEngine validationEngine) {
+		this.validationEngine = validationEngine;
+	}
+
+	public ValidationResultCache getValidationCache() {
+		return validationCache;
+	}
+
+	/**
+	 * Sets a cache of payloads which have passed validation so that payloads
+	 * identical to one recently found valid aren't validated again. Its hit and miss counts show
+	 * how effective it is.
+	 * 
+	 * @param validationCache
+	 */
+	public void setValidationCache(ValidationResultCache validationCache) {
+		this.validationCache = validationCache;
+	}
+
+	public String getRawPayloadHeader() {
+		return rawPayloadHeader;
+	}
+
+	/**
+	 * Sets the name of a header holding the byte[] or String the payload was
+	 * unmarshalled from, for example one copied from the payload by a header
+	 * enricher before unmarshalling. If present, the validation cache is keyed
+	 * on it rather than on the payload's serialised form. Unset by default.
+	 * 
+	 * @param rawPayloadHeader
+	 */
+	public void setRawPayloadHeader(String rawPayloadHeader) {
+		this.rawPayloadHeader = rawPayloadHeader;
+	}
+
 	public boolean isFailFast() {
 		return failFast;
 	}
@@ -29,9 +29,15 @@ import org.springframework.util.Assert;
 import biz.c24.io.api.data.ComplexDataObject;
 import biz.c24.io.api.presentation.JavaClassSink;
 import biz.c24.io.api.transform.Transform;
+import biz.c24.io.spring.transform.TransformPool;
 
 /**
- * TODO Consider adding a subclass that uses a pool of transform objects.
+ * Transforms message payloads using an iO-generated Transform.
+ * 
+ * As generated transforms aren't guaranteed to be thread safe, each message is transformed by an instance borrowed
+ * from a TransformPool. Either supply a pool, which may be shared with other components, or a transformClass from
+ * which we create a pool of our own. By default our own pool is unbounded so that, as when each thread had its own
+ * instance, threads never wait for one another; set maxPoolSize to bound the number of instances instead.
  * 
  * @author askogman
  * @author Andrew Elmore
@@ -51,8 +57,12 @@ InitializingBean {
 		return transformClass;
 	}
 	
-    // Cache Transforms per-thread for performance
-    private ThreadLocal<Transform> transform = new ThreadLocal<Transform>();
+	/**
+	 * The pool we borrow transforms from. Created from transformClass on first use if not supplied.
+	 */
+	private volatile TransformPool transformPool = null;
+	
+	private int maxPoolSize = Integer.MAX_VALUE;
 
 	public void setTransformClass(Class<? extends Transform> transformClass) {
 
@@ -97,8 +107,13 @@ InitializingBean {
 		// TODO Support list or array as input
 		Object payload = message.getPayload();
 
-		Object[][] results = transform
+		Object[][] results;
+		try {
+			results = transform
 				.transform(new Object[][] { new Object[] { payload } });
+		} finally {
+			releaseTransform(transform);
+		}
 
 		Object output = extractOutputPayload(results);
 
@@ -155,18 +170,83 @@ InitializingBean {
 	}
 
 	/**
+	 * Gets the Transform to transform a message with. By default it's borrowed from our pool, waiting if every 
+	 * instance is in use, and returned to the pool once the message has been transformed. Instances supplied by
+	 * subclasses which didn't come from the pool are left alone.
 	 * 
 	 * @param message
 	 * @return
 	 * @throws Exception
 	 */
 	protected Transform buildTransform(Message<?> message) throws Exception {
-	    Transform xform = this.transform.get();
-        if(xform == null) {
-            xform = createTransform();
-            this.transform.set(xform);
-        }
-        return xform;	    
+		return getTransformPool().borrow();
+	}
+	
+	/**
+	 * Returns a Transform obtained from buildTransform to our pool, if that's where it came from
+	 */
+	private void releaseTransform(Transform transform) {
+		TransformPool transformPool = this.transformPool;
+		if(transformPool != null && transformPool.isBorrowed(transform)) {
+			transformPool.release(transform);
+		}
+	}
+	
+	/**
+	 * Gets the pool we borrow transforms from, creating it from the transformClass if none was supplied
+	 * 
+	 * @return The TransformPool
+	 */
+	public TransformPool getTransformPool() {
+		TransformPool transformPool = this.transformPool;
+		if(transformPool == null) {
+			transformPool = createTransformPool();
+		}
+		return transformPool;
+	}
+	
+	private synchronized TransformPool createTransformPool() {
+		if(transformPool == null) {
+			Assert.state(transformClass != null,
+				"Either the transformClass or transformPool property must be set");
+			TransformPool pool = new TransformPool(transformClass, maxPoolSize) {
+				@Override
+				protected Transform createTransform() {
+					try {
+						return C24Transformer.this.createTransform();
+					} catch (Exception e) {
+						throw new IllegalStateException("Failed to create transform", e);
+					}
+				}
+			};
+			pool.afterPropertiesSet();
+			transformPool = pool;
+		}
+		return transformPool;
+	}
+	
+	/**
+	 * Sets a pool to borrow transforms from, for example one shared with other components. 
+	 * If set, the transformClass is not used.
+	 * 
+	 * @param transformPool
+	 */
+	public void setTransformPool(TransformPool transformPool) {
+		this.transformPool = transformPool;
+	}
+	
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+	
+	/**
+	 * Sets the maximum number of transforms held by the pool we create if no transformPool is supplied.
+	 * Defaults to unbounded; once they're all in use, further threads wait for one to be released.
+	 * 
+	 * @param maxPoolSize
+	 */
+	public void setMaxPoolSize(int maxPoolSize) {
+		this.maxPoolSize = maxPoolSize;
 	}
 
 	protected Transform createTransform() throws Exception {
@@ -183,15 +263,17 @@ InitializingBean {
 	protected void onInit() throws Exception {
 		super.onInit();
 
-		Assert.state(transformClass != null,
-				"The transformClass property must not be null");
+		if (transformPool == null) {
+			Assert.state(transformClass != null,
+					"Either the transformClass or transformPool property must be set");
 
-		try {
-			createTransform();
-		} catch (Exception e) {
-			throw new IllegalArgumentException(
-					"The provided transform class threw an exception from its default constructor.",
-					e);
+			try {
+				createTransform();
+			} catch (Exception e) {
+				throw new IllegalArgumentException(
+						"The provided transform class threw an exception from its default constructor.",
+						e);
+			}
 		}
 
 	}
@@ -18,6 +18,7 @@ package biz.c24.io.spring.integration.transformer;
 import org.springframework.integration.transformer.HeaderEnricher;
 
 import biz.c24.io.spring.integration.validation.C24ValidatingMessageProcessor;
+import biz.c24.io.spring.validation.ValidationEngine;
 
 /**
  * @author askogman
@@ -44,4 +45,8 @@ public class C24ValidatingHeaderEnricher extends HeaderEnricher {
 		processor.setAddStatistics(addStatistics);
 	}
 
+	public void setValidationEngine(ValidationEngine validationEngine) {
+		processor.setValidationEngine(validationEngine);
+	}
+
 }
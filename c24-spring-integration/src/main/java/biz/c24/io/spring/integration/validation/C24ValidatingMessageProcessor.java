@@ -18,7 +18,6 @@ package biz.c24.io.spring.integration.validation;
 import static biz.c24.io.spring.integration.C24Headers.*;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,8 +27,7 @@ import org.springframework.integration.handler.AbstractMessageProcessor;
 
 import biz.c24.io.api.data.ComplexDataObject;
 import biz.c24.io.api.data.ValidationEvent;
-import biz.c24.io.api.data.ValidationEventCollector;
-import biz.c24.io.api.data.ValidationManager;
+import biz.c24.io.spring.validation.ValidationEngine;
 
 /**
  * @author askogman
@@ -42,6 +40,8 @@ AbstractMessageProcessor<Map<String, ?>> {
 	boolean addPassEvents = false;
 	boolean addStatistics = false;
 
+	private volatile ValidationEngine validationEngine = new ValidationEngine();
+
 	@Override
 	public Map<String, ?> processMessage(Message<?> message) {
 
@@ -58,36 +58,54 @@ AbstractMessageProcessor<Map<String, ?>> {
 							+ "]. Only ComplexDataObject is supported.", e);
 		}
 
-		ValidationManager manager = new ValidationManager();
-		ValidationEventCollector vec = new ValidationEventCollector();
-		manager.addValidationListener(vec);
-
-		if (manager.validateByEvents(cdo)) {
-			result.put(VALID, Boolean.TRUE);
-		} else {
-			result.put(VALID, Boolean.FALSE);
-		}
-
-		if (isAddFailEvents()) {
-			result.put(
-					FAIL_EVENTS,
-					new ArrayList<ValidationEvent>(Arrays.asList(vec
-							.getFailEvents())));
+		// The statistics belong to the validator's manager and would be changed by later validations if it were
+		// pooled, so they need a validator of their own
+		boolean pooled = !isAddStatistics();
+		ValidationEngine.Validator validator = pooled ? validationEngine.borrow()
+				: ValidationEngine.newValidator();
+		try {
+			if (validator.validateByEvents(cdo)) {
+				result.put(VALID, Boolean.TRUE);
+			} else {
+				result.put(VALID, Boolean.FALSE);
+			}
+
+			// The validator's events are reused once it's released, so copy them
+			if (isAddFailEvents()) {
+				result.put(FAIL_EVENTS, new ArrayList<ValidationEvent>(
+						validator.getFailEvents()));
+			}
+
+			if (isAddPassEvents()) {
+				result.put(PASS_EVENTS, new ArrayList<ValidationEvent>(
+						validator.getPassEvents()));
+			}
+
+			if (isAddStatistics()) {
+				result.put(STATISTICS, validator.getManager().getStatistics());
+			}
+		} finally {
+			if (pooled) {
+				validationEngine.release(validator);
+			}
 		}
 
-		if (isAddPassEvents()) {
-			result.put(
-					PASS_EVENTS,
-					new ArrayList<ValidationEvent>(Arrays.asList(vec
-							.getPassEvents())));
-		}
+		return result;
 
-		if (isAddStatistics()) {
-			result.put(STATISTICS, manager.getStatistics());
-		}
+	}
 
-		return result;
+	public ValidationEngine getValidationEngine() {
+		return validationEngine;
+	}
 
+	/**
+	 * Sets the ValidationEngine to validate with, for example one shared with
+	 * other components. By default each processor has its own.
+	 * 
+	 * @param validationEngine
+	 */
+	public void setValidationEngine(ValidationEngine validationEngine) {
+		this.validationEngine = validationEngine;
 	}
 
 	public boolean isAddFailEvents() {
@@ -30,6 +30,7 @@ import biz.c24.io.examples.models.basic.OutputDocumentRoot;
 import biz.c24.io.examples.transforms.basic.ExampleTransform;
 import biz.c24.io.examples.transforms.basic.EmployeeToEmailTransform;
 import biz.c24.io.spring.core.C24Model;
+import biz.c24.io.spring.transform.TransformPool;
 
 
 public class IoTransformerIUTests {
@@ -52,6 +53,27 @@ public class IoTransformerIUTests {
 
 	}
 	
+	@Test
+	public void canTransformWithSharedPool() throws Exception {
+
+		TransformPool pool = new TransformPool(ExampleTransform.class, 1);
+		pool.afterPropertiesSet();
+
+		C24Transformer transformer = new C24Transformer();
+		transformer.setTransformPool(pool);
+
+		Message<?> message = MessageBuilder.withPayload(loadObject()).build();
+
+		assertThat(transformer.transform(message).getPayload(), instanceOf(OutputDocumentRoot.class));
+		assertThat(transformer.transform(message).getPayload(), instanceOf(OutputDocumentRoot.class));
+
+		// The same transform should have been borrowed and returned each time
+		assertThat(pool.getBorrowCount(), is(2L));
+		assertThat(pool.getSize(), is(1));
+		assertThat(pool.getIdleCount(), is(1));
+
+	}
+	
 	public static class MyEmail {
 		
 		private String firstNameInitial;